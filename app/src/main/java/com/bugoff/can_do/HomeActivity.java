@@ -32,9 +32,7 @@ import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Fragment for the Home screen.
@@ -235,47 +233,25 @@ public class HomeActivity extends Fragment {
         }
 
         Log.d(TAG, "fetchEventDetails - Starting to fetch " + eventIds.size() + " events");
-        List<Event> validEvents = Collections.synchronizedList(new ArrayList<>());
-        AtomicInteger processedCount = new AtomicInteger(0);
-
-        for (String eventId : eventIds) {
-            if (eventId == null || eventId.trim().isEmpty()) {
-                Log.w(TAG, "fetchEventDetails - Skipping null or empty event ID");
-                if (processedCount.incrementAndGet() == eventIds.size()) {
-                    updateUI(validEvents);
-                }
-                continue;
-            }
-
-            Log.d(TAG, "fetchEventDetails - Fetching event: " + eventId);
-            GlobalRepository.getEvent(eventId)
-                    .addOnSuccessListener(event -> {
+        GlobalRepository.getEvents(eventIds)
+                .addOnSuccessListener(events -> {
+                    // Preserve the order in which the user joined the events
+                    List<Event> validEvents = new ArrayList<>();
+                    for (String eventId : eventIds) {
+                        Event event = events.get(eventId);
                         if (event != null) {
-                            Log.d(TAG, "fetchEventDetails - Successfully fetched event: " + event.getName());
                             validEvents.add(event);
-
-                            // Update UI immediately when we get at least one event
-                            if (validEvents.size() == 1) {
-                                Log.d(TAG, "fetchEventDetails - First event received, updating UI");
-                                hideEmptyState();
-                                eventsAdapter.setEventList(new ArrayList<>(validEvents));
-                            }
                         } else {
-                            Log.w(TAG, "fetchEventDetails - Event was null for ID: " + eventId);
+                            Log.w(TAG, "fetchEventDetails - No event found for ID: " + eventId);
                         }
-
-                        if (processedCount.incrementAndGet() == eventIds.size()) {
-                            Log.d(TAG, "fetchEventDetails - All events processed. Valid events: " + validEvents.size());
-                            updateUI(validEvents);
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "fetchEventDetails - Failed to fetch event: " + eventId, e);
-                        if (processedCount.incrementAndGet() == eventIds.size()) {
-                            updateUI(validEvents);
-                        }
-                    });
-        }
+                    }
+                    Log.d(TAG, "fetchEventDetails - All events processed. Valid events: " + validEvents.size());
+                    updateUI(validEvents);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "fetchEventDetails - Failed to fetch events", e);
+                    updateUI(new ArrayList<>());
+                });
     }
     /**
      * Updates the UI with the given list of events.
@@ -3,17 +3,22 @@ package com.bugoff.can_do;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Matrix;
-import android.graphics.Paint;
+import android.graphics.ImageDecoder;
 import android.net.Uri;
-import android.provider.MediaStore;
-import android.util.Base64;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
+import androidx.annotation.Nullable;
+
+import com.bugoff.can_do.image.Base64DecodingInputStream;
+import com.bugoff.can_do.image.BitmapCodec;
+import com.bugoff.can_do.image.BitmapPool;
+import com.bugoff.can_do.image.BudgetEncoder;
+import com.bugoff.can_do.image.ImageVariant;
+import com.bugoff.can_do.image.PerceptualHash;
+
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 
 /**
  * Utility class for handling image compression and conversion operations.
@@ -22,62 +27,137 @@ import java.io.IOException;
 public class ImageUtils {
     private static final String TAG = "ImageUtils";
     private static final int MAX_DIMENSION = 800;
-    private static final int COMPRESSION_QUALITY = 80; // JPEG compression quality (0-100)
+    private static final int UPLOAD_BUDGET_BYTES = 100 * 1024;
+    private static final int MIN_COMPRESSION_QUALITY = 50; // Quality floor for lossy formats (0-100)
+    private static final int MAX_COMPRESSION_QUALITY = 90;
+    private static final BudgetEncoder uploadEncoder = new BudgetEncoder(UPLOAD_BUDGET_BYTES,
+            MIN_COMPRESSION_QUALITY, MAX_COMPRESSION_QUALITY, Arrays.asList(BudgetEncoder.Format.values()));
+    private static final int PERCEPTUAL_HASH_SAMPLE_SIZE = 64; // Longest side of the copy a perceptual hash is computed from
+    private static final int DECODE_BUFFER_SIZE = 16 * 1024;
+    private static final ThreadLocal<byte[]> decodeBuffer = ThreadLocal.withInitial(() -> new byte[DECODE_BUFFER_SIZE]);
 
     /**
-     * Compresses and encodes an image URI to a Base64 string.
-     * The image is scaled down and compressed to reduce size while maintaining reasonable quality.
+     * Decodes an image picked by the user at no more than {@link #MAX_DIMENSION} pixels on its
+     * longest side. {@link ImageDecoder} samples while decoding, so a full-resolution camera photo
+     * is never held in memory, and it applies the EXIF orientation. Small images are not upscaled.
+     * Reads the image, so must not be called on the main thread.
      *
      * @param context Context needed to access content resolver
-     * @param imageUri URI of the image to compress
-     * @return Base64 encoded string of the compressed image, or null if compression fails
+     * @param imageUri URI of the image to decode
+     * @return The decoded, upright image
+     * @throws IOException If the image cannot be read or decoded
      */
-    public static String compressAndEncodeImage(Context context, Uri imageUri) {
-        try {
-            // Get bitmap from Uri
-            Bitmap bitmap = MediaStore.Images.Media.getBitmap(context.getContentResolver(), imageUri);
-            return compressAndEncodeBitmap(bitmap);
-        } catch (IOException e) {
-            Log.e(TAG, "Error compressing image", e);
-            return null;
+    public static Bitmap decodeForUpload(Context context, Uri imageUri) throws IOException {
+        ImageDecoder.Source source = ImageDecoder.createSource(context.getContentResolver(), imageUri);
+        return ImageDecoder.decodeBitmap(source, (decoder, info, src) -> {
+            int[] size = fitWithin(info.getSize().getWidth(), info.getSize().getHeight());
+            decoder.setTargetSize(size[0], size[1]);
+            // Hardware bitmaps cannot be compressed again
+            decoder.setAllocator(ImageDecoder.ALLOCATOR_SOFTWARE);
+        });
+    }
+
+    /**
+     * Calculates the size of an image scaled down to fit within {@link #MAX_DIMENSION} pixels,
+     * keeping its aspect ratio. Images that already fit keep their size.
+     *
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return The scaled width and height
+     */
+    public static int[] fitWithin(int width, int height) {
+        return fitWithin(width, height, MAX_DIMENSION);
+    }
+
+    /**
+     * Calculates the size of an image scaled down to fit within a square, keeping its aspect
+     * ratio. Images that already fit keep their size.
+     *
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param maxDimension The size of the square in pixels
+     * @return The scaled width and height
+     */
+    public static int[] fitWithin(int width, int height, int maxDimension) {
+        float scale = Math.min(1f, Math.min((float) maxDimension / width, (float) maxDimension / height));
+        return new int[]{
+                Math.max(1, Math.round(width * scale)),
+                Math.max(1, Math.round(height * scale))
+        };
+    }
+
+    /**
+     * Encodes a Bitmap for upload, scaling it down first if it is larger than
+     * {@link #MAX_DIMENSION} pixels; smaller images are never upscaled. The encoding that fits
+     * {@link #UPLOAD_BUDGET_BYTES} at the best quality is chosen among JPEG and lossy and lossless
+     * WebP (see {@link BudgetEncoder}).
+     *
+     * @param bitmap Bitmap to encode
+     * @return The encoded image and the format and quality chosen for it
+     * @throws IOException If the image cannot be encoded
+     */
+    public static BudgetEncoder.Result encodeBitmap(Bitmap bitmap) throws IOException {
+        Bitmap scaledBitmap = bitmap;
+        int[] size = fitWithin(bitmap.getWidth(), bitmap.getHeight());
+        if (size[0] < bitmap.getWidth()) {
+            scaledBitmap = Bitmap.createScaledBitmap(bitmap, size[0], size[1], true);
         }
+        return uploadEncoder.encode(new BitmapCodec(scaledBitmap));
     }
 
     /**
-     * Compresses and encodes a Bitmap to a Base64 string.
+     * Encodes a scaled-down variant of an image for list screens, within the byte budget of the
+     * variant. Images that are no larger than the variant have no such variant.
      *
-     * @param bitmap Bitmap to compress and encode
-     * @return Base64 encoded string of the compressed image, or null if compression fails
+     * @param bitmap Bitmap to encode
+     * @param variant The variant to encode
+     * @return The encoded variant, or null if the image already fits the variant
+     * @throws IOException If the image cannot be encoded
      */
-    public static String compressAndEncodeBitmap(Bitmap bitmap) {
+    @Nullable
+    public static BudgetEncoder.Result encodeVariant(Bitmap bitmap, ImageVariant variant) throws IOException {
+        int[] size = fitWithin(bitmap.getWidth(), bitmap.getHeight(), variant.getMaxDimension());
+        if (size[0] >= bitmap.getWidth() && size[1] >= bitmap.getHeight()) {
+            return null;
+        }
+        Bitmap scaledBitmap = Bitmap.createScaledBitmap(bitmap, size[0], size[1], true);
         try {
-            // Scale down the image
-            float scale = Math.min(
-                    ((float) MAX_DIMENSION) / bitmap.getWidth(),
-                    ((float) MAX_DIMENSION) / bitmap.getHeight()
-            );
-
-            Matrix matrix = new Matrix();
-            matrix.postScale(scale, scale);
-
-            // Create scaled bitmap
-            Bitmap scaledBitmap = Bitmap.createBitmap(
-                    bitmap,
-                    0, 0,
-                    bitmap.getWidth(),
-                    bitmap.getHeight(),
-                    matrix,
-                    true
-            );
-
-            // Convert to low quality JPEG
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            scaledBitmap.compress(Bitmap.CompressFormat.JPEG, COMPRESSION_QUALITY, outputStream);
-
-            // Convert to Base64
-            byte[] imageBytes = outputStream.toByteArray();
-            return Base64.encodeToString(imageBytes, Base64.DEFAULT);
+            return new BudgetEncoder(variant.getBudgetBytes(), MIN_COMPRESSION_QUALITY, MAX_COMPRESSION_QUALITY,
+                    Arrays.asList(BudgetEncoder.Format.values())).encode(new BitmapCodec(scaledBitmap));
+        } finally {
+            scaledBitmap.recycle();
+        }
+    }
+
+    /**
+     * Computes the perceptual hash of an image (see {@link PerceptualHash}), from a copy scaled
+     * down to {@link #PERCEPTUAL_HASH_SAMPLE_SIZE} pixels so only a few thousand pixels are read.
+     *
+     * @param bitmap Bitmap to hash
+     * @return The perceptual hash
+     */
+    public static long perceptualHash(Bitmap bitmap) {
+        int[] size = fitWithin(bitmap.getWidth(), bitmap.getHeight(), PERCEPTUAL_HASH_SAMPLE_SIZE);
+        Bitmap sample = size[0] < bitmap.getWidth() || size[1] < bitmap.getHeight()
+                ? Bitmap.createScaledBitmap(bitmap, size[0], size[1], true)
+                : bitmap;
+        int[] pixels = new int[size[0] * size[1]];
+        sample.getPixels(pixels, 0, size[0], 0, 0, size[0], size[1]);
+        if (sample != bitmap) {
+            sample.recycle();
+        }
+        return PerceptualHash.compute(pixels, size[0], size[1]);
+    }
 
+    /**
+     * Compresses a Bitmap for upload. See {@link #encodeBitmap(Bitmap)}.
+     *
+     * @param bitmap Bitmap to compress
+     * @return The compressed image, or null if compression fails
+     */
+    public static byte[] compressBitmap(Bitmap bitmap) {
+        try {
+            return encodeBitmap(bitmap).getData();
         } catch (Exception e) {
             Log.e(TAG, "Error compressing bitmap", e);
             return null;
@@ -85,15 +165,40 @@ public class ImageUtils {
     }
 
     /**
-     * Decodes a Base64 string back to a Bitmap.
+     * Decodes compressed image bytes to a Bitmap, reading the array in place.
+     *
+     * @param data The compressed image, e.g. as read from an {@link com.bugoff.can_do.image.ImageStore}
+     * @return Decoded Bitmap, or null if there is no image or decoding fails
+     */
+    public static Bitmap decodeImage(byte[] data) {
+        if (data == null || data.length == 0) return null;
+        return BitmapFactory.decodeByteArray(data, 0, data.length);
+    }
+
+    /**
+     * Decodes a compressed image stream to a Bitmap. The decoder reads through a buffer that is
+     * reused by every decode on the same thread.
+     *
+     * @param in The compressed image stream; it is not closed
+     * @return Decoded Bitmap, or null if decoding fails
+     */
+    public static Bitmap decodeImage(InputStream in) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inTempStorage = decodeBuffer.get();
+        return BitmapFactory.decodeStream(in, null, options);
+    }
+
+    /**
+     * Decodes a legacy Base64 string to a Bitmap. The string is decoded while the image decoder
+     * reads it, without an intermediate copy of the whole image.
      *
      * @param base64Image Base64 encoded string of the image
      * @return Decoded Bitmap, or null if decoding fails
      */
     public static Bitmap decodeBase64Image(String base64Image) {
+        if (base64Image == null || base64Image.isEmpty()) return null;
         try {
-            byte[] decodedBytes = Base64.decode(base64Image, Base64.DEFAULT);
-            return BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
+            return decodeImage(new Base64DecodingInputStream(base64Image));
         } catch (Exception e) {
             Log.e(TAG, "Error decoding base64 image", e);
             return null;
@@ -101,48 +206,111 @@ public class ImageUtils {
     }
 
     /**
-     * Gets the approximate size in bytes of a Base64 encoded image string.
+     * Decodes compressed image bytes at the smallest power-of-two subsample that still covers the
+     * requested size, without decoding the full image first.
+     *
+     * @param data      The compressed image
+     * @param reqWidth  The width the image is displayed at, in pixels
+     * @param reqHeight The height the image is displayed at, in pixels
+     * @param lowColor  Whether to decode as RGB_565, halving memory; only applied to JPEGs, as other
+     *                  formats may carry alpha
+     * @param pool      Pool of bitmaps to decode into instead of allocating, or null
+     * @return Decoded Bitmap, or null if there is no image or decoding fails
+     */
+    public static Bitmap decodeSampledImage(byte[] data, int reqWidth, int reqHeight, boolean lowColor,
+                                            @Nullable BitmapPool pool) {
+        if (data == null || data.length == 0) return null;
+        return decodeSampled(options -> BitmapFactory.decodeByteArray(data, 0, data.length, options),
+                reqWidth, reqHeight, lowColor, pool);
+    }
+
+    /**
+     * Decodes a legacy Base64 string at the smallest power-of-two subsample that still covers the
+     * requested size. See {@link #decodeSampledImage(byte[], int, int, boolean, BitmapPool)}.
      *
      * @param base64Image Base64 encoded string of the image
-     * @return Approximate size in bytes
+     * @param reqWidth    The width the image is displayed at, in pixels
+     * @param reqHeight   The height the image is displayed at, in pixels
+     * @param lowColor    Whether to decode as RGB_565; only applied to JPEGs
+     * @param pool        Pool of bitmaps to decode into instead of allocating, or null
+     * @return Decoded Bitmap, or null if decoding fails
      */
-    public static int getBase64ImageSize(String base64Image) {
-        if (base64Image == null) return 0;
-        return base64Image.length() * 3/4;
+    public static Bitmap decodeSampledBase64Image(String base64Image, int reqWidth, int reqHeight, boolean lowColor,
+                                                  @Nullable BitmapPool pool) {
+        if (base64Image == null || base64Image.isEmpty()) return null;
+        return decodeSampled(options -> BitmapFactory.decodeStream(new Base64DecodingInputStream(base64Image), null, options),
+                reqWidth, reqHeight, lowColor, pool);
+    }
+
+    /**
+     * Calculates the largest power-of-two subsample that keeps both dimensions of an image at least
+     * as large as requested.
+     *
+     * @param width     The width of the stored image
+     * @param height    The height of the stored image
+     * @param reqWidth  The requested width
+     * @param reqHeight The requested height
+     * @return The sample size, at least 1
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        if (reqWidth <= 0 || reqHeight <= 0) return sampleSize;
+        while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private interface Decoder {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    private static Bitmap decodeSampled(Decoder decoder, int reqWidth, int reqHeight, boolean lowColor,
+                                        @Nullable BitmapPool pool) {
+        try {
+            // Read only the dimensions first
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            options.inTempStorage = decodeBuffer.get();
+            decoder.decode(options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+            int sampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = sampleSize;
+            // RGB_565 has no alpha channel, so only JPEGs, which never have one, are decoded into it
+            boolean opaque = "image/jpeg".equals(options.outMimeType);
+            options.inPreferredConfig = lowColor && opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+            options.inMutable = true; // Lets the bitmap be pooled for reuse later
+            if (pool != null) {
+                options.inBitmap = pool.get(
+                        (options.outWidth + sampleSize - 1) / sampleSize,
+                        (options.outHeight + sampleSize - 1) / sampleSize,
+                        options.inPreferredConfig);
+            }
+            try {
+                return decoder.decode(options);
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap did not fit after all
+                if (options.inBitmap == null) throw e;
+                options.inBitmap = null;
+                return decoder.decode(options);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Error decoding sampled image", e);
+            return null;
+        }
     }
 
     /**
-     * Generates a default avatar bitmap with the first letter of the user's name
+     * Gets the approximate size in bytes of a Base64 encoded image string.
      *
-     * @param letter The letter to display in the avatar
-     * @return Bitmap containing the generated avatar
+     * @param base64Image Base64 encoded string of the image
+     * @return Approximate size in bytes
      */
-    public static Bitmap generateDefaultAvatar(String letter) {
-        int size = 96; // Size for the bitmap (48dp * 2 for better resolution)
-        int bgColor = Color.LTGRAY;
-        int txtColor = Color.WHITE;
-
-        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-
-        // Draw background
-        Paint bgPaint = new Paint();
-        bgPaint.setColor(bgColor);
-        bgPaint.setStyle(Paint.Style.FILL);
-        canvas.drawRect(0, 0, size, size, bgPaint);
-
-        // Draw text
-        Paint txtPaint = new Paint();
-        txtPaint.setColor(txtColor);
-        txtPaint.setTextSize(size / 2f);
-        txtPaint.setTextAlign(Paint.Align.CENTER);
-        txtPaint.setAntiAlias(true);
-
-        float x = size / 2f;
-        float y = (size / 2f) - ((txtPaint.descent() + txtPaint.ascent()) / 2);
-        canvas.drawText(letter, x, y, txtPaint);
-
-        return bitmap;
+    public static int getBase64ImageSize(String base64Image) {
+        if (base64Image == null) return 0;
+        return base64Image.length() * 3/4;
     }
 
     public static float calculateScaleForDimensions(int width, int height) {
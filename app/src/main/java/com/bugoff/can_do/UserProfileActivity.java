@@ -6,9 +6,6 @@ import android.app.AlertDialog;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.MediaStore;
@@ -33,11 +30,15 @@ import androidx.lifecycle.ViewModelProvider;
 
 import com.bugoff.can_do.admin.AdminActivity;
 import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.image.AvatarRenderer;
+import com.bugoff.can_do.image.ImageIngestor;
+import com.bugoff.can_do.image.ImageLoader;
 import com.bugoff.can_do.notification.NotificationSettingsActivity;
 import com.bugoff.can_do.organizer.OrganizerTransition;
 import com.bugoff.can_do.user.User;
 import com.bugoff.can_do.user.UserViewModel;
 import com.bugoff.can_do.user.UserViewModelFactory;
+import com.google.android.gms.tasks.Task;
 import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.io.File;
@@ -53,6 +54,7 @@ import java.io.IOException;
  * observes changes in the user's data and updates the UI accordingly.</p>
  */
 public class UserProfileActivity extends Fragment {
+    private static final int AVATAR_SIZE = 175; // Size of the generated avatar in pixels
     private User user;
     private UserViewModel userViewModel;
     private String currEmail;
@@ -221,47 +223,15 @@ public class UserProfileActivity extends Fragment {
                     .setNeutralButton("Remove", (dialog, which) -> {
                         User currentUser = GlobalRepository.getLoggedInUser();
                         if (currentUser != null) {
-                            currentUser.setBase64Image(null);
-                            avatar.setImageBitmap(generateAvatar(firstLetter));
+                            currentUser.setImageHash(null);
+                            ImageLoader.cancel(avatar);
+                            avatar.setImageBitmap(AvatarRenderer.render(firstLetter, AVATAR_SIZE));
                         }
                     })
                     .show();
         });
     }
 
-    /**
-     * Generates a default avatar bitmap with the user's initial.
-     *
-     * @param letter The first letter of the user's name.
-     * @return A Bitmap representing the default avatar.
-     */
-    // Helper for generating default avatar when custom avatar is removed
-    private Bitmap generateAvatar(String letter) {
-        int size = 175;
-        int bgColor = Color.LTGRAY;
-        int txtColor = Color.WHITE;
-
-        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-
-        Paint bgPaint = new Paint();
-        bgPaint.setColor(bgColor);
-        bgPaint.setStyle(Paint.Style.FILL);
-        canvas.drawRect(0, 0, size, size, bgPaint);
-
-        Paint txtPaint = new Paint();
-        txtPaint.setColor(txtColor);
-        txtPaint.setTextSize((float) size / 2);
-        txtPaint.setTextAlign(Paint.Align.CENTER);
-        txtPaint.setAntiAlias(true);
-
-        float x = (float) size / 2;
-        float y = (float) (size / 2) - ((txtPaint.descent() + txtPaint.ascent()) / 2);
-        canvas.drawText(letter, x, y, txtPaint);
-
-        return bitmap;
-    }
-
     private String saveAvatar(Bitmap bitmap, String filename) {
         try {
             FileOutputStream fos = requireContext().openFileOutput(filename, Context.MODE_PRIVATE);
@@ -282,18 +252,8 @@ public class UserProfileActivity extends Fragment {
                     Uri selectedImageUri = result.getData().getData();
                     ImageView avatar = getView().findViewById(R.id.image_avatar);
 
-                    // Compress and save image
-                    String base64Image = ImageUtils.compressAndEncodeImage(requireContext(), selectedImageUri);
-                    if (base64Image != null) {
-                        User currentUser = GlobalRepository.getLoggedInUser();
-                        currentUser.setBase64Image(base64Image);
-
-                        // Update ImageView
-                        Bitmap bitmap = ImageUtils.decodeBase64Image(base64Image);
-                        if (bitmap != null) {
-                            avatar.setImageBitmap(bitmap);
-                        }
-                    }
+                    // Decode, compress and store image in the background
+                    storeProfileImage(avatar, ImageIngestor.ingest(requireContext(), selectedImageUri, null));
                 }
             }
     );
@@ -308,37 +268,47 @@ public class UserProfileActivity extends Fragment {
                         if (photo != null) {
                             ImageView avatar = getView().findViewById(R.id.image_avatar);
 
-                            // Compress and save image
-                            String base64Image = ImageUtils.compressAndEncodeBitmap(photo);
-                            if (base64Image != null) {
-                                User currentUser = GlobalRepository.getLoggedInUser();
-                                currentUser.setBase64Image(base64Image);
-
-                                // Update ImageView
-                                avatar.setImageBitmap(photo);
-                            }
+                            // Compress and store image in the background
+                            avatar.setImageBitmap(photo);
+                            storeProfileImage(avatar, ImageIngestor.ingest(requireContext(), photo, null));
                         }
                     }
                 }
             }
     );
     /**
-     * Loads the user's profile picture from Firestore or generates a default avatar.
+     * Makes an image the logged-in user's profile picture once it has been stored.
+     *
+     * @param avatar The ImageView to update.
+     * @param upload The ingestion of the image, resulting in its hash.
+     */
+    private void storeProfileImage(ImageView avatar, Task<String> upload) {
+        upload.addOnSuccessListener(hash -> {
+                    User currentUser = GlobalRepository.getLoggedInUser();
+                    if (currentUser != null) {
+                        currentUser.setImageHash(hash);
+                    }
+                    ImageLoader.into(avatar, hash, null, null);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e("UserProfileActivity", "Failed to store profile image", e);
+                    if (isAdded()) {
+                        Toast.makeText(getContext(), "Failed to update profile picture", Toast.LENGTH_SHORT).show();
+                    }
+                });
+    }
+    /**
+     * Loads the user's profile picture from the image store, showing a generated avatar until it
+     * is loaded or if the user has none.
      *
      * @param avatar     The ImageView to update.
      * @param firstLetter The first letter of the user's name.
      */
     private void loadUserProfileImage(ImageView avatar, String firstLetter) {
+        avatar.setImageBitmap(AvatarRenderer.render(firstLetter, AVATAR_SIZE));
         User currentUser = GlobalRepository.getLoggedInUser();
-        if (currentUser != null && currentUser.getBase64Image() != null) {
-            Bitmap bitmap = ImageUtils.decodeBase64Image(currentUser.getBase64Image());
-            if (bitmap != null) {
-                avatar.setImageBitmap(bitmap);
-            } else {
-                avatar.setImageBitmap(generateAvatar(firstLetter));
-            }
-        } else {
-            avatar.setImageBitmap(generateAvatar(firstLetter));
+        if (currentUser != null) {
+            ImageLoader.into(avatar, currentUser.getImageHash(), currentUser.getBase64Image(), null);
         }
     }
 
@@ -371,7 +341,7 @@ public class UserProfileActivity extends Fragment {
                             String avatarFirstName = parts[0];
                             String firstLetter = avatarFirstName.isEmpty() ? "A" : avatarFirstName.substring(0, 1).toUpperCase();
                             ImageView avatar = getView().findViewById(R.id.image_avatar);
-                            avatar.setImageBitmap(generateAvatar(firstLetter));
+                            avatar.setImageBitmap(AvatarRenderer.render(firstLetter, AVATAR_SIZE));
                         }
 
                         String oldEmail = user.getEmail();
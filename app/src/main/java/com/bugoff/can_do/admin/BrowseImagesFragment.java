@@ -13,31 +13,58 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bugoff.can_do.R;
 import com.bugoff.can_do.database.FirestoreHelper;
 import com.bugoff.can_do.database.GlobalRepository;
-import com.bugoff.can_do.event.Event;
-import com.bugoff.can_do.user.User;
+import com.bugoff.can_do.database.VersionStamp;
+import com.bugoff.can_do.image.ImageFingerprints;
+import com.bugoff.can_do.image.SimilarImageIndex;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Fragment to browse and manage images for events and users.
  * This fragment displays images in a grid layout and allows
- * the admin to delete images.
+ * the admin to delete images. A long click on an image lists
+ * its re-uploads, so the admin can pick the ones to remove.
  */
-public class BrowseImagesFragment extends Fragment implements ImageAdapter.OnDeleteClickListener {
+public class BrowseImagesFragment extends Fragment
+        implements ImageAdapter.OnDeleteClickListener, ImageAdapter.OnFindSimilarClickListener {
     private static final String TAG = "BrowseImagesFragment";
+    private static final int PREFETCH_DISTANCE = 6;
+    private static final int MAX_BATCH_WRITES = 500;
     private RecyclerView recyclerView;
     private ImageAdapter adapter;
     private ProgressBar progressBar;
     private TextView emptyView;
+    private ImageGallerySource source;
+    private Task<SimilarImageIndex> similarImages;
+    /**
+     * Loads the next page once the grid is scrolled within {@value #PREFETCH_DISTANCE} items of
+     * its end.
+     */
+    private final RecyclerView.OnScrollListener pagingListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+            GridLayoutManager layoutManager = (GridLayoutManager) recyclerView.getLayoutManager();
+            if (layoutManager != null
+                    && layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                loadNextPage();
+            }
+        }
+    };
     /**
      * Use this factory method to create a new instance of
      * this fragment.
@@ -54,150 +81,180 @@ public class BrowseImagesFragment extends Fragment implements ImageAdapter.OnDel
         emptyView = view.findViewById(R.id.empty_view);
 
         recyclerView.setLayoutManager(new GridLayoutManager(getContext(), 2));
-        adapter = new ImageAdapter(this);
+        adapter = new ImageAdapter(this, this);
         recyclerView.setAdapter(adapter);
+        recyclerView.addOnScrollListener(pagingListener);
 
-        loadImages();
+        source = new ImageGallerySource(GlobalRepository.getEventsCollection(), GlobalRepository.getUsersCollection());
+        loadNextPage();
 
         return view;
     }
     /**
-     * Loads images from the database and updates the view accordingly.
+     * Loads the next page of images, unless one is loading already or all have been loaded.
      */
-    private void loadImages() {
-        progressBar.setVisibility(View.VISIBLE);
-        recyclerView.setVisibility(View.GONE);
-        emptyView.setVisibility(View.GONE);
-
-        List<Task<?>> tasks = new ArrayList<>();
-        tasks.add(loadEventImages());
-        tasks.add(loadUserImages());
-
-        Tasks.whenAllComplete(tasks)
-                .addOnSuccessListener(taskSnapshots -> updateViewVisibility())
+    private void loadNextPage() {
+        if (source.isLoading() || !source.hasMore()) {
+            return;
+        }
+        if (adapter.getItemCount() == 0) {
+            progressBar.setVisibility(View.VISIBLE);
+            recyclerView.setVisibility(View.GONE);
+            emptyView.setVisibility(View.GONE);
+        }
+        source.loadNextPage()
+                .addOnSuccessListener(page -> {
+                    adapter.addItems(page);
+                    updateViewVisibility();
+                })
                 .addOnFailureListener(e -> {
                     Log.e(TAG, "Error loading images", e);
+                    progressBar.setVisibility(View.GONE);
                     showError("Error loading images");
                 });
     }
     /**
-     * Loads images for events from the database.
+     * Handles the behavior when the delete button is clicked.
      *
-     * @return A task that loads images for events.
+     * @param image The image to delete.
      */
-    private Task<?> loadEventImages() {
-        return GlobalRepository.getEventsCollection()
-                .whereNotEqualTo("base64Image", null)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    if (queryDocumentSnapshots.isEmpty()) {
-                        return;
-                    }
-
-                    // Count how many events we need to process
-                    int totalEvents = queryDocumentSnapshots.size();
-                    final int[] processedEvents = {0};
-
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        String facilityId = document.getString("facilityId");
-                        if (facilityId != null) {
-                            GlobalRepository.getFacility(facilityId)
-                                    .addOnSuccessListener(facility -> {
-                                        Event event = new Event(facility, document);
-                                        String base64Image = event.getBase64Image();
-                                        if (base64Image != null && !base64Image.isEmpty()) {
-                                            // Add individual event to avoid overwriting
-                                            List<Event> singleEvent = new ArrayList<>();
-                                            singleEvent.add(event);
-                                            adapter.addItems(singleEvent);
-                                        }
-                                        processedEvents[0]++;
+    @Override
+    public void onDeleteClick(GalleryImage image) {
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Delete Image")
+                .setMessage("Are you sure you want to remove this image?")
+                .setPositiveButton("Delete", (dialog, which) -> deleteImage(image))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+    /**
+     * Deletes an image from the database and removes it from the grid, leaving the other loaded
+     * images in place.
+     *
+     * @param image The image to delete.
+     */
+    private void deleteImage(GalleryImage image) {
+        progressBar.setVisibility(View.VISIBLE);
 
-                                        // Update visibility once all events are processed
-                                        if (processedEvents[0] == totalEvents) {
-                                            updateViewVisibility();
-                                        }
-                                    })
-                                    .addOnFailureListener(e -> {
-                                        Log.e(TAG, "Error loading facility: " + e);
-                                        processedEvents[0]++;
-                                        if (processedEvents[0] == totalEvents) {
-                                            updateViewVisibility();
-                                        }
-                                    });
-                        } else {
-                            processedEvents[0]++;
-                            if (processedEvents[0] == totalEvents) {
-                                updateViewVisibility();
-                            }
-                        }
-                    }
+        FirestoreHelper.getInstance().getDb().document(image.getPath())
+                .update(removal())
+                .addOnSuccessListener(aVoid -> {
+                    adapter.removeItem(image);
+                    updateViewVisibility();
+                    // Keep the grid filled when deletes bring its end into view
+                    loadNextPage();
+                    showSuccess("Image deleted successfully");
+                })
+                .addOnFailureListener(e -> {
+                    progressBar.setVisibility(View.GONE);
+                    showError("Failed to delete image");
                 });
     }
     /**
-     * Loads images for users from the database.
+     * Handles a long click on an image: finds every event and user whose image looks like it,
+     * including exact re-uploads, and lists them so the admin can choose which to remove.
      *
-     * @return A task that loads images for users.
+     * @param image The image to match.
      */
-    private Task<?> loadUserImages() {
-        return GlobalRepository.getUsersCollection()
-                .whereNotEqualTo("base64Image", null)
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    List<User> users = new ArrayList<>();
-                    for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                        User user = new User(document);
-                        String base64Image = user.getBase64Image();
-                        if (base64Image != null && !base64Image.isEmpty()) {
-                            users.add(user);
-                        }
-                    }
-                    if (!users.isEmpty()) {
-                        adapter.addItems(users);
+    @Override
+    public void onFindSimilarClick(GalleryImage image) {
+        String imageHash = image.getImageHash();
+        if (imageHash == null) {
+            showError("Only uploaded images can be matched");
+            return;
+        }
+        if (similarImages == null || (similarImages.isComplete() && !similarImages.isSuccessful())) {
+            // Built once per visit; every later lookup is a search of the in-memory index
+            similarImages = ImageFingerprints.loadIndex();
+        }
+        progressBar.setVisibility(View.VISIBLE);
+        similarImages
+                .onSuccessTask(index -> {
+                    List<String> similar = index.findSimilar(imageHash, SimilarImageIndex.DEFAULT_MAX_DISTANCE);
+                    // Images recorded before fingerprints existed still match their exact re-uploads
+                    return source.findUsing(similar.isEmpty() ? Collections.singletonList(imageHash) : similar);
+                })
+                .addOnSuccessListener(matches -> {
+                    progressBar.setVisibility(View.GONE);
+                    if (matches.isEmpty()) {
+                        showError("No images like this one found");
+                        return;
                     }
-                    updateViewVisibility();
+                    showSimilarImages(matches);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error finding similar images", e);
+                    progressBar.setVisibility(View.GONE);
+                    showError("Failed to find similar images");
                 });
     }
     /**
-     * Handles the behavior when the delete button is clicked.
+     * Shows the images found to be similar as a list of thumbnails, and removes the ones the admin
+     * selects. Nothing is removed without being selected.
      *
-     * @param item    The item to delete.
-     * @param isEvent {@code true} if the item is an event, {@code false} if it is a user.
+     * @param matches The similar images.
      */
-    @Override
-    public void onDeleteClick(Object item, boolean isEvent) {
-        new AlertDialog.Builder(requireContext())
-                .setTitle("Delete Image")
-                .setMessage("Are you sure you want to remove this image?")
-                .setPositiveButton("Delete", (dialog, which) -> deleteImage(item, isEvent))
+    private void showSimilarImages(List<GalleryImage> matches) {
+        SimilarImagesAdapter similarAdapter = new SimilarImagesAdapter(matches);
+        RecyclerView list = new RecyclerView(requireContext());
+        list.setLayoutManager(new LinearLayoutManager(requireContext()));
+        list.setAdapter(similarAdapter);
+
+        AlertDialog dialog = new AlertDialog.Builder(requireContext())
+                .setTitle("Similar Images")
+                .setMessage("Found " + matches.size() + " image(s) like this one. Select the ones to remove.")
+                .setView(list)
+                .setPositiveButton("Remove Selected", (d, which) -> deleteImages(similarAdapter.getSelected()))
                 .setNegativeButton("Cancel", null)
-                .show();
+                .create();
+        dialog.setOnShowListener(d -> dialog.getButton(AlertDialog.BUTTON_POSITIVE).setEnabled(false));
+        similarAdapter.setOnSelectionChangedListener(count ->
+                dialog.getButton(AlertDialog.BUTTON_POSITIVE).setEnabled(count > 0));
+        dialog.show();
     }
     /**
-     * Deletes an image from the database.
+     * Deletes several images from the database in batched writes and removes the loaded ones from
+     * the grid.
      *
-     * @param item    The item to delete.
-     * @param isEvent {@code true} if the item is an event, {@code false} if it is a user.
+     * @param images The images to delete.
      */
-    private void deleteImage(Object item, boolean isEvent) {
+    private void deleteImages(List<GalleryImage> images) {
         progressBar.setVisibility(View.VISIBLE);
 
-        String collectionPath = isEvent ? "events" : "users";
-        String itemId = isEvent ? ((Event) item).getId() : ((User) item).getId();
-
-        FirestoreHelper.getInstance().getDb().collection(collectionPath)
-                .document(itemId)
-                .update("base64Image", null)
+        FirebaseFirestore db = FirestoreHelper.getInstance().getDb();
+        List<Task<Void>> commits = new ArrayList<>();
+        for (int start = 0; start < images.size(); start += MAX_BATCH_WRITES) {
+            WriteBatch batch = db.batch();
+            for (GalleryImage image : images.subList(start, Math.min(images.size(), start + MAX_BATCH_WRITES))) {
+                batch.update(db.document(image.getPath()), removal());
+            }
+            commits.add(batch.commit());
+        }
+        Tasks.whenAll(commits)
                 .addOnSuccessListener(aVoid -> {
-                    adapter.updateItems(new ArrayList<>()); // Clear the list
-                    loadImages(); // Reload all images
-                    showSuccess("Image deleted successfully");
+                    adapter.removeItems(images);
+                    updateViewVisibility();
+                    loadNextPage();
+                    showSuccess(images.size() + " image(s) deleted successfully");
                 })
                 .addOnFailureListener(e -> {
                     progressBar.setVisibility(View.GONE);
-                    showError("Failed to delete image");
+                    showError("Failed to delete images");
                 });
     }
+    /**
+     * Builds the update that removes the image of an event or user document. The field versions
+     * are bumped, so saves based on the removed image see the change.
+     *
+     * @return The update for the document.
+     */
+    private static Map<String, Object> removal() {
+        Map<String, Object> update = new HashMap<>();
+        update.put("imageHash", null);
+        update.put("base64Image", FieldValue.delete());
+        VersionStamp.bump(update, "imageHash", "base64Image");
+        return update;
+    }
     /**
      * Updates the visibility of the views based on the adapter content.
      */
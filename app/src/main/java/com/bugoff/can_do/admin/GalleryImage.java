@@ -0,0 +1,102 @@
+package com.bugoff.can_do.admin;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+
+/**
+ * An image shown in the admin gallery: the image reference of an event or user document, with
+ * just enough of the document to label it. Unlike {@code Event} and {@code User}, it is read
+ * straight from the document, so no facility or other entity is resolved to show it.
+ */
+public class GalleryImage {
+    private final boolean event;
+    private final String id;
+    private final String name;
+    private final String imageHash;
+    private final String base64Image;
+
+    /**
+     * Constructs a new {@code GalleryImage}.
+     *
+     * @param event       {@code true} if the image belongs to an event, {@code false} if to a user.
+     * @param id          The ID of the document.
+     * @param name        The name of the event or user.
+     * @param imageHash   The hash of the stored image, or {@code null}.
+     * @param base64Image The legacy inline image, or {@code null}.
+     */
+    public GalleryImage(boolean event, @NonNull String id, @Nullable String name,
+                        @Nullable String imageHash, @Nullable String base64Image) {
+        this.event = event;
+        this.id = id;
+        this.name = name;
+        this.imageHash = imageHash;
+        this.base64Image = base64Image;
+    }
+
+    /**
+     * Reads the image reference of an event or user document.
+     *
+     * @param doc   The document.
+     * @param event {@code true} if the document is an event, {@code false} if a user.
+     * @return The gallery image.
+     */
+    @NonNull
+    public static GalleryImage fromDocument(@NonNull DocumentSnapshot doc, boolean event) {
+        return new GalleryImage(event, doc.getId(), doc.getString("name"),
+                doc.getString("imageHash"), doc.getString("base64Image"));
+    }
+
+    public boolean isEvent() {
+        return event;
+    }
+
+    @NonNull
+    public String getId() {
+        return id;
+    }
+
+    @Nullable
+    public String getName() {
+        return name;
+    }
+
+    @Nullable
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    @Nullable
+    public String getBase64Image() {
+        return base64Image;
+    }
+
+    /**
+     * Gets the path of the document the image belongs to, which identifies the image.
+     *
+     * @return The path, e.g. {@code events/<id>}.
+     */
+    @NonNull
+    public String getPath() {
+        return (event ? "events/" : "users/") + id;
+    }
+
+    /**
+     * Checks whether another object is a {@code GalleryImage} of the same document.
+     *
+     * @param o The object to compare with.
+     * @return {@code true} if both belong to the same document; {@code false} otherwise.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof GalleryImage)) return false;
+        return getPath().equals(((GalleryImage) o).getPath());
+    }
+
+    @Override
+    public int hashCode() {
+        return getPath().hashCode();
+    }
+}
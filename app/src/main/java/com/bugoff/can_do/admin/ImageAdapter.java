@@ -1,6 +1,5 @@
 package com.bugoff.can_do.admin;
 
-import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -11,34 +10,42 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.bugoff.can_do.ImageUtils;
 import com.bugoff.can_do.R;
-import com.bugoff.can_do.event.Event;
-import com.bugoff.can_do.user.User;
+import com.bugoff.can_do.image.ImageLoader;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 /**
  * Adapter for displaying images in a RecyclerView.
- * This adapter can display both Event and User objects.
+ * This adapter displays the images of both events and users.
  */
 public class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ImageViewHolder> {
-    private List<Object> items; // Can contain both Event and User objects
+    private final List<GalleryImage> items;
     private OnDeleteClickListener deleteClickListener;
+    private OnFindSimilarClickListener findSimilarClickListener;
     /**
      * Interface to handle delete button clicks.
      */
     public interface OnDeleteClickListener {
-        void onDeleteClick(Object item, boolean isEvent);
+        void onDeleteClick(GalleryImage image);
     }
     /**
-     * Creates a new ImageAdapter with the given listener.
+     * Interface to handle long clicks on an image, which look for similar images.
+     */
+    public interface OnFindSimilarClickListener {
+        void onFindSimilarClick(GalleryImage image);
+    }
+    /**
+     * Creates a new ImageAdapter with the given listeners.
      *
-     * @param listener The listener for delete button clicks.
+     * @param listener            The listener for delete button clicks.
+     * @param findSimilarListener The listener for long clicks on an image.
      */
-    public ImageAdapter(OnDeleteClickListener listener) {
+    public ImageAdapter(OnDeleteClickListener listener, OnFindSimilarClickListener findSimilarListener) {
         this.items = new ArrayList<>();
         this.deleteClickListener = listener;
+        this.findSimilarClickListener = findSimilarListener;
     }
     /**
      * Inflates the item layout and creates a new ViewHolder.
@@ -62,8 +69,17 @@ public class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ImageViewHol
      */
     @Override
     public void onBindViewHolder(@NonNull ImageViewHolder holder, int position) {
-        Object item = items.get(position);
-        holder.bind(item, deleteClickListener);
+        holder.bind(items.get(position), deleteClickListener, findSimilarClickListener);
+    }
+    /**
+     * Cancels the image load of a recycled ViewHolder, so its old image is not decoded needlessly.
+     *
+     * @param holder The recycled ViewHolder.
+     */
+    @Override
+    public void onViewRecycled(@NonNull ImageViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.cancel(holder.imageView);
     }
     /**
      * Returns the number of items in the adapter.
@@ -75,22 +91,36 @@ public class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ImageViewHol
         return items.size();
     }
     /**
-     * Updates the items in the adapter with the given list.
+     * Appends the given list of items to the adapter.
      *
-     * @param newItems The new list of items.
+     * @param newItems The list of items to add.
      */
-    public void updateItems(List<Object> newItems) {
-        this.items = newItems;
-        notifyDataSetChanged();
+    public void addItems(List<GalleryImage> newItems) {
+        int start = items.size();
+        items.addAll(newItems);
+        notifyItemRangeInserted(start, newItems.size());
     }
     /**
-     * Adds the given list of items to the adapter.
+     * Removes an item from the adapter, if it is loaded.
      *
-     * @param newItems The list of items to add.
+     * @param image The item to remove.
      */
-    public void addItems(List<?> newItems) {
-        this.items.addAll(newItems);
-        notifyDataSetChanged();
+    public void removeItem(GalleryImage image) {
+        int position = items.indexOf(image);
+        if (position >= 0) {
+            items.remove(position);
+            notifyItemRemoved(position);
+        }
+    }
+    /**
+     * Removes the given items from the adapter, skipping those that are not loaded.
+     *
+     * @param images The items to remove.
+     */
+    public void removeItems(Collection<GalleryImage> images) {
+        for (GalleryImage image : images) {
+            removeItem(image);
+        }
     }
     /**
      * ViewHolder for displaying images in a RecyclerView.
@@ -113,48 +143,31 @@ public class ImageAdapter extends RecyclerView.Adapter<ImageAdapter.ImageViewHol
         /**
          * Binds the given item to the ViewHolder.
          *
-         * @param item The item to bind.
+         * @param image The item to bind.
          * @param listener The listener for delete button clicks.
+         * @param findSimilarListener The listener for long clicks on the image.
          */
-        public void bind(Object item, OnDeleteClickListener listener) {
-            String base64Image;
-            String name;
-            boolean isEvent;
-
-            if (item instanceof Event) {
-                Event event = (Event) item;
-                base64Image = event.getBase64Image();
-                name = event.getName();
-                isEvent = true;
-                name = "Event: " + name;
-            } else if (item instanceof User) {
-                User user = (User) item;
-                base64Image = user.getBase64Image();
-                name = user.getName();
-                isEvent = false;
-                name = "User: " + name;
-            } else {
-                return;
-            }
+        public void bind(GalleryImage image, OnDeleteClickListener listener,
+                         OnFindSimilarClickListener findSimilarListener) {
+            String name = (image.isEvent() ? "Event: " : "User: ") + image.getName();
 
-            if (base64Image != null) {
-                Bitmap bitmap = ImageUtils.decodeBase64Image(base64Image);
-                if (bitmap != null) {
-                    imageView.setVisibility(View.VISIBLE);
-                    imageView.setImageBitmap(bitmap);
-                } else {
-                    imageView.setVisibility(View.GONE);
-                }
-            } else {
-                imageView.setVisibility(View.GONE);
-            }
+            imageView.setImageDrawable(null);
+            ImageLoader.intoTile(imageView, image.getImageHash(), image.getBase64Image(),
+                    () -> imageView.setVisibility(View.GONE));
 
             nameText.setText(name);
 
             deleteButton.setOnClickListener(v -> {
                 if (listener != null) {
-                    listener.onDeleteClick(item, isEvent);
+                    listener.onDeleteClick(image);
+                }
+            });
+            itemView.setOnLongClickListener(v -> {
+                if (findSimilarListener == null) {
+                    return false;
                 }
+                findSimilarListener.onFindSimilarClick(image);
+                return true;
             });
         }
     }
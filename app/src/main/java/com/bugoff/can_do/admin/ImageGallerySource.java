@@ -0,0 +1,157 @@
+package com.bugoff.can_do.admin;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@code ImageGallerySource} pages through every event and user that has an image, for the admin
+ * gallery.
+ *
+ * <p>Images are read from four queries in turn: events and users referencing a stored image, then
+ * events and users still carrying a legacy inline image. Each query is read in pages of
+ * {@value #PAGE_SIZE} documents with a cursor ({@code startAfter}/{@code limit}), so loading a page
+ * reads about a page of documents no matter how many images there are. A document matching more
+ * than one query is only returned once.</p>
+ */
+public class ImageGallerySource {
+    static final int PAGE_SIZE = 20;
+    // The most values a whereIn filter accepts
+    private static final int MAX_IN_VALUES = 30;
+
+    private final CollectionReference events;
+    private final CollectionReference users;
+    private final List<Cursor> cursors;
+    private final Set<String> seen = new HashSet<>();
+    private int current = 0;
+    private boolean loading = false;
+
+    /**
+     * Constructs a new {@code ImageGallerySource}.
+     *
+     * @param events The events collection.
+     * @param users  The users collection.
+     */
+    public ImageGallerySource(@NonNull CollectionReference events, @NonNull CollectionReference users) {
+        this.events = events;
+        this.users = users;
+        this.cursors = Arrays.asList(
+                new Cursor(events.whereNotEqualTo("imageHash", null), true),
+                new Cursor(users.whereNotEqualTo("imageHash", null), false),
+                new Cursor(events.whereNotEqualTo("base64Image", null), true),
+                new Cursor(users.whereNotEqualTo("base64Image", null), false));
+    }
+
+    /**
+     * Checks whether there may be more images to load.
+     *
+     * @return {@code true} if not every query has been read to the end; {@code false} otherwise.
+     */
+    public boolean hasMore() {
+        return current < cursors.size();
+    }
+
+    /**
+     * Checks whether a page is being loaded.
+     *
+     * @return {@code true} if a page is being loaded; {@code false} otherwise.
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * Loads the next page of images. Only one page can be loaded at a time.
+     *
+     * @return A {@link Task} with up to {@value #PAGE_SIZE} images; fewer only once the last
+     *         query has been read to the end.
+     */
+    public Task<List<GalleryImage>> loadNextPage() {
+        if (loading) {
+            return Tasks.forException(new IllegalStateException("A page is already loading"));
+        }
+        loading = true;
+        return fill(new ArrayList<>()).addOnCompleteListener(task -> loading = false);
+    }
+
+    /**
+     * Finds every event and user using one of the given stored images, whether loaded yet or not.
+     * Reads only the matching documents.
+     *
+     * @param imageHashes The content hashes of the images.
+     * @return A {@link Task} with the images of the matching documents.
+     */
+    public Task<List<GalleryImage>> findUsing(@NonNull List<String> imageHashes) {
+        List<Task<QuerySnapshot>> queries = new ArrayList<>();
+        List<Boolean> queryIsEvent = new ArrayList<>();
+        for (int start = 0; start < imageHashes.size(); start += MAX_IN_VALUES) {
+            List<String> chunk = imageHashes.subList(start, Math.min(imageHashes.size(), start + MAX_IN_VALUES));
+            queries.add(events.whereIn("imageHash", chunk).get());
+            queryIsEvent.add(true);
+            queries.add(users.whereIn("imageHash", chunk).get());
+            queryIsEvent.add(false);
+        }
+        return Tasks.whenAllSuccess(queries).onSuccessTask(results -> {
+            List<GalleryImage> images = new ArrayList<>();
+            for (int i = 0; i < results.size(); i++) {
+                for (DocumentSnapshot document : ((QuerySnapshot) results.get(i)).getDocuments()) {
+                    images.add(GalleryImage.fromDocument(document, queryIsEvent.get(i)));
+                }
+            }
+            return Tasks.forResult(images);
+        });
+    }
+
+    private Task<List<GalleryImage>> fill(List<GalleryImage> page) {
+        if (page.size() >= PAGE_SIZE || !hasMore()) {
+            return Tasks.forResult(page);
+        }
+        Cursor cursor = cursors.get(current);
+        int wanted = PAGE_SIZE - page.size();
+        return cursor.next(wanted).onSuccessTask(snapshot -> {
+            if (!snapshot.isEmpty()) {
+                cursor.last = snapshot.getDocuments().get(snapshot.size() - 1);
+            }
+            for (DocumentSnapshot document : snapshot.getDocuments()) {
+                GalleryImage image = GalleryImage.fromDocument(document, cursor.event);
+                if (seen.add(image.getPath())) {
+                    page.add(image);
+                }
+            }
+            if (snapshot.size() < wanted) {
+                current++;
+            }
+            return fill(page);
+        });
+    }
+
+    /**
+     * A query read page by page, remembering the last document read.
+     */
+    private static final class Cursor {
+        final Query query;
+        final boolean event;
+        DocumentSnapshot last;
+
+        Cursor(Query query, boolean event) {
+            this.query = query;
+            this.event = event;
+        }
+
+        Task<QuerySnapshot> next(int limit) {
+            Query page = last != null ? query.startAfter(last) : query;
+            return page.limit(limit).get();
+        }
+    }
+}
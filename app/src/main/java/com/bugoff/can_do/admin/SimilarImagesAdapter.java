@@ -0,0 +1,148 @@
+package com.bugoff.can_do.admin;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CheckBox;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.bugoff.can_do.R;
+import com.bugoff.can_do.image.ImageLoader;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+/**
+ * Adapter listing the images found to be similar to one, as thumbnails that can be selected for
+ * removal. Nothing is selected initially.
+ */
+public class SimilarImagesAdapter extends RecyclerView.Adapter<SimilarImagesAdapter.SimilarImageViewHolder> {
+    private final List<GalleryImage> items;
+    private final Set<GalleryImage> selected = new LinkedHashSet<>();
+    private OnSelectionChangedListener selectionChangedListener;
+    /**
+     * Interface to handle changes of the selection.
+     */
+    public interface OnSelectionChangedListener {
+        void onSelectionChanged(int selectedCount);
+    }
+    /**
+     * Creates a new SimilarImagesAdapter for the given images.
+     *
+     * @param items The images to list.
+     */
+    public SimilarImagesAdapter(@NonNull List<GalleryImage> items) {
+        this.items = new ArrayList<>(items);
+    }
+    /**
+     * Sets the listener notified whenever an image is selected or deselected.
+     *
+     * @param listener The listener.
+     */
+    public void setOnSelectionChangedListener(OnSelectionChangedListener listener) {
+        this.selectionChangedListener = listener;
+    }
+    /**
+     * Gets the selected images, in the order they are listed.
+     *
+     * @return The selected images.
+     */
+    public List<GalleryImage> getSelected() {
+        List<GalleryImage> result = new ArrayList<>();
+        for (GalleryImage image : items) {
+            if (selected.contains(image)) {
+                result.add(image);
+            }
+        }
+        return result;
+    }
+    /**
+     * Inflates the item layout and creates a new ViewHolder.
+     *
+     * @param parent The parent view.
+     * @param viewType The view type.
+     * @return A new SimilarImageViewHolder.
+     */
+    @NonNull
+    @Override
+    public SimilarImageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_similar_image, parent, false);
+        return new SimilarImageViewHolder(view);
+    }
+    /**
+     * Binds the item at the given position to the ViewHolder.
+     *
+     * @param holder The ViewHolder.
+     * @param position The position of the item.
+     */
+    @Override
+    public void onBindViewHolder(@NonNull SimilarImageViewHolder holder, int position) {
+        GalleryImage image = items.get(position);
+        holder.bind(image, selected.contains(image));
+        holder.itemView.setOnClickListener(v -> {
+            if (!selected.remove(image)) {
+                selected.add(image);
+            }
+            holder.checkBox.setChecked(selected.contains(image));
+            if (selectionChangedListener != null) {
+                selectionChangedListener.onSelectionChanged(selected.size());
+            }
+        });
+    }
+    /**
+     * Cancels the image load of a recycled ViewHolder.
+     *
+     * @param holder The recycled ViewHolder.
+     */
+    @Override
+    public void onViewRecycled(@NonNull SimilarImageViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.cancel(holder.imageView);
+    }
+    /**
+     * Returns the number of items in the adapter.
+     *
+     * @return The number of items.
+     */
+    @Override
+    public int getItemCount() {
+        return items.size();
+    }
+    /**
+     * ViewHolder for a single similar image.
+     */
+    static class SimilarImageViewHolder extends RecyclerView.ViewHolder {
+        private final ImageView imageView;
+        private final TextView nameText;
+        private final CheckBox checkBox;
+        /**
+         * Creates a new SimilarImageViewHolder with the given view.
+         *
+         * @param itemView The view for the ViewHolder.
+         */
+        public SimilarImageViewHolder(@NonNull View itemView) {
+            super(itemView);
+            imageView = itemView.findViewById(R.id.similar_image);
+            nameText = itemView.findViewById(R.id.similar_image_name);
+            checkBox = itemView.findViewById(R.id.similar_image_selected);
+        }
+        /**
+         * Binds the given item to the ViewHolder.
+         *
+         * @param image    The item to bind.
+         * @param selected Whether the item is selected.
+         */
+        public void bind(GalleryImage image, boolean selected) {
+            imageView.setImageDrawable(null);
+            ImageLoader.into(imageView, image.getImageHash(), image.getBase64Image(), null);
+            nameText.setText((image.isEvent() ? "Event: " : "User: ") + image.getName());
+            checkBox.setChecked(selected);
+        }
+    }
+}
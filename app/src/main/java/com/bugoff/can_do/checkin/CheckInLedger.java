@@ -0,0 +1,334 @@
+package com.bugoff.can_do.checkin;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.database.WriteCounter;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@code CheckInLedger} records check-ins on the device and uploads them to Firestore in batches.
+ *
+ * <p>A check-in is appended to a file as soon as it is recorded, so it survives the app being
+ * closed, and never waits for the network; door staff can go on scanning on a poor connection or
+ * none at all. Check-ins are uploaded a few seconds after they are recorded, or as soon as
+ * a full batch is waiting, as one Firestore batch write of at most {@value #MAX_BATCH_SIZE}
+ * check-ins to {@code events/{id}/checkIns/{entrantId}}. An upload that fails is retried later;
+ * uploading a check-in twice only rewrites the same document.</p>
+ *
+ * <p>The ledger remembers every check-in it recorded, so an entrant who was already checked in on
+ * this device is reported as such, even before the check-in was uploaded.</p>
+ */
+public class CheckInLedger {
+    private static final String TAG = "CheckInLedger";
+    private static final String FILE_NAME = "check_ins.log";
+    static final String COLLECTION = "checkIns";
+    // Firestore accepts at most 500 writes per batch
+    static final int MAX_BATCH_SIZE = 450;
+    private static final long DEFAULT_SYNC_DELAY_MS = 5_000;
+    private static final long RETRY_DELAY_MS = 30_000;
+    // Lines of the ledger file: a check-in, or the number of check-ins uploaded so far
+    private static final String CHECK_IN = "C";
+    private static final String SYNCED = "S";
+    private static CheckInLedger instance;
+
+    /**
+     * Uploads a batch of check-ins.
+     */
+    public interface Uploader {
+        /**
+         * Uploads the check-ins.
+         *
+         * @param checkIns The check-ins, oldest first.
+         * @return A {@link Task} that completes once all of them are stored.
+         */
+        Task<Void> upload(@NonNull List<CheckIn> checkIns);
+    }
+
+    private final File file;
+    private final Uploader uploader;
+    private final Handler handler;
+    private final long syncDelayMs;
+    private final Runnable syncRunnable = this::sync;
+    // All check-ins in the order they were recorded; the first {@code synced} are uploaded
+    private final List<CheckIn> checkIns = new ArrayList<>();
+    private final Set<String> checkedIn = new HashSet<>();
+    private int synced = 0;
+    private boolean loaded = false;
+    private boolean syncScheduled = false;
+    private Task<Void> upload;
+    private Writer writer;
+
+    /**
+     * Constructs a new {@code CheckInLedger}.
+     *
+     * @param file        The file the check-ins are kept in.
+     * @param uploader    Uploads batches of check-ins.
+     * @param handler     The {@link Handler} used to schedule uploads.
+     * @param syncDelayMs How long, in milliseconds, check-ins are held before being uploaded.
+     */
+    @VisibleForTesting
+    public CheckInLedger(@NonNull File file, @NonNull Uploader uploader, @NonNull Handler handler, long syncDelayMs) {
+        this.file = file;
+        this.uploader = uploader;
+        this.handler = handler;
+        this.syncDelayMs = syncDelayMs;
+    }
+
+    /**
+     * Retrieves the shared ledger of this device, uploading any check-ins left from before.
+     *
+     * @param context Any context.
+     * @return The singleton {@code CheckInLedger}.
+     */
+    public static synchronized CheckInLedger getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new CheckInLedger(new File(context.getApplicationContext().getFilesDir(), FILE_NAME),
+                    CheckInLedger::uploadToFirestore, new Handler(Looper.getMainLooper()), DEFAULT_SYNC_DELAY_MS);
+            instance.sync();
+        }
+        return instance;
+    }
+
+    /**
+     * Records a check-in, unless the entrant was already checked in to the event.
+     *
+     * @param eventId     The ID of the event.
+     * @param entrantId   The ID of the entrant.
+     * @param checkedInAt When the entrant was checked in, in milliseconds since the epoch.
+     * @return {@code true} if the check-in was recorded; {@code false} if the entrant was already
+     * checked in.
+     * @throws IOException If the check-in could not be written to the ledger file.
+     */
+    public synchronized boolean record(@NonNull String eventId, @NonNull String entrantId, long checkedInAt) throws IOException {
+        CheckIn checkIn = new CheckIn(eventId, entrantId, checkedInAt);
+        load();
+        if (checkedIn.contains(checkIn.key())) {
+            return false;
+        }
+        append(CHECK_IN + "\t" + eventId + "\t" + entrantId + "\t" + checkedInAt);
+        checkedIn.add(checkIn.key());
+        checkIns.add(checkIn);
+        scheduleSync(checkIns.size() - synced >= MAX_BATCH_SIZE ? 0 : syncDelayMs);
+        return true;
+    }
+
+    /**
+     * Checks whether an entrant was checked in to an event on this device.
+     *
+     * @param eventId   The ID of the event.
+     * @param entrantId The ID of the entrant.
+     * @return {@code true} if a check-in was recorded; {@code false} otherwise.
+     * @throws IOException If the ledger file could not be read.
+     */
+    public synchronized boolean isCheckedIn(@NonNull String eventId, @NonNull String entrantId) throws IOException {
+        load();
+        return checkedIn.contains(new CheckIn(eventId, entrantId, 0).key());
+    }
+
+    /**
+     * Gets the number of check-ins not uploaded yet.
+     *
+     * @return The number of pending check-ins.
+     * @throws IOException If the ledger file could not be read.
+     */
+    public synchronized int getPendingCount() throws IOException {
+        load();
+        return checkIns.size() - synced;
+    }
+
+    /**
+     * Uploads the oldest batch of pending check-ins now; later batches follow once it is stored.
+     * If an upload is already running, no other one is started.
+     *
+     * @return A {@link Task} that completes once the running upload completes.
+     */
+    public Task<Void> sync() {
+        List<CheckIn> batch;
+        synchronized (this) {
+            handler.removeCallbacks(syncRunnable);
+            syncScheduled = false;
+            if (upload != null) {
+                return upload;
+            }
+            try {
+                load();
+            } catch (IOException e) {
+                Log.e(TAG, "Could not read check-ins", e);
+                return Tasks.forException(e);
+            }
+            if (synced == checkIns.size()) {
+                return Tasks.forResult(null);
+            }
+            batch = new ArrayList<>(checkIns.subList(synced, Math.min(checkIns.size(), synced + MAX_BATCH_SIZE)));
+            Task<Void> running = uploader.upload(Collections.unmodifiableList(batch))
+                    .continueWithTask(Runnable::run, task -> {
+                        onUploaded(batch.size(), task.isSuccessful());
+                        return task;
+                    });
+            // An upload that completed right away has already been handled
+            if (!running.isComplete()) {
+                upload = running;
+            }
+            return running;
+        }
+    }
+
+    private synchronized void onUploaded(int count, boolean successful) {
+        upload = null;
+        if (!successful) {
+            Log.w(TAG, "Could not upload " + count + " check-in(s); retrying later");
+            scheduleSync(RETRY_DELAY_MS);
+            return;
+        }
+        synced += count;
+        try {
+            append(SYNCED + "\t" + synced);
+        } catch (IOException e) {
+            // The batch will be uploaded again next time, which is harmless
+            Log.w(TAG, "Could not record uploaded check-ins", e);
+        }
+        Log.d(TAG, "Uploaded " + count + " check-in(s)");
+        if (synced < checkIns.size()) {
+            scheduleSync(0);
+        }
+    }
+
+    private void scheduleSync(long delayMs) {
+        if (delayMs == 0 || !syncScheduled) {
+            handler.removeCallbacks(syncRunnable);
+            syncScheduled = true;
+            handler.postDelayed(syncRunnable, delayMs);
+        }
+    }
+
+    /**
+     * Reads the ledger file the first time the ledger is used.
+     */
+    private void load() throws IOException {
+        if (loaded) {
+            return;
+        }
+        boolean endsWithNewline = true;
+        if (file.exists()) {
+            String contents = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            endsWithNewline = contents.isEmpty() || contents.endsWith("\n");
+            for (String line : contents.split("\n")) {
+                readLine(line);
+            }
+            synced = Math.min(synced, checkIns.size());
+        }
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        if (!endsWithNewline) {
+            // The app was closed while writing the last line, which was skipped above
+            writer.write('\n');
+        }
+        loaded = true;
+    }
+
+    private void readLine(String line) {
+        String[] fields = line.split("\t");
+        try {
+            if (fields.length == 4 && fields[0].equals(CHECK_IN)) {
+                CheckIn checkIn = new CheckIn(fields[1], fields[2], Long.parseLong(fields[3]));
+                if (checkedIn.add(checkIn.key())) {
+                    checkIns.add(checkIn);
+                }
+            } else if (fields.length == 2 && fields[0].equals(SYNCED)) {
+                synced = Math.max(synced, Integer.parseInt(fields[1]));
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w(TAG, "Skipping damaged check-in record");
+        }
+    }
+
+    private void append(String line) throws IOException {
+        writer.write(line);
+        writer.write('\n');
+        // Hand the line to the system right away, so it survives the app being closed
+        writer.flush();
+    }
+
+    private static Task<Void> uploadToFirestore(List<CheckIn> checkIns) {
+        CollectionReference events = GlobalRepository.getEventsCollection();
+        if (events == null) {
+            return Tasks.forResult(null);
+        }
+        WriteBatch batch = events.getFirestore().batch();
+        for (CheckIn checkIn : checkIns) {
+            batch.set(events.document(checkIn.getEventId()).collection(COLLECTION).document(checkIn.getEntrantId()),
+                    Collections.singletonMap("checkedInAt", new Date(checkIn.getCheckedInAt())));
+        }
+        WriteCounter.getInstance().record(COLLECTION, checkIns.size());
+        return batch.commit();
+    }
+
+    /**
+     * An entrant checked in to an event.
+     */
+    public static final class CheckIn {
+        private final String eventId;
+        private final String entrantId;
+        private final long checkedInAt;
+
+        CheckIn(String eventId, String entrantId, long checkedInAt) {
+            if (eventId.isEmpty() || entrantId.isEmpty() || hasSeparator(eventId) || hasSeparator(entrantId)) {
+                throw new IllegalArgumentException("Invalid check-in IDs");
+            }
+            this.eventId = eventId;
+            this.entrantId = entrantId;
+            this.checkedInAt = checkedInAt;
+        }
+
+        private static boolean hasSeparator(String id) {
+            return id.indexOf('\t') >= 0 || id.indexOf('\n') >= 0;
+        }
+
+        String key() {
+            return eventId + "\t" + entrantId;
+        }
+
+        @NonNull
+        public String getEventId() {
+            return eventId;
+        }
+
+        @NonNull
+        public String getEntrantId() {
+            return entrantId;
+        }
+
+        /**
+         * Gets when the entrant was checked in.
+         *
+         * @return The time in milliseconds since the epoch.
+         */
+        public long getCheckedInAt() {
+            return checkedInAt;
+        }
+    }
+}
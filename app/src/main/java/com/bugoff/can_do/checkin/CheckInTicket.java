@@ -0,0 +1,212 @@
+package com.bugoff.can_do.checkin;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Objects;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * {@code CheckInTicket} is a signed ticket for an event that can be checked without a network
+ * connection, so door staff can admit attendees as fast as they can scan them.
+ *
+ * <p>A ticket names an event, optionally the entrant it was issued to, and when it expires. It is
+ * written as {@code cdt1.<payload>.<signature>}, where the payload holds these fields and the
+ * signature is an HMAC-SHA256 of the payload under the event's key (see {@link TicketKeys}),
+ * truncated to {@value #SIGNATURE_BYTES} bytes; both are URL-safe Base64 without padding, so the
+ * ticket fits a small QR code. Anyone holding the key can issue and verify tickets; without it, a
+ * ticket can't be made up, but a ticket that was issued can still be copied (see
+ * {@link EntrantTickets}).</p>
+ */
+public final class CheckInTicket {
+    static final String PREFIX = "cdt1.";
+    static final int SIGNATURE_BYTES = 16;
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final char SEPARATOR = '\n';
+    // Mac instances are not thread-safe and slow to look up, so each thread keeps its own
+    private static final ThreadLocal<Mac> macs = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance(ALGORITHM);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    });
+
+    private final String eventId;
+    private final String entrantId;
+    private final long expiresAt;
+    private final byte[] payload;
+    private final byte[] signature;
+
+    private CheckInTicket(String eventId, @Nullable String entrantId, long expiresAt, byte[] payload, byte[] signature) {
+        this.eventId = eventId;
+        this.entrantId = entrantId;
+        this.expiresAt = expiresAt;
+        this.payload = payload;
+        this.signature = signature;
+    }
+
+    /**
+     * Issues a ticket signed with an event's key.
+     *
+     * @param key       The key of the event.
+     * @param eventId   The ID of the event.
+     * @param entrantId The ID of the entrant the ticket is for, or {@code null} for a ticket that
+     *                  only names the event.
+     * @param expiresAt When the ticket expires, in milliseconds since the epoch; it is kept to the second.
+     * @return The ticket.
+     * @throws IllegalArgumentException If an ID is empty or contains a tab or line break.
+     */
+    @NonNull
+    public static CheckInTicket issue(@NonNull byte[] key, @NonNull String eventId, @Nullable String entrantId, long expiresAt) {
+        if (!isValidId(eventId) || (entrantId != null && !isValidId(entrantId))) {
+            throw new IllegalArgumentException("Invalid ticket IDs");
+        }
+        long expiresAtSeconds = expiresAt / 1000;
+        String fields = eventId + SEPARATOR + (entrantId != null ? entrantId : "") + SEPARATOR
+                + Long.toString(expiresAtSeconds, 36);
+        byte[] payload = fields.getBytes(StandardCharsets.UTF_8);
+        return new CheckInTicket(eventId, entrantId, expiresAtSeconds * 1000, payload, sign(key, payload));
+    }
+
+    /**
+     * Reads a ticket from scanned text without verifying it (see {@link #verify(byte[])}).
+     *
+     * @param text The scanned text.
+     * @return The ticket, or {@code null} if the text is not a well-formed ticket.
+     */
+    @Nullable
+    public static CheckInTicket decode(@NonNull String text) {
+        if (!text.startsWith(PREFIX)) {
+            return null;
+        }
+        int dot = text.indexOf('.', PREFIX.length());
+        if (dot < 0) {
+            return null;
+        }
+        byte[] payload;
+        byte[] signature;
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            payload = decoder.decode(text.substring(PREFIX.length(), dot));
+            signature = decoder.decode(text.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (signature.length != SIGNATURE_BYTES) {
+            return null;
+        }
+        String fields = new String(payload, StandardCharsets.UTF_8);
+        int first = fields.indexOf(SEPARATOR);
+        int second = first < 0 ? -1 : fields.indexOf(SEPARATOR, first + 1);
+        if (first <= 0 || second < 0) {
+            return null;
+        }
+        long expiresAtSeconds;
+        try {
+            expiresAtSeconds = Long.parseLong(fields.substring(second + 1), 36);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        String eventId = fields.substring(0, first);
+        String entrantId = second > first + 1 ? fields.substring(first + 1, second) : null;
+        if (!isValidId(eventId) || (entrantId != null && !isValidId(entrantId))) {
+            return null;
+        }
+        return new CheckInTicket(eventId, entrantId, expiresAtSeconds * 1000, payload, signature);
+    }
+
+    /**
+     * Checks that an ID can be written into a ticket and into the tab-separated
+     * {@link CheckInLedger}.
+     */
+    private static boolean isValidId(String id) {
+        return !id.isEmpty() && id.indexOf(SEPARATOR) < 0 && id.indexOf('\t') < 0;
+    }
+
+    /**
+     * Writes the ticket as text, e.g. to show it as a QR code.
+     *
+     * @return The ticket text.
+     */
+    @NonNull
+    public String encode() {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return PREFIX + encoder.encodeToString(payload) + "." + encoder.encodeToString(signature);
+    }
+
+    /**
+     * Checks that the ticket was signed with an event's key. Does not check that it is unexpired.
+     *
+     * @param key The key of the ticket's event.
+     * @return {@code true} if the signature matches; {@code false} otherwise.
+     */
+    public boolean verify(@NonNull byte[] key) {
+        // Compared in constant time, so the time taken does not reveal how much of a forgery matched
+        return MessageDigest.isEqual(sign(key, payload), signature);
+    }
+
+    private static byte[] sign(byte[] key, byte[] payload) {
+        Mac mac = macs.get();
+        try {
+            mac.init(new SecretKeySpec(key, ALGORITHM));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("Invalid ticket key", e);
+        }
+        return Arrays.copyOf(mac.doFinal(payload), SIGNATURE_BYTES);
+    }
+
+    @NonNull
+    public String getEventId() {
+        return eventId;
+    }
+
+    /**
+     * Gets the ID of the entrant the ticket is for.
+     *
+     * @return The entrant ID, or {@code null} if the ticket only names the event.
+     */
+    @Nullable
+    public String getEntrantId() {
+        return entrantId;
+    }
+
+    /**
+     * Gets when the ticket expires.
+     *
+     * @return The expiry in milliseconds since the epoch.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * Checks whether the ticket has expired.
+     *
+     * @param now The current time in milliseconds since the epoch.
+     * @return {@code true} if the ticket expired at or before {@code now}; {@code false} otherwise.
+     */
+    public boolean isExpired(long now) {
+        return now >= expiresAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof CheckInTicket)) return false;
+        CheckInTicket that = (CheckInTicket) o;
+        return Arrays.equals(payload, that.payload) && Arrays.equals(signature, that.signature);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(Arrays.hashCode(payload), Arrays.hashCode(signature));
+    }
+}
@@ -0,0 +1,141 @@
+package com.bugoff.can_do.checkin;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.database.WriteCounter;
+import com.bugoff.can_do.event.Event;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * {@code EntrantTickets} hands out the {@link CheckInTicket}s of an event's enrolled entrants.
+ *
+ * <p>Only a device holding the event's key can sign tickets, so they are issued by the
+ * organizer's device, whenever the organizer opens the event, for every enrolled entrant that has
+ * none yet. Each ticket is stored in the event's {@code tickets} subcollection under the entrant's
+ * ID, where the entrant's device reads it to show it as a QR code at the door.</p>
+ *
+ * <p>Users are identified by their device, so Firestore's security rules can't keep a ticket from
+ * being read by others who know the event and entrant IDs. A valid signature therefore shows that
+ * the organizer issued the ticket to the entrant it names, not that the person presenting it is
+ * that entrant; the {@link CheckInLedger} only ensures each ticket admits once.</p>
+ */
+public class EntrantTickets {
+    private static final String TAG = "EntrantTickets";
+    static final String COLLECTION = "tickets";
+    static final String TICKET = "ticket";
+    private static final int MAX_BATCH_WRITES = 450;
+    // Tickets stay valid for a day after the event ends, e.g. for events running late
+    private static final long VALIDITY_AFTER_EVENT_MS = 24L * 60 * 60 * 1000;
+    private static final long VALIDITY_WITHOUT_DATES_MS = 365L * 24 * 60 * 60 * 1000;
+
+    private EntrantTickets() {
+    }
+
+    /**
+     * Issues tickets to the enrolled entrants of an event that have none yet. Must only be called
+     * on the organizer's device (see {@link TicketKeys#canCheckIn}). The event's key is created if
+     * the event predates tickets; if tickets were issued with a key this device does not hold,
+     * none are issued, as their entrants' tickets would not verify with the same key.
+     *
+     * @param context Any context.
+     * @param event   The event.
+     * @return A {@link Task} with the number of tickets issued.
+     */
+    public static Task<Integer> issueMissing(@NonNull Context context, @NonNull Event event) {
+        CollectionReference tickets = tickets(event.getId());
+        List<String> enrolled = new ArrayList<>(event.getEnrolledEntrants());
+        if (tickets == null || enrolled.isEmpty()) {
+            return Tasks.forResult(0);
+        }
+        Context appContext = context.getApplicationContext();
+        byte[] localKey = TicketKeys.get(appContext, event.getId());
+        long expiresAt = expiryOf(event);
+        return tickets.get().onSuccessTask(snapshot -> {
+            byte[] signingKey = localKey;
+            if (signingKey == null && !snapshot.isEmpty()) {
+                Log.w(TAG, "Tickets of event " + event.getId() + " were issued with a key this device does not hold");
+                return Tasks.forResult(0);
+            } else if (signingKey == null) {
+                signingKey = TicketKeys.create(appContext, event.getId());
+            }
+            Set<String> issued = new HashSet<>();
+            for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                issued.add(doc.getId());
+            }
+            List<Task<Void>> commits = new ArrayList<>();
+            WriteBatch batch = tickets.getFirestore().batch();
+            int writes = 0;
+            int total = 0;
+            for (String entrantId : enrolled) {
+                if (issued.contains(entrantId)) {
+                    continue;
+                }
+                String ticket;
+                try {
+                    ticket = CheckInTicket.issue(signingKey, event.getId(), entrantId, expiresAt).encode();
+                } catch (IllegalArgumentException e) {
+                    Log.e(TAG, "Cannot issue a ticket to entrant " + entrantId, e);
+                    continue;
+                }
+                if (writes == MAX_BATCH_WRITES) {
+                    commits.add(batch.commit());
+                    batch = tickets.getFirestore().batch();
+                    writes = 0;
+                }
+                batch.set(tickets.document(entrantId), Collections.singletonMap(TICKET, ticket));
+                writes++;
+                total++;
+            }
+            if (writes > 0) {
+                commits.add(batch.commit());
+            }
+            WriteCounter.getInstance().record(COLLECTION, total);
+            int count = total;
+            return Tasks.whenAll(commits).onSuccessTask(unused -> Tasks.forResult(count));
+        });
+    }
+
+    /**
+     * Gets the ticket issued to an entrant, to show it as a QR code.
+     *
+     * @param eventId   The ID of the event.
+     * @param entrantId The ID of the entrant.
+     * @return A {@link Task} with the ticket text, or with {@code null} if none was issued yet.
+     */
+    public static Task<String> get(@NonNull String eventId, @NonNull String entrantId) {
+        CollectionReference tickets = tickets(eventId);
+        if (tickets == null) {
+            return Tasks.forResult(null);
+        }
+        return tickets.document(entrantId).get()
+                .onSuccessTask(doc -> Tasks.forResult(doc.exists() ? doc.getString(TICKET) : null));
+    }
+
+    @Nullable
+    private static CollectionReference tickets(String eventId) {
+        CollectionReference events = GlobalRepository.getEventsCollection();
+        return events != null ? events.document(eventId).collection(COLLECTION) : null;
+    }
+
+    private static long expiryOf(Event event) {
+        Date end = event.getEventEndDate() != null ? event.getEventEndDate() : event.getEventStartDate();
+        return end != null ? end.getTime() + VALIDITY_AFTER_EVENT_MS
+                : System.currentTimeMillis() + VALIDITY_WITHOUT_DATES_MS;
+    }
+}
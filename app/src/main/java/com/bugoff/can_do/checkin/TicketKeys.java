@@ -0,0 +1,123 @@
+package com.bugoff.can_do.checkin;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bugoff.can_do.event.Event;
+import com.bugoff.can_do.facility.Facility;
+import com.bugoff.can_do.user.User;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+
+/**
+ * {@code TicketKeys} holds the keys that sign the {@link CheckInTicket}s of events.
+ *
+ * <p>Each event has its own random key, created on the organizer's device with the event and kept
+ * only in that device's private preferences, so it can verify tickets with no network connection
+ * at all. Users are identified by their device and Firestore's security rules can't tell
+ * organizers apart, so keys are never stored in Firestore. Instead, the organizer shares a key
+ * explicitly with each device that should check entrants in, by showing it as a QR code (see
+ * {@link #share}) that the other device scans (see {@link #accept}).</p>
+ */
+public class TicketKeys {
+    static final String PREFIX = "cdk1.";
+    private static final String PREFS_NAME = "ticket_keys";
+    private static final int KEY_BYTES = 32;
+    private static final SecureRandom random = new SecureRandom();
+
+    private TicketKeys() {
+    }
+
+    /**
+     * Gets the key of an event kept on this device.
+     *
+     * @param context Any context.
+     * @param eventId The ID of the event.
+     * @return The key, or {@code null} if this device has not created or accepted it.
+     */
+    @Nullable
+    public static byte[] get(@NonNull Context context, @NonNull String eventId) {
+        String key = prefs(context).getString(eventId, null);
+        return key != null ? Base64.getDecoder().decode(key) : null;
+    }
+
+    /**
+     * Creates the key of a new event and keeps it on this device.
+     *
+     * @param context Any context.
+     * @param eventId The ID of the event.
+     * @return The key.
+     */
+    @NonNull
+    public static byte[] create(@NonNull Context context, @NonNull String eventId) {
+        byte[] key = new byte[KEY_BYTES];
+        random.nextBytes(key);
+        prefs(context).edit().putString(eventId, Base64.getEncoder().encodeToString(key)).apply();
+        return key;
+    }
+
+    /**
+     * Checks whether a user may check entrants in to an event, i.e. organizes it.
+     *
+     * @param user  The user, or {@code null} if nobody is logged in.
+     * @param event The event.
+     * @return {@code true} if the user owns the event's facility; {@code false} otherwise.
+     */
+    public static boolean canCheckIn(@Nullable User user, @NonNull Event event) {
+        Facility facility = user != null ? user.getFacility() : null;
+        return facility != null && facility.getId() != null && facility.getId().equals(event.getFacilityId());
+    }
+
+    /**
+     * Gets the text that shares the key of an event with another device, e.g. a door staff phone,
+     * written as {@code cdk1.<eventId>.<key>}. Anyone who scans it can check entrants in and issue
+     * tickets, so it should only be shown to the devices meant to.
+     *
+     * @param context Any context.
+     * @param eventId The ID of the event.
+     * @return The text to show as a QR code, or {@code null} if this device does not hold the key.
+     */
+    @Nullable
+    public static String share(@NonNull Context context, @NonNull String eventId) {
+        byte[] key = get(context, eventId);
+        return key != null ? PREFIX + eventId + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(key) : null;
+    }
+
+    /**
+     * Keeps a key shared by the organizer's device (see {@link #share}) on this device.
+     *
+     * @param context Any context.
+     * @param text    The scanned text.
+     * @return The ID of the event whose key was kept, or {@code null} if the text is not a shared key.
+     */
+    @Nullable
+    public static String accept(@NonNull Context context, @NonNull String text) {
+        if (!text.startsWith(PREFIX)) {
+            return null;
+        }
+        int dot = text.lastIndexOf('.');
+        if (dot <= PREFIX.length()) {
+            return null;
+        }
+        String eventId = text.substring(PREFIX.length(), dot);
+        byte[] key;
+        try {
+            key = Base64.getUrlDecoder().decode(text.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (key.length != KEY_BYTES) {
+            return null;
+        }
+        prefs(context).edit().putString(eventId, Base64.getEncoder().encodeToString(key)).apply();
+        return eventId;
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+}
@@ -0,0 +1,296 @@
+package com.bugoff.can_do.database;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.bugoff.can_do.event.Event;
+import com.bugoff.can_do.facility.Facility;
+import com.bugoff.can_do.notification.Notification;
+import com.bugoff.can_do.user.User;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The {@code CachingDatabaseBehavior} class is a {@link DatabaseBehavior} decorator that keeps an
+ * identity map of users, events and facilities in front of another behavior.
+ *
+ * <p>Repeated lookups of the same document return the same instance without another read, and
+ * concurrent lookups of an ID that is still loading share one read. Entities written through this
+ * behavior become the cached instance for their ID.</p>
+ */
+public class CachingDatabaseBehavior implements DatabaseBehavior {
+    private static final int MAX_USERS = 200;
+    private static final int MAX_EVENTS = 100;
+    private static final int MAX_FACILITIES = 50;
+    private static final long TTL_MS = 5 * 60 * 1000;
+
+    private interface BatchLoader<T> {
+        Task<Map<String, T>> load(Collection<String> ids);
+    }
+
+    private final DatabaseBehavior delegate;
+    private final EntityCache<User> users;
+    private final EntityCache<Event> events;
+    private final EntityCache<Facility> facilities;
+
+    /**
+     * Constructs a new {@code CachingDatabaseBehavior}.
+     *
+     * @param delegate The behavior used to load and save entities on a cache miss.
+     */
+    public CachingDatabaseBehavior(@NonNull DatabaseBehavior delegate) {
+        this(delegate, SystemClock::elapsedRealtime);
+    }
+    /**
+     * Constructs a new {@code CachingDatabaseBehavior} whose cached entities expire by {@code clock}.
+     *
+     * @param delegate The behavior used to load and save entities on a cache miss.
+     * @param clock    The clock cached entities expire by.
+     */
+    @VisibleForTesting
+    public CachingDatabaseBehavior(@NonNull DatabaseBehavior delegate, @NonNull EntityCache.Clock clock) {
+        this.delegate = delegate;
+        this.users = new EntityCache<>(MAX_USERS, TTL_MS, clock);
+        this.events = new EntityCache<>(MAX_EVENTS, TTL_MS, clock);
+        this.facilities = new EntityCache<>(MAX_FACILITIES, TTL_MS, clock);
+    }
+    /**
+     * Saves the specified {@link Event} and makes it the cached instance for its ID.
+     *
+     * @param event The {@link Event} to save.
+     * @return A {@link Task} representing the asynchronous save operation.
+     */
+    @Override
+    public Task<Void> saveEvent(Event event) {
+        events.put(event.getId(), event);
+        return delegate.saveEvent(event);
+    }
+    /**
+     * Attaches a listener to the specified {@link Event} through the underlying behavior.
+     *
+     * @param event    The {@link Event} to listen to.
+     * @param onUpdate The listener notified with the changed fields on updates.
+     */
+    @Override
+    public void attachListener(Event event, Event.OnUpdateListener onUpdate) {
+        delegate.attachListener(event, onUpdate);
+    }
+    /**
+     * Detaches the listener from the specified {@link Event} through the underlying behavior.
+     *
+     * @param event The {@link Event} to detach the listener from.
+     */
+    @Override
+    public void detachListener(Event event) {
+        delegate.detachListener(event);
+    }
+    /**
+     * Retrieves a {@link User}, reading it from the underlying behavior only on a cache miss.
+     *
+     * @param userId The ID of the user to retrieve.
+     * @return A {@link Task} containing the {@link User}.
+     */
+    @Override
+    public Task<User> getUser(String userId) {
+        return users.get(userId, delegate::getUser);
+    }
+    /**
+     * Retrieves an {@link Event}, reading it from the underlying behavior only on a cache miss.
+     *
+     * @param eventId The ID of the event to retrieve.
+     * @return A {@link Task} containing the {@link Event}.
+     */
+    @Override
+    public Task<Event> getEvent(String eventId) {
+        return events.get(eventId, delegate::getEvent);
+    }
+    /**
+     * Reads an {@link Event} from the underlying behavior even if it is cached, for decisions that
+     * must not act on a copy up to five minutes old, e.g. whether a user is still selected.
+     * The read event becomes the cached instance for its ID.
+     *
+     * @param eventId The ID of the event to read.
+     * @return A {@link Task} containing the {@link Event}.
+     */
+    public Task<Event> getEventFresh(String eventId) {
+        // Run inline so the cache is updated before any caller's listeners observe the result
+        return delegate.getEvent(eventId).onSuccessTask(Runnable::run, event -> {
+            if (event != null) {
+                events.put(eventId, event);
+            }
+            return Tasks.forResult(event);
+        });
+    }
+    /**
+     * Retrieves a {@link Facility}, reading it from the underlying behavior only on a cache miss.
+     *
+     * @param facilityId The ID of the facility to retrieve.
+     * @return A {@link Task} containing the {@link Facility}.
+     */
+    @Override
+    public Task<Facility> getFacility(String facilityId) {
+        return facilities.get(facilityId, delegate::getFacility);
+    }
+    /**
+     * Retrieves multiple {@link User}s, reading only the ones that are not cached.
+     *
+     * @param userIds The IDs of the users to retrieve.
+     * @return A {@link Task} containing a map of user IDs to the users that were found.
+     */
+    @Override
+    public Task<Map<String, User>> getUsers(Collection<String> userIds) {
+        return getAll(userIds, users, delegate::getUsers);
+    }
+    /**
+     * Retrieves multiple {@link Event}s, reading only the ones that are not cached.
+     *
+     * @param eventIds The IDs of the events to retrieve.
+     * @return A {@link Task} containing a map of event IDs to the events that were found.
+     */
+    @Override
+    public Task<Map<String, Event>> getEvents(Collection<String> eventIds) {
+        return getAll(eventIds, events, delegate::getEvents);
+    }
+    /**
+     * Resolves a batch of IDs against a cache, loading all misses with a single batch call.
+     *
+     * @param ids    The IDs to resolve.
+     * @param cache  The cache to resolve against.
+     * @param loader The batch loader used for the IDs that are not cached.
+     * @param <T>    The type of entity.
+     * @return A {@link Task} containing a map of IDs to live instances.
+     */
+    private <T> Task<Map<String, T>> getAll(Collection<String> ids, EntityCache<T> cache,
+                                            BatchLoader<T> loader) {
+        Map<String, T> result = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            T cached = cache.getIfPresent(id);
+            if (cached != null) {
+                result.put(id, cached);
+            } else {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return Tasks.forResult(result);
+        }
+        // Run inline so the cache is updated before any caller's listeners observe the result
+        return loader.load(missing).onSuccessTask(Runnable::run, loaded -> {
+            for (Map.Entry<String, T> entry : loaded.entrySet()) {
+                result.put(entry.getKey(), cache.putIfAbsent(entry.getKey(), entry.getValue()));
+            }
+            return Tasks.forResult(result);
+        });
+    }
+    /**
+     * Adds a {@link User} and makes it the cached instance for its ID.
+     *
+     * @param user The {@link User} to add.
+     * @return A {@link Task} representing the asynchronous operation.
+     */
+    @Override
+    public Task<Void> addUser(User user) {
+        users.put(user.getId(), user);
+        return delegate.addUser(user);
+    }
+    /**
+     * Adds an {@link Event} and makes it the cached instance for its ID.
+     *
+     * @param event The {@link Event} to add.
+     * @return A {@link Task} representing the asynchronous operation.
+     */
+    @Override
+    public Task<Void> addEvent(Event event) {
+        events.put(event.getId(), event);
+        return delegate.addEvent(event);
+    }
+    /**
+     * Adds a {@link Facility} and makes it the cached instance for its ID.
+     *
+     * @param facility The {@link Facility} to add.
+     * @return A {@link Task} representing the asynchronous operation.
+     */
+    @Override
+    public Task<Void> addFacility(Facility facility) {
+        facilities.put(facility.getId(), facility);
+        return delegate.addFacility(facility);
+    }
+    /**
+     * Adds a {@link Notification} through the underlying behavior. Notifications are not cached.
+     *
+     * @param notification The {@link Notification} to add.
+     */
+    @Override
+    public void addNotification(Notification notification) {
+        delegate.addNotification(notification);
+    }
+    /**
+     * Adds a user to the waiting list of an event through the underlying behavior, and applies the
+     * change to the cached instance of the event once it has been written.
+     *
+     * @param eventId The ID of the event.
+     * @param userId  The ID of the user joining.
+     * @return A {@link Task} with the {@link JoinResult}.
+     */
+    @Override
+    public Task<JoinResult> joinWaitlist(String eventId, String userId) {
+        return delegate.joinWaitlist(eventId, userId).addOnSuccessListener(result -> {
+            if (result == JoinResult.JOINED) {
+                applyMoves(eventId, Collections.singletonList(userId), null, "waitingListEntrants");
+            }
+        });
+    }
+    /**
+     * Moves users between entrant lists of an event through the underlying behavior, and applies the
+     * change to the cached instance of the event once it has been written.
+     *
+     * @param eventId The ID of the event.
+     * @param userIds The IDs of the users to move.
+     * @param from    The list the users leave, or {@code null}.
+     * @param to      The list the users join, or {@code null}.
+     * @return A {@link Task} that completes once the move has been written.
+     */
+    @Override
+    public Task<Void> moveEntrants(String eventId, Collection<String> userIds, @Nullable String from, @Nullable String to) {
+        return delegate.moveEntrants(eventId, userIds, from, to)
+                .addOnSuccessListener(aVoid -> applyMoves(eventId, userIds, from, to));
+    }
+    /**
+     * Applies a written membership change to the cached event, if any, and notifies its listener.
+     * The snapshot listener later finds nothing left to change.
+     */
+    private void applyMoves(String eventId, Collection<String> userIds, String from, String to) {
+        Event cached = events.getIfPresent(eventId);
+        if (cached == null) {
+            return;
+        }
+        Set<String> changedFields = new LinkedHashSet<>();
+        for (String userId : userIds) {
+            changedFields.addAll(cached.applyMove(userId, from, to));
+        }
+        if (!changedFields.isEmpty()) {
+            cached.onUpdate(changedFields);
+        }
+    }
+    /**
+     * Removes all cached entities, forcing subsequent lookups to read from the underlying behavior.
+     */
+    public void clearCache() {
+        users.clear();
+        events.clear();
+        facilities.clear();
+    }
+}
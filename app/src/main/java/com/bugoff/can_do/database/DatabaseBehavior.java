@@ -1,20 +1,29 @@
 package com.bugoff.can_do.database;
 
+import androidx.annotation.Nullable;
+
 import com.bugoff.can_do.event.Event;
 import com.bugoff.can_do.facility.Facility;
 import com.bugoff.can_do.notification.Notification;
 import com.bugoff.can_do.user.User;
 import com.google.android.gms.tasks.Task;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface DatabaseBehavior {
-    void saveEvent(Event event);
-    void attachListener(Event event, Runnable onUpdate);
+    Task<Void> saveEvent(Event event);
+    void attachListener(Event event, Event.OnUpdateListener onUpdate);
     void detachListener(Event event);
     Task<User> getUser(String userId);
     Task<Event> getEvent(String eventId);
     Task<Facility> getFacility(String facilityId);
+    Task<Map<String, User>> getUsers(Collection<String> userIds);
+    Task<Map<String, Event>> getEvents(Collection<String> eventIds);
     Task<Void> addUser(User user);
     Task<Void> addEvent(Event event);
     Task<Void> addFacility(Facility facility);
     void addNotification(Notification notification);
+    Task<JoinResult> joinWaitlist(String eventId, String userId);
+    Task<Void> moveEntrants(String eventId, Collection<String> userIds, @Nullable String from, @Nullable String to);
 }
@@ -1,6 +1,11 @@
 package com.bugoff.can_do.database;
 
+import androidx.annotation.NonNull;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+
 import java.util.Map;
+import java.util.Set;
 
 /**
  * {@code DatabaseEntity} is an interface for Firestore database entities.
@@ -18,6 +23,35 @@ public interface DatabaseEntity {
      * @return A map representation of the entity.
      */
     Map<String, Object> toMap();
+    /**
+     * Returns the fields changed since the last call, in a form suitable for a Firestore
+     * {@code update()}, and clears the tracked changes.
+     *
+     * @return A map of changed field paths to their new values, or an empty map if nothing changed.
+     */
+    Map<String, Object> takeChanges();
+    /**
+     * Marks changes returned by {@link #takeChanges()} as pending again after they failed to be
+     * written, so the next write includes them.
+     *
+     * @param changes The changes that were not written.
+     */
+    void restoreChanges(@NonNull Map<String, Object> changes);
+    /**
+     * Returns the version of the stored document that the entity's state is based on.
+     *
+     * @return The entity's {@link VersionStamp}.
+     */
+    VersionStamp getVersionStamp();
+    /**
+     * Applies a snapshot of the entity's document in place. Fields with changes that have not
+     * been written yet, and the fields in {@code keep}, keep their local values.
+     *
+     * @param doc  The snapshot.
+     * @param keep The fields whose local values should be kept.
+     * @return The names of the fields that changed.
+     */
+    Set<String> applySnapshot(@NonNull DocumentSnapshot doc, @NonNull Set<String> keep);
     /**
      * Sets the entity to remote.
      */
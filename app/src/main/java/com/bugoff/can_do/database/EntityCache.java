@@ -0,0 +1,199 @@
+package com.bugoff.can_do.database;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code EntityCache} is an identity map for database entities of a single type.
+ *
+ * <p>It keeps at most one instance per document ID, evicts the least recently used entries once
+ * {@code maxSize} is exceeded, and expires entries after {@code ttlMs}. Concurrent loads of the
+ * same ID share a single in-flight {@link Task}, so only one read is issued.</p>
+ *
+ * @param <T> The type of entity stored in the cache.
+ */
+public class EntityCache<T> {
+    /**
+     * Loads an entity from the underlying data source.
+     *
+     * @param <T> The type of entity to load.
+     */
+    public interface Loader<T> {
+        /**
+         * Loads the entity with the given ID.
+         *
+         * @param id The ID of the entity.
+         * @return A {@link Task} that completes with the loaded entity.
+         */
+        Task<T> load(String id);
+    }
+
+    /**
+     * Tells the time entries are loaded and expire by.
+     */
+    public interface Clock {
+        /**
+         * Gets the current time.
+         *
+         * @return A monotonic time in milliseconds.
+         */
+        long now();
+    }
+
+    private static class Entry<T> {
+        final T value;
+        final long loadedAt;
+
+        Entry(T value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final long ttlMs;
+    private final Clock clock;
+    private final Map<String, Entry<T>> entries;
+    private final Map<String, Task<T>> inFlight = new HashMap<>();
+
+    /**
+     * Constructs a new {@code EntityCache}.
+     *
+     * @param maxSize The maximum number of entities to keep.
+     * @param ttlMs   How long, in milliseconds, an entity stays valid after being cached.
+     */
+    public EntityCache(int maxSize, long ttlMs) {
+        this(maxSize, ttlMs, SystemClock::elapsedRealtime);
+    }
+
+    /**
+     * Constructs a new {@code EntityCache} that tells the time by {@code clock}.
+     *
+     * @param maxSize The maximum number of entities to keep.
+     * @param ttlMs   How long, in milliseconds, an entity stays valid after being cached.
+     * @param clock   The clock entries are loaded and expire by.
+     */
+    public EntityCache(int maxSize, long ttlMs, @NonNull Clock clock) {
+        this.ttlMs = ttlMs;
+        this.clock = clock;
+        // Access-ordered so the eldest entry is the least recently used one
+        this.entries = new LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry<T>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Retrieves an entity, loading it with {@code loader} only if it is not cached, has expired,
+     * and is not already being loaded.
+     *
+     * @param id     The ID of the entity.
+     * @param loader The loader used on a cache miss.
+     * @return A {@link Task} that completes with the cached or loaded entity.
+     */
+    public synchronized Task<T> get(@NonNull String id, @NonNull Loader<T> loader) {
+        T cached = getIfPresent(id);
+        if (cached != null) {
+            return Tasks.forResult(cached);
+        }
+
+        Task<T> pending = inFlight.get(id);
+        if (pending != null) {
+            return pending;
+        }
+
+        // Run inline so the cache is updated before any caller's listeners observe the result
+        Task<T> task = loader.load(id).continueWithTask(Runnable::run, loaded -> onLoaded(id, loaded));
+        if (!task.isComplete()) {
+            inFlight.put(id, task);
+        }
+        return task;
+    }
+
+    /**
+     * Retrieves an entity only if it is cached and has not expired.
+     *
+     * @param id The ID of the entity.
+     * @return The cached entity, or {@code null} if absent or expired.
+     */
+    @Nullable
+    public synchronized T getIfPresent(@NonNull String id) {
+        Entry<T> entry = entries.get(id);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.now() - entry.loadedAt > ttlMs) {
+            entries.remove(id);
+            return null;
+        }
+        return entry.value;
+    }
+
+    /**
+     * Stores an entity, replacing any cached instance with the same ID.
+     *
+     * @param id    The ID of the entity.
+     * @param value The entity to store.
+     */
+    public synchronized void put(@NonNull String id, @NonNull T value) {
+        entries.put(id, new Entry<>(value, clock.now()));
+    }
+
+    /**
+     * Stores an entity unless a live instance with the same ID is already cached.
+     *
+     * @param id    The ID of the entity.
+     * @param value The freshly loaded entity.
+     * @return The live instance for {@code id}, which is {@code value} if none was cached.
+     */
+    public synchronized T putIfAbsent(@NonNull String id, @NonNull T value) {
+        T live = getIfPresent(id);
+        if (live == null) {
+            live = value;
+            put(id, live);
+        }
+        return live;
+    }
+
+    /**
+     * Removes an entity from the cache.
+     *
+     * @param id The ID of the entity.
+     */
+    public synchronized void invalidate(@NonNull String id) {
+        entries.remove(id);
+    }
+
+    /**
+     * Removes all entities from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Stores a freshly loaded entity and resolves the load to the canonical instance.
+     *
+     * @param id     The ID of the entity.
+     * @param loaded The completed load.
+     * @return A {@link Task} with the live instance for {@code id}, or the failed load.
+     */
+    private synchronized Task<T> onLoaded(String id, Task<T> loaded) {
+        inFlight.remove(id);
+        if (!loaded.isSuccessful() || loaded.getResult() == null) {
+            return loaded;
+        }
+        // Keep the instance that is already live, if one was stored while loading
+        return Tasks.forResult(putIfAbsent(id, loaded.getResult()));
+    }
+}
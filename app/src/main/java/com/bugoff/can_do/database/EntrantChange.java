@@ -0,0 +1,158 @@
+package com.bugoff.can_do.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * {@code EntrantChange} records how a single entrant of an event using
+ * {@link com.bugoff.can_do.event.Event.EntrantStorage#SUBCOLLECTION} changed since the last write:
+ * the entrant lists the user joined or left, and whether their status or location was set.
+ *
+ * <p>Changes are deltas rather than the entrant's whole state, so writing them does not overwrite
+ * changes others made to the same entrant meanwhile. Whether a join or leave changes a list total
+ * depends on the stored membership, so counter increments are derived from the stored entrant
+ * document when the change is written (see {@link EntrantSubcollection#apply}), not from local
+ * state that may be stale.</p>
+ */
+public class EntrantChange {
+    private final Set<String> joined = new LinkedHashSet<>();
+    private final Set<String> left = new LinkedHashSet<>();
+    private boolean statusSet;
+    private String status;
+    private boolean locationSet;
+    private Double latitude;
+    private Double longitude;
+
+    /**
+     * Records that the user joined an entrant list, cancelling an earlier leave of the same list.
+     *
+     * @param list The name of the entrant list.
+     * @return This change.
+     */
+    public EntrantChange join(@NonNull String list) {
+        if (!left.remove(list)) {
+            joined.add(list);
+        }
+        return this;
+    }
+
+    /**
+     * Records that the user left an entrant list, cancelling an earlier join of the same list.
+     *
+     * @param list The name of the entrant list.
+     * @return This change.
+     */
+    public EntrantChange leave(@NonNull String list) {
+        if (!joined.remove(list)) {
+            left.add(list);
+        }
+        return this;
+    }
+
+    /**
+     * Records the user's new status.
+     *
+     * @param status The name of the status, or {@code null} if the user has none.
+     * @return This change.
+     */
+    public EntrantChange setStatus(@Nullable String status) {
+        this.statusSet = true;
+        this.status = status;
+        return this;
+    }
+
+    /**
+     * Records the user's new location.
+     *
+     * @param latitude  The latitude, or {@code null} if the location was removed.
+     * @param longitude The longitude, or {@code null} if the location was removed.
+     * @return This change.
+     */
+    public EntrantChange setLocation(@Nullable Double latitude, @Nullable Double longitude) {
+        this.locationSet = true;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        return this;
+    }
+
+    /**
+     * Adds a change that was made before this one, e.g. one that failed to be written, so that
+     * this change holds the effect of both. Values set by this change win.
+     *
+     * @param earlier The earlier change.
+     */
+    public void addEarlier(@NonNull EntrantChange earlier) {
+        Set<String> laterJoined = new LinkedHashSet<>(joined);
+        Set<String> laterLeft = new LinkedHashSet<>(left);
+        joined.clear();
+        left.clear();
+        joined.addAll(earlier.joined);
+        left.addAll(earlier.left);
+        for (String list : laterJoined) {
+            join(list);
+        }
+        for (String list : laterLeft) {
+            leave(list);
+        }
+        if (!statusSet && earlier.statusSet) {
+            setStatus(earlier.status);
+        }
+        if (!locationSet && earlier.locationSet) {
+            setLocation(earlier.latitude, earlier.longitude);
+        }
+    }
+
+    public Set<String> getJoined() {
+        return Collections.unmodifiableSet(joined);
+    }
+
+    public Set<String> getLeft() {
+        return Collections.unmodifiableSet(left);
+    }
+
+    public boolean isStatusSet() {
+        return statusSet;
+    }
+
+    @Nullable
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean isLocationSet() {
+        return locationSet;
+    }
+
+    @Nullable
+    public Double getLatitude() {
+        return latitude;
+    }
+
+    @Nullable
+    public Double getLongitude() {
+        return longitude;
+    }
+
+    /**
+     * Checks whether writing this change can change the entrant totals, i.e. it joins or leaves a
+     * list or sets the status, so it must be written where the stored entrant is read.
+     *
+     * @return {@code true} if the counter shards may change; {@code false} otherwise.
+     */
+    public boolean affectsCounters() {
+        return !joined.isEmpty() || !left.isEmpty() || statusSet;
+    }
+
+    /**
+     * Checks whether this change changes nothing.
+     *
+     * @return {@code true} if there is nothing to write; {@code false} otherwise.
+     */
+    public boolean isEmpty() {
+        return !affectsCounters() && !locationSet;
+    }
+}
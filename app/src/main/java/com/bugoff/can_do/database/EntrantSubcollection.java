@@ -0,0 +1,414 @@
+package com.bugoff.can_do.database;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.bugoff.can_do.event.Event;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * {@code EntrantSubcollection} persists the entrants of events that use
+ * {@link Event.EntrantStorage#SUBCOLLECTION}.
+ *
+ * <p>Each entrant is a small document in {@code events/{id}/entrants/{userId}} holding the lists
+ * the user belongs to, their status and location. Joins and status changes of different users
+ * therefore write different documents and are not limited by the event document's size or write
+ * rate. Per-list and per-status totals are kept in {@value #NUM_SHARDS} counter shards in
+ * {@code events/{id}/entrantCounters}, each incremented atomically, so totals can be read
+ * without loading the entrants.</p>
+ */
+public final class EntrantSubcollection {
+    private static final String TAG = "EntrantSubcollection";
+    static final int NUM_SHARDS = 10;
+    // Firestore accepts at most 500 writes per batch or transaction
+    private static final int MAX_BATCH_WRITES = 450;
+    // Entrants written per transaction, each with one write, plus one counter shard
+    private static final int MAX_TRANSACTION_ENTRANTS = 200;
+    // Tolerance for clock skew between this device and the server when following recent changes
+    private static final long SYNC_MARGIN_MS = 60 * 1000;
+    private static final Random random = new Random();
+
+    private EntrantSubcollection() {
+    }
+
+    /**
+     * Gets the entrants subcollection of an event.
+     *
+     * @param eventRef The event document.
+     * @return The collection holding one document per entrant.
+     */
+    public static CollectionReference entrants(@NonNull DocumentReference eventRef) {
+        return eventRef.collection("entrants");
+    }
+
+    /**
+     * Gets the counter shards of an event.
+     *
+     * @param eventRef The event document.
+     * @return The collection holding the counter shards.
+     */
+    public static CollectionReference counters(@NonNull DocumentReference eventRef) {
+        return eventRef.collection("entrantCounters");
+    }
+
+    /**
+     * Writes the pending changes of an event: its document fields and its entrant changes. The
+     * document fields are written with {@link FirestoreHelper#saveChanges}.
+     *
+     * <p>Entrant changes are written as merges of only the fields that changed, so changes others
+     * made to the same entrants meanwhile are kept. Changes to an entrant's lists or status move
+     * the counter shards, so they are written in transactions of at most
+     * {@value #MAX_TRANSACTION_ENTRANTS} entrants that read the stored entrants first and derive the
+     * increments from them (see {@link #apply}); changes to locations alone are written in batches
+     * without a read. Changes that fail to be written are handed back to the event, so the next
+     * save retries them; as transactions need the server, this includes membership changes made
+     * while offline.</p>
+     *
+     * @param db       The Firestore instance.
+     * @param eventRef The event document.
+     * @param event    The event whose changes are written.
+     * @return A {@link Task} that completes when all changes have been written.
+     */
+    public static Task<Void> save(@NonNull FirebaseFirestore db, @NonNull DocumentReference eventRef, @NonNull Event event) {
+        Map<String, Object> changes = event.takeChanges();
+        Map<String, EntrantChange> entrants = event.takeEntrantChanges();
+
+        List<Task<Void>> commits = new ArrayList<>();
+        if (!changes.isEmpty()) {
+            commits.add(FirestoreHelper.compareAndSet(eventRef, event, changes));
+        }
+        Map<String, EntrantChange> counted = new LinkedHashMap<>();
+        WriteBatch batch = db.batch();
+        Map<String, EntrantChange> batched = new LinkedHashMap<>();
+        int located = 0;
+        for (Map.Entry<String, EntrantChange> entry : entrants.entrySet()) {
+            EntrantChange change = entry.getValue();
+            if (change.affectsCounters()) {
+                counted.put(entry.getKey(), change);
+                if (counted.size() == MAX_TRANSACTION_ENTRANTS) {
+                    commits.add(applyInTransaction(db, eventRef, event, counted));
+                    counted = new LinkedHashMap<>();
+                }
+            } else if (change.isLocationSet()) {
+                if (batched.size() == MAX_BATCH_WRITES) {
+                    commits.add(commit(batch, event, batched));
+                    batch = db.batch();
+                    batched = new LinkedHashMap<>();
+                }
+                Map<String, Object> update = new HashMap<>();
+                putLocation(update, change);
+                update.put("updatedAt", FieldValue.serverTimestamp());
+                batch.set(entrants(eventRef).document(entry.getKey()), update, SetOptions.merge());
+                batched.put(entry.getKey(), change);
+                located++;
+            }
+        }
+        if (!counted.isEmpty()) {
+            commits.add(applyInTransaction(db, eventRef, event, counted));
+        }
+        if (!batched.isEmpty()) {
+            commits.add(commit(batch, event, batched));
+        }
+        WriteCounter.getInstance().record("entrants", located);
+        return Tasks.whenAll(commits);
+    }
+
+    /**
+     * Commits a batch of entrant location writes, handing them back to the event if the commit
+     * fails so the next save retries them.
+     *
+     * @param batch    The batch.
+     * @param event    The event the changes were taken from.
+     * @param entrants The entrant changes in the batch.
+     * @return A {@link Task} that completes when the batch has been committed.
+     */
+    private static Task<Void> commit(WriteBatch batch, Event event, Map<String, EntrantChange> entrants) {
+        return batch.commit().addOnFailureListener(e -> event.restoreEntrantChanges(entrants));
+    }
+
+    /**
+     * Writes entrant changes in a transaction that reads the stored entrants first, handing them
+     * back to the event if the transaction fails so the next save retries them.
+     *
+     * @param db       The Firestore instance.
+     * @param eventRef The event document.
+     * @param event    The event the changes were taken from.
+     * @param changes  The entrant changes, keyed by user ID.
+     * @return A {@link Task} that completes when the transaction has been committed.
+     */
+    private static Task<Void> applyInTransaction(FirebaseFirestore db, DocumentReference eventRef, Event event,
+                                                 Map<String, EntrantChange> changes) {
+        return db.runTransaction(transaction -> {
+            Map<String, DocumentSnapshot> stored = new HashMap<>();
+            for (String userId : changes.keySet()) {
+                stored.put(userId, transaction.get(entrants(eventRef).document(userId)));
+            }
+            return apply(transaction, eventRef, stored, changes);
+        }).continueWithTask(task -> {
+            if (!task.isSuccessful()) {
+                event.restoreEntrantChanges(changes);
+                return Tasks.forException(task.getException());
+            }
+            WriteCounter.getInstance().record("entrants", task.getResult());
+            WriteCounter.getInstance().record("entrantCounters", task.getResult() > 0 ? 1 : 0);
+            return Tasks.forResult(null);
+        });
+    }
+
+    /**
+     * Loads all entrants of an event into it.
+     *
+     * @param eventRef The event document.
+     * @param event    The event to load the entrants into.
+     * @return A {@link Task} that completes with {@code event} once its entrants are loaded.
+     */
+    public static Task<Event> load(@NonNull DocumentReference eventRef, @NonNull Event event) {
+        Date startedAt = new Date();
+        return entrants(eventRef).get().onSuccessTask(snapshot -> {
+            for (DocumentSnapshot doc : snapshot.getDocuments()) {
+                event.applyEntrant(doc.getId(), doc.getData());
+            }
+            event.setEntrantsSyncedAt(startedAt);
+            return Tasks.forResult(event);
+        });
+    }
+
+    /**
+     * Listens to entrant changes of an event and applies them in place. Only entrants updated
+     * since the event's entrants were loaded are followed, so the listener does not read every
+     * entrant again.
+     *
+     * @param eventRef The event document.
+     * @param event    The event to apply the changes to.
+     * @param onUpdate The listener notified with the event fields that changed.
+     * @return The registration of the underlying listener.
+     */
+    public static ListenerRegistration listen(@NonNull DocumentReference eventRef, @NonNull Event event,
+                                              @NonNull Event.OnUpdateListener onUpdate) {
+        Date syncedAt = event.getEntrantsSyncedAt();
+        Date since = new Date((syncedAt != null ? syncedAt.getTime() : System.currentTimeMillis()) - SYNC_MARGIN_MS);
+        return entrants(eventRef)
+                .whereGreaterThanOrEqualTo("updatedAt", since)
+                .addSnapshotListener((snapshots, e) -> {
+                    if (e != null) {
+                        Log.e(TAG, "Listen failed for entrants of event " + event.getId(), e);
+                        return;
+                    }
+                    if (snapshots == null) {
+                        return;
+                    }
+                    Set<String> changedFields = new LinkedHashSet<>();
+                    for (DocumentChange change : snapshots.getDocumentChanges()) {
+                        // Entrants are never deleted, so a REMOVED change only means it left the query
+                        if (change.getType() != DocumentChange.Type.REMOVED) {
+                            DocumentSnapshot doc = change.getDocument();
+                            changedFields.addAll(event.applyEntrant(doc.getId(), doc.getData()));
+                        }
+                    }
+                    if (!changedFields.isEmpty()) {
+                        onUpdate.onUpdate(changedFields);
+                    }
+                });
+    }
+
+    /**
+     * Reads the entrant totals of an event by summing its counter shards, without loading the entrants.
+     *
+     * @param eventRef The event document.
+     * @return A {@link Task} with the totals keyed by list name (e.g. {@code "waitingListEntrants"})
+     * or by {@code "status_<STATUS>"}.
+     */
+    public static Task<Map<String, Long>> getCounts(@NonNull DocumentReference eventRef) {
+        return counters(eventRef).get().onSuccessTask(snapshot -> {
+            Map<String, Long> totals = new HashMap<>();
+            for (DocumentSnapshot shard : snapshot.getDocuments()) {
+                Map<String, Object> data = shard.getData();
+                if (data == null) {
+                    continue;
+                }
+                for (Map.Entry<String, Object> entry : data.entrySet()) {
+                    if (entry.getValue() instanceof Number) {
+                        Long total = totals.get(entry.getKey());
+                        totals.put(entry.getKey(), (total != null ? total : 0) + ((Number) entry.getValue()).longValue());
+                    }
+                }
+            }
+            return Tasks.forResult(totals);
+        });
+    }
+
+    /**
+     * Reads the total of one counter of an event inside a transaction by summing its counter shards.
+     *
+     * @param transaction The transaction to read with.
+     * @param eventRef    The event document.
+     * @param counter     The counter name, e.g. {@code "waitingListEntrants"}.
+     * @return The total over all shards.
+     * @throws FirebaseFirestoreException If a shard cannot be read.
+     */
+    static long readCount(@NonNull Transaction transaction, @NonNull DocumentReference eventRef, @NonNull String counter)
+            throws FirebaseFirestoreException {
+        long total = 0;
+        for (int i = 0; i < NUM_SHARDS; i++) {
+            DocumentSnapshot shard = transaction.get(counters(eventRef).document(String.valueOf(i)));
+            Long count = shard.exists() ? shard.getLong(counter) : null;
+            total += count != null ? count : 0;
+        }
+        return total;
+    }
+
+    /**
+     * Gets the entrant lists an entrant document says the user belongs to.
+     *
+     * @param entrant The entrant document, which may not exist.
+     * @return A mutable list of entrant list names.
+     */
+    static List<String> getLists(@NonNull DocumentSnapshot entrant) {
+        List<String> lists = new ArrayList<>();
+        Object raw = entrant.exists() ? entrant.get("lists") : null;
+        if (raw instanceof List<?>) {
+            for (Object list : (List<?>) raw) {
+                if (list instanceof String) {
+                    lists.add((String) list);
+                }
+            }
+        }
+        return lists;
+    }
+
+    /**
+     * Moves entrants from one list to another inside a transaction. The entrant documents must
+     * have been read with the same transaction, see {@link #apply}.
+     *
+     * @param transaction The transaction to write with.
+     * @param eventRef    The event document.
+     * @param entrants    The entrant documents keyed by user ID.
+     * @param from        The list the entrants leave, or {@code null}.
+     * @param to          The list the entrants join, or {@code null}.
+     * @return The number of entrant documents written.
+     */
+    static int move(@NonNull Transaction transaction, @NonNull DocumentReference eventRef,
+                     @NonNull Map<String, DocumentSnapshot> entrants, String from, String to) {
+        Map<String, EntrantChange> changes = new LinkedHashMap<>();
+        for (String userId : entrants.keySet()) {
+            EntrantChange change = new EntrantChange();
+            if (from != null) {
+                change.leave(from);
+            }
+            if (to != null) {
+                change.join(to);
+            }
+            changes.put(userId, change);
+        }
+        return apply(transaction, eventRef, entrants, changes);
+    }
+
+    /**
+     * Writes entrant changes inside a transaction. The entrant documents must have been read with
+     * the same transaction, so the counters only change for entrants whose stored membership or
+     * status actually changes. Only the changed fields are written.
+     *
+     * @param transaction The transaction to write with.
+     * @param eventRef    The event document.
+     * @param entrants    The stored entrant documents keyed by user ID.
+     * @param changes     The entrant changes keyed by user ID.
+     * @return The number of entrant documents written.
+     */
+    static int apply(@NonNull Transaction transaction, @NonNull DocumentReference eventRef,
+                     @NonNull Map<String, DocumentSnapshot> entrants, @NonNull Map<String, EntrantChange> changes) {
+        Map<String, Long> deltas = new HashMap<>();
+        int written = 0;
+        for (Map.Entry<String, EntrantChange> entry : changes.entrySet()) {
+            EntrantChange change = entry.getValue();
+            DocumentSnapshot stored = entrants.get(entry.getKey());
+            Map<String, Object> update = new HashMap<>();
+
+            List<String> lists = getLists(stored);
+            boolean listsChanged = false;
+            for (String list : change.getLeft()) {
+                if (lists.remove(list)) {
+                    addDelta(deltas, list, -1);
+                    listsChanged = true;
+                }
+            }
+            for (String list : change.getJoined()) {
+                if (!lists.contains(list)) {
+                    lists.add(list);
+                    addDelta(deltas, list, 1);
+                    listsChanged = true;
+                }
+            }
+            if (listsChanged) {
+                update.put("lists", lists);
+            }
+            if (change.isStatusSet()) {
+                Object rawStatus = stored.exists() ? stored.get("status") : null;
+                String oldStatus = rawStatus instanceof String ? (String) rawStatus : null;
+                if (!Objects.equals(oldStatus, change.getStatus())) {
+                    if (oldStatus != null) {
+                        addDelta(deltas, "status_" + oldStatus, -1);
+                    }
+                    if (change.getStatus() != null) {
+                        addDelta(deltas, "status_" + change.getStatus(), 1);
+                    }
+                    update.put("status", change.getStatus());
+                }
+            }
+            if (change.isLocationSet()) {
+                putLocation(update, change);
+            }
+            if (!update.isEmpty()) {
+                update.put("updatedAt", FieldValue.serverTimestamp());
+                transaction.set(entrants(eventRef).document(entry.getKey()), update, SetOptions.merge());
+                written++;
+            }
+        }
+
+        Map<String, Object> increments = new HashMap<>();
+        for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+            if (entry.getValue() != 0) {
+                increments.put(entry.getKey(), FieldValue.increment(entry.getValue()));
+            }
+        }
+        if (!increments.isEmpty()) {
+            // A random shard spreads concurrent increments over several documents
+            DocumentReference shard = counters(eventRef).document(String.valueOf(random.nextInt(NUM_SHARDS)));
+            transaction.set(shard, increments, SetOptions.merge());
+        }
+        return written;
+    }
+
+    private static void addDelta(Map<String, Long> deltas, String counter, long delta) {
+        Long current = deltas.get(counter);
+        deltas.put(counter, (current != null ? current : 0) + delta);
+    }
+
+    private static void putLocation(Map<String, Object> update, EntrantChange change) {
+        update.put("latitude", change.getLatitude());
+        update.put("longitude", change.getLongitude());
+    }
+}
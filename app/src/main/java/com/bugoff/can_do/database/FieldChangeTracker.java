@@ -0,0 +1,196 @@
+package com.bugoff.can_do.database;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.firestore.FieldValue;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code FieldChangeTracker} records which fields of a {@link DatabaseEntity} changed since the
+ * last write, so that only those fields are sent to Firestore instead of the whole document.
+ *
+ * <p>Changes are tracked at three granularities:</p>
+ * <ul>
+ *     <li>Whole fields, written with their current value.</li>
+ *     <li>Array membership, written with {@link FieldValue#arrayUnion} / {@link FieldValue#arrayRemove}.</li>
+ *     <li>Single map entries, written as dotted field paths (or {@link FieldValue#delete()}).</li>
+ * </ul>
+ *
+ * <p>Values are not captured when a change is marked; they are read from the entity's
+ * {@link DatabaseEntity#toMap()} when the update is built, so the latest state is always written.</p>
+ */
+public class FieldChangeTracker {
+    private final Set<String> changedFields = new LinkedHashSet<>();
+    private final Map<String, Set<Object>> arrayUnions = new HashMap<>();
+    private final Map<String, Set<Object>> arrayRemovals = new HashMap<>();
+    private final Map<String, Set<String>> changedEntries = new HashMap<>();
+
+    /**
+     * Marks a whole field as changed.
+     *
+     * @param field The name of the field.
+     */
+    public synchronized void markChanged(@NonNull String field) {
+        changedFields.add(field);
+        arrayUnions.remove(field);
+        arrayRemovals.remove(field);
+        changedEntries.remove(field);
+    }
+
+    /**
+     * Marks an element as added to an array field.
+     *
+     * @param field   The name of the array field.
+     * @param element The element that was added.
+     */
+    public synchronized void markAdded(@NonNull String field, @NonNull Object element) {
+        if (changedFields.contains(field)) {
+            return;
+        }
+        // Firestore can't union and remove on the same field in one update
+        if (arrayRemovals.containsKey(field)) {
+            markChanged(field);
+            return;
+        }
+        getOrCreate(arrayUnions, field).add(element);
+    }
+
+    /**
+     * Marks an element as removed from an array field.
+     *
+     * @param field   The name of the array field.
+     * @param element The element that was removed.
+     */
+    public synchronized void markRemoved(@NonNull String field, @NonNull Object element) {
+        if (changedFields.contains(field)) {
+            return;
+        }
+        if (arrayUnions.containsKey(field)) {
+            markChanged(field);
+            return;
+        }
+        getOrCreate(arrayRemovals, field).add(element);
+    }
+
+    /**
+     * Marks a single entry of a map field as changed or removed.
+     *
+     * @param field The name of the map field.
+     * @param key   The key of the entry that changed.
+     */
+    public synchronized void markEntryChanged(@NonNull String field, @NonNull String key) {
+        if (changedFields.contains(field)) {
+            return;
+        }
+        getOrCreate(changedEntries, field).add(key);
+    }
+
+    /**
+     * Checks whether a field has a change that has not been written yet.
+     *
+     * @param field The name of the field.
+     * @return {@code true} if the field has a pending change; {@code false} otherwise.
+     */
+    public synchronized boolean isPending(@NonNull String field) {
+        return changedFields.contains(field) || arrayUnions.containsKey(field)
+                || arrayRemovals.containsKey(field) || changedEntries.containsKey(field);
+    }
+
+    /**
+     * Gets the names of all fields that have a change that has not been written yet.
+     *
+     * @return The top-level field names with a pending change.
+     */
+    @NonNull
+    public synchronized Set<String> getPendingFields() {
+        Set<String> fields = new LinkedHashSet<>(changedFields);
+        fields.addAll(arrayUnions.keySet());
+        fields.addAll(arrayRemovals.keySet());
+        fields.addAll(changedEntries.keySet());
+        return fields;
+    }
+
+    /**
+     * Checks whether any change has been recorded.
+     *
+     * @return {@code true} if there are no pending changes; {@code false} otherwise.
+     */
+    public synchronized boolean isEmpty() {
+        return changedFields.isEmpty() && arrayUnions.isEmpty()
+                && arrayRemovals.isEmpty() && changedEntries.isEmpty();
+    }
+
+    /**
+     * Clears all recorded changes, e.g. after the full document has been written.
+     */
+    public synchronized void clear() {
+        changedFields.clear();
+        arrayUnions.clear();
+        arrayRemovals.clear();
+        changedEntries.clear();
+    }
+
+    /**
+     * Builds a Firestore {@code update()} map containing only the recorded changes and clears them.
+     *
+     * @param fullMap The entity's current state, as returned by {@link DatabaseEntity#toMap()}.
+     * @return A map of field paths to values or field transforms.
+     */
+    @NonNull
+    public synchronized Map<String, Object> takeUpdate(@NonNull Map<String, Object> fullMap) {
+        Map<String, Object> update = new LinkedHashMap<>();
+        for (String field : changedFields) {
+            // A field that is no longer part of the entity is removed from the document
+            update.put(field, fullMap.containsKey(field) ? fullMap.get(field) : FieldValue.delete());
+        }
+        for (Map.Entry<String, Set<Object>> entry : arrayUnions.entrySet()) {
+            update.put(entry.getKey(), FieldValue.arrayUnion(entry.getValue().toArray()));
+        }
+        for (Map.Entry<String, Set<Object>> entry : arrayRemovals.entrySet()) {
+            update.put(entry.getKey(), FieldValue.arrayRemove(entry.getValue().toArray()));
+        }
+        for (Map.Entry<String, Set<String>> entry : changedEntries.entrySet()) {
+            Object value = fullMap.get(entry.getKey());
+            Map<?, ?> current = value instanceof Map<?, ?> ? (Map<?, ?>) value : new HashMap<>();
+            for (String key : entry.getValue()) {
+                String path = entry.getKey() + "." + key;
+                update.put(path, current.containsKey(key) ? current.get(key) : FieldValue.delete());
+            }
+        }
+        clear();
+        return update;
+    }
+
+    /**
+     * Marks the fields of an update that could not be written as changed again, so they are
+     * written with the next update. Array transforms are restored as whole fields, as the update
+     * no longer tells which elements they carried; the values are read from the entity again.
+     *
+     * @param paths The field paths of the failed update, as returned by {@link #takeUpdate}.
+     */
+    public synchronized void restore(@NonNull Collection<String> paths) {
+        for (String path : paths) {
+            int dot = path.indexOf('.');
+            if (dot >= 0) {
+                markEntryChanged(path.substring(0, dot), path.substring(dot + 1));
+            } else {
+                markChanged(path);
+            }
+        }
+    }
+
+    private static <T> Set<T> getOrCreate(Map<String, Set<T>> map, String field) {
+        Set<T> set = map.get(field);
+        if (set == null) {
+            set = new LinkedHashSet<>();
+            map.put(field, set);
+        }
+        return set;
+    }
+}
@@ -2,18 +2,34 @@ package com.bugoff.can_do.database;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import com.bugoff.can_do.event.Event;
 import com.bugoff.can_do.facility.Facility;
 import com.bugoff.can_do.notification.Notification;
 import com.bugoff.can_do.user.User;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.TransactionOptions;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * The {@code FirebaseBehavior} class implements the {@link DatabaseBehavior} interface and provides concrete methods
@@ -21,7 +37,17 @@ import java.util.Map;
  * attaching and detaching listeners, and retrieving or adding users, events, facilities, and notifications.
  */
 public class FirebaseBehavior implements DatabaseBehavior {
+    // Maximum number of values Firestore accepts in a single whereIn clause
+    private static final int MAX_IN_QUERY_SIZE = 30;
+    // Attempts for membership transactions before giving up under contention
+    private static final int MAX_MEMBERSHIP_ATTEMPTS = 3;
+    // Waiting list size below the limit from which joins check the exact size in their transaction
+    private static final int CAPACITY_MARGIN = 20;
+    private static final String WAITING_LIST = "waitingListEntrants";
     private final Map<Event, ListenerRegistration> eventListeners = new HashMap<>();
+    private final Map<Event, ListenerRegistration> entrantListeners = new HashMap<>();
+    // Entrant storage of the events seen so far, so membership changes can pick a write without a read
+    private final Map<String, Event.EntrantStorage> entrantStorages = new HashMap<>();
     private final FirebaseFirestore db;
 
     /**
@@ -32,37 +58,58 @@ public class FirebaseBehavior implements DatabaseBehavior {
     }
     /**
      * Saves the specified {@link Event} object to the Firestore database under the "events" collection.
+     * Only the fields changed since the last save are written.
      *
      * @param event The {@link Event} object to be saved.
+     * @return A {@link Task} representing the asynchronous save operation.
      */
     @Override
-    public void saveEvent(Event event) {
+    public Task<Void> saveEvent(Event event) {
+        entrantStorages.put(event.getId(), event.getEntrantStorage());
         DocumentReference eventRef = db.collection("events").document(event.getId());
-        eventRef.set(event.toMap())
+        Task<Void> save = event.getEntrantStorage() == Event.EntrantStorage.SUBCOLLECTION
+                ? EntrantSubcollection.save(db, eventRef, event)
+                : FirestoreHelper.saveChanges(eventRef, event);
+        return save
                 .addOnSuccessListener(aVoid -> Log.d("FirebaseBehavior", "Event saved successfully"))
                 .addOnFailureListener(e -> Log.e("FirebaseBehavior", "Error saving event", e));
     }
     /**
      * Attaches a snapshot listener to the specified {@link Event} in the Firestore database.
-     * The {@code onUpdate} runnable is executed whenever the event data is updated.
+     * Each snapshot is applied to {@code event} in place, and {@code onUpdate} is notified with the
+     * fields that changed, so no additional read is needed to observe the new data.
      *
      * @param event    The {@link Event} object to listen to.
-     * @param onUpdate A {@link Runnable} to execute when the event is updated.
+     * @param onUpdate The listener notified with the changed fields when the event is updated.
      */
     @Override
-    public void attachListener(Event event, Runnable onUpdate) {
+    public void attachListener(Event event, Event.OnUpdateListener onUpdate) {
         DocumentReference eventRef = db.collection("events").document(event.getId());
-        ListenerRegistration registration = eventRef.addSnapshotListener((snapshot, e) -> {
+        // Event instances with the same ID share one underlying listener through the registry
+        ListenerRegistration registration = SnapshotListenerRegistry.getInstance().subscribe(eventRef, (snapshot, e) -> {
             if (e != null) {
                 Log.e("FirebaseBehavior", "Listen failed", e);
                 return;
             }
 
             if (snapshot != null && snapshot.exists()) {
-                onUpdate.run();
+                Set<String> changedFields = event.applySnapshot(snapshot);
+                if (!changedFields.isEmpty()) {
+                    onUpdate.onUpdate(changedFields);
+                }
             }
         });
-        eventListeners.put(event, registration);
+        ListenerRegistration previous = eventListeners.put(event, registration);
+        if (previous != null) {
+            previous.remove();
+        }
+
+        if (event.getEntrantStorage() == Event.EntrantStorage.SUBCOLLECTION) {
+            ListenerRegistration previousEntrants = entrantListeners.put(event, EntrantSubcollection.listen(eventRef, event, onUpdate));
+            if (previousEntrants != null) {
+                previousEntrants.remove();
+            }
+        }
     }
     /**
      * Detaches the snapshot listener associated with the specified {@link Event}.
@@ -75,6 +122,10 @@ public class FirebaseBehavior implements DatabaseBehavior {
         if (registration != null) {
             registration.remove();
         }
+        ListenerRegistration entrantRegistration = entrantListeners.remove(event);
+        if (entrantRegistration != null) {
+            entrantRegistration.remove();
+        }
     }
     /**
      * Retrieves a {@link User} object from the Firestore database by the specified {@code userId}.
@@ -101,7 +152,7 @@ public class FirebaseBehavior implements DatabaseBehavior {
     }
     /**
      * Retrieves an {@link Event} object from the Firestore database by the specified {@code eventId}.
-     * This method also retrieves the associated {@link Facility} for the event.
+     * The associated {@link Facility} is not read; it is loaded on first use through the event's facility reference.
      *
      * @param eventId The ID of the event to retrieve.
      * @return A {@link Task} representing the asynchronous retrieval operation. The task will complete successfully
@@ -114,13 +165,16 @@ public class FirebaseBehavior implements DatabaseBehavior {
                 .get()
                 .addOnSuccessListener(documentSnapshot -> {
                     if (documentSnapshot.exists()) {
-                        String facilityId = documentSnapshot.getString("facilityId");
-                        getFacility(facilityId)
-                                .addOnSuccessListener(facility -> {
-                                    Event event = new Event(facility, documentSnapshot);
-                                    taskCompletionSource.setResult(event);
-                                })
-                                .addOnFailureListener(taskCompletionSource::setException);
+                        Event event = new Event(documentSnapshot);
+                        entrantStorages.put(eventId, event.getEntrantStorage());
+                        if (event.getEntrantStorage() == Event.EntrantStorage.SUBCOLLECTION) {
+                            // Entrants live in their own documents and are loaded before the event is handed out
+                            EntrantSubcollection.load(documentSnapshot.getReference(), event)
+                                    .addOnSuccessListener(taskCompletionSource::setResult)
+                                    .addOnFailureListener(taskCompletionSource::setException);
+                        } else {
+                            taskCompletionSource.setResult(event);
+                        }
                     } else {
                         taskCompletionSource.setException(new Exception("Event not found"));
                     }
@@ -151,35 +205,125 @@ public class FirebaseBehavior implements DatabaseBehavior {
                 .addOnFailureListener(taskCompletionSource::setException);
         return taskCompletionSource.getTask();
     }
+    /**
+     * Retrieves multiple {@link User} objects from the Firestore database with batched {@code whereIn} queries.
+     *
+     * @param userIds The IDs of the users to retrieve.
+     * @return A {@link Task} that completes with a map of user IDs to the users that were found.
+     * IDs without a matching document are omitted.
+     */
+    @Override
+    public Task<Map<String, User>> getUsers(Collection<String> userIds) {
+        return getDocuments("users", userIds).onSuccessTask(documents -> {
+            Map<String, User> users = new LinkedHashMap<>();
+            for (DocumentSnapshot doc : documents) {
+                users.put(doc.getId(), new User(doc));
+            }
+            return Tasks.forResult(users);
+        });
+    }
+    /**
+     * Retrieves multiple {@link Event} objects from the Firestore database with batched {@code whereIn} queries.
+     * The facilities of the events are not read; they are loaded on first use.
+     *
+     * @param eventIds The IDs of the events to retrieve.
+     * @return A {@link Task} that completes with a map of event IDs to the events that were found.
+     * IDs without a matching document are omitted.
+     */
+    @Override
+    public Task<Map<String, Event>> getEvents(Collection<String> eventIds) {
+        return getDocuments("events", eventIds).onSuccessTask(documents -> {
+            Map<String, Event> events = new LinkedHashMap<>();
+            List<Task<Event>> entrantLoads = new ArrayList<>();
+            for (DocumentSnapshot doc : documents) {
+                Event event = new Event(doc);
+                events.put(doc.getId(), event);
+                entrantStorages.put(doc.getId(), event.getEntrantStorage());
+                if (event.getEntrantStorage() == Event.EntrantStorage.SUBCOLLECTION) {
+                    entrantLoads.add(EntrantSubcollection.load(doc.getReference(), event));
+                }
+            }
+            return Tasks.whenAll(entrantLoads).continueWith(ignored -> events);
+        });
+    }
+    /**
+     * Fetches the documents with the given IDs from a collection. The IDs are split into chunks that fit
+     * in a single {@code whereIn} query, and all chunks are queried in parallel.
+     *
+     * @param collection The name of the collection.
+     * @param ids        The document IDs to fetch.
+     * @return A {@link Task} that completes with the documents that exist.
+     */
+    private Task<List<DocumentSnapshot>> getDocuments(String collection, Collection<String> ids) {
+        List<String> distinctIds = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            if (id != null && !id.trim().isEmpty()) {
+                distinctIds.add(id);
+            }
+        }
+
+        List<Task<QuerySnapshot>> queries = new ArrayList<>();
+        for (int i = 0; i < distinctIds.size(); i += MAX_IN_QUERY_SIZE) {
+            List<String> chunk = new ArrayList<>(distinctIds.subList(i, Math.min(i + MAX_IN_QUERY_SIZE, distinctIds.size())));
+            queries.add(db.collection(collection).whereIn(FieldPath.documentId(), chunk).get());
+        }
+
+        return Tasks.<QuerySnapshot>whenAllSuccess(queries).onSuccessTask(snapshots -> {
+            List<DocumentSnapshot> documents = new ArrayList<>();
+            for (QuerySnapshot snapshot : snapshots) {
+                documents.addAll(snapshot.getDocuments());
+            }
+            return Tasks.forResult(documents);
+        });
+    }
     /**
      * Adds a {@link User} object to the Firestore database under the "users" collection.
+     * If it is already stored, its tracked changes are saved with compare-and-set instead of
+     * overwriting the document, see {@link FirestoreHelper#saveChanges}.
      *
      * @param user The {@link User} object to add.
      * @return A {@link Task} representing the asynchronous operation of adding the user.
      */
     @Override
     public Task<Void> addUser(User user) {
-        return db.collection("users").document(user.getId()).set(user.toMap());
+        // The document is written here, so any buffered write is redundant
+        WriteBehindBuffer.getInstance().discard("users/" + user.getId());
+        return FirestoreHelper.saveChanges(db.collection("users").document(user.getId()), user);
     }
     /**
      * Adds an {@link Event} object to the Firestore database under the "events" collection.
+     * If it is already stored, its tracked changes are saved with compare-and-set instead of
+     * overwriting the document, see {@link FirestoreHelper#saveChanges}.
      *
      * @param event The {@link Event} object to add.
      * @return A {@link Task} representing the asynchronous operation of adding the event.
      */
     @Override
     public Task<Void> addEvent(Event event) {
-        return db.collection("events").document(event.getId()).set(event.toMap());
+        // The document is written here, so any buffered write is redundant
+        WriteBehindBuffer.getInstance().discard("events/" + event.getId());
+        entrantStorages.put(event.getId(), event.getEntrantStorage());
+        DocumentReference eventRef = db.collection("events").document(event.getId());
+        Task<Void> add = FirestoreHelper.saveChanges(eventRef, event);
+        if (event.getEntrantStorage() == Event.EntrantStorage.SUBCOLLECTION) {
+            // The entrants are not part of the document, so they are written once it exists
+            return add.onSuccessTask(aVoid -> EntrantSubcollection.save(db, eventRef, event));
+        }
+        return add;
     }
     /**
      * Adds a {@link Facility} object to the Firestore database under the "facilities" collection.
+     * If it is already stored, its tracked changes are saved with compare-and-set instead of
+     * overwriting the document, see {@link FirestoreHelper#saveChanges}.
      *
      * @param facility The {@link Facility} object to add.
      * @return A {@link Task} representing the asynchronous operation of adding the facility.
      */
     @Override
     public Task<Void> addFacility(Facility facility) {
-        return db.collection("facilities").document(facility.getId()).set(facility.toMap());
+        // The document is written here, so any buffered write is redundant
+        WriteBehindBuffer.getInstance().discard("facilities/" + facility.getId());
+        return FirestoreHelper.saveChanges(db.collection("facilities").document(facility.getId()), facility);
     }
     /**
      * Adds a {@link Notification} object to the Firestore database under the "notifications" collection.
@@ -199,5 +343,143 @@ public class FirebaseBehavior implements DatabaseBehavior {
         FirestoreHelper.getInstance().getDb().collection("notifications")
                 .document(notification.getId())
                 .set(notificationMap);
+        WriteCounter.getInstance().record("notifications", 1);
+    }
+    /**
+     * Adds a user to the waiting list of an event, unless the waiting list is full.
+     *
+     * <p>The capacity check needs the current size of the waiting list, so this is a transaction
+     * that reads the event and adds the user in the same atomic step. It is retried at most
+     * {@value #MAX_MEMBERSHIP_ATTEMPTS} times when other joins change the event concurrently.</p>
+     *
+     * <p>For events using {@link Event.EntrantStorage#SUBCOLLECTION}, the transaction only reads
+     * the event and the joining user's entrant document, so joins of different users do not
+     * conflict. The waiting list size is summed from the counter shards before the transaction,
+     * and is only read again inside it once the list is within {@value #CAPACITY_MARGIN} entrants
+     * of the limit. The limit is therefore approximate: far from it, it can only be exceeded if
+     * more than {@value #CAPACITY_MARGIN} users join at the same moment.</p>
+     *
+     * @param eventId The ID of the event.
+     * @param userId  The ID of the user joining.
+     * @return A {@link Task} with the {@link JoinResult}, or failing if the event does not exist.
+     */
+    @Override
+    public Task<JoinResult> joinWaitlist(String eventId, String userId) {
+        DocumentReference eventRef = db.collection("events").document(eventId);
+        return getEntrantStorage(eventRef).onSuccessTask(storage -> storage == Event.EntrantStorage.SUBCOLLECTION
+                ? EntrantSubcollection.getCounts(eventRef) : Tasks.<Map<String, Long>>forResult(null)
+        ).onSuccessTask(counts -> db.runTransaction(membershipOptions(), transaction -> {
+            DocumentSnapshot eventDoc = transaction.get(eventRef);
+            if (!eventDoc.exists()) {
+                throw new FirebaseFirestoreException("Event not found", FirebaseFirestoreException.Code.NOT_FOUND);
+            }
+            Long max = eventDoc.getLong("maxNumberOfParticipants");
+            if (Event.EntrantStorage.SUBCOLLECTION.name().equals(eventDoc.getString("entrantStorage"))) {
+                DocumentSnapshot entrant = transaction.get(EntrantSubcollection.entrants(eventRef).document(userId));
+                if (EntrantSubcollection.getLists(entrant).contains(WAITING_LIST)) {
+                    return JoinResult.ALREADY_JOINED;
+                }
+                // Only joins close to the limit read the shards, which every join writes, in the transaction
+                Long counted = counts != null ? counts.get(WAITING_LIST) : null;
+                boolean nearLimit = max != null && (counts == null
+                        || (counted != null ? counted : 0) + CAPACITY_MARGIN >= max);
+                if (nearLimit && EntrantSubcollection.readCount(transaction, eventRef, WAITING_LIST) >= max) {
+                    return JoinResult.FULL;
+                }
+                EntrantSubcollection.move(transaction, eventRef, Collections.singletonMap(userId, entrant), null, WAITING_LIST);
+            } else {
+                List<?> waitingList = (List<?>) eventDoc.get(WAITING_LIST);
+                if (waitingList != null && waitingList.contains(userId)) {
+                    return JoinResult.ALREADY_JOINED;
+                }
+                if (max != null && (waitingList != null ? waitingList.size() : 0) >= max) {
+                    return JoinResult.FULL;
+                }
+                Map<String, Object> update = new HashMap<>();
+                update.put(WAITING_LIST, FieldValue.arrayUnion(userId));
+                VersionStamp.bump(update, WAITING_LIST);
+                transaction.update(eventRef, update);
+            }
+            return JoinResult.JOINED;
+        }));
+    }
+    /**
+     * Moves users from one entrant list of an event to another.
+     *
+     * <p>For events with embedded entrants this is a single update that removes the users from
+     * {@code from} and adds them to {@code to} with array transforms, so it needs no read and
+     * cannot overwrite entrants written concurrently by others. For events using
+     * {@link Event.EntrantStorage#SUBCOLLECTION}, the entrant documents are read in a transaction
+     * so the counter shards only change for users whose membership actually changes.</p>
+     *
+     * @param eventId The ID of the event.
+     * @param userIds The IDs of the users to move.
+     * @param from    The list the users leave, or {@code null} to only add them to {@code to}.
+     * @param to      The list the users join, or {@code null} to only remove them from {@code from}.
+     * @return A {@link Task} that completes once the move has been written.
+     * @throws IllegalArgumentException If the lists are not a valid move, see {@link Event#checkEntrantMove}.
+     */
+    @Override
+    public Task<Void> moveEntrants(String eventId, Collection<String> userIds, @Nullable String from, @Nullable String to) {
+        Event.checkEntrantMove(from, to);
+        if (userIds.isEmpty()) {
+            return Tasks.forResult(null);
+        }
+        DocumentReference eventRef = db.collection("events").document(eventId);
+        return getEntrantStorage(eventRef).onSuccessTask(storage -> {
+            if (storage == Event.EntrantStorage.SUBCOLLECTION) {
+                return db.runTransaction(membershipOptions(), transaction -> {
+                    Map<String, DocumentSnapshot> entrants = new LinkedHashMap<>();
+                    for (String userId : userIds) {
+                        entrants.put(userId, transaction.get(EntrantSubcollection.entrants(eventRef).document(userId)));
+                    }
+                    return EntrantSubcollection.move(transaction, eventRef, entrants, from, to);
+                }).onSuccessTask(written -> {
+                    WriteCounter.getInstance().record("entrants", written);
+                    WriteCounter.getInstance().record("entrantCounters", written > 0 ? 1 : 0);
+                    return Tasks.<Void>forResult(null);
+                });
+            }
+            Object[] ids = userIds.toArray();
+            Map<String, Object> update = new HashMap<>();
+            if (from != null) {
+                update.put(from, FieldValue.arrayRemove(ids));
+            }
+            if (to != null) {
+                update.put(to, FieldValue.arrayUnion(ids));
+            }
+            if (from == null || to == null) {
+                VersionStamp.bump(update, from != null ? from : to);
+            } else {
+                VersionStamp.bump(update, from, to);
+            }
+            WriteCounter.getInstance().record("events", 1);
+            return eventRef.update(update);
+        });
+    }
+    /**
+     * Gets the entrant storage of an event, reading the event only if it has not been seen yet.
+     *
+     * @param eventRef The event document.
+     * @return A {@link Task} with the event's entrant storage.
+     */
+    private Task<Event.EntrantStorage> getEntrantStorage(DocumentReference eventRef) {
+        Event.EntrantStorage known = entrantStorages.get(eventRef.getId());
+        if (known != null) {
+            return Tasks.forResult(known);
+        }
+        return eventRef.get().onSuccessTask(doc -> {
+            if (!doc.exists()) {
+                return Tasks.forException(new Exception("Event not found"));
+            }
+            Event.EntrantStorage storage = Event.EntrantStorage.SUBCOLLECTION.name().equals(doc.getString("entrantStorage"))
+                    ? Event.EntrantStorage.SUBCOLLECTION : Event.EntrantStorage.EMBEDDED;
+            entrantStorages.put(eventRef.getId(), storage);
+            return Tasks.forResult(storage);
+        });
+    }
+
+    private static TransactionOptions membershipOptions() {
+        return new TransactionOptions.Builder().setMaxAttempts(MAX_MEMBERSHIP_ATTEMPTS).build();
     }
 }
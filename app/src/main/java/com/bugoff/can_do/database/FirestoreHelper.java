@@ -1,11 +1,31 @@
 package com.bugoff.can_do.database;
 
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.SetOptions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * {@code FirestoreHelper} is a singleton class that provides a single instance of Firestore.
  */
 public class FirestoreHelper {
+    private static final String TAG = "FirestoreHelper";
     private static FirestoreHelper instance;
     private FirebaseFirestore db;
 
@@ -26,4 +46,233 @@ public class FirestoreHelper {
     public FirebaseFirestore getDb() {
         return db;
     }
+
+    /**
+     * Writes the changes tracked by an entity to its document. Writes the full document if nothing
+     * was tracked (e.g. an explicit {@code setRemote()} call), and creates it if it does not exist
+     * yet.
+     *
+     * <p>Scalar changes, array transforms and single map entries are written with a plain
+     * {@code update()} that bumps their field versions (see {@link VersionStamp#bump}), so they cost
+     * one write and no read; a concurrent change to the same scalar simply lands after or before
+     * it. Only changes replacing a whole list or map, which could silently drop what someone else
+     * added, go through a compare-and-set transaction.</p>
+     *
+     * <p>The transaction reads the stored document and resolves those changes against it field by
+     * field with {@link VersionedUpdate}: a field someone else wrote since the entity last saw it
+     * keeps the stored value, and the entity's other changes are still written. When Firestore
+     * retries the transaction because the document changed concurrently, only this resolution is
+     * repeated; the entity is not re-read or re-mutated. Once committed, the entity's
+     * {@link VersionStamp} is advanced and, if the document had been changed by someone else, the
+     * stored values of the fields it did not write are applied to it and its update listener is
+     * notified. The returned task then fails with a {@link SaveConflictException} naming the fields
+     * whose changes were rejected.</p>
+     *
+     * <p>Transactions need the server, so while offline the changes are written with a plain
+     * update instead (see {@link #writeUnchecked}), which Firestore queues until it reconnects. If
+     * a write fails otherwise, its changes are handed back to the entity with
+     * {@link DatabaseEntity#restoreChanges} so the next save retries them.</p>
+     *
+     * @param ref    The document to write to.
+     * @param entity The entity whose changes should be written.
+     * @return A {@link Task} representing the asynchronous write operation.
+     */
+    public static Task<Void> saveChanges(@NonNull DocumentReference ref, @NonNull DatabaseEntity entity) {
+        Map<String, Object> changes = entity.takeChanges();
+        return compareAndSet(ref, entity, changes.isEmpty() ? entity.toMap() : changes);
+    }
+
+    /**
+     * Writes changes that were already taken from an entity, see {@link #saveChanges}.
+     *
+     * @param ref    The document to write to.
+     * @param entity The entity the changes were taken from.
+     * @param update The changes, as returned by {@link DatabaseEntity#takeChanges()}.
+     * @return A {@link Task} representing the asynchronous write operation.
+     */
+    static Task<Void> compareAndSet(@NonNull DocumentReference ref, @NonNull DatabaseEntity entity,
+                                    @NonNull Map<String, Object> update) {
+        // An entity that was never stored or read is created in one transaction
+        if (entity.getVersionStamp().getVersion() == 0) {
+            return runCompareAndSet(ref, entity, update, Collections.emptySet());
+        }
+        Map<String, Object> direct = new HashMap<>();
+        Map<String, Object> checked = new HashMap<>();
+        for (Map.Entry<String, Object> entry : update.entrySet()) {
+            (replacesCollection(entry.getKey(), entry.getValue()) ? checked : direct)
+                    .put(entry.getKey(), entry.getValue());
+        }
+        List<Task<Void>> writes = new ArrayList<>();
+        Set<String> directFields = fieldsOf(direct);
+        if (!direct.isEmpty()) {
+            Map<String, Object> stamped = new HashMap<>(direct);
+            VersionStamp.bump(stamped, directFields.toArray(new String[0]));
+            WriteCounter.getInstance().record(ref.getParent().getId(), 1);
+            writes.add(ref.update(stamped).addOnFailureListener(e -> entity.restoreChanges(direct)));
+        }
+        if (!checked.isEmpty()) {
+            writes.add(runCompareAndSet(ref, entity, checked, directFields));
+        }
+        return Tasks.whenAll(writes).continueWithTask(task -> {
+            // Surface a rejected change rather than the generic failure of the combined task
+            for (Task<Void> write : writes) {
+                if (write.getException() != null) {
+                    return write;
+                }
+            }
+            return task;
+        });
+    }
+
+    /**
+     * Writes changes with a compare-and-set transaction, see {@link #saveChanges}.
+     *
+     * @param ref    The document to write to.
+     * @param entity The entity the changes were taken from.
+     * @param update The changes.
+     * @param keep   Fields written by a concurrent plain update, whose local values must not be
+     *               replaced by a stored document read before that update landed.
+     * @return A {@link Task} representing the asynchronous write operation.
+     */
+    private static Task<Void> runCompareAndSet(@NonNull DocumentReference ref, @NonNull DatabaseEntity entity,
+                                               @NonNull Map<String, Object> update, @NonNull Set<String> keep) {
+        // Read the entity on the calling thread; the transaction function runs in the background
+        Map<String, Object> fullMap = entity.toMap();
+        VersionStamp stamp = entity.getVersionStamp();
+        long baseVersion = stamp.getVersion();
+        Map<String, Long> baseFieldVersions = stamp.getFieldVersions();
+
+        Task<SaveResult> cas = ref.getFirestore().runTransaction(transaction -> {
+            DocumentSnapshot doc = transaction.get(ref);
+            if (!doc.exists()) {
+                Map<String, Object> created = new HashMap<>(fullMap);
+                Map<String, Long> fieldVersions = new HashMap<>();
+                for (String field : fullMap.keySet()) {
+                    fieldVersions.put(field, 1L);
+                }
+                created.put(VersionStamp.VERSION, 1L);
+                created.put(VersionStamp.FIELD_VERSIONS, fieldVersions);
+                transaction.set(ref, created);
+                Map<String, Long> none = new HashMap<>();
+                return new SaveResult(doc, VersionedUpdate.resolve(fullMap, none, 0, none));
+            }
+            VersionedUpdate resolved = VersionedUpdate.resolve(update, baseFieldVersions,
+                    VersionStamp.readVersion(doc), VersionStamp.readFieldVersions(doc));
+            if (!resolved.getWrites().isEmpty()) {
+                transaction.update(ref, resolved.getWrites());
+            }
+            return new SaveResult(doc, resolved);
+        });
+        return cas.continueWithTask(task -> {
+            if (task.isSuccessful()) {
+                return Tasks.forResult(task.getResult());
+            }
+            if (!isOffline(task.getException())) {
+                entity.restoreChanges(update);
+                return Tasks.forException(task.getException());
+            }
+            Log.w(TAG, "Offline, writing " + ref.getPath() + " without compare-and-set");
+            return writeUnchecked(ref, fullMap, update, baseVersion).continueWithTask(write -> {
+                if (!write.isSuccessful()) {
+                    entity.restoreChanges(update);
+                    return Tasks.forException(write.getException());
+                }
+                // Nothing to reconcile; the document listener applies the written state
+                return Tasks.forResult((SaveResult) null);
+            });
+        }).onSuccessTask(result -> {
+            if (result == null) {
+                return Tasks.forResult(null);
+            }
+            VersionedUpdate resolved = result.resolved;
+            WriteCounter.getInstance().record(ref.getParent().getId(), resolved.getWrites().isEmpty() ? 0 : 1);
+            // A listener may already have applied the committed document or a newer one
+            boolean interleaved = VersionStamp.readVersion(result.doc) != baseVersion;
+            if (result.doc.exists() && interleaved && stamp.getVersion() < resolved.getVersion()) {
+                Set<String> kept = new HashSet<>(resolved.getWrittenFieldVersions().keySet());
+                kept.addAll(keep);
+                Set<String> changed = entity.applySnapshot(result.doc, kept);
+                if (!changed.isEmpty()) {
+                    entity.onUpdate();
+                }
+            }
+            stamp.committed(resolved.getVersion(), resolved.getWrittenFieldVersions());
+            if (!resolved.getConflicts().isEmpty()) {
+                Log.w(TAG, "Kept stored values of " + resolved.getConflicts() + " for " + ref.getPath());
+                return Tasks.forException(new SaveConflictException(ref.getPath(), resolved.getConflicts()));
+            }
+            return Tasks.forResult(null);
+        });
+    }
+
+    /**
+     * Checks whether a change replaces a whole list or map, so it could drop elements someone else
+     * added and has to be checked against the stored document.
+     */
+    private static boolean replacesCollection(String path, Object value) {
+        return path.indexOf('.') < 0 && (value instanceof List<?> || value instanceof Map<?, ?>);
+    }
+
+    private static Set<String> fieldsOf(Map<String, Object> update) {
+        Set<String> fields = new LinkedHashSet<>();
+        for (String path : update.keySet()) {
+            int dot = path.indexOf('.');
+            fields.add(dot >= 0 ? path.substring(0, dot) : path);
+        }
+        return fields;
+    }
+
+    /**
+     * Writes changes without reading the document first, for when a transaction can't run. Field
+     * versions are bumped atomically with {@link VersionStamp#bump}, so other clients still see
+     * which fields changed; concurrent changes to the same fields are overwritten instead of
+     * resolved. An entity that was never stored is written in full and merged into the document.
+     *
+     * @param ref         The document to write to.
+     * @param fullMap     The entity's full state.
+     * @param update      The changes to write.
+     * @param baseVersion The version of the document the entity's state is based on.
+     * @return A {@link Task} representing the asynchronous write operation.
+     */
+    private static Task<Void> writeUnchecked(@NonNull DocumentReference ref, @NonNull Map<String, Object> fullMap,
+                                             @NonNull Map<String, Object> update, long baseVersion) {
+        WriteCounter.getInstance().record(ref.getParent().getId(), 1);
+        if (baseVersion == 0) {
+            Map<String, Object> created = new HashMap<>(fullMap);
+            Map<String, Long> fieldVersions = new HashMap<>();
+            for (String field : fullMap.keySet()) {
+                fieldVersions.put(field, 1L);
+            }
+            created.put(VersionStamp.VERSION, 1L);
+            created.put(VersionStamp.FIELD_VERSIONS, fieldVersions);
+            return ref.set(created, SetOptions.merge());
+        }
+        Map<String, Object> stamped = new HashMap<>(update);
+        VersionStamp.bump(stamped, fieldsOf(update).toArray(new String[0]));
+        return ref.update(stamped);
+    }
+
+    /**
+     * Checks whether a write failed because the device is offline.
+     *
+     * @param e The exception the write failed with.
+     * @return {@code true} if the server could not be reached; {@code false} otherwise.
+     */
+    private static boolean isOffline(Exception e) {
+        return e instanceof FirebaseFirestoreException
+                && ((FirebaseFirestoreException) e).getCode() == FirebaseFirestoreException.Code.UNAVAILABLE;
+    }
+
+    /**
+     * The stored document read by a {@link #saveChanges} transaction and what was written over it.
+     */
+    private static class SaveResult {
+        final DocumentSnapshot doc;
+        final VersionedUpdate resolved;
+
+        SaveResult(DocumentSnapshot doc, VersionedUpdate resolved) {
+            this.doc = doc;
+            this.resolved = resolved;
+        }
+    }
 }
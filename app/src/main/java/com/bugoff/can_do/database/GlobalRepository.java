@@ -8,6 +8,10 @@ import com.google.android.gms.tasks.Task;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.FirebaseFirestore;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * The {@code GlobalRepository} class acts as a centralized repository for managing operations on Firestore collections.
  * It supports global access to users, facilities, and events collections, and provides functionality to switch between
@@ -15,7 +19,7 @@ import com.google.firebase.firestore.FirebaseFirestore;
  */
 public class GlobalRepository {
     // Behavior management for production and test modes
-    private static DatabaseBehavior behavior = new FirebaseBehavior();
+    private static DatabaseBehavior behavior = new CachingDatabaseBehavior(new FirebaseBehavior());
     private static boolean isTestMode = false;
     private static User loggedInUser;
 
@@ -23,6 +27,7 @@ public class GlobalRepository {
     private static CollectionReference usersCollection;
     private static CollectionReference facilitiesCollection;
     private static CollectionReference eventsCollection;
+    private static CollectionReference imageFingerprintsCollection;
     private FirebaseFirestore db;
     /**
      * Sets the {@link DatabaseBehavior} implementation to be used for database operations.
@@ -51,7 +56,7 @@ public class GlobalRepository {
         if (testMode) {
             behavior = new NoOpDatabaseBehavior();
         } else {
-            behavior = new FirebaseBehavior();
+            behavior = new CachingDatabaseBehavior(new FirebaseBehavior());
         }
     }
     /**
@@ -71,6 +76,19 @@ public class GlobalRepository {
     public static Task<Event> getEvent(String eventId) {
         return behavior.getEvent(eventId);
     }
+    /**
+     * Reads an {@link Event} by its ID, bypassing the cache, for decisions that must not act on
+     * stale data (see {@link CachingDatabaseBehavior#getEventFresh}).
+     *
+     * @param eventId The ID of the event to read.
+     * @return A {@link Task} representing the asynchronous operation to read the event.
+     */
+    public static Task<Event> getEventFresh(String eventId) {
+        if (behavior instanceof CachingDatabaseBehavior) {
+            return ((CachingDatabaseBehavior) behavior).getEventFresh(eventId);
+        }
+        return behavior.getEvent(eventId);
+    }
     /**
      * Retrieves a {@link User} by its ID.
      *
@@ -89,6 +107,24 @@ public class GlobalRepository {
     public static Task<Facility> getFacility(String facilityId) {
         return behavior.getFacility(facilityId);
     }
+    /**
+     * Retrieves multiple {@link User}s by their IDs with batched reads.
+     *
+     * @param userIds The IDs of the users to retrieve.
+     * @return A {@link Task} containing a map of user IDs to the users that were found.
+     */
+    public static Task<Map<String, User>> getUsers(Collection<String> userIds) {
+        return behavior.getUsers(userIds);
+    }
+    /**
+     * Retrieves multiple {@link Event}s by their IDs with batched reads.
+     *
+     * @param eventIds The IDs of the events to retrieve.
+     * @return A {@link Task} containing a map of event IDs to the events that were found.
+     */
+    public static Task<Map<String, Event>> getEvents(Collection<String> eventIds) {
+        return behavior.getEvents(eventIds);
+    }
     /**
      * Adds a new {@link User} to the Firestore database.
      *
@@ -116,6 +152,40 @@ public class GlobalRepository {
     public static Task<Void> addFacility(Facility facility) {
         return behavior.addFacility(facility);
     }
+    /**
+     * Adds a user to the waiting list of an event in one atomic step, unless the list is full.
+     *
+     * @param eventId The ID of the event.
+     * @param userId  The ID of the user joining.
+     * @return A {@link Task} with the {@link JoinResult} of the join.
+     */
+    public static Task<JoinResult> joinWaitlist(String eventId, String userId) {
+        return behavior.joinWaitlist(eventId, userId);
+    }
+    /**
+     * Moves a user from one entrant list of an event to another without rewriting the event.
+     *
+     * @param eventId The ID of the event.
+     * @param userId  The ID of the user to move.
+     * @param from    The list the user leaves (e.g. {@code "selectedEntrants"}), or {@code null}.
+     * @param to      The list the user joins (e.g. {@code "enrolledEntrants"}), or {@code null}.
+     * @return A {@link Task} that completes once the move has been written.
+     */
+    public static Task<Void> moveEntrant(String eventId, String userId, String from, String to) {
+        return behavior.moveEntrants(eventId, Collections.singletonList(userId), from, to);
+    }
+    /**
+     * Moves several users from one entrant list of an event to another in a single write.
+     *
+     * @param eventId The ID of the event.
+     * @param userIds The IDs of the users to move.
+     * @param from    The list the users leave, or {@code null}.
+     * @param to      The list the users join, or {@code null}.
+     * @return A {@link Task} that completes once the move has been written.
+     */
+    public static Task<Void> moveEntrants(String eventId, Collection<String> userIds, String from, String to) {
+        return behavior.moveEntrants(eventId, userIds, from, to);
+    }
     /**
      * Gets the currently logged-in {@link User}.
      *
@@ -143,6 +213,7 @@ public class GlobalRepository {
             usersCollection = db.collection("users");
             facilitiesCollection = db.collection("facilities");
             eventsCollection = db.collection("events");
+            imageFingerprintsCollection = db.collection("imageFingerprints");
         }
     }
     /**
@@ -185,4 +256,13 @@ public class GlobalRepository {
     public static CollectionReference getEventsCollection() {
         return isTestMode ? null : eventsCollection;
     }
+    /**
+     * Gets the Firestore collection holding the perceptual hash of each stored image, keyed by its
+     * content hash.
+     *
+     * @return The {@link CollectionReference} for the "imageFingerprints" collection, or {@code null} if in test mode.
+     */
+    public static CollectionReference getImageFingerprintsCollection() {
+        return isTestMode ? null : imageFingerprintsCollection;
+    }
 }
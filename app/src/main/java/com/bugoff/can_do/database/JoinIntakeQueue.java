@@ -0,0 +1,159 @@
+package com.bugoff.can_do.database;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code JoinIntakeQueue} is the append-only intake path for joining an event's waiting list.
+ *
+ * <p>Instead of reading the event and rewriting its waiting list, a join writes one small request
+ * record to the {@code joinRequests} collection. Requests of different users are different
+ * documents, so a flash crowd at registration time does not contend on the event document and
+ * the cost of a join stays the same however many people join at once. The requests are merged
+ * into the event later, in batches, by the {@link JoinRequestCompactor}.</p>
+ *
+ * <p>The request ID is derived from the event and user IDs, so joining twice only rewrites the
+ * same request. The joining user follows their request (see {@link #listen}) and only counts as
+ * joined once it was accepted; leaving before that deletes the request (see {@link #discard}), so
+ * it can no longer be merged.</p>
+ */
+public class JoinIntakeQueue {
+    private static final String TAG = "JoinIntakeQueue";
+    static final String COLLECTION = "joinRequests";
+    public static final String RESULT_ACCEPTED = "ACCEPTED";
+    public static final String RESULT_DUPLICATE = "DUPLICATE";
+    public static final String RESULT_FULL = "FULL";
+    private static JoinIntakeQueue instance;
+
+    private final FirebaseFirestore db;
+
+    /**
+     * Constructs a new {@code JoinIntakeQueue}.
+     *
+     * @param db The Firestore instance holding the requests.
+     */
+    public JoinIntakeQueue(@NonNull FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    /**
+     * Retrieves the shared instance of the queue.
+     *
+     * @return The singleton {@code JoinIntakeQueue}.
+     */
+    public static synchronized JoinIntakeQueue getInstance() {
+        if (instance == null) {
+            instance = new JoinIntakeQueue(FirestoreHelper.getInstance().getDb());
+        }
+        return instance;
+    }
+
+    /**
+     * Submits a request to join an event's waiting list.
+     *
+     * @param eventId   The ID of the event to join.
+     * @param userId    The ID of the joining user.
+     * @param latitude  The user's latitude, or {@code null} if the event does not need it.
+     * @param longitude The user's longitude, or {@code null} if the event does not need it.
+     * @return A {@link Task} that completes once the request has been recorded.
+     */
+    public Task<Void> submit(@NonNull String eventId, @NonNull String userId,
+                             @Nullable Double latitude, @Nullable Double longitude) {
+        Map<String, Object> request = new HashMap<>();
+        request.put("eventId", eventId);
+        request.put("userId", userId);
+        request.put("latitude", latitude);
+        request.put("longitude", longitude);
+        request.put("processed", false);
+        request.put("result", null);
+        request.put("requestedAt", FieldValue.serverTimestamp());
+        WriteCounter.getInstance().record(COLLECTION, 1);
+        return request(eventId, userId).set(request);
+    }
+
+    /**
+     * Listens to the request of a user until it is deleted.
+     *
+     * @param eventId  The ID of the event.
+     * @param userId   The ID of the user.
+     * @param listener The listener notified of every change of the request.
+     * @return The registration of the underlying listener.
+     */
+    public ListenerRegistration listen(@NonNull String eventId, @NonNull String userId,
+                                       @NonNull OnRequestChangedListener listener) {
+        return request(eventId, userId).addSnapshotListener((snapshot, e) -> {
+            if (e != null) {
+                Log.e(TAG, "Listen failed for join request of " + userId, e);
+                return;
+            }
+            if (snapshot != null && snapshot.exists()) {
+                listener.onRequestChanged(Boolean.TRUE.equals(snapshot.getBoolean("processed"))
+                        ? snapshot.getString("result") : null);
+            }
+        });
+    }
+
+    /**
+     * Deletes the request of a user. A pending request is cancelled, as the compactor skips
+     * requests that no longer exist; the result of a processed one is acknowledged.
+     *
+     * @param eventId The ID of the event.
+     * @param userId  The ID of the user.
+     * @return A {@link Task} that completes once the request has been deleted.
+     */
+    public Task<Void> discard(@NonNull String eventId, @NonNull String userId) {
+        WriteCounter.getInstance().record(COLLECTION, 1);
+        return request(eventId, userId).delete();
+    }
+
+    /**
+     * Receives the state of a join request.
+     */
+    public interface OnRequestChangedListener {
+        /**
+         * Called when the request is first read and whenever it changes.
+         *
+         * @param result The result, e.g. {@link #RESULT_ACCEPTED}, or {@code null} while the request
+         *               is pending.
+         */
+        void onRequestChanged(@Nullable String result);
+    }
+
+    /**
+     * Builds the query for the unprocessed requests of an event, oldest first.
+     *
+     * @param eventId The ID of the event.
+     * @return The query for pending requests.
+     */
+    Query pending(@NonNull String eventId) {
+        return requests()
+                .whereEqualTo("eventId", eventId)
+                .whereEqualTo("processed", false)
+                .orderBy("requestedAt");
+    }
+
+    DocumentReference request(String eventId, String userId) {
+        return requests().document(requestId(eventId, userId));
+    }
+
+    CollectionReference requests() {
+        return db.collection(COLLECTION);
+    }
+
+    static String requestId(String eventId, String userId) {
+        return eventId + "_" + userId;
+    }
+}
@@ -0,0 +1,268 @@
+package com.bugoff.can_do.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.bugoff.can_do.event.Event;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * {@code JoinRequestCompactor} merges the requests recorded by {@link JoinIntakeQueue} into an
+ * event's waiting list.
+ *
+ * <p>Each pass takes up to {@value #BATCH_SIZE} pending requests, oldest first, and applies them
+ * in one transaction: requests of users already on the waiting list are marked duplicate, requests
+ * beyond the event's capacity are marked full, and the rest are added with a single write to the
+ * event (or to its entrant documents and counter shard for events using
+ * {@link Event.EntrantStorage#SUBCOLLECTION}). Every request is read again and marked processed
+ * with its result in the same transaction, so running a pass twice, or two compactors at once, never
+ * adds a user twice or exceeds the capacity, and a request deleted in the meantime is skipped.</p>
+ *
+ * <p>This is a stand-in for a server-side job: the organizer's app drains the queues of the
+ * organizer's events periodically while it is open (see {@link #start(String)}). Entrants only write
+ * their requests, so the event document is only ever contended by the organizer's drainer. The
+ * pending query needs the composite index on {@code eventId}, {@code processed} and
+ * {@code requestedAt} defined in {@code firestore.indexes.json}.</p>
+ */
+public class JoinRequestCompactor {
+    private static final String TAG = "JoinRequestCompactor";
+    static final int BATCH_SIZE = 100;
+    private static final long DEFAULT_INTERVAL_MS = 2000;
+    private static final String WAITING_LIST = "waitingListEntrants";
+    private static final Random random = new Random();
+
+    private final FirebaseFirestore db;
+    private final JoinIntakeQueue queue;
+    private final Handler handler;
+    private final long intervalMs;
+    private String eventId;
+    private boolean running = false;
+    private boolean compacting = false;
+    private final Runnable tick = this::onTick;
+
+    /**
+     * Constructs a new {@code JoinRequestCompactor}.
+     *
+     * @param db         The Firestore instance.
+     * @param queue      The queue whose requests are compacted.
+     * @param handler    The {@link Handler} used to schedule passes.
+     * @param intervalMs How long, in milliseconds, to wait between passes while the queue is empty.
+     */
+    public JoinRequestCompactor(@NonNull FirebaseFirestore db, @NonNull JoinIntakeQueue queue,
+                                @NonNull Handler handler, long intervalMs) {
+        this.db = db;
+        this.queue = queue;
+        this.handler = handler;
+        this.intervalMs = intervalMs;
+    }
+
+    /**
+     * Constructs a {@code JoinRequestCompactor} for the shared queue that runs on the main thread.
+     */
+    public JoinRequestCompactor() {
+        this(FirestoreHelper.getInstance().getDb(), JoinIntakeQueue.getInstance(),
+                new Handler(Looper.getMainLooper()), DEFAULT_INTERVAL_MS);
+    }
+
+    /**
+     * Starts draining the requests of an event periodically, replacing any event started before.
+     *
+     * @param eventId The ID of the event whose requests are compacted.
+     */
+    public void start(@NonNull String eventId) {
+        this.eventId = eventId;
+        running = true;
+        handler.removeCallbacks(tick);
+        handler.post(tick);
+    }
+
+    /**
+     * Stops draining requests. A pass that is already running completes.
+     */
+    public void stop() {
+        running = false;
+        handler.removeCallbacks(tick);
+    }
+
+    /**
+     * Runs a single compaction pass over the pending requests of an event.
+     *
+     * @param eventId The ID of the event.
+     * @return A {@link Task} with the number of requests that were processed.
+     */
+    public Task<Integer> compact(@NonNull String eventId) {
+        DocumentReference eventRef = db.collection("events").document(eventId);
+        return queue.pending(eventId).limit(BATCH_SIZE).get().onSuccessTask(snapshot -> {
+            List<DocumentSnapshot> requests = snapshot.getDocuments();
+            if (requests.isEmpty()) {
+                return Tasks.forResult(0);
+            }
+            return db.runTransaction(transaction -> merge(transaction, eventRef, requests));
+        });
+    }
+
+    private void onTick() {
+        if (!running || compacting || eventId == null) {
+            return;
+        }
+        compacting = true;
+        compact(eventId).addOnCompleteListener(task -> {
+            compacting = false;
+            if (!running) {
+                return;
+            }
+            if (!task.isSuccessful()) {
+                Log.e(TAG, "Compaction failed for event " + eventId, task.getException());
+            }
+            // A full batch means more requests are probably waiting, so continue right away
+            boolean more = task.isSuccessful() && task.getResult() != null && task.getResult() == BATCH_SIZE;
+            // After a failed pass, e.g. contention with another of the organizer's devices, wait a
+            // random extra interval so the two don't keep colliding
+            long jitter = task.isSuccessful() ? 0 : (long) (random.nextDouble() * intervalMs);
+            handler.postDelayed(tick, more ? 0 : intervalMs + jitter);
+        });
+    }
+
+    /**
+     * Applies a batch of requests to an event inside a transaction.
+     *
+     * @param transaction The transaction.
+     * @param eventRef    The event document.
+     * @param requests    The pending requests as queried, oldest first.
+     * @return The number of requests queried, whether or not they were still pending.
+     * @throws FirebaseFirestoreException If a read fails; the transaction is then retried or failed.
+     */
+    private Integer merge(Transaction transaction, DocumentReference eventRef, List<DocumentSnapshot> requests)
+            throws FirebaseFirestoreException {
+        // All reads must happen before any write in a transaction
+        DocumentSnapshot eventDoc = transaction.get(eventRef);
+        // The query ran outside the transaction; skip requests processed or deleted since
+        List<DocumentSnapshot> pending = new ArrayList<>();
+        for (DocumentSnapshot request : requests) {
+            DocumentSnapshot current = transaction.get(request.getReference());
+            if (current.exists() && !Boolean.TRUE.equals(current.getBoolean("processed"))) {
+                pending.add(current);
+            }
+        }
+        if (!eventDoc.exists()) {
+            for (DocumentSnapshot request : pending) {
+                markProcessed(transaction, request, JoinIntakeQueue.RESULT_FULL);
+            }
+            return requests.size();
+        }
+        Long max = eventDoc.getLong("maxNumberOfParticipants");
+        long capacity = max != null ? max : 0;
+        boolean subcollection = Event.EntrantStorage.SUBCOLLECTION.name().equals(eventDoc.getString("entrantStorage"));
+
+        // Deduplicate within the batch, keeping the oldest request of each user
+        Map<String, DocumentSnapshot> byUser = new LinkedHashMap<>();
+        for (DocumentSnapshot request : pending) {
+            String userId = request.getString("userId");
+            if (userId != null && !byUser.containsKey(userId)) {
+                byUser.put(userId, request);
+            } else {
+                markProcessed(transaction, request, JoinIntakeQueue.RESULT_DUPLICATE);
+            }
+        }
+
+        long size;
+        Map<String, Boolean> alreadyJoined = new HashMap<>();
+        if (subcollection) {
+            size = EntrantSubcollection.readCount(transaction, eventRef, WAITING_LIST);
+            for (String userId : byUser.keySet()) {
+                DocumentSnapshot entrant = transaction.get(EntrantSubcollection.entrants(eventRef).document(userId));
+                alreadyJoined.put(userId, EntrantSubcollection.getLists(entrant).contains(WAITING_LIST));
+            }
+        } else {
+            List<?> waitingList = (List<?>) eventDoc.get(WAITING_LIST);
+            size = waitingList != null ? waitingList.size() : 0;
+            for (String userId : byUser.keySet()) {
+                alreadyJoined.put(userId, waitingList != null && waitingList.contains(userId));
+            }
+        }
+
+        List<String> accepted = new ArrayList<>();
+        Map<String, Map<String, Object>> locations = new HashMap<>();
+        for (Map.Entry<String, DocumentSnapshot> entry : byUser.entrySet()) {
+            String userId = entry.getKey();
+            DocumentSnapshot request = entry.getValue();
+            if (Boolean.TRUE.equals(alreadyJoined.get(userId))) {
+                markProcessed(transaction, request, JoinIntakeQueue.RESULT_DUPLICATE);
+            } else if (size + accepted.size() >= capacity) {
+                markProcessed(transaction, request, JoinIntakeQueue.RESULT_FULL);
+            } else {
+                accepted.add(userId);
+                Double latitude = request.getDouble("latitude");
+                Double longitude = request.getDouble("longitude");
+                if (latitude != null && longitude != null) {
+                    Map<String, Object> location = new HashMap<>();
+                    location.put("latitude", latitude);
+                    location.put("longitude", longitude);
+                    locations.put(userId, location);
+                }
+                markProcessed(transaction, request, JoinIntakeQueue.RESULT_ACCEPTED);
+            }
+        }
+        if (accepted.isEmpty()) {
+            return requests.size();
+        }
+
+        if (subcollection) {
+            for (String userId : accepted) {
+                Map<String, Object> entrant = new HashMap<>();
+                entrant.put("lists", FieldValue.arrayUnion(WAITING_LIST));
+                entrant.put("updatedAt", FieldValue.serverTimestamp());
+                Map<String, Object> location = locations.get(userId);
+                if (location != null) {
+                    entrant.putAll(location);
+                }
+                transaction.set(EntrantSubcollection.entrants(eventRef).document(userId), entrant, SetOptions.merge());
+            }
+            Map<String, Object> increment = new HashMap<>();
+            increment.put(WAITING_LIST, FieldValue.increment(accepted.size()));
+            DocumentReference shard = EntrantSubcollection.counters(eventRef)
+                    .document(String.valueOf(random.nextInt(EntrantSubcollection.NUM_SHARDS)));
+            transaction.set(shard, increment, SetOptions.merge());
+        } else {
+            Map<String, Object> update = new HashMap<>();
+            update.put(WAITING_LIST, FieldValue.arrayUnion(accepted.toArray()));
+            for (Map.Entry<String, Map<String, Object>> location : locations.entrySet()) {
+                update.put("entrantsLocations." + location.getKey(), location.getValue());
+            }
+            if (locations.isEmpty()) {
+                VersionStamp.bump(update, WAITING_LIST);
+            } else {
+                VersionStamp.bump(update, WAITING_LIST, "entrantsLocations");
+            }
+            transaction.update(eventRef, update);
+        }
+        Log.d(TAG, "Accepted " + accepted.size() + " of " + requests.size() + " join request(s) for " + eventRef.getId());
+        return requests.size();
+    }
+
+    private void markProcessed(Transaction transaction, DocumentSnapshot request, String result) {
+        Map<String, Object> update = new HashMap<>();
+        update.put("processed", true);
+        update.put("result", result);
+        transaction.update(request.getReference(), update);
+    }
+
+}
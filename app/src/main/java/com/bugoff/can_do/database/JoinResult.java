@@ -0,0 +1,13 @@
+package com.bugoff.can_do.database;
+
+/**
+ * The outcome of {@link DatabaseBehavior#joinWaitlist(String, String)}.
+ */
+public enum JoinResult {
+    /** The user was added to the waiting list. */
+    JOINED,
+    /** The user was already on the waiting list, so nothing was written. */
+    ALREADY_JOINED,
+    /** The waiting list has reached the event's maximum number of participants. */
+    FULL
+}
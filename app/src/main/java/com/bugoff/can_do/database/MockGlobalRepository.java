@@ -82,7 +82,7 @@ public class MockGlobalRepository extends GlobalRepository {
         instance.mockFacilities.put(facility.getId(), facility);
 
         // Update the owner's facility reference
-        User owner = instance.mockUsers.get(facility.getOwner().getId());
+        User owner = instance.mockUsers.get(facility.getOwnerId());
         if (owner != null) {
             owner.setFacility(facility);
         }
@@ -124,7 +124,7 @@ public class MockGlobalRepository extends GlobalRepository {
         instance.mockEvents.put(event.getId(), event);
 
         // Update the facility's events list
-        Facility facility = instance.mockFacilities.get(event.getFacility().getId());
+        Facility facility = instance.mockFacilities.get(event.getFacilityId());
         if (facility != null) {
             facility.addEvent(event);
         }
@@ -1,5 +1,7 @@
 package com.bugoff.can_do.database;
 
+import androidx.annotation.Nullable;
+
 import com.bugoff.can_do.event.Event;
 import com.bugoff.can_do.facility.Facility;
 import com.bugoff.can_do.notification.Notification;
@@ -7,8 +9,13 @@ import com.bugoff.can_do.user.User;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 /**
  * A No-Operation (NoOp) implementation of {@link DatabaseBehavior} for testing purposes.
  * This implementation avoids real database interactions and uses in-memory storage for mock data.
@@ -22,19 +29,21 @@ public class NoOpDatabaseBehavior implements DatabaseBehavior {
      * Saves an {@link Event} in the in-memory storage.
      *
      * @param event The {@link Event} to save.
+     * @return A {@link Task} representing the success of the operation.
      */
     @Override
-    public void saveEvent(Event event) {
+    public Task<Void> saveEvent(Event event) {
         events.put(event.getId(), event);
+        return Tasks.forResult(null);
     }
     /**
      * No-operation for attaching a listener to an {@link Event}.
      *
      * @param event    The {@link Event} to listen to.
-     * @param onUpdate The {@link Runnable} to execute on updates.
+     * @param onUpdate The listener notified with the changed fields on updates.
      */
     @Override
-    public void attachListener(Event event, Runnable onUpdate) {
+    public void attachListener(Event event, Event.OnUpdateListener onUpdate) {
         // No-op in test environment
     }
     /**
@@ -79,6 +88,37 @@ public class NoOpDatabaseBehavior implements DatabaseBehavior {
         Facility facility = facilities.get(facilityId);
         return facility != null ? Tasks.forResult(facility) : Tasks.forException(new Exception("Facility not found"));
     }
+    /**
+     * Retrieves multiple {@link User}s from the in-memory storage. IDs that are not found are omitted.
+     *
+     * @param userIds The IDs of the users to retrieve.
+     * @return A {@link Task} containing a map of user IDs to the users that were found.
+     */
+    @Override
+    public Task<Map<String, User>> getUsers(Collection<String> userIds) {
+        return Tasks.forResult(getAll(userIds, users));
+    }
+    /**
+     * Retrieves multiple {@link Event}s from the in-memory storage. IDs that are not found are omitted.
+     *
+     * @param eventIds The IDs of the events to retrieve.
+     * @return A {@link Task} containing a map of event IDs to the events that were found.
+     */
+    @Override
+    public Task<Map<String, Event>> getEvents(Collection<String> eventIds) {
+        return Tasks.forResult(getAll(eventIds, events));
+    }
+
+    private static <T> Map<String, T> getAll(Collection<String> ids, Map<String, T> storage) {
+        Map<String, T> result = new LinkedHashMap<>();
+        for (String id : ids) {
+            T value = storage.get(id);
+            if (value != null) {
+                result.put(id, value);
+            }
+        }
+        return result;
+    }
     /**
      * Adds a {@link User} to the in-memory storage.
      *
@@ -121,6 +161,58 @@ public class NoOpDatabaseBehavior implements DatabaseBehavior {
     public void addNotification(Notification notification) {
         notifications.put(notification.getId(), notification);
     }
+    /**
+     * Adds a user to the waiting list of an in-memory event, with the same capacity rule as the
+     * real database: the user is not added once the waiting list has reached the event's maximum
+     * number of participants.
+     *
+     * @param eventId The ID of the event.
+     * @param userId  The ID of the user joining.
+     * @return A {@link Task} with the {@link JoinResult}, or an exception if the event is not found.
+     */
+    @Override
+    public Task<JoinResult> joinWaitlist(String eventId, String userId) {
+        Event event = events.get(eventId);
+        if (event == null) {
+            return Tasks.forException(new Exception("Event not found"));
+        }
+        List<String> waitingList = event.getWaitingListEntrants();
+        if (waitingList.contains(userId)) {
+            return Tasks.forResult(JoinResult.ALREADY_JOINED);
+        }
+        Integer max = event.getMaxNumberOfParticipants();
+        if (max != null && waitingList.size() >= max) {
+            return Tasks.forResult(JoinResult.FULL);
+        }
+        event.onUpdate(event.applyMove(userId, null, "waitingListEntrants"));
+        return Tasks.forResult(JoinResult.JOINED);
+    }
+    /**
+     * Moves users between entrant lists of an in-memory event. Users missing from {@code from} are
+     * still added to {@code to}, as with the array transforms of the real database.
+     *
+     * @param eventId The ID of the event.
+     * @param userIds The IDs of the users to move.
+     * @param from    The list the users leave, or {@code null}.
+     * @param to      The list the users join, or {@code null}.
+     * @return A {@link Task} representing the success of the operation, or an exception if the event is not found.
+     */
+    @Override
+    public Task<Void> moveEntrants(String eventId, Collection<String> userIds, @Nullable String from, @Nullable String to) {
+        Event.checkEntrantMove(from, to);
+        Event event = events.get(eventId);
+        if (event == null) {
+            return Tasks.forException(new Exception("Event not found"));
+        }
+        Set<String> changedFields = new LinkedHashSet<>();
+        for (String userId : userIds) {
+            changedFields.addAll(event.applyMove(userId, from, to));
+        }
+        if (!changedFields.isEmpty()) {
+            event.onUpdate(changedFields);
+        }
+        return Tasks.forResult(null);
+    }
 
     // Helper methods for tests
     /**
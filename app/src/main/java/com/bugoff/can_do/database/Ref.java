@@ -0,0 +1,108 @@
+package com.bugoff.can_do.database;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+/**
+ * {@code Ref} is a lazy reference to a single database entity.
+ *
+ * <p>It holds only the entity's ID until {@link #get()} is called, so entities can be built from a
+ * snapshot without reading the documents they point to. Once resolved, the entity is kept and
+ * later calls return it without another read.</p>
+ *
+ * @param <T> The type of the referenced entity.
+ */
+public class Ref<T extends DatabaseEntity> {
+    /**
+     * Loads the referenced entity by its ID.
+     *
+     * @param <T> The type of the referenced entity.
+     */
+    public interface Resolver<T> {
+        /**
+         * Loads the entity with the given ID.
+         *
+         * @param id The ID of the entity.
+         * @return A {@link Task} that completes with the entity.
+         */
+        Task<T> resolve(String id);
+    }
+
+    private final String id;
+    private final Resolver<T> resolver;
+    private T value;
+
+    /**
+     * Constructs an unresolved reference.
+     *
+     * @param id       The ID of the referenced entity, or {@code null} for an empty reference.
+     * @param resolver The resolver used to load the entity when it is first needed.
+     */
+    public Ref(@Nullable String id, @NonNull Resolver<T> resolver) {
+        this.id = id;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Creates a reference that is already resolved to the given entity.
+     *
+     * @param value The referenced entity.
+     * @param <T>   The type of the referenced entity.
+     * @return A resolved reference.
+     */
+    public static <T extends DatabaseEntity> Ref<T> of(@NonNull T value) {
+        Ref<T> ref = new Ref<>(value.getId(), id -> Tasks.forResult(value));
+        ref.value = value;
+        return ref;
+    }
+
+    /**
+     * Gets the ID of the referenced entity without loading it.
+     *
+     * @return The ID, or {@code null} if the reference is empty.
+     */
+    @Nullable
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Checks whether the referenced entity has been loaded.
+     *
+     * @return {@code true} if the entity is available without a read; {@code false} otherwise.
+     */
+    public boolean isLoaded() {
+        return value != null;
+    }
+
+    /**
+     * Gets the referenced entity only if it has already been loaded.
+     *
+     * @return The entity, or {@code null} if it has not been loaded yet.
+     */
+    @Nullable
+    public T getIfLoaded() {
+        return value;
+    }
+
+    /**
+     * Gets the referenced entity, loading it on first access.
+     *
+     * @return A {@link Task} that completes with the entity.
+     */
+    public Task<T> get() {
+        if (value != null) {
+            return Tasks.forResult(value);
+        }
+        if (id == null) {
+            return Tasks.forException(new Exception("Reference is empty"));
+        }
+        return resolver.resolve(id).onSuccessTask(Runnable::run, loaded -> {
+            value = loaded;
+            return Tasks.forResult(loaded);
+        });
+    }
+}
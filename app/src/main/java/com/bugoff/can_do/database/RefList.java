@@ -0,0 +1,186 @@
+package com.bugoff.can_do.database;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code RefList} is an ordered list of lazy references to database entities.
+ *
+ * <p>It holds the entities' IDs and only reads the entities when {@link #getAll()} is called,
+ * using one batched read for all entities that have not been loaded yet.</p>
+ *
+ * @param <T> The type of the referenced entities.
+ */
+public class RefList<T extends DatabaseEntity> {
+    /**
+     * Loads multiple entities by their IDs.
+     *
+     * @param <T> The type of the referenced entities.
+     */
+    public interface BatchResolver<T> {
+        /**
+         * Loads the entities with the given IDs.
+         *
+         * @param ids The IDs of the entities.
+         * @return A {@link Task} that completes with a map of IDs to the entities that were found.
+         */
+        Task<Map<String, T>> resolve(Collection<String> ids);
+    }
+
+    private final Set<String> ids = new LinkedHashSet<>();
+    private final Map<String, T> loaded = new HashMap<>();
+    private final BatchResolver<T> resolver;
+
+    /**
+     * Constructs an empty reference list.
+     *
+     * @param resolver The resolver used to load entities when they are first needed.
+     */
+    public RefList(@NonNull BatchResolver<T> resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Constructs a reference list holding the given IDs, none of which are loaded.
+     *
+     * @param ids      The IDs of the referenced entities.
+     * @param resolver The resolver used to load entities when they are first needed.
+     */
+    public RefList(@NonNull Collection<String> ids, @NonNull BatchResolver<T> resolver) {
+        this(resolver);
+        this.ids.addAll(ids);
+    }
+
+    /**
+     * Gets the IDs of all referenced entities without loading them.
+     *
+     * @return An unmodifiable list of IDs, in insertion order.
+     */
+    public List<String> getIds() {
+        return Collections.unmodifiableList(new ArrayList<>(ids));
+    }
+
+    /**
+     * Checks whether the list references the entity with the given ID.
+     *
+     * @param id The ID of the entity.
+     * @return {@code true} if the entity is referenced; {@code false} otherwise.
+     */
+    public boolean contains(String id) {
+        return ids.contains(id);
+    }
+
+    /**
+     * Gets the number of referenced entities.
+     *
+     * @return The number of IDs in the list.
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    /**
+     * Adds an already loaded entity to the list.
+     *
+     * @param value The entity to add.
+     * @return {@code true} if the entity was not referenced before; {@code false} otherwise.
+     */
+    public boolean add(@NonNull T value) {
+        loaded.put(value.getId(), value);
+        return ids.add(value.getId());
+    }
+
+    /**
+     * Removes the entity with the given ID from the list.
+     *
+     * @param id The ID of the entity to remove.
+     * @return {@code true} if the entity was referenced; {@code false} otherwise.
+     */
+    public boolean remove(String id) {
+        loaded.remove(id);
+        return ids.remove(id);
+    }
+
+    /**
+     * Replaces the contents of the list with the given loaded entities.
+     *
+     * @param values The entities to reference.
+     */
+    public void set(@NonNull List<T> values) {
+        ids.clear();
+        loaded.clear();
+        for (T value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * Replaces the referenced IDs, keeping already loaded entities whose IDs are still present.
+     *
+     * @param newIds The IDs to reference.
+     * @return The loaded entities that are no longer referenced.
+     */
+    public List<T> setIds(@NonNull Collection<String> newIds) {
+        ids.clear();
+        ids.addAll(newIds);
+        List<T> removed = new ArrayList<>();
+        for (String id : new ArrayList<>(loaded.keySet())) {
+            if (!ids.contains(id)) {
+                removed.add(loaded.remove(id));
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Gets the entities that have already been loaded, without reading any others.
+     *
+     * @return The loaded entities, in list order.
+     */
+    public List<T> getLoaded() {
+        List<T> values = new ArrayList<>();
+        for (String id : ids) {
+            T value = loaded.get(id);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Gets all referenced entities, loading the missing ones with a single batched read.
+     *
+     * @return A {@link Task} that completes with the entities that were found, in list order.
+     */
+    public Task<List<T>> getAll() {
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            if (!loaded.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return Tasks.forResult(getLoaded());
+        }
+        return resolver.resolve(missing).onSuccessTask(Runnable::run, values -> {
+            for (Map.Entry<String, T> entry : values.entrySet()) {
+                if (ids.contains(entry.getKey())) {
+                    loaded.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return Tasks.forResult(getLoaded());
+        });
+    }
+}
@@ -0,0 +1,38 @@
+package com.bugoff.can_do.database;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * {@code SaveConflictException} reports that some changes of a save were rejected because someone
+ * else wrote the same fields since the entity last saw them (see {@link VersionedUpdate}). The
+ * entity's other changes were written, and the stored values of the rejected fields have been
+ * applied to it.
+ */
+public class SaveConflictException extends Exception {
+    private final Set<String> fields;
+
+    /**
+     * Constructs a new {@code SaveConflictException}.
+     *
+     * @param path   The path of the document that was saved.
+     * @param fields The fields whose changes were rejected.
+     */
+    public SaveConflictException(@NonNull String path, @NonNull Set<String> fields) {
+        super("Changes to " + fields + " of " + path + " were rejected, as they were changed concurrently");
+        this.fields = Collections.unmodifiableSet(new LinkedHashSet<>(fields));
+    }
+
+    /**
+     * Gets the fields whose changes were rejected.
+     *
+     * @return The field names.
+     */
+    @NonNull
+    public Set<String> getFields() {
+        return fields;
+    }
+}
@@ -0,0 +1,210 @@
+package com.bugoff.can_do.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * {@code SnapshotListenerRegistry} shares Firestore document listeners between subscribers.
+ *
+ * <p>Only one {@code addSnapshotListener} is kept per document path, no matter how many entities,
+ * view models or fragments subscribe to it. Each snapshot is fanned out to every subscriber, and a
+ * late subscriber immediately receives the latest snapshot instead of triggering another read.</p>
+ *
+ * <p>Snapshots that only echo this client's own pending writes ({@code hasPendingWrites}) are not
+ * delivered: the local state already reflects them, and applying them would only trigger another
+ * round of comparisons and UI updates. Metadata changes are listened to, so the snapshot confirming
+ * such a write is still delivered once the server has acknowledged it, and snapshots whose data
+ * equals the last delivered one are dropped.</p>
+ *
+ * <p>Subscriptions are reference counted. When the last subscriber leaves, the underlying
+ * listener is kept for a short grace period, so a screen that is recreated (e.g. on rotation)
+ * or a quick back-and-forth navigation reuses it instead of paying for a new initial read.</p>
+ */
+public class SnapshotListenerRegistry {
+    private static final String TAG = "SnapshotListenerRegistry";
+    private static final long DEFAULT_GRACE_PERIOD_MS = 5000;
+    private static SnapshotListenerRegistry instance;
+
+    private class Entry {
+        final String path;
+        final List<EventListener<DocumentSnapshot>> subscribers = new ArrayList<>();
+        ListenerRegistration registration;
+        DocumentSnapshot latest;
+        Runnable pendingRemoval;
+
+        Entry(String path) {
+            this.path = path;
+        }
+    }
+
+    // Keyed by document path so that every subscriber of a document shares one listener
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Handler handler;
+    private final long gracePeriodMs;
+
+    /**
+     * Constructs a new {@code SnapshotListenerRegistry}.
+     *
+     * @param handler       The {@link Handler} used to deliver cached snapshots and schedule removals.
+     * @param gracePeriodMs How long, in milliseconds, an unused listener is kept before being removed.
+     */
+    @VisibleForTesting
+    public SnapshotListenerRegistry(@NonNull Handler handler, long gracePeriodMs) {
+        this.handler = handler;
+        this.gracePeriodMs = gracePeriodMs;
+    }
+
+    /**
+     * Retrieves the shared instance of the registry, which runs on the main thread.
+     *
+     * @return The singleton {@code SnapshotListenerRegistry}.
+     */
+    public static synchronized SnapshotListenerRegistry getInstance() {
+        if (instance == null) {
+            instance = new SnapshotListenerRegistry(new Handler(Looper.getMainLooper()), DEFAULT_GRACE_PERIOD_MS);
+        }
+        return instance;
+    }
+
+    /**
+     * Subscribes to snapshots of a document. If the document is already being listened to, the
+     * existing listener is shared and the latest snapshot is delivered to the new subscriber.
+     *
+     * @param ref        The document to listen to.
+     * @param subscriber The listener notified of every snapshot or error.
+     * @return A {@link ListenerRegistration} that unsubscribes {@code subscriber} when removed.
+     */
+    public synchronized ListenerRegistration subscribe(@NonNull DocumentReference ref,
+                                                       @NonNull EventListener<DocumentSnapshot> subscriber) {
+        String path = ref.getPath();
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            Entry created = new Entry(path);
+            entries.put(path, created);
+            created.registration = ref.addSnapshotListener(MetadataChanges.INCLUDE,
+                    (snapshot, e) -> dispatch(created, snapshot, e));
+            entry = created;
+        } else if (entry.pendingRemoval != null) {
+            // Resubscribed within the grace period, keep the listener
+            handler.removeCallbacks(entry.pendingRemoval);
+            entry.pendingRemoval = null;
+        }
+
+        entry.subscribers.add(subscriber);
+        DocumentSnapshot latest = entry.latest;
+        if (latest != null) {
+            // Deliver asynchronously, like a fresh listener would, so callers are not re-entered
+            Entry current = entry;
+            handler.post(() -> {
+                synchronized (this) {
+                    if (!current.subscribers.contains(subscriber)) {
+                        return;
+                    }
+                }
+                subscriber.onEvent(latest, null);
+            });
+        }
+        return () -> unsubscribe(path, subscriber);
+    }
+
+    /**
+     * Gets the number of document paths that currently hold an underlying listener.
+     *
+     * @return The number of active or lingering listeners.
+     */
+    public synchronized int getListenerCount() {
+        return entries.size();
+    }
+
+    /**
+     * Removes a subscriber and schedules the underlying listener for removal if it was the last one.
+     *
+     * @param path       The document path.
+     * @param subscriber The subscriber to remove.
+     */
+    private synchronized void unsubscribe(String path, EventListener<DocumentSnapshot> subscriber) {
+        Entry entry = entries.get(path);
+        if (entry == null || !entry.subscribers.remove(subscriber) || !entry.subscribers.isEmpty()) {
+            return;
+        }
+        entry.pendingRemoval = () -> removeIfUnused(entry);
+        handler.postDelayed(entry.pendingRemoval, gracePeriodMs);
+    }
+
+    /**
+     * Removes the underlying listener of an entry if nobody subscribed during the grace period.
+     *
+     * @param entry The entry to remove.
+     */
+    private synchronized void removeIfUnused(Entry entry) {
+        if (!entry.subscribers.isEmpty() || entries.get(entry.path) != entry) {
+            return;
+        }
+        entries.remove(entry.path);
+        entry.registration.remove();
+        Log.d(TAG, "Removed listener for " + entry.path);
+    }
+
+    /**
+     * Fans a snapshot or error out to every subscriber of an entry.
+     *
+     * @param entry    The entry that received the snapshot.
+     * @param snapshot The snapshot, or {@code null} on error.
+     * @param e        The error, or {@code null} on success.
+     */
+    private void dispatch(Entry entry, DocumentSnapshot snapshot, FirebaseFirestoreException e) {
+        List<EventListener<DocumentSnapshot>> subscribers;
+        synchronized (this) {
+            if (snapshot != null) {
+                if (isEcho(entry.latest, snapshot)) {
+                    return;
+                }
+                entry.latest = snapshot;
+            }
+            if (e != null && entries.get(entry.path) == entry) {
+                // Firestore stops a listener after an error, so the next subscriber must start a new one
+                entries.remove(entry.path);
+            }
+            subscribers = new ArrayList<>(entry.subscribers);
+        }
+        for (EventListener<DocumentSnapshot> subscriber : subscribers) {
+            subscriber.onEvent(snapshot, e);
+        }
+    }
+
+    /**
+     * Checks whether a snapshot carries nothing new for subscribers: it either echoes local writes
+     * that the server has not acknowledged yet, or only its metadata changed since the last
+     * delivered snapshot.
+     *
+     * @param latest   The last delivered snapshot, or {@code null} if none was delivered yet.
+     * @param snapshot The new snapshot.
+     * @return {@code true} if the snapshot should not be delivered; {@code false} otherwise.
+     */
+    private static boolean isEcho(@Nullable DocumentSnapshot latest, @NonNull DocumentSnapshot snapshot) {
+        if (latest == null) {
+            // Subscribers need a first snapshot even if it has pending writes, e.g. while offline
+            return false;
+        }
+        return snapshot.getMetadata().hasPendingWrites()
+                || (latest.exists() == snapshot.exists() && Objects.equals(latest.getData(), snapshot.getData()));
+    }
+}
@@ -0,0 +1,128 @@
+package com.bugoff.can_do.database;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code VersionStamp} records which version of its stored document a {@link DatabaseEntity}'s
+ * state is based on.
+ *
+ * <p>Every entity document carries a monotonically increasing {@code version}, bumped by every
+ * write, and a {@code fieldVersions} map holding a counter per field, bumped whenever that field
+ * is written. Comparing the field counters an entity last saw with the ones currently stored tells
+ * exactly which fields were changed by someone else since, so a save only conflicts on the fields
+ * both sides changed (see {@link VersionedUpdate}).</p>
+ */
+public class VersionStamp {
+    public static final String VERSION = "version";
+    public static final String FIELD_VERSIONS = "fieldVersions";
+
+    private long version;
+    private final Map<String, Long> fieldVersions = new HashMap<>();
+
+    /**
+     * Gets the version of the document the entity's state is based on.
+     *
+     * @return The document version, or 0 if the entity has never been stored or read.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets a copy of the field counters the entity's state is based on.
+     *
+     * @return A map of field names to their counters.
+     */
+    public synchronized Map<String, Long> getFieldVersions() {
+        return new HashMap<>(fieldVersions);
+    }
+
+    /**
+     * Checks whether a snapshot is older than the state the entity is already based on, e.g. a
+     * snapshot that was in flight while one of the entity's own saves committed.
+     *
+     * @param doc The snapshot.
+     * @return {@code true} if the snapshot should be ignored; {@code false} otherwise.
+     */
+    public synchronized boolean isStale(@NonNull DocumentSnapshot doc) {
+        return readVersion(doc) < version;
+    }
+
+    /**
+     * Adopts the version of a snapshot that has been applied to the entity.
+     *
+     * @param doc  The applied snapshot.
+     * @param skip The fields whose local values were kept instead of the snapshot's, so their
+     *             counters keep describing the state the local values are based on.
+     */
+    public synchronized void apply(@NonNull DocumentSnapshot doc, @NonNull Set<String> skip) {
+        version = readVersion(doc);
+        for (Map.Entry<String, Long> entry : readFieldVersions(doc).entrySet()) {
+            if (!skip.contains(entry.getKey())) {
+                fieldVersions.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Records a save that has been committed.
+     *
+     * @param version The document version written by the save.
+     * @param written The counters written for each field the save changed.
+     */
+    synchronized void committed(long version, @NonNull Map<String, Long> written) {
+        this.version = Math.max(this.version, version);
+        fieldVersions.putAll(written);
+    }
+
+    /**
+     * Reads the version of a document.
+     *
+     * @param doc The document.
+     * @return The version, or 0 for documents written before versions were introduced.
+     */
+    static long readVersion(@NonNull DocumentSnapshot doc) {
+        Long value = doc.exists() ? doc.getLong(VERSION) : null;
+        return value != null ? value : 0;
+    }
+
+    /**
+     * Reads the field counters of a document.
+     *
+     * @param doc The document.
+     * @return A map of field names to their counters; fields without a counter are omitted.
+     */
+    static Map<String, Long> readFieldVersions(@NonNull DocumentSnapshot doc) {
+        Map<String, Long> result = new HashMap<>();
+        Object raw = doc.exists() ? doc.get(FIELD_VERSIONS) : null;
+        if (raw instanceof Map<?, ?>) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) raw).entrySet()) {
+                if (entry.getKey() instanceof String && entry.getValue() instanceof Number) {
+                    result.put((String) entry.getKey(), ((Number) entry.getValue()).longValue());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds version bumps to an update that is written without reading the document first, e.g.
+     * an array transform. The counters are incremented atomically by Firestore.
+     *
+     * @param update The update to add the bumps to.
+     * @param fields The fields the update changes.
+     */
+    public static void bump(@NonNull Map<String, Object> update, @NonNull String... fields) {
+        update.put(VERSION, FieldValue.increment(1));
+        for (String field : fields) {
+            update.put(FIELD_VERSIONS + "." + field, FieldValue.increment(1));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.bugoff.can_do.database;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.firestore.FieldValue;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * {@code VersionedUpdate} resolves the changes of an entity against the stored document, field by
+ * field, for a compare-and-set save.
+ *
+ * <p>A change that sets a whole field conflicts when the field's counter in the document differs
+ * from the counter the entity last saw, i.e. someone else wrote that field in the meantime. The
+ * stored value then wins and the change is dropped, while the entity's other changes are still
+ * written. Array transforms and single map entries (dotted field paths) are merged by Firestore
+ * and never conflict. Every field that is written gets its counter bumped, and the document
+ * version is incremented.</p>
+ */
+public final class VersionedUpdate {
+    private final Map<String, Object> writes;
+    private final Set<String> conflicts;
+    private final Map<String, Long> writtenFieldVersions;
+    private final long version;
+
+    private VersionedUpdate(Map<String, Object> writes, Set<String> conflicts,
+                            Map<String, Long> writtenFieldVersions, long version) {
+        this.writes = writes;
+        this.conflicts = conflicts;
+        this.writtenFieldVersions = writtenFieldVersions;
+        this.version = version;
+    }
+
+    /**
+     * Resolves changes against the stored document.
+     *
+     * @param changes              The changes to write, as returned by {@link DatabaseEntity#takeChanges()}.
+     * @param baseFieldVersions    The field counters the entity's state is based on.
+     * @param remoteVersion        The version of the stored document.
+     * @param remoteFieldVersions  The field counters of the stored document.
+     * @return The resolved update.
+     */
+    @NonNull
+    public static VersionedUpdate resolve(@NonNull Map<String, Object> changes,
+                                          @NonNull Map<String, Long> baseFieldVersions,
+                                          long remoteVersion,
+                                          @NonNull Map<String, Long> remoteFieldVersions) {
+        Map<String, Object> writes = new LinkedHashMap<>();
+        Set<String> conflicts = new LinkedHashSet<>();
+        Map<String, Long> written = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> entry : changes.entrySet()) {
+            String path = entry.getKey();
+            int dot = path.indexOf('.');
+            String field = dot >= 0 ? path.substring(0, dot) : path;
+            long remote = getOrZero(remoteFieldVersions, field);
+            if (!isMergeable(path, entry.getValue()) && remote != getOrZero(baseFieldVersions, field)) {
+                conflicts.add(field);
+                continue;
+            }
+            writes.put(path, entry.getValue());
+            written.put(field, remote + 1);
+        }
+        if (writes.isEmpty()) {
+            return new VersionedUpdate(writes, conflicts, written, remoteVersion);
+        }
+        for (Map.Entry<String, Long> entry : written.entrySet()) {
+            writes.put(VersionStamp.FIELD_VERSIONS + "." + entry.getKey(), entry.getValue());
+        }
+        writes.put(VersionStamp.VERSION, remoteVersion + 1);
+        return new VersionedUpdate(writes, conflicts, written, remoteVersion + 1);
+    }
+
+    /**
+     * Gets the update to write, including the version bumps, or an empty map if nothing is left
+     * to write.
+     *
+     * @return A map of field paths to values.
+     */
+    @NonNull
+    public Map<String, Object> getWrites() {
+        return Collections.unmodifiableMap(writes);
+    }
+
+    /**
+     * Gets the fields whose local change was dropped because the stored value changed since.
+     *
+     * @return The conflicting field names.
+     */
+    @NonNull
+    public Set<String> getConflicts() {
+        return Collections.unmodifiableSet(conflicts);
+    }
+
+    /**
+     * Gets the counters written for each field that is written.
+     *
+     * @return A map of field names to their new counters.
+     */
+    @NonNull
+    public Map<String, Long> getWrittenFieldVersions() {
+        return Collections.unmodifiableMap(writtenFieldVersions);
+    }
+
+    /**
+     * Gets the version of the document once the update is written.
+     *
+     * @return The new document version, or the current one if nothing is written.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    private static boolean isMergeable(String path, Object value) {
+        // Map entries and array transforms apply on top of whatever is stored
+        return path.indexOf('.') >= 0 || (value instanceof FieldValue && !FieldValue.delete().equals(value));
+    }
+
+    private static long getOrZero(Map<String, Long> versions, String field) {
+        Long version = versions.get(field);
+        return version != null ? version : 0;
+    }
+}
@@ -0,0 +1,141 @@
+package com.bugoff.can_do.database;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code WriteBehindBuffer} coalesces remote writes of {@link DatabaseEntity} objects.
+ *
+ * <p>Entities mark themselves dirty from {@link DatabaseEntity#setRemote()} instead of writing
+ * straight to Firestore. All writes queued for the same document within one flush window are
+ * collapsed into a single write, so a burst of setter calls (e.g. saving a form) costs one
+ * round trip per document instead of one per field.</p>
+ *
+ * <p>Pending writes are flushed automatically once the window elapses, or immediately by
+ * calling {@link #flush()}, which acts as a barrier for callers that need the data to be
+ * persisted before continuing (e.g. before navigating away from an edit screen).</p>
+ */
+public class WriteBehindBuffer {
+    private static final String TAG = "WriteBehindBuffer";
+    private static final long DEFAULT_FLUSH_WINDOW_MS = 300;
+    private static WriteBehindBuffer instance;
+
+    /**
+     * A deferred write of a single document.
+     */
+    public interface PendingWrite {
+        /**
+         * Performs the write.
+         *
+         * @return A {@link Task} that completes when the write has been acknowledged.
+         */
+        Task<Void> write();
+    }
+
+    // Keyed by document path so that repeated writes to the same document coalesce
+    private final Map<String, PendingWrite> pendingWrites = new LinkedHashMap<>();
+    private final Handler handler;
+    private final long flushWindowMs;
+    private final Runnable flushRunnable = this::flush;
+    private boolean flushScheduled = false;
+
+    /**
+     * Constructs a new {@code WriteBehindBuffer}.
+     *
+     * @param handler       The {@link Handler} used to schedule automatic flushes.
+     * @param flushWindowMs How long, in milliseconds, writes are held before being flushed.
+     */
+    @VisibleForTesting
+    public WriteBehindBuffer(@NonNull Handler handler, long flushWindowMs) {
+        this.handler = handler;
+        this.flushWindowMs = flushWindowMs;
+    }
+
+    /**
+     * Retrieves the shared instance of the buffer, which flushes on the main thread.
+     *
+     * @return The singleton {@code WriteBehindBuffer}.
+     */
+    public static synchronized WriteBehindBuffer getInstance() {
+        if (instance == null) {
+            instance = new WriteBehindBuffer(new Handler(Looper.getMainLooper()), DEFAULT_FLUSH_WINDOW_MS);
+        }
+        return instance;
+    }
+
+    /**
+     * Marks the document identified by {@code key} as dirty. If a write for the same document is
+     * already pending, it is replaced by {@code write}, so only the latest state is persisted.
+     *
+     * @param key   The document path, e.g. {@code "events/<id>"}.
+     * @param write The write to perform when the buffer is flushed.
+     */
+    public synchronized void markDirty(@NonNull String key, @NonNull PendingWrite write) {
+        pendingWrites.put(key, write);
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushRunnable, flushWindowMs);
+        }
+    }
+
+    /**
+     * Drops the pending write for a document, if any. Used when the full document is written
+     * through another path (e.g. {@code addEvent}) and the buffered write would be redundant.
+     *
+     * @param key The document path.
+     */
+    public synchronized void discard(@NonNull String key) {
+        pendingWrites.remove(key);
+    }
+
+    /**
+     * Checks whether a document has a write waiting to be flushed.
+     *
+     * @param key The document path.
+     * @return {@code true} if a write is pending for the document; {@code false} otherwise.
+     */
+    public synchronized boolean isDirty(@NonNull String key) {
+        return pendingWrites.containsKey(key);
+    }
+
+    /**
+     * Immediately performs all pending writes.
+     *
+     * @return A {@link Task} that completes once every flushed write has completed.
+     */
+    public Task<Void> flush() {
+        List<PendingWrite> writes;
+        synchronized (this) {
+            handler.removeCallbacks(flushRunnable);
+            flushScheduled = false;
+            writes = new ArrayList<>(pendingWrites.values());
+            pendingWrites.clear();
+        }
+
+        List<Task<Void>> tasks = new ArrayList<>();
+        for (PendingWrite write : writes) {
+            try {
+                Task<Void> task = write.write();
+                if (task != null) {
+                    tasks.add(task);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Error flushing pending write", e);
+            }
+        }
+        Log.d(TAG, "Flushed " + writes.size() + " pending write(s)");
+        return Tasks.whenAll(tasks);
+    }
+}
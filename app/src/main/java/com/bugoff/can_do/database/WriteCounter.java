@@ -0,0 +1,105 @@
+package com.bugoff.can_do.database;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@code WriteCounter} counts the Firestore document writes issued by the app, so the effect of
+ * write optimizations can be measured per user action.
+ *
+ * <p>The shared write paths record every document they write, by collection. Screens call
+ * {@link #beginAction(String)} when the user starts an action (e.g. joining a waiting list); the
+ * writes recorded until the next action began are attributed to it and logged. Because writes
+ * are buffered, an action's writes may be recorded shortly after its handler returned.</p>
+ */
+public class WriteCounter {
+    private static final String TAG = "WriteCounter";
+    private static WriteCounter instance;
+
+    private final Map<String, Long> counts = new HashMap<>();
+    private long total = 0;
+    private String action;
+    private long actionStart = 0;
+
+    /**
+     * Retrieves the shared instance of the counter.
+     *
+     * @return The singleton {@code WriteCounter}.
+     */
+    public static synchronized WriteCounter getInstance() {
+        if (instance == null) {
+            instance = new WriteCounter();
+        }
+        return instance;
+    }
+
+    /**
+     * Records document writes.
+     *
+     * @param collection The collection of the written documents, e.g. {@code "events"}.
+     * @param writes     The number of documents written.
+     */
+    public synchronized void record(@NonNull String collection, int writes) {
+        if (writes <= 0) {
+            return;
+        }
+        Long current = counts.get(collection);
+        counts.put(collection, (current != null ? current : 0) + writes);
+        total += writes;
+    }
+
+    /**
+     * Starts attributing writes to a new user action, and logs the writes of the previous one.
+     *
+     * @param action A short name for the action, e.g. {@code "joinWaitingList"}.
+     */
+    public synchronized void beginAction(@NonNull String action) {
+        if (this.action != null) {
+            Log.d(TAG, this.action + ": " + getActionWrites() + " write(s)");
+        }
+        this.action = action;
+        actionStart = total;
+    }
+
+    /**
+     * Gets the number of writes recorded since the current action began.
+     *
+     * @return The writes of the current action, or of the whole session if no action began yet.
+     */
+    public synchronized long getActionWrites() {
+        return total - actionStart;
+    }
+
+    /**
+     * Gets the number of writes recorded in total.
+     *
+     * @return The total number of document writes.
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * Gets the number of writes recorded per collection.
+     *
+     * @return A copy of the counts, keyed by collection.
+     */
+    @NonNull
+    public synchronized Map<String, Long> getCounts() {
+        return new HashMap<>(counts);
+    }
+
+    /**
+     * Clears all counts and the current action.
+     */
+    public synchronized void reset() {
+        counts.clear();
+        total = 0;
+        action = null;
+        actionStart = 0;
+    }
+}
@@ -4,23 +4,33 @@ import android.location.Location;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.bugoff.can_do.EntrantStatus;
 import com.bugoff.can_do.database.DatabaseBehavior;
 import com.bugoff.can_do.database.DatabaseEntity;
+import com.bugoff.can_do.database.EntrantChange;
+import com.bugoff.can_do.database.FieldChangeTracker;
 import com.bugoff.can_do.database.FirebaseBehavior;
 import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.database.Ref;
+import com.bugoff.can_do.database.VersionStamp;
+import com.bugoff.can_do.database.WriteBehindBuffer;
 import com.bugoff.can_do.facility.Facility;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.ListenerRegistration;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * {@code Event} represents an event that can be held at a facility. It contains
@@ -29,9 +39,38 @@ import java.util.Objects;
  * through Firestore, allowing for dynamic updates to event details and participant lists.
  */
 public class Event implements DatabaseEntity {
+    /**
+     * Listener notified when the event changes, with the names of the fields that changed.
+     */
+    public interface OnUpdateListener {
+        /**
+         * Called after the event has changed.
+         *
+         * @param changedFields The Firestore field names that changed, as used by {@link #toMap()}.
+         */
+        void onUpdate(Set<String> changedFields);
+    }
+
+    /**
+     * Where the entrant membership of an event is stored.
+     */
+    public enum EntrantStorage {
+        /** Entrant lists and maps are fields of the event document. */
+        EMBEDDED,
+        /**
+         * Each entrant is a document in {@code events/{id}/entrants}, and per-list totals are kept
+         * in sharded counters, so the number of entrants is not limited by the document size.
+         */
+        SUBCOLLECTION
+    }
+
+    /** The event fields that hold list membership, named as in {@link #toMap()}. */
+    public static final List<String> ENTRANT_LISTS = Collections.unmodifiableList(Arrays.asList(
+            "waitingListEntrants", "selectedEntrants", "enrolledEntrants", "cancelledEntrants"));
+
     // Data fields
     private String id; // Unique ID of the event
-    private Facility facility; // The facility where the event is held
+    private Ref<Facility> facility; // The facility where the event is held, resolved lazily
     private String name; // The name of the event
     private String description; // The description of the event
     private String qrCodeHash; // The hash of the QR code for the event
@@ -47,10 +86,16 @@ public class Event implements DatabaseEntity {
     private List<String> selectedEntrants; // Entrants selected in the lottery (user IDs)
     private List<String> enrolledEntrants; // Entrants who accepted and enrolled (user IDs)
     private List<String> cancelledEntrants; // Entrants who cancelled (user IDs)
-    private String base64Image;
+    private String base64Image; // Legacy inline image, only read from older documents
+    private String imageHash; // Hash of the image in the ImageStore
+    private EntrantStorage entrantStorage = EntrantStorage.EMBEDDED; // Where the entrant fields above are persisted
+    private Date entrantsSyncedAt; // When the entrants were last fully loaded (subcollection storage)
     private static DatabaseBehavior databaseBehavior = new FirebaseBehavior();
     private ListenerRegistration listener;
-    private Runnable onUpdateListener;
+    private OnUpdateListener onUpdateListener;
+    private final FieldChangeTracker changes = new FieldChangeTracker(); // Fields changed since the last write
+    private final VersionStamp versionStamp = new VersionStamp(); // Stored version this state is based on
+    private final Map<String, EntrantChange> entrantChanges = new LinkedHashMap<>(); // Entrant changes since the last write (subcollection storage)
 
     public static void setDatabaseBehavior(DatabaseBehavior behavior) {
         databaseBehavior = behavior;
@@ -68,7 +113,7 @@ public class Event implements DatabaseEntity {
             this.id = GlobalRepository.getEventsCollection().document().getId();
         }
 
-        this.facility = facility;
+        this.facility = Ref.of(facility);
         this.name = "";
         this.description = "";
         this.qrCodeHash = "";
@@ -95,14 +140,25 @@ public class Event implements DatabaseEntity {
     }
 
     /**
- * Constructs an Event object from a Firestore DocumentSnapshot.
- *
- * @param facility The facility where the event is held.
- * @param doc      The Firestore DocumentSnapshot containing event data.
- */
+     * Constructs an Event object from a Firestore DocumentSnapshot whose facility is already loaded.
+     *
+     * @param facility The facility where the event is held.
+     * @param doc      The Firestore DocumentSnapshot containing event data.
+     */
     public Event(@NonNull Facility facility, @NonNull DocumentSnapshot doc) {
+        this(doc);
+        this.facility = Ref.of(facility);
+    }
+
+    /**
+     * Constructs an Event object from a Firestore DocumentSnapshot. The facility is not read; it
+     * is referenced by ID and loaded on first use through {@link #getFacilityRef()}.
+     *
+     * @param doc The Firestore DocumentSnapshot containing event data.
+     */
+    public Event(@NonNull DocumentSnapshot doc) {
         this.id = doc.getId();
-        this.facility = facility;
+        this.facility = new Ref<>(doc.getString("facilityId"), GlobalRepository::getFacility);
         this.name = doc.getString("name");
         this.description = doc.getString("description");
         this.qrCodeHash = doc.getString("qrCodeHash");
@@ -114,6 +170,8 @@ public class Event implements DatabaseEntity {
         this.geolocationRequired = doc.getBoolean("geolocationRequired") != null ? doc.getBoolean("geolocationRequired") : Boolean.FALSE;
 
         this.base64Image = doc.getString("base64Image");
+        this.imageHash = doc.getString("imageHash");
+        this.entrantStorage = parseEntrantStorage(doc.getString("entrantStorage"));
         // Initialize user lists as lists of user IDs
         this.waitingListEntrants = new ArrayList<>();
         this.entrantsLocations = new HashMap<>();
@@ -128,6 +186,7 @@ public class Event implements DatabaseEntity {
         deserializeUserList(doc.get("selectedEntrants"), selectedEntrants);
         deserializeUserList(doc.get("enrolledEntrants"), enrolledEntrants);
         deserializeUserList(doc.get("cancelledEntrants"), cancelledEntrants);
+        versionStamp.apply(doc, Collections.emptySet());
     }
 
     /**
@@ -148,16 +207,421 @@ public class Event implements DatabaseEntity {
         map.put("eventEndDate", eventEndDate);
         map.put("maxNumberOfParticipants", maxNumberOfParticipants);
         map.put("geolocationRequired", geolocationRequired);
+        map.put("imageHash", imageHash);
+        map.put("entrantStorage", entrantStorage.name());
+        if (entrantStorage == EntrantStorage.SUBCOLLECTION) {
+            // Entrants are stored as documents of the entrants subcollection instead
+            return map;
+        }
         map.put("waitingListEntrants", waitingListEntrants); // List of user IDs
         map.put("entrantsLocations", entrantsLocations); // Map of user IDs to Locations
         map.put("entrantStatuses", entrantStatuses); // Map of user IDs to statuses
         map.put("selectedEntrants", selectedEntrants); // List of user IDs
         map.put("enrolledEntrants", enrolledEntrants); // List of user IDs
         map.put("cancelledEntrants", cancelledEntrants); // List of user IDs
-        map.put("base64Image", base64Image);
         return map;
     }
 
+    /**
+     * Returns only the fields changed since the last write, so list membership changes are
+     * sent as array transforms and unchanged fields (e.g. the image) are not re-sent.
+     *
+     * @return A map of changed field paths to their new values.
+     */
+    @Override
+    public Map<String, Object> takeChanges() {
+        return changes.takeUpdate(toMap());
+    }
+
+    @Override
+    public void restoreChanges(@NonNull Map<String, Object> changes) {
+        this.changes.restore(changes.keySet());
+    }
+
+    @Override
+    public VersionStamp getVersionStamp() {
+        return versionStamp;
+    }
+
+    /**
+     * Applies a snapshot of this event's document in place. Each field is compared with the local
+     * value, and lists and maps are only deserialized again when their raw value differs. Fields
+     * with local changes that have not been written yet are kept.
+     *
+     * @param doc The latest snapshot of the event document.
+     * @return The names of the fields that changed.
+     */
+    public Set<String> applySnapshot(@NonNull DocumentSnapshot doc) {
+        return applySnapshot(doc, Collections.emptySet());
+    }
+
+    /**
+     * Applies a snapshot of this event's document in place, like {@link #applySnapshot(DocumentSnapshot)},
+     * additionally keeping the local values of the fields in {@code keep}. Snapshots older than the
+     * version this event is already based on are ignored.
+     *
+     * @param doc  The snapshot of the event document.
+     * @param keep The fields whose local values should be kept.
+     * @return The names of the fields that changed.
+     */
+    @Override
+    public Set<String> applySnapshot(@NonNull DocumentSnapshot doc, @NonNull Set<String> keep) {
+        Set<String> changed = new LinkedHashSet<>();
+        if (versionStamp.isStale(doc)) {
+            return changed;
+        }
+        Set<String> local = changes.getPendingFields();
+        local.addAll(keep);
+        versionStamp.apply(doc, local);
+
+        String facilityId = doc.getString("facilityId");
+        if (facilityId != null && !facilityId.equals(facility.getId()) && !local.contains("facilityId")) {
+            facility = new Ref<>(facilityId, GlobalRepository::getFacility);
+            changed.add("facilityId");
+        }
+        name = applyValue(changed, local, "name", name, doc.getString("name"));
+        description = applyValue(changed, local, "description", description, doc.getString("description"));
+        qrCodeHash = applyValue(changed, local, "qrCodeHash", qrCodeHash, doc.getString("qrCodeHash"));
+        base64Image = applyValue(changed, local, "base64Image", base64Image, doc.getString("base64Image"));
+        imageHash = applyValue(changed, local, "imageHash", imageHash, doc.getString("imageHash"));
+        registrationStartDate = applyValue(changed, local, "registrationStartDate", registrationStartDate, doc.getDate("registrationStartDate"));
+        registrationEndDate = applyValue(changed, local, "registrationEndDate", registrationEndDate, doc.getDate("registrationEndDate"));
+        eventStartDate = applyValue(changed, local, "eventStartDate", eventStartDate, doc.getDate("eventStartDate"));
+        eventEndDate = applyValue(changed, local, "eventEndDate", eventEndDate, doc.getDate("eventEndDate"));
+        Long max = doc.getLong("maxNumberOfParticipants");
+        maxNumberOfParticipants = applyValue(changed, local, "maxNumberOfParticipants", maxNumberOfParticipants, max != null ? max.intValue() : 0);
+        Boolean geolocation = doc.getBoolean("geolocationRequired");
+        geolocationRequired = applyValue(changed, local, "geolocationRequired", geolocationRequired, geolocation != null ? geolocation : Boolean.FALSE);
+
+        EntrantStorage storage = parseEntrantStorage(doc.getString("entrantStorage"));
+        if (storage != entrantStorage && !local.contains("entrantStorage")) {
+            entrantStorage = storage;
+            changed.add("entrantStorage");
+        }
+        if (entrantStorage == EntrantStorage.SUBCOLLECTION) {
+            // Membership is applied from the entrants subcollection through applyEntrant()
+            return changed;
+        }
+
+        // A raw Firestore list of strings equals the local list when the IDs match, so unchanged lists are not rebuilt
+        waitingListEntrants = applyList(changed, local, "waitingListEntrants", waitingListEntrants, doc.get("waitingListEntrants"));
+        selectedEntrants = applyList(changed, local, "selectedEntrants", selectedEntrants, doc.get("selectedEntrants"));
+        enrolledEntrants = applyList(changed, local, "enrolledEntrants", enrolledEntrants, doc.get("enrolledEntrants"));
+        cancelledEntrants = applyList(changed, local, "cancelledEntrants", cancelledEntrants, doc.get("cancelledEntrants"));
+
+        Object rawStatuses = doc.get("entrantStatuses");
+        if (!local.contains("entrantStatuses") && !statusesEqual(rawStatuses, entrantStatuses)) {
+            entrantStatuses = deserializeEntrantStatuses(rawStatuses);
+            changed.add("entrantStatuses");
+        }
+        Object rawLocations = doc.get("entrantsLocations");
+        if (!local.contains("entrantsLocations") && !locationsEqual(rawLocations, entrantsLocations)) {
+            entrantsLocations = deserializeEntrantsLocations(rawLocations);
+            changed.add("entrantsLocations");
+        }
+        return changed;
+    }
+
+    /**
+     * Applies the entrant document of a single user in place, for events using
+     * {@link EntrantStorage#SUBCOLLECTION}. Entrants with local changes that have not been written
+     * yet are kept.
+     *
+     * @param userId The ID of the entrant.
+     * @param data   The entrant document's data, or {@code null} if the document was removed.
+     * @return The names of the event fields that changed.
+     */
+    public Set<String> applyEntrant(@NonNull String userId, Map<String, Object> data) {
+        Set<String> changed = new LinkedHashSet<>();
+        if (entrantChanges.containsKey(userId)) {
+            return changed;
+        }
+        Object rawLists = data != null ? data.get("lists") : null;
+        List<?> lists = rawLists instanceof List<?> ? (List<?>) rawLists : Collections.emptyList();
+        for (String field : ENTRANT_LISTS) {
+            List<String> list = getEntrantList(field);
+            boolean member = lists.contains(field);
+            if (member != list.contains(userId)) {
+                if (member) {
+                    list.add(userId);
+                } else {
+                    list.remove(userId);
+                }
+                changed.add(field);
+            }
+        }
+
+        EntrantStatus status = null;
+        Object rawStatus = data != null ? data.get("status") : null;
+        if (rawStatus instanceof String) {
+            try {
+                status = EntrantStatus.valueOf((String) rawStatus);
+            } catch (IllegalArgumentException e) {
+                Log.e("Event", "Invalid EntrantStatus: " + rawStatus, e);
+            }
+        }
+        if (!Objects.equals(status, entrantStatuses.get(userId))) {
+            if (status != null) {
+                entrantStatuses.put(userId, status);
+            } else {
+                entrantStatuses.remove(userId);
+            }
+            changed.add("entrantStatuses");
+        }
+
+        Object latitude = data != null ? data.get("latitude") : null;
+        Object longitude = data != null ? data.get("longitude") : null;
+        Location current = entrantsLocations.get(userId);
+        if (latitude instanceof Number && longitude instanceof Number) {
+            if (current == null || current.getLatitude() != ((Number) latitude).doubleValue()
+                    || current.getLongitude() != ((Number) longitude).doubleValue()) {
+                Location location = new Location("");
+                location.setLatitude(((Number) latitude).doubleValue());
+                location.setLongitude(((Number) longitude).doubleValue());
+                entrantsLocations.put(userId, location);
+                changed.add("entrantsLocations");
+            }
+        } else if (current != null) {
+            entrantsLocations.remove(userId);
+            changed.add("entrantsLocations");
+        }
+        return changed;
+    }
+
+    /**
+     * Applies a membership change that has already been written to the database, e.g. through
+     * {@link DatabaseBehavior#moveEntrants}, without tracking it as a local change.
+     *
+     * @param userId The ID of the entrant.
+     * @param from   The entrant list the user left, or {@code null} if the user only joined a list.
+     * @param to     The entrant list the user joined, or {@code null} if the user only left a list.
+     * @return The names of the event fields that changed.
+     * @throws IllegalArgumentException If the lists are not a valid move, see {@link #checkEntrantMove}.
+     */
+    public Set<String> applyMove(@NonNull String userId, @Nullable String from, @Nullable String to) {
+        checkEntrantMove(from, to);
+        Set<String> changed = new LinkedHashSet<>();
+        if (from != null && getEntrantList(from).remove(userId)) {
+            changed.add(from);
+        }
+        if (to != null && !getEntrantList(to).contains(userId)) {
+            getEntrantList(to).add(userId);
+            changed.add(to);
+        }
+        return changed;
+    }
+
+    /**
+     * Checks that a membership change names valid entrant lists.
+     *
+     * @param from The entrant list the user leaves, or {@code null}.
+     * @param to   The entrant list the user joins, or {@code null}.
+     * @throws IllegalArgumentException If a list is not one of {@link #ENTRANT_LISTS}, if both
+     *                                  are {@code null}, or if both are the same list.
+     */
+    public static void checkEntrantMove(@Nullable String from, @Nullable String to) {
+        if ((from != null && !ENTRANT_LISTS.contains(from)) || (to != null && !ENTRANT_LISTS.contains(to))) {
+            throw new IllegalArgumentException("Unknown entrant list: " + (from != null && !ENTRANT_LISTS.contains(from) ? from : to));
+        }
+        if (Objects.equals(from, to)) {
+            throw new IllegalArgumentException("An entrant must move between two different lists");
+        }
+    }
+
+    /**
+     * Returns the entrant changes since the last write and clears them, for events using
+     * {@link EntrantStorage#SUBCOLLECTION}.
+     *
+     * @return A map of user IDs to their changes.
+     */
+    public Map<String, EntrantChange> takeEntrantChanges() {
+        Map<String, EntrantChange> entrants = new LinkedHashMap<>(entrantChanges);
+        entrantChanges.clear();
+        return entrants;
+    }
+
+    /**
+     * Adds entrant changes returned by {@link #takeEntrantChanges()} back after they failed to be
+     * written, beneath any made since.
+     *
+     * @param entrants The entrant changes that were not written, keyed by user ID.
+     */
+    public void restoreEntrantChanges(@NonNull Map<String, EntrantChange> entrants) {
+        for (Map.Entry<String, EntrantChange> entry : entrants.entrySet()) {
+            EntrantChange later = entrantChanges.get(entry.getKey());
+            if (later != null) {
+                later.addEarlier(entry.getValue());
+            } else {
+                entrantChanges.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private List<String> getEntrantList(String field) {
+        switch (field) {
+            case "waitingListEntrants":
+                return waitingListEntrants;
+            case "selectedEntrants":
+                return selectedEntrants;
+            case "enrolledEntrants":
+                return enrolledEntrants;
+            default:
+                return cancelledEntrants;
+        }
+    }
+
+    private static EntrantStorage parseEntrantStorage(String value) {
+        return EntrantStorage.SUBCOLLECTION.name().equals(value) ? EntrantStorage.SUBCOLLECTION : EntrantStorage.EMBEDDED;
+    }
+
+    /**
+     * Records that a user was added to an entrant list, in whichever storage model is in use.
+     */
+    private void markEntrantAdded(String field, String userId) {
+        if (entrantStorage == EntrantStorage.SUBCOLLECTION) {
+            entrantChange(userId).join(field);
+        } else {
+            changes.markAdded(field, userId);
+        }
+    }
+
+    /**
+     * Records that a user was removed from an entrant list, in whichever storage model is in use.
+     */
+    private void markEntrantRemoved(String field, String userId) {
+        if (entrantStorage == EntrantStorage.SUBCOLLECTION) {
+            entrantChange(userId).leave(field);
+        } else {
+            changes.markRemoved(field, userId);
+        }
+    }
+
+    /**
+     * Records that a user's entry of an entrant map changed, in whichever storage model is in use.
+     */
+    private void markEntrantEntryChanged(String field, String userId) {
+        if (entrantStorage != EntrantStorage.SUBCOLLECTION) {
+            changes.markEntryChanged(field, userId);
+        } else if (field.equals("entrantStatuses")) {
+            EntrantStatus status = entrantStatuses.get(userId);
+            entrantChange(userId).setStatus(status != null ? status.name() : null);
+        } else {
+            Location location = entrantsLocations.get(userId);
+            entrantChange(userId).setLocation(location != null ? location.getLatitude() : null,
+                    location != null ? location.getLongitude() : null);
+        }
+    }
+
+    private EntrantChange entrantChange(String userId) {
+        EntrantChange change = entrantChanges.get(userId);
+        if (change == null) {
+            change = new EntrantChange();
+            entrantChanges.put(userId, change);
+        }
+        return change;
+    }
+
+    /**
+     * Records that a whole entrant list was replaced, in whichever storage model is in use.
+     */
+    private void markListReplaced(String field, List<String> oldList, List<String> newList) {
+        if (entrantStorage != EntrantStorage.SUBCOLLECTION) {
+            changes.markChanged(field);
+            return;
+        }
+        for (String userId : oldList) {
+            if (!newList.contains(userId)) {
+                markEntrantRemoved(field, userId);
+            }
+        }
+        for (String userId : newList) {
+            if (!oldList.contains(userId)) {
+                markEntrantAdded(field, userId);
+            }
+        }
+    }
+
+    /**
+     * Records that a whole entrant map was replaced, in whichever storage model is in use. Must be
+     * called after the new map is in place; only the entries that differ are recorded.
+     */
+    private void markMapReplaced(String field, Map<String, ?> oldMap, Map<String, ?> newMap) {
+        if (entrantStorage != EntrantStorage.SUBCOLLECTION) {
+            changes.markChanged(field);
+            return;
+        }
+        Set<String> userIds = new LinkedHashSet<>(oldMap.keySet());
+        userIds.addAll(newMap.keySet());
+        for (String userId : userIds) {
+            if (!Objects.equals(oldMap.get(userId), newMap.get(userId))) {
+                markEntrantEntryChanged(field, userId);
+            }
+        }
+    }
+
+    /**
+     * Returns the remote value of a scalar field, recording the field if it differs from the local value.
+     */
+    private <T> T applyValue(Set<String> changed, Set<String> local, String field, T current, T remote) {
+        if (Objects.equals(current, remote) || local.contains(field)) {
+            return current;
+        }
+        changed.add(field);
+        return remote;
+    }
+
+    /**
+     * Returns the remote value of a list of user IDs, deserializing it only if it differs from the local list.
+     */
+    private List<String> applyList(Set<String> changed, Set<String> local, String field, List<String> current, Object remote) {
+        Object remoteList = remote != null ? remote : Collections.emptyList();
+        if (remoteList.equals(current) || local.contains(field)) {
+            return current;
+        }
+        changed.add(field);
+        return deserializeUserList(remote);
+    }
+
+    /**
+     * Checks whether raw Firestore entrant statuses match the local ones without deserializing them.
+     */
+    private static boolean statusesEqual(Object raw, Map<String, EntrantStatus> current) {
+        Map<?, ?> rawMap = raw instanceof Map<?, ?> ? (Map<?, ?>) raw : Collections.emptyMap();
+        if (rawMap.size() != current.size()) {
+            return false;
+        }
+        for (Map.Entry<String, EntrantStatus> entry : current.entrySet()) {
+            if (!entry.getValue().name().equals(rawMap.get(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether raw Firestore entrant locations match the local ones without deserializing them.
+     */
+    private static boolean locationsEqual(Object raw, Map<String, Location> current) {
+        Map<?, ?> rawMap = raw instanceof Map<?, ?> ? (Map<?, ?>) raw : Collections.emptyMap();
+        if (rawMap.size() != current.size()) {
+            return false;
+        }
+        for (Map.Entry<String, Location> entry : current.entrySet()) {
+            Object value = rawMap.get(entry.getKey());
+            if (!(value instanceof Map<?, ?>)) {
+                return false;
+            }
+            Object latitude = ((Map<?, ?>) value).get("latitude");
+            Object longitude = ((Map<?, ?>) value).get("longitude");
+            if (!(latitude instanceof Number) || !(longitude instanceof Number)
+                    || ((Number) latitude).doubleValue() != entry.getValue().getLatitude()
+                    || ((Number) longitude).doubleValue() != entry.getValue().getLongitude()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Deserialize a list of user IDs from Firestore and populate the provided list.
      *
@@ -268,21 +732,131 @@ public class Event implements DatabaseEntity {
         return id;
     }
 
+    /**
+     * Gets the image stored inline in documents written before images moved to the
+     * {@link com.bugoff.can_do.image.ImageStore}. It is read but never written again.
+     *
+     * @return The legacy base64 image, or {@code null} if there is none.
+     */
     public String getBase64Image() {
         return base64Image;
     }
 
-    public void setBase64Image(String base64Image) {
-        this.base64Image = base64Image;
+    /**
+     * Gets the hash of the image in the {@link com.bugoff.can_do.image.ImageStore}.
+     *
+     * @return The image hash, or {@code null} if there is no stored image.
+     */
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    /**
+     * Sets the image by its hash in the {@link com.bugoff.can_do.image.ImageStore}, replacing
+     * any legacy inline image, which is removed from the document.
+     *
+     * @param imageHash The image hash, or {@code null} to remove the image.
+     */
+    public void setImageHash(String imageHash) {
+        if (Objects.equals(this.imageHash, imageHash) && base64Image == null) {
+            return;
+        }
+        this.imageHash = imageHash;
+        changes.markChanged("imageHash");
+        if (base64Image != null) {
+            base64Image = null;
+            changes.markChanged("base64Image"); // No longer part of toMap(), so it is deleted
+        }
         setRemote();
     }
 
+    /**
+     * Gets where the entrants of this event are stored.
+     *
+     * @return The storage model of the entrants.
+     */
+    public EntrantStorage getEntrantStorage() {
+        return entrantStorage;
+    }
+
+    /**
+     * Gets when the entrants of this event were last loaded from the subcollection. Only entrants
+     * changed since then need to be followed (see {@link com.bugoff.can_do.database.EntrantSubcollection}).
+     *
+     * @return The time the last load started, or {@code null} if the entrants were never loaded.
+     */
+    public Date getEntrantsSyncedAt() {
+        return entrantsSyncedAt;
+    }
+
+    /**
+     * Sets when the entrants of this event were last loaded from the subcollection.
+     *
+     * @param entrantsSyncedAt The time the load started.
+     */
+    public void setEntrantsSyncedAt(Date entrantsSyncedAt) {
+        this.entrantsSyncedAt = entrantsSyncedAt;
+    }
+
+    /**
+     * Changes where the entrants of this event are stored. Switching to
+     * {@link EntrantStorage#SUBCOLLECTION} moves every current entrant into the subcollection and
+     * removes the entrant fields from the event document; switching back writes them to the
+     * document again.
+     *
+     * @param entrantStorage The storage model to use.
+     */
+    public void setEntrantStorage(EntrantStorage entrantStorage) {
+        if (this.entrantStorage == entrantStorage) {
+            return;
+        }
+        this.entrantStorage = entrantStorage;
+        changes.markChanged("entrantStorage");
+        for (String field : ENTRANT_LISTS) {
+            changes.markChanged(field);
+        }
+        changes.markChanged("entrantStatuses");
+        changes.markChanged("entrantsLocations");
+        if (entrantStorage == EntrantStorage.SUBCOLLECTION) {
+            for (String field : ENTRANT_LISTS) {
+                for (String userId : getEntrantList(field)) {
+                    markEntrantAdded(field, userId);
+                }
+            }
+            for (String userId : entrantStatuses.keySet()) {
+                markEntrantEntryChanged("entrantStatuses", userId);
+            }
+            for (String userId : entrantsLocations.keySet()) {
+                markEntrantEntryChanged("entrantsLocations", userId);
+            }
+        }
+        setRemote();
+    }
+
+    /**
+     * Gets the facility where the event is held, if it has already been loaded.
+     *
+     * @return The facility, or {@code null} if it has not been loaded yet.
+     */
     public Facility getFacility() {
+        return facility.getIfLoaded();
+    }
+
+    public String getFacilityId() {
+        return facility.getId();
+    }
+
+    public Ref<Facility> getFacilityRef() {
         return facility;
     }
 
     public void setFacility(Facility facility) {
-        this.facility = facility;
+        boolean sameFacility = Objects.equals(this.facility.getId(), facility.getId());
+        this.facility = Ref.of(facility);
+        if (sameFacility) {
+            return;
+        }
+        changes.markChanged("facilityId");
         setRemote();
     }
 
@@ -291,7 +865,11 @@ public class Event implements DatabaseEntity {
     }
 
     public void setName(String name) {
+        if (Objects.equals(this.name, name)) {
+            return;
+        }
         this.name = name;
+        changes.markChanged("name");
         setRemote();
     }
 
@@ -300,7 +878,11 @@ public class Event implements DatabaseEntity {
     }
 
     public void setDescription(String description) {
+        if (Objects.equals(this.description, description)) {
+            return;
+        }
         this.description = description;
+        changes.markChanged("description");
         setRemote();
     }
 
@@ -309,7 +891,11 @@ public class Event implements DatabaseEntity {
     }
 
     public void setQrCodeHash(String qrCodeHash) {
+        if (Objects.equals(this.qrCodeHash, qrCodeHash)) {
+            return;
+        }
         this.qrCodeHash = qrCodeHash;
+        changes.markChanged("qrCodeHash");
         setRemote();
     }
 
@@ -318,7 +904,11 @@ public class Event implements DatabaseEntity {
     }
 
     public void setRegistrationStartDate(Date registrationStartDate) {
+        if (Objects.equals(this.registrationStartDate, registrationStartDate)) {
+            return;
+        }
         this.registrationStartDate = registrationStartDate;
+        changes.markChanged("registrationStartDate");
         setRemote();
     }
 
@@ -327,7 +917,11 @@ public class Event implements DatabaseEntity {
     }
 
     public void setRegistrationEndDate(Date registrationEndDate) {
+        if (Objects.equals(this.registrationEndDate, registrationEndDate)) {
+            return;
+        }
         this.registrationEndDate = registrationEndDate;
+        changes.markChanged("registrationEndDate");
         setRemote();
     }
 
@@ -336,7 +930,11 @@ public class Event implements DatabaseEntity {
     }
 
     public void setEventStartDate(Date eventStartDate) {
+        if (Objects.equals(this.eventStartDate, eventStartDate)) {
+            return;
+        }
         this.eventStartDate = eventStartDate;
+        changes.markChanged("eventStartDate");
         setRemote();
     }
 
@@ -345,7 +943,11 @@ public class Event implements DatabaseEntity {
     }
 
     public void setEventEndDate(Date eventEndDate) {
+        if (Objects.equals(this.eventEndDate, eventEndDate)) {
+            return;
+        }
         this.eventEndDate = eventEndDate;
+        changes.markChanged("eventEndDate");
         setRemote();
     }
 
@@ -354,7 +956,11 @@ public class Event implements DatabaseEntity {
     }
 
     public void setMaxNumberOfParticipants(Integer maxNumberOfParticipants) {
+        if (Objects.equals(this.maxNumberOfParticipants, maxNumberOfParticipants)) {
+            return;
+        }
         this.maxNumberOfParticipants = maxNumberOfParticipants;
+        changes.markChanged("maxNumberOfParticipants");
         setRemote();
     }
 
@@ -363,7 +969,11 @@ public class Event implements DatabaseEntity {
     }
 
     public void setGeolocationRequired(Boolean geolocationRequired) {
+        if (Objects.equals(this.geolocationRequired, geolocationRequired)) {
+            return;
+        }
         this.geolocationRequired = geolocationRequired;
+        changes.markChanged("geolocationRequired");
         setRemote();
     }
 
@@ -372,6 +982,10 @@ public class Event implements DatabaseEntity {
     }
 
     public void setWaitingListEntrants(List<String> waitingListEntrants) {
+        if (Objects.equals(this.waitingListEntrants, waitingListEntrants)) {
+            return;
+        }
+        markListReplaced("waitingListEntrants", this.waitingListEntrants, waitingListEntrants);
         this.waitingListEntrants = waitingListEntrants;
         setRemote();
     }
@@ -381,7 +995,12 @@ public class Event implements DatabaseEntity {
     }
 
     public void setEntrantsLocations(Map<String, Location> entrantsLocations) {
+        if (Objects.equals(this.entrantsLocations, entrantsLocations)) {
+            return;
+        }
+        Map<String, Location> oldLocations = this.entrantsLocations;
         this.entrantsLocations = entrantsLocations;
+        markMapReplaced("entrantsLocations", oldLocations, entrantsLocations);
         setRemote();
     }
 
@@ -390,7 +1009,12 @@ public class Event implements DatabaseEntity {
     }
 
     public void setEntrantStatuses(Map<String, EntrantStatus> entrantStatuses) {
+        if (Objects.equals(this.entrantStatuses, entrantStatuses)) {
+            return;
+        }
+        Map<String, EntrantStatus> oldStatuses = this.entrantStatuses;
         this.entrantStatuses = entrantStatuses;
+        markMapReplaced("entrantStatuses", oldStatuses, entrantStatuses);
         setRemote();
     }
 
@@ -399,6 +1023,10 @@ public class Event implements DatabaseEntity {
     }
 
     public void setSelectedEntrants(List<String> selectedEntrants) {
+        if (Objects.equals(this.selectedEntrants, selectedEntrants)) {
+            return;
+        }
+        markListReplaced("selectedEntrants", this.selectedEntrants, selectedEntrants);
         this.selectedEntrants = selectedEntrants;
         setRemote();
     }
@@ -408,6 +1036,10 @@ public class Event implements DatabaseEntity {
     }
 
     public void setEnrolledEntrants(List<String> enrolledEntrants) {
+        if (Objects.equals(this.enrolledEntrants, enrolledEntrants)) {
+            return;
+        }
+        markListReplaced("enrolledEntrants", this.enrolledEntrants, enrolledEntrants);
         this.enrolledEntrants = enrolledEntrants;
         setRemote();
     }
@@ -426,6 +1058,7 @@ public class Event implements DatabaseEntity {
     public void addWaitingListEntrant(String userId) {
         if (!waitingListEntrants.contains(userId)) {
             waitingListEntrants.add(userId);
+            markEntrantAdded("waitingListEntrants", userId);
             setRemote();
         }
     }
@@ -438,6 +1071,7 @@ public class Event implements DatabaseEntity {
     public void removeWaitingListEntrant(String userId) {
         if (waitingListEntrants.contains(userId)) {
             waitingListEntrants.remove(userId);
+            markEntrantRemoved("waitingListEntrants", userId);
             setRemote();
         }
     }
@@ -450,6 +1084,7 @@ public class Event implements DatabaseEntity {
      */
     public void updateEntrantStatus(String userId, EntrantStatus status) {
         entrantStatuses.put(userId, status);
+        markEntrantEntryChanged("entrantStatuses", userId);
         setRemote();
     }
 
@@ -461,6 +1096,7 @@ public class Event implements DatabaseEntity {
     public void addSelectedEntrant(String userId) {
         if (!selectedEntrants.contains(userId)) {
             selectedEntrants.add(userId);
+            markEntrantAdded("selectedEntrants", userId);
             setRemote();
         }
     }
@@ -473,6 +1109,7 @@ public class Event implements DatabaseEntity {
     public void removeSelectedEntrant(String userId) {
         if (selectedEntrants.contains(userId)) {
             selectedEntrants.remove(userId);
+            markEntrantRemoved("selectedEntrants", userId);
             setRemote();
         }
     }
@@ -485,6 +1122,7 @@ public class Event implements DatabaseEntity {
     public void enrollEntrant(String userId) {
         if (!enrolledEntrants.contains(userId)) {
             enrolledEntrants.add(userId);
+            markEntrantAdded("enrolledEntrants", userId);
             setRemote();
         }
     }
@@ -494,14 +1132,13 @@ public class Event implements DatabaseEntity {
      * event object into a Map format compatible with Firestore and updates the event
      * document with the specified ID in the "Events" Firestore collection.
      *
-     * If the save operation is successful, a log entry is generated indicating
-     * the event was updated successfully. In case of a failure, an error message
-     * is logged.
+     * The write is buffered in the {@link WriteBehindBuffer}, so consecutive setter
+     * calls within one flush window result in a single write of the latest state.
      */
     @Override
     public void setRemote() {
         if (!GlobalRepository.isInTestMode()) {
-            databaseBehavior.saveEvent(this);
+            WriteBehindBuffer.getInstance().markDirty("events/" + id, () -> databaseBehavior.saveEvent(this));
         }
     }
 
@@ -511,15 +1148,9 @@ public class Event implements DatabaseEntity {
      * automatically update the local instance fields whenever changes are detected in
      * Firestore.
      *
-     * Upon detecting a change:
-     * - If there is an updated facility ID, it fetches the updated Facility object,
-     *   ensuring a bidirectional reference between Event and Facility.
-     * - Other event details such as name, description, dates, and participant limits
-     *   are also updated locally.
-     *
-     * If there are changes, it calls `onUpdate()` to notify any listeners of these updates.
-     * Error handling includes logging failures to fetch the updated facility or
-     * listen to event changes.
+     * Upon detecting a change, the snapshot is applied to this instance with
+     * {@link #applySnapshot(DocumentSnapshot)}, and if any field changed, the
+     * `onUpdateListener` is notified with the names of the changed fields.
      */
     @Override
     public void attachListener() {
@@ -547,11 +1178,21 @@ public class Event implements DatabaseEntity {
      * Invokes the `onUpdateListener` if it's set. This method is used to notify
      * any external components that a change has occurred in this event instance,
      * allowing for real-time updates to UI or other elements based on event changes.
+     * Since the changed fields are unknown here, every field is reported.
      */
     @Override
     public void onUpdate() {
+        onUpdate(toMap().keySet());
+    }
+
+    /**
+     * Invokes the `onUpdateListener` if it's set, reporting only the fields that changed.
+     *
+     * @param changedFields The names of the fields that changed.
+     */
+    public void onUpdate(Set<String> changedFields) {
         if (onUpdateListener != null) {
-            onUpdateListener.run();
+            onUpdateListener.onUpdate(changedFields);
         }
     }
 
@@ -564,10 +1205,24 @@ public class Event implements DatabaseEntity {
      */
     @Override
     public void setOnUpdateListener(Runnable listener) {
+        this.onUpdateListener = listener != null ? changedFields -> listener.run() : null;
+    }
+
+    /**
+     * Registers an {@link OnUpdateListener} for this event instance, which is told which fields
+     * changed so that only the affected parts of the UI need to be refreshed.
+     *
+     * @param listener The listener to notify on update.
+     */
+    public void setOnUpdateListener(OnUpdateListener listener) {
         this.onUpdateListener = listener;
     }
 
     public void setCancelledEntrants(List<String> updatedCancelledEntrants) {
+        if (Objects.equals(this.cancelledEntrants, updatedCancelledEntrants)) {
+            return;
+        }
+        markListReplaced("cancelledEntrants", this.cancelledEntrants, updatedCancelledEntrants);
         this.cancelledEntrants = updatedCancelledEntrants;
         setRemote();
     }
@@ -17,7 +17,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
 
 /**
  * ViewModel for managing and exposing an Event's data to the UI layer.
@@ -67,7 +67,7 @@ public class EventViewModel extends ViewModel {
                     if (fetchedEvent != null) {
                         this.event = fetchedEvent;
                         updateLiveData();
-                        this.event.setOnUpdateListener(this::updateLiveData);
+                        this.event.setOnUpdateListener(this::onEventUpdated);
                         this.event.attachListener();
 
                         // Fetch User details based on user IDs
@@ -114,6 +114,71 @@ public class EventViewModel extends ViewModel {
             fetchUsersForList(event.getCancelledEntrants(), cancelledEntrants);
         }
     }
+    /**
+     * Updates only the LiveData objects backed by the fields that changed, and only re-fetches
+     * the user details of entrant lists whose membership changed.
+     *
+     * @param changedFields The names of the event fields that changed.
+     */
+    private void onEventUpdated(Set<String> changedFields) {
+        if (event == null) {
+            return;
+        }
+        for (String field : changedFields) {
+            switch (field) {
+                case "name":
+                    eventName.postValue(event.getName());
+                    break;
+                case "description":
+                    description.postValue(event.getDescription());
+                    break;
+                case "qrCodeHash":
+                    qrCodeHash.postValue(event.getQrCodeHash());
+                    break;
+                case "registrationStartDate":
+                    registrationStartDate.postValue(event.getRegistrationStartDate());
+                    break;
+                case "registrationEndDate":
+                    registrationEndDate.postValue(event.getRegistrationEndDate());
+                    break;
+                case "eventStartDate":
+                    eventStartDate.postValue(event.getEventStartDate());
+                    break;
+                case "eventEndDate":
+                    eventEndDate.postValue(event.getEventEndDate());
+                    break;
+                case "maxNumberOfParticipants":
+                    maxNumberOfParticipants.postValue(event.getMaxNumberOfParticipants());
+                    break;
+                case "geolocationRequired":
+                    geolocationRequired.postValue(event.getGeolocationRequired());
+                    break;
+                case "waitingListEntrants":
+                    waitingListEntrants.postValue(event.getWaitingListEntrants());
+                    fetchUsersForList(event.getWaitingListEntrants(), waitingListUsers);
+                    break;
+                case "entrantsLocations":
+                    entrantsLocations.postValue(event.getEntrantsLocations());
+                    break;
+                case "entrantStatuses":
+                    entrantStatuses.postValue(event.getEntrantStatuses());
+                    break;
+                case "selectedEntrants":
+                    selectedEntrants.postValue(event.getSelectedEntrants());
+                    fetchUsersForList(event.getSelectedEntrants(), selectedEntrantsUsers);
+                    break;
+                case "enrolledEntrants":
+                    enrolledEntrants.postValue(event.getEnrolledEntrants());
+                    fetchUsersForList(event.getEnrolledEntrants(), enrolledEntrantsUsers);
+                    break;
+                case "cancelledEntrants":
+                    fetchUsersForList(event.getCancelledEntrants(), cancelledEntrants);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
     /**
      * Fetches User details for a list of user IDs and updates the target LiveData object.
      *
@@ -127,26 +192,13 @@ public class EventViewModel extends ViewModel {
             return;
         }
 
-        Map<String, User> usersMap = new HashMap<>();
-        AtomicInteger counter = new AtomicInteger(userIds.size());
-
-        for (String userId : userIds) {
-            GlobalRepository.getUser(userId)
-                    .addOnSuccessListener(user -> {
-                        if (user != null) {
-                            usersMap.put(user.getId(), user);
-                        }
-                        if (counter.decrementAndGet() == 0) {
-                            targetLiveData.postValue(usersMap);
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Error fetching user: " + userId, e);
-                        if (counter.decrementAndGet() == 0) {
-                            targetLiveData.postValue(usersMap);
-                        }
-                    });
-        }
+        // One batched read for the whole list instead of one read per user
+        GlobalRepository.getUsers(userIds)
+                .addOnSuccessListener(targetLiveData::postValue)
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error fetching users", e);
+                    targetLiveData.postValue(new HashMap<>());
+                });
     }
 
     // Getters for LiveData
@@ -238,6 +290,13 @@ public class EventViewModel extends ViewModel {
             return;
         }
 
+        // The observed event is kept current by its snapshot listener, so no re-read is needed
+        if (event != null && eventId.equals(event.getId())) {
+            event.removeSelectedEntrant(userId);
+            updateLiveData();
+            return;
+        }
+
         GlobalRepository.getEvent(eventId)
                 .addOnSuccessListener(event -> {
                     event.removeSelectedEntrant(userId);
@@ -278,10 +337,10 @@ public class EventViewModel extends ViewModel {
      * @return {@code true} if the user is an organizer for the event, {@code false} otherwise.
      */
     public boolean isCurrentUserOrganizer() {
-        if (event == null || event.getFacility() == null) return false;
+        if (event == null || event.getFacilityId() == null) return false;
         User currentUser = GlobalRepository.getLoggedInUser();
         if (currentUser == null || currentUser.getFacility() == null) return false;
-        return currentUser.getFacility().getId().equals(event.getFacility().getId());
+        return currentUser.getFacility().getId().equals(event.getFacilityId());
     }
 
     /**
@@ -22,6 +22,7 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.bugoff.can_do.R;
 import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.database.WriteCounter;
 import com.bugoff.can_do.notification.Notification;
 import com.bugoff.can_do.user.User;
 import com.bugoff.can_do.user.UserAdapter;
@@ -94,6 +95,7 @@ public class EventWaitlistFragment extends Fragment {
      * @param numberToDraw The number of users to randomly select from the waitlist.
      */
     private void performDrawing(int numberToDraw) {
+        WriteCounter.getInstance().beginAction("performDrawing");
         Random random = new Random();
         List<User> selectedUsers = new ArrayList<>();
         List<String> remainingUserIds = new ArrayList<>();
@@ -115,37 +117,24 @@ public class EventWaitlistFragment extends Fragment {
             Log.d(TAG, "Observer: userList is empty");
         }
 
-        // Get current event
-        GlobalRepository.getEvent(eventId).addOnSuccessListener(event -> {
-            if (event != null) {
-                // Move users from waitlist to selected
-                List<String> selectedUserIds = new ArrayList<>();
-                for (User selectedUser : selectedUsers) {
-                    String userId = selectedUser.getId();
-                    selectedUserIds.add(userId);
-                    event.removeWaitingListEntrant(userId);
-                    event.addSelectedEntrant(userId);
-                }
+        List<String> selectedUserIds = new ArrayList<>();
+        for (User selectedUser : selectedUsers) {
+            selectedUserIds.add(selectedUser.getId());
+        }
 
-                if (GlobalRepository.isInTestMode()) {
-                    // In test mode, just update the mock repository
-                    GlobalRepository.addEvent(event)
-                            .addOnSuccessListener(aVoid -> {
-                                sendNotifications(event, selectedUserIds, remainingUserIds);
-                                Toast.makeText(getContext(),
-                                        "Successfully selected " + numberToDraw + " users.",
-                                        Toast.LENGTH_SHORT).show();
-                            });
-                } else {
-                    // In production mode, update Firestore
-                    event.setRemote();
+        // Move all selected users in one atomic write, so entrants who join meanwhile are not dropped
+        GlobalRepository.moveEntrants(eventId, selectedUserIds, "waitingListEntrants", "selectedEntrants")
+                .onSuccessTask(aVoid -> GlobalRepository.getEvent(eventId))
+                .addOnSuccessListener(event -> {
                     sendNotifications(event, selectedUserIds, remainingUserIds);
                     Toast.makeText(getContext(),
                             "Successfully selected " + numberToDraw + " users.",
                             Toast.LENGTH_SHORT).show();
-                }
-            }
-        });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "performDrawing: failed to move selected users", e);
+                    Toast.makeText(getContext(), "Error selecting users.", Toast.LENGTH_SHORT).show();
+                });
     }
 
     /**
@@ -272,7 +261,7 @@ public class EventWaitlistFragment extends Fragment {
                     uniqueId,
                     "Selection Update",
                     "You have been selected to participate!",
-                    event.getFacility().getId(),
+                    event.getFacilityId(),
                     new ArrayList<>(selectedUserIds),
                     event.getId()
             );
@@ -286,7 +275,7 @@ public class EventWaitlistFragment extends Fragment {
                     uniqueId,
                     "Selection Update",
                     "Unfortunately, you were not selected this time. Stay tuned for future opportunities!",
-                    event.getFacility().getId(),
+                    event.getFacilityId(),
                     new ArrayList<>(remainingUserIds),
                     event.getId()
             );
@@ -208,8 +208,8 @@ public class EventsFragment extends Fragment {
         User currentUser = GlobalRepository.getLoggedInUser();
         boolean isOwner = false;
 
-        if (currentUser != null && currentUser.getFacility() != null && event.getFacility() != null) {
-            isOwner = currentUser.getFacility().getId().equals(event.getFacility().getId());
+        if (currentUser != null && currentUser.getFacility() != null && event.getFacilityId() != null) {
+            isOwner = currentUser.getFacility().getId().equals(event.getFacilityId());
         }
 
         Fragment eventDetailsFragment = isOwner ?
@@ -7,8 +7,10 @@ import androidx.lifecycle.ViewModel;
 import com.bugoff.can_do.database.GlobalRepository;
 import com.bugoff.can_do.facility.Facility;
 import com.bugoff.can_do.user.User;
+import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QuerySnapshot;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -25,6 +27,8 @@ public class EventsListViewModel extends ViewModel {
     private final MutableLiveData<String> errorMessage = new MutableLiveData<>();
     private final MutableLiveData<String> statusMessage = new MutableLiveData<>();
     private ListenerRegistration eventListener;
+    // Events in query order, kept in sync with the listener's document changes by index
+    private final List<Event> orderedEvents = new ArrayList<>();
     /**
      * Creates a new instance of EventsListViewModel.
      *
@@ -64,6 +68,8 @@ public class EventsListViewModel extends ViewModel {
         if (eventListener != null) {
             eventListener.remove();
         }
+        // A new listener starts with every document as ADDED
+        orderedEvents.clear();
 
         eventListener = repository.getEventsCollection()
                 .addSnapshotListener((snapshots, e) -> {
@@ -75,22 +81,8 @@ public class EventsListViewModel extends ViewModel {
                     }
 
                     if (snapshots != null) {
-                        List<Event> newEventsList = new ArrayList<>();
-                        for (DocumentSnapshot doc : snapshots) {
-                            String facilityId = doc.getString("facilityId");
-                            repository.getFacility(facilityId)
-                                    .addOnSuccessListener(facility -> {
-                                        Event event = new Event(facility, doc);
-                                        newEventsList.add(event);
-                                        updateEventsList(newEventsList);
-                                        statusMessage.setValue("Events loaded successfully");
-                                    })
-                                    .addOnFailureListener(error -> {
-                                        Log.e(TAG, "Error fetching facility for event", error);
-                                        errorMessage.setValue("Error loading event details");
-                                        statusMessage.setValue("Failed to load some events");
-                                    });
-                        }
+                        // Facilities are referenced by ID and resolved through the shared cache on demand
+                        applyChanges(snapshots, null);
                     }
                 });
     }
@@ -101,7 +93,7 @@ public class EventsListViewModel extends ViewModel {
      */
     private void fetchEvents(Facility facility) {
         if (GlobalRepository.isInTestMode()) {
-            updateEventsList(facility.getEvents());
+            updateEventsList(new ArrayList<>(facility.getEvents()));
             statusMessage.setValue("Events loaded from test repository");
             return;
         }
@@ -111,6 +103,8 @@ public class EventsListViewModel extends ViewModel {
         if (eventListener != null) {
             eventListener.remove();
         }
+        // A new listener starts with every document as ADDED
+        orderedEvents.clear();
 
         eventListener = repository.getEventsCollection()
                 .whereEqualTo("facilityId", facility.getId())
@@ -123,24 +117,54 @@ public class EventsListViewModel extends ViewModel {
                     }
 
                     if (snapshots != null) {
-                        List<Event> newEventsList = new ArrayList<>();
-                        for (DocumentSnapshot doc : snapshots) {
-                            repository.getFacility(doc.getString("facilityId"))
-                                    .addOnSuccessListener(eventFacility -> {
-                                        Event event = new Event(eventFacility, doc);
-                                        newEventsList.add(event);
-                                        updateEventsList(newEventsList);
-                                        statusMessage.setValue("Events loaded successfully");
-                                    })
-                                    .addOnFailureListener(error -> {
-                                        Log.e(TAG, "Error fetching facility for event", error);
-                                        errorMessage.setValue("Error loading event details");
-                                        statusMessage.setValue("Failed to load some events");
-                                    });
-                        }
+                        // Every event in this query is held at the given facility, so no lookup is needed
+                        applyChanges(snapshots, facility);
                     }
                 });
     }
+    /**
+     * Applies the document changes of a snapshot to the ordered event index and emits the
+     * resulting list once. Only added or modified documents are deserialized, so the work per
+     * snapshot is proportional to the number of changes rather than the size of the collection.
+     *
+     * @param snapshots The query snapshot delivered by the listener.
+     * @param facility  The facility holding all events of the query, or {@code null} if unknown.
+     */
+    private void applyChanges(QuerySnapshot snapshots, Facility facility) {
+        for (DocumentChange change : snapshots.getDocumentChanges()) {
+            DocumentSnapshot doc = change.getDocument();
+            switch (change.getType()) {
+                case ADDED:
+                    Event added = createEvent(doc, facility);
+                    orderedEvents.add(change.getNewIndex(), added);
+                    break;
+                case MODIFIED:
+                    Event modified = createEvent(doc, facility);
+                    if (change.getOldIndex() == change.getNewIndex()) {
+                        orderedEvents.set(change.getNewIndex(), modified);
+                    } else {
+                        orderedEvents.remove(change.getOldIndex());
+                        orderedEvents.add(change.getNewIndex(), modified);
+                    }
+                    break;
+                case REMOVED:
+                    orderedEvents.remove(change.getOldIndex());
+                    break;
+            }
+        }
+        updateEventsList(new ArrayList<>(orderedEvents));
+        statusMessage.setValue("Events loaded successfully");
+    }
+    /**
+     * Creates an event from a document without reading its facility.
+     *
+     * @param doc      The event document.
+     * @param facility The facility of the event if already known, or {@code null}.
+     * @return The new event.
+     */
+    private Event createEvent(DocumentSnapshot doc, Facility facility) {
+        return facility != null ? new Event(facility, doc) : new Event(doc);
+    }
     /**
      * Updates the eventsList LiveData with the provided list of events.
      *
@@ -188,6 +212,7 @@ public class EventsListViewModel extends ViewModel {
         if (eventListener != null) {
             eventListener.remove();
         }
+        orderedEvents.clear();
     }
     /**
      * Deletes an event from the repository and updates the eventsList LiveData.
@@ -213,10 +238,9 @@ public class EventsListViewModel extends ViewModel {
                 .delete()
                 .addOnSuccessListener(aVoid -> {
                     statusMessage.setValue("Event deleted successfully");
-                    Facility facility = event.getFacility();
-                    if (facility != null) {
-                        facility.removeEvent(event);
-                    }
+                    // The listener removes the event from the list; only the facility needs updating
+                    event.getFacilityRef().get()
+                            .addOnSuccessListener(facility -> facility.removeEvent(event));
                 })
                 .addOnFailureListener(e -> {
                     errorMessage.setValue("Failed to delete event");
@@ -5,24 +5,29 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.bugoff.can_do.database.DatabaseEntity;
+import com.bugoff.can_do.database.FieldChangeTracker;
 import com.bugoff.can_do.event.Event;
 import com.bugoff.can_do.database.FirestoreHelper;
 import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.database.Ref;
+import com.bugoff.can_do.database.RefList;
+import com.bugoff.can_do.database.SnapshotListenerRegistry;
+import com.bugoff.can_do.database.VersionStamp;
+import com.bugoff.can_do.database.WriteBehindBuffer;
 import com.bugoff.can_do.user.User;
+import com.google.android.gms.tasks.Task;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
-import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.ListenerRegistration;
-import com.google.firebase.firestore.SetOptions;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 /**
  * Represents a facility in the system.
@@ -33,15 +38,17 @@ import java.util.Set;
  */
 public class Facility implements DatabaseEntity {
     private String id;
-    private User owner;
+    private Ref<User> owner; // Resolved lazily from the owner's ID
     private String name;
-    private List<Event> events;
+    private RefList<Event> events; // Resolved lazily from the event IDs
     private String address;
     private boolean shouldUpdateRemote = true;
 
     private FirebaseFirestore db;
     private ListenerRegistration listener;
     private Runnable onUpdateListener;
+    private final FieldChangeTracker changes = new FieldChangeTracker();
+    private final VersionStamp versionStamp = new VersionStamp();
     /**
      * Constructs a new Facility with the specified owner.
      *
@@ -51,11 +58,11 @@ public class Facility implements DatabaseEntity {
      */
     public Facility(@NonNull User owner) {
         this.id = owner.getId(); // The id of the facility is the Android ID of the user
-        this.owner = owner;
+        this.owner = Ref.of(owner);
         owner.setFacility(this); // Set the facility of the owner to this facility
         this.name = "";
         this.address = "";
-        this.events = new ArrayList<>();
+        this.events = new RefList<>(GlobalRepository::getEvents);
         if (!GlobalRepository.isInTestMode()) {
             this.db = FirestoreHelper.getInstance().getDb();
         }
@@ -63,85 +70,40 @@ public class Facility implements DatabaseEntity {
     /**
      * Constructs a Facility from a Firestore document.
      *
-     * <p>The events are deserialized asynchronously.</p>
+     * <p>The owner and events are not read; they are referenced by ID and loaded on first use
+     * through {@link #getOwnerRef()} and {@link #getEventRefs()}.</p>
      *
      * @param doc The Firestore DocumentSnapshot representing the facility. Must not be null.
      */
     public Facility(@NonNull DocumentSnapshot doc) {
         shouldUpdateRemote = false;
         this.id = doc.getId();
-        this.owner = deserializeUser(doc.getString("ownerId"));
+        this.owner = new Ref<>(doc.getString("ownerId"), GlobalRepository::getUser);
         this.name = doc.getString("name");
         this.address = doc.getString("address");
-        this.events = new ArrayList<>();
+        this.events = new RefList<>(deserializeEventIds(doc.get("events")), GlobalRepository::getEvents);
+        versionStamp.apply(doc, Collections.emptySet());
         if (!GlobalRepository.isInTestMode()) {
             this.db = FirestoreHelper.getInstance().getDb();
-            deserializeEvents(doc.get("events"));
         }
         shouldUpdateRemote = true;
     }
     /**
-     * Deserializes a User object from a given user ID.
-     *
-     * @param userId The ID of the user to deserialize.
-     * @return The User object corresponding to the given ID, or null if not found.
-     */
-    private User deserializeUser(String userId) {
-        if (userId != null) {
-            // Fetch the User object asynchronously
-            GlobalRepository.getUser(userId).addOnSuccessListener(user -> {
-                this.owner = user;
-                user.setFacility(this); // Set the facility reference in the User object
-                onUpdate(); // Notify listeners
-            }).addOnFailureListener(e -> {
-                Log.e("Facility", "Error fetching user with ID: " + userId, e);
-            });
-        }
-        return null; // Actual user will be set asynchronously
-    }
-    /**
-     * Deserializes events from Firestore data.
+     * Deserializes a list of event IDs from Firestore data.
      *
      * @param data The Firestore data representing event IDs.
+     * @return The event IDs, or an empty list if the data is missing.
      */
-    private void deserializeEvents(Object data) {
+    @NonNull
+    private static List<String> deserializeEventIds(Object data) {
+        List<String> eventIds = new ArrayList<>();
         if (data instanceof List<?>) {
-            List<?> eventIds = (List<?>) data;
-            for (Object eventIdObj : eventIds) {
+            for (Object eventIdObj : (List<?>) data) {
                 if (eventIdObj instanceof String) {
-                    String eventId = (String) eventIdObj;
-
-                    // Fetch the Event DocumentSnapshot asynchronously
-                    GlobalRepository.getEventsCollection().document(eventId).get()
-                            .addOnSuccessListener(doc -> {
-                                if (doc.exists()) {
-                                    // Create a new Event
-                                    Event event = new Event(this, doc);
-                                    events.add(event);
-                                    onUpdate(); // Notify listeners
-                                } else {
-                                    Log.w("Facility", "No such event with ID: " + eventId);
-                                }
-                            })
-                            .addOnFailureListener(e -> {
-                                Log.e("Facility", "Error fetching event with ID: " + eventId, e);
-                            });
+                    eventIds.add((String) eventIdObj);
                 }
             }
         }
-    }
-
-    /**
-     * Serializes a list of events into a list of event IDs.
-     *
-     * @param events The list of Event objects to serialize.
-     * @return A list of event IDs corresponding to the given events.
-     */
-    private List<String> serializeEvents(List<Event> events) {
-        List<String> eventIds = new ArrayList<>();
-        for (Event event : events) {
-            eventIds.add(event.getId());
-        }
         return eventIds;
     }
     /**
@@ -165,27 +127,73 @@ public class Facility implements DatabaseEntity {
         map.put("ownerId", owner.getId());
         map.put("name", name);
         map.put("address", address);
-        map.put("events", serializeEvents(events));
+        map.put("events", events.getIds());
         return map;
     }
     /**
-     * Gets the owner of the facility.
+     * Returns only the fields changed since the last write.
      *
-     * @return The User who owns the facility.
+     * @return A map of changed field paths to their new values.
+     */
+    @Override
+    public Map<String, Object> takeChanges() {
+        return changes.takeUpdate(toMap());
+    }
+
+    @Override
+    public void restoreChanges(@NonNull Map<String, Object> changes) {
+        this.changes.restore(changes.keySet());
+    }
+    /**
+     * Gets the version of the stored document this facility's state is based on.
+     *
+     * @return The facility's {@link VersionStamp}.
+     */
+    @Override
+    public VersionStamp getVersionStamp() {
+        return versionStamp;
+    }
+    /**
+     * Gets the owner of the facility, if it has already been loaded.
+     *
+     * @return The User who owns the facility, or null if it has not been loaded yet.
      */
     public User getOwner() {
+        return owner.getIfLoaded();
+    }
+    /**
+     * Gets the ID of the facility's owner without loading the owner.
+     *
+     * @return The owner's user ID.
+     */
+    public String getOwnerId() {
+        return owner.getId();
+    }
+    /**
+     * Gets the lazy reference to the facility's owner.
+     *
+     * @return The owner reference, which loads the owner on first access.
+     */
+    public Ref<User> getOwnerRef() {
         return owner;
     }
     /**
      * Sets the owner of the facility and updates the remote database.
      *
-     * <p>This method also logs the owner's ID and synchronizes the change with the database.</p>
+     * <p>This method also logs the owner's ID and synchronizes the change with the database.
+     * Nothing is written if the owner's ID is unchanged.</p>
      *
      * @param user The new owner to set for the facility.
      */
     public void setOwner(User user) {
+        boolean sameOwner = user.getId().equals(owner.getId());
+        this.owner = Ref.of(user);
+        if (sameOwner) {
+            // Only the reference is resolved; the stored owner ID does not change
+            return;
+        }
         Log.d("Facility", "Setting owner to: " + user.getId());
-        this.owner = user;
+        changes.markChanged("ownerId");
         setRemote();
     }
     /**
@@ -202,16 +210,29 @@ public class Facility implements DatabaseEntity {
      * @param name The new name to set for the facility.
      */
     public void setName(String name) {
+        if (Objects.equals(this.name, name)) {
+            return;
+        }
         this.name = name;
+        changes.markChanged("name");
         setRemote();
     }
     /**
-     * Gets an unmodifiable list of events held at the facility.
+     * Gets an unmodifiable list of the events held at the facility that have already been loaded.
+     * Use {@link #getEventRefs()} to load all of them.
      *
      * @return An unmodifiable List of Event objects.
      */
     public List<Event> getEvents() {
-        return Collections.unmodifiableList(events);
+        return Collections.unmodifiableList(events.getLoaded());
+    }
+    /**
+     * Gets the lazy references to the events held at the facility.
+     *
+     * @return The event references, which load the events with a single batched read on access.
+     */
+    public RefList<Event> getEventRefs() {
+        return events;
     }
     /**
      * Sets the list of events held at the facility and updates the remote database.
@@ -219,7 +240,15 @@ public class Facility implements DatabaseEntity {
      * @param events The new list of events to associate with the facility.
      */
     public void setEvents(List<Event> events) {
-        this.events = events;
+        List<String> eventIds = new ArrayList<>();
+        for (Event event : events) {
+            eventIds.add(event.getId());
+        }
+        if (eventIds.equals(this.events.getIds())) {
+            return;
+        }
+        this.events.set(events);
+        changes.markChanged("events");
         setRemote();
     }
     /**
@@ -236,7 +265,11 @@ public class Facility implements DatabaseEntity {
      * @param address The new address to set for the facility.
      */
     public void setAddress(String address) {
+        if (Objects.equals(this.address, address)) {
+            return;
+        }
         this.address = address;
+        changes.markChanged("address");
         setRemote();
     }
     /**
@@ -246,12 +279,10 @@ public class Facility implements DatabaseEntity {
      */
     public void addEvent(@NonNull Event event) {
         // ensure only one reference to the event is stored, checking using id
-        for (Event e : events) {
-            if (e.getId().equals(event.getId())) {
-                return;
-            }
+        if (!events.add(event)) {
+            return;
         }
-        events.add(event);
+        changes.markAdded("events", event.getId());
         setRemote();
     }
     /**
@@ -262,15 +293,16 @@ public class Facility implements DatabaseEntity {
      * @param event The Event to remove from the facility.
      */
     public void removeEvent(Event event) {
-        events.remove(event);
+        events.remove(event.getId());
         event.detachListener();
+        changes.markRemoved("events", event.getId());
         setRemote();
     }
     /**
      * Saves or updates the facility in the remote Firestore database.
      *
-     * <p>This method serializes the facility's data and sends it to Firestore with merge options
-     * to allow partial updates.</p>
+     * <p>The write is buffered in the {@link WriteBehindBuffer}, so consecutive changes within
+     * one flush window are persisted with a single write.</p>
      */
     // Method to save the facility to Firestore
     @Override
@@ -285,10 +317,17 @@ public class Facility implements DatabaseEntity {
             return;
         }
 
+        WriteBehindBuffer.getInstance().markDirty("facilities/" + id, this::writeRemote);
+    }
+    /**
+     * Writes the fields changed since the last write to Firestore.
+     *
+     * @return A {@link Task} representing the asynchronous write operation.
+     */
+    private Task<Void> writeRemote() {
         DocumentReference facilityRef = GlobalRepository.getFacilitiesCollection().document(id);
-        Map<String, Object> update = this.toMap();
 
-        facilityRef.set(update, SetOptions.merge())
+        return FirestoreHelper.saveChanges(facilityRef, this)
                 .addOnSuccessListener(aVoid -> {
                     Log.d("Firestore", "Facility successfully saved or updated.");
                     onUpdate();
@@ -303,12 +342,8 @@ public class Facility implements DatabaseEntity {
      * @return A List of event IDs as Strings.
      */
     @NonNull
-    private List<String> getEventIds() {
-        List<String> eventIds = new ArrayList<>();
-        for (Event event : events) {
-            eventIds.add(event.getId());
-        }
-        return eventIds;
+    public List<String> getEventIds() {
+        return events.getIds();
     }
     /**
      * Attaches a real-time listener to the facility document in Firestore.
@@ -326,128 +361,78 @@ public class Facility implements DatabaseEntity {
         DocumentReference facilityRef = GlobalRepository.getFacilitiesCollection().document(id);
 
         // Attach a listener to the Facility document
-        listener = facilityRef.addSnapshotListener((documentSnapshot, e) -> {
+        if (listener != null) {
+            listener.remove();
+        }
+        // Shared with every other subscriber of this document
+        listener = SnapshotListenerRegistry.getInstance().subscribe(facilityRef, (documentSnapshot, e) -> {
             if (e != null) {
                 Log.e("Firestore", "Error listening to facility changes for facility: " + id, e);
                 return;
             }
 
-            if (documentSnapshot != null && documentSnapshot.exists()) {
-                // Update owner information if it has changed
-                String newOwnerId = documentSnapshot.getString("ownerId");
-                if (newOwnerId != null && !newOwnerId.equals(this.owner.getId())) {
-                    // Fetch the updated Owner object
-                    GlobalRepository.getUser(newOwnerId)
-                            .addOnSuccessListener(user -> {
-                                this.owner = user;
-                                user.setFacility(this); // Ensure bidirectional reference
-                                onUpdate(); // Notify listeners about the update
-                            })
-                            .addOnFailureListener(error -> {
-                                Log.e("Firestore", "Error fetching updated owner for facility: " + id, error);
-                            });
-                    // Early return since owner fetching is asynchronous
-                    return;
-                }
-
-                // Update other fields
-                this.name = documentSnapshot.getString("name");
-                this.address = documentSnapshot.getString("address");
-
-                // Update events list
-                List<String> eventIds = (List<String>) documentSnapshot.get("events");
-                if (eventIds != null) {
-                    updateLocalEventIds(eventIds);
-                }
+            if (documentSnapshot != null && documentSnapshot.exists()
+                    && !applySnapshot(documentSnapshot, Collections.emptySet()).isEmpty()) {
                 onUpdate();
             }
         });
     }
     /**
-     * Fetches events from Firestore in batches using the 'whereIn' query.
-     *
-     * <p>This method processes the provided list of event IDs in batches of 10 to optimize
-     * Firestore queries. Each batch is fetched asynchronously, and any events retrieved are
-     * added to the facility's event list.</p>
+     * Applies a snapshot of the facility document in place. Fields with local changes that have
+     * not been written yet, and the fields in {@code keep}, keep their local values.
      *
-     * @param eventIds The list of event IDs to fetch.
+     * @param doc  The snapshot of the facility document.
+     * @param keep The fields whose local values should be kept.
+     * @return The names of the fields that changed.
      */
-    // Method to fetch events in batches using whereIn
-    private void fetchRemoteEventsInBatches(@NonNull List<String> eventIds) {
-        // Process in batches of 10
-        final int batchSize = 10;
-
-        // Split the eventIds into smaller batches
-        for (int i = 0; i < eventIds.size(); i += batchSize) {
-            int end = Math.min(i + batchSize, eventIds.size());
-            List<String> batch = eventIds.subList(i, end);
+    @Override
+    public Set<String> applySnapshot(@NonNull DocumentSnapshot doc, @NonNull Set<String> keep) {
+        Set<String> changed = new LinkedHashSet<>();
+        if (versionStamp.isStale(doc)) {
+            return changed;
+        }
+        Set<String> local = changes.getPendingFields();
+        local.addAll(keep);
+        versionStamp.apply(doc, local);
 
-            // Perform the batched query
-            GlobalRepository.getEventsCollection()
-                    .whereIn(FieldPath.documentId(), batch)
-                    .get()
-                    .addOnSuccessListener(querySnapshot -> {
-                        for (DocumentSnapshot doc : querySnapshot.getDocuments()) {
-                            Event event = new Event(this, doc);
-                            events.add(event);
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e("Firestore", "Error fetching events in batch", e);
-                    });
+        // Update owner reference if it has changed; the owner is loaded when first needed
+        String newOwnerId = doc.getString("ownerId");
+        if (newOwnerId != null && !newOwnerId.equals(owner.getId()) && !local.contains("ownerId")) {
+            owner = new Ref<>(newOwnerId, GlobalRepository::getUser);
+            changed.add("ownerId");
+        }
+        String newName = doc.getString("name");
+        if (!Objects.equals(newName, name) && !local.contains("name")) {
+            name = newName;
+            changed.add("name");
+        }
+        String newAddress = doc.getString("address");
+        if (!Objects.equals(newAddress, address) && !local.contains("address")) {
+            address = newAddress;
+            changed.add("address");
         }
-        // onEventsLoaded();
+        Object eventIds = doc.get("events");
+        if (eventIds != null && !local.contains("events")) {
+            List<String> newEventIds = deserializeEventIds(eventIds);
+            if (!newEventIds.equals(events.getIds())) {
+                updateLocalEventIds(newEventIds);
+                changed.add("events");
+            }
+        }
+        return changed;
     }
     /**
      * Updates the local events list based on a provided list of event IDs.
      *
-     * <p>This method determines which events need to be added or removed from the facility.
-     * Any events that are no longer associated with the facility are removed, while new events
-     * are fetched and added asynchronously.</p>
+     * <p>Events that are no longer associated with the facility are dropped and their listeners
+     * detached. New events are only referenced by ID and are loaded when the list is next read.</p>
      *
      * @param eventIds The list of event IDs that represent the current state of events for the facility.
      */
     // Update local events based on the list of event IDs
     private void updateLocalEventIds(@NonNull List<String> eventIds) {
-        // Determine which events to add or remove
-        Set<String> currentEventIds = new HashSet<>();
-        for (Event event : events) {
-            currentEventIds.add(event.getId());
-        }
-
-        Set<String> newEventIds = new HashSet<>(eventIds);
-
-        // Events to add
-        Set<String> toAdd = new HashSet<>(newEventIds);
-        toAdd.removeAll(currentEventIds);
-
-        // Events to remove
-        Set<String> toRemove = new HashSet<>(currentEventIds);
-        toRemove.removeAll(newEventIds);
-
-        // Remove events
-        Iterator<Event> iterator = events.iterator();
-        while (iterator.hasNext()) {
-            Event event = iterator.next();
-            if (toRemove.contains(event.getId())) {
-                iterator.remove();
-                event.detachListener();
-            }
-        }
-
-        // Add new events
-        for (String eventId : toAdd) {
-            GlobalRepository.getEvent(eventId)
-                    .addOnSuccessListener(event -> {
-                        if (event != null) {
-                            event.setFacility(this); // Ensure the event references this facility
-                            events.add(event);
-                            onUpdate(); // Notify listeners about the update
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e("Firestore", "Error fetching event: " + eventId, e);
-                    });
+        for (Event removed : events.setIds(eventIds)) {
+            removed.detachListener();
         }
     }
     /**
@@ -67,10 +67,13 @@ public class FacilityViewModel extends ViewModel {
     private void updateLiveData() {
         if (facility != null) {
             facilityId.postValue(facility.getId());
-            owner.postValue(facility.getOwner());
             name.postValue(facility.getName());
             address.postValue(facility.getAddress());
-            events.postValue(facility.getEvents());
+            // Owner and events are referenced by ID and loaded on demand
+            facility.getOwnerRef().get().addOnSuccessListener(owner::postValue);
+            facility.getEventRefs().getAll()
+                    .addOnSuccessListener(events::postValue)
+                    .addOnFailureListener(e -> Log.e("FacilityViewModel", "Error fetching facility events", e));
         }
     }
 
@@ -86,14 +89,12 @@ public class FacilityViewModel extends ViewModel {
     public void setName(String newName) {
         if (facility != null) {
             facility.setName(newName);
-            facility.setRemote();
         }
     }
 
     public void setAddress(String newAddress) {
         if (facility != null) {
             facility.setAddress(newAddress);
-            facility.setRemote();
         }
     }
     /**
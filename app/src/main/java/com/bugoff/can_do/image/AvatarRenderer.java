@@ -0,0 +1,99 @@
+package com.bugoff.can_do.image;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@code AvatarRenderer} renders the default avatar of a user without a photo: the first letter of
+ * their name on a plain background.
+ *
+ * <p>Rendered avatars are cached by letter and size, and drawn with shared {@link Paint}s, so a list
+ * binding the avatars of a thousand users allocates one bitmap per distinct letter and none once
+ * every letter has been seen. The cache holds at most {@value #MAX_CACHED_AVATARS} avatars; evicted
+ * avatars are left to the garbage collector, as a view may still show them. Cached bitmaps are
+ * shared, so callers must not modify or recycle them. Must be called on the main thread.</p>
+ */
+public class AvatarRenderer {
+    /**
+     * The size of an avatar in a list row, in pixels (48dp at 2x).
+     */
+    public static final int DEFAULT_SIZE = 96;
+    private static final int MAX_CACHED_AVATARS = 64;
+    private static final String UNKNOWN_LETTER = "?";
+
+    private static final Paint backgroundPaint = new Paint();
+    private static final Paint textPaint = new Paint();
+    private static final Map<String, Bitmap> cache = new LinkedHashMap<String, Bitmap>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bitmap> eldest) {
+            return size() > MAX_CACHED_AVATARS;
+        }
+    };
+
+    static {
+        backgroundPaint.setColor(Color.LTGRAY);
+        backgroundPaint.setStyle(Paint.Style.FILL);
+        textPaint.setColor(Color.WHITE);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setAntiAlias(true);
+    }
+
+    private AvatarRenderer() {
+    }
+
+    /**
+     * Gets the avatar for a letter at the size of a list row.
+     *
+     * @param letter The letter to display, or {@code null} if the name is unknown.
+     * @return The shared avatar bitmap.
+     */
+    @NonNull
+    public static Bitmap render(@Nullable String letter) {
+        return render(letter, DEFAULT_SIZE);
+    }
+
+    /**
+     * Gets the avatar for a letter, rendering it on first use.
+     *
+     * @param letter The letter to display, or {@code null} if the name is unknown.
+     * @param size   The width and height of the avatar in pixels.
+     * @return The shared avatar bitmap.
+     */
+    @NonNull
+    public static synchronized Bitmap render(@Nullable String letter, int size) {
+        String text = letter == null || letter.isEmpty() ? UNKNOWN_LETTER : letter;
+        String key = text + "_" + size;
+        Bitmap avatar = cache.get(key);
+        if (avatar == null) {
+            avatar = draw(text, size);
+            cache.put(key, avatar);
+        }
+        return avatar;
+    }
+
+    /**
+     * Drops all cached avatars, e.g. when the system is low on memory.
+     */
+    public static synchronized void clear() {
+        cache.clear();
+    }
+
+    private static Bitmap draw(String text, int size) {
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawRect(0, 0, size, size, backgroundPaint);
+        textPaint.setTextSize(size / 2f);
+        float x = size / 2f;
+        float y = (size / 2f) - ((textPaint.descent() + textPaint.ascent()) / 2);
+        canvas.drawText(text, x, y, textPaint);
+        return bitmap;
+    }
+}
@@ -0,0 +1,113 @@
+package com.bugoff.can_do.image;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * {@code Base64DecodingInputStream} decodes a base64 string while it is read, so a legacy inline
+ * image can be passed to a decoder without first copying the whole image into a {@code byte[]}.
+ *
+ * <p>It accepts the standard alphabet with or without padding, and skips the line breaks inserted
+ * by {@code android.util.Base64.DEFAULT}. Reading an invalid character throws an
+ * {@link IOException}.</p>
+ */
+public class Base64DecodingInputStream extends InputStream {
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final int[] VALUES = new int[128];
+
+    static {
+        Arrays.fill(VALUES, -1);
+        for (int i = 0; i < ALPHABET.length(); i++) {
+            VALUES[ALPHABET.charAt(i)] = i;
+        }
+    }
+
+    private final CharSequence source;
+    private int position = 0;
+    private boolean finished = false;
+    // Bytes decoded from the last group of four characters that have not been read yet
+    private final byte[] pending = new byte[3];
+    private int pendingStart = 0;
+    private int pendingEnd = 0;
+
+    /**
+     * Constructs a new {@code Base64DecodingInputStream}.
+     *
+     * @param source The base64 text to decode.
+     */
+    public Base64DecodingInputStream(@NonNull CharSequence source) {
+        this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pendingStart == pendingEnd && !decodeGroup()) {
+            return -1;
+        }
+        return pending[pendingStart++] & 0xFF;
+    }
+
+    @Override
+    public int read(@NonNull byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        int read = 0;
+        while (read < length) {
+            if (pendingStart == pendingEnd && !decodeGroup()) {
+                break;
+            }
+            int count = Math.min(length - read, pendingEnd - pendingStart);
+            System.arraycopy(pending, pendingStart, buffer, offset + read, count);
+            pendingStart += count;
+            read += count;
+        }
+        return read > 0 ? read : -1;
+    }
+
+    @Override
+    public int available() {
+        return pendingEnd - pendingStart;
+    }
+
+    /**
+     * Decodes the next group of up to four characters into {@link #pending}.
+     *
+     * @return {@code true} if bytes were decoded; {@code false} at the end of the input.
+     * @throws IOException If the input contains an invalid character or ends mid-byte.
+     */
+    private boolean decodeGroup() throws IOException {
+        int bits = 0;
+        int count = 0;
+        while (count < 4 && !finished && position < source.length()) {
+            char c = source.charAt(position++);
+            if (c == '=') {
+                // Padding ends the data
+                finished = true;
+            } else if (c != '\n' && c != '\r' && c != ' ' && c != '\t') {
+                int value = c < VALUES.length ? VALUES[c] : -1;
+                if (value < 0) {
+                    throw new IOException("Invalid base64 character at " + (position - 1));
+                }
+                bits = (bits << 6) | value;
+                count++;
+            }
+        }
+        if (count == 0) {
+            return false;
+        }
+        if (count == 1) {
+            throw new IOException("Truncated base64 input");
+        }
+        bits <<= 6 * (4 - count);
+        pending[0] = (byte) (bits >> 16);
+        pending[1] = (byte) (bits >> 8);
+        pending[2] = (byte) bits;
+        pendingStart = 0;
+        pendingEnd = count - 1;
+        return true;
+    }
+}
@@ -0,0 +1,55 @@
+package com.bugoff.can_do.image;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * {@code BitmapCodec} encodes a {@link Bitmap} for a {@link BudgetEncoder} with
+ * {@link Bitmap#compress(Bitmap.CompressFormat, int, java.io.OutputStream)}.
+ *
+ * <p>Before Android 11 there is a single WebP format, which is lossless at quality 100 and lossy
+ * below it; it is used for both WebP formats then.</p>
+ */
+public class BitmapCodec implements BudgetEncoder.Codec {
+    // Effort for lossless WebP, trading encode time for size; 100 is several times slower
+    private static final int LOSSLESS_EFFORT = 50;
+
+    private final Bitmap bitmap;
+
+    /**
+     * Constructs a new {@code BitmapCodec}.
+     *
+     * @param bitmap The image to encode.
+     */
+    public BitmapCodec(@NonNull Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    @NonNull
+    @Override
+    @SuppressWarnings("deprecation") // Bitmap.CompressFormat.WEBP, the only WebP format before Android 11
+    public byte[] encode(@NonNull BudgetEncoder.Format format, int quality) throws IOException {
+        Bitmap.CompressFormat compressFormat;
+        int level = quality;
+        if (format == BudgetEncoder.Format.JPEG) {
+            compressFormat = Bitmap.CompressFormat.JPEG;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            boolean lossless = format == BudgetEncoder.Format.WEBP_LOSSLESS;
+            compressFormat = lossless ? Bitmap.CompressFormat.WEBP_LOSSLESS : Bitmap.CompressFormat.WEBP_LOSSY;
+            level = lossless ? LOSSLESS_EFFORT : quality;
+        } else {
+            compressFormat = Bitmap.CompressFormat.WEBP;
+            level = format == BudgetEncoder.Format.WEBP_LOSSLESS ? 100 : Math.min(quality, 99);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (!bitmap.compress(compressFormat, level, out)) {
+            throw new IOException("Could not encode image as " + format);
+        }
+        return out.toByteArray();
+    }
+}
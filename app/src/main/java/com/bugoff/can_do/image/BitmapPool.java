@@ -0,0 +1,112 @@
+package com.bugoff.can_do.image;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * {@code BitmapPool} holds mutable bitmaps that are no longer displayed, so a decoder can write
+ * into one of them through {@code BitmapFactory.Options.inBitmap} instead of allocating a new
+ * bitmap. Only bitmaps that nothing else references may be put into the pool, e.g. the
+ * intermediate bitmap of a decode that was scaled down afterwards.
+ *
+ * <p>The pool is bounded in total bytes; beyond the bound, the oldest bitmaps are recycled.</p>
+ */
+public class BitmapPool {
+    // A pooled bitmap is only handed out for a decode needing at least this fraction of its memory
+    private static final int MAX_WASTE_FACTOR = 4;
+
+    private final long maxBytes;
+    private final LinkedList<Bitmap> bitmaps = new LinkedList<>();
+    private long size = 0;
+
+    /**
+     * Constructs a new {@code BitmapPool}.
+     *
+     * @param maxBytes The maximum total allocation size of the pooled bitmaps.
+     */
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Takes a bitmap from the pool that a decoder can reuse for an image of the given size.
+     *
+     * @param width  The width of the decoded image.
+     * @param height The height of the decoded image.
+     * @param config The configuration of the decoded image.
+     * @return The smallest pooled bitmap large enough, or {@code null} if there is none.
+     */
+    @Nullable
+    public synchronized Bitmap get(int width, int height, @NonNull Bitmap.Config config) {
+        long needed = (long) width * height * bytesPerPixel(config);
+        Bitmap best = null;
+        for (Bitmap bitmap : bitmaps) {
+            long allocation = bitmap.getAllocationByteCount();
+            if (allocation >= needed && allocation <= needed * MAX_WASTE_FACTOR
+                    && (best == null || allocation < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+        if (best != null) {
+            bitmaps.remove(best);
+            size -= best.getAllocationByteCount();
+        }
+        return best;
+    }
+
+    /**
+     * Puts a bitmap that is no longer used into the pool. Bitmaps that cannot be reused are
+     * recycled instead.
+     *
+     * @param bitmap The bitmap; the caller must not use it afterwards.
+     */
+    public synchronized void put(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        if (!bitmap.isMutable() || bitmap.getAllocationByteCount() > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        bitmaps.addLast(bitmap);
+        size += bitmap.getAllocationByteCount();
+        Iterator<Bitmap> oldest = bitmaps.iterator();
+        while (size > maxBytes && oldest.hasNext()) {
+            Bitmap evicted = oldest.next();
+            oldest.remove();
+            size -= evicted.getAllocationByteCount();
+            evicted.recycle();
+        }
+    }
+
+    /**
+     * Gets the total allocation size of the pooled bitmaps.
+     *
+     * @return The size in bytes.
+     */
+    public synchronized long size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of bytes a pixel takes in a configuration.
+     *
+     * @param config The bitmap configuration.
+     * @return The bytes per pixel.
+     */
+    public static int bytesPerPixel(@Nullable Bitmap.Config config) {
+        if (config == Bitmap.Config.RGB_565) {
+            return 2;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGBA_F16) {
+            return 8;
+        }
+        return 4;
+    }
+}
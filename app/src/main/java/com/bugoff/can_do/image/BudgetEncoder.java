@@ -0,0 +1,247 @@
+package com.bugoff.can_do.image;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code BudgetEncoder} encodes an image as small as needed to fit a byte budget, at the best
+ * quality that still fits.
+ *
+ * <p>For each lossy format, it binary-searches the highest quality between a floor and a ceiling
+ * whose output fits the budget; lossless formats are encoded once. Of all results, the smallest one
+ * within the budget is kept, so a flat poster can end up lossless while a noisy photo ends up as a
+ * lossy format at a lower quality. If nothing fits, the smallest result at the quality floor is
+ * returned and marked as over budget; the floor is never undercut.</p>
+ *
+ * <p>The encoding itself is done by a {@link Codec}, so the search can run against any encoder,
+ * e.g. {@code Bitmap.compress} on Android (see {@link BitmapCodec}).</p>
+ */
+public class BudgetEncoder {
+    /**
+     * The formats an image can be encoded in.
+     */
+    public enum Format {
+        JPEG("image/jpeg", false),
+        WEBP_LOSSY("image/webp", false),
+        WEBP_LOSSLESS("image/webp", true);
+
+        private final String mimeType;
+        private final boolean lossless;
+
+        Format(String mimeType, boolean lossless) {
+            this.mimeType = mimeType;
+            this.lossless = lossless;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        public boolean isLossless() {
+            return lossless;
+        }
+    }
+
+    /**
+     * Encodes one image in a given format and quality.
+     */
+    public interface Codec {
+        /**
+         * Encodes the image.
+         *
+         * @param format  The format.
+         * @param quality The quality from 0 to 100; ignored by lossless formats.
+         * @return The encoded image.
+         * @throws IOException If the image cannot be encoded in the format.
+         */
+        @NonNull
+        byte[] encode(@NonNull Format format, int quality) throws IOException;
+    }
+
+    private final int budgetBytes;
+    private final int minQuality;
+    private final int maxQuality;
+    private final List<Format> formats;
+
+    /**
+     * Constructs a new {@code BudgetEncoder}.
+     *
+     * @param budgetBytes The size the encoded image should not exceed.
+     * @param minQuality  The lowest quality a lossy format may be encoded at.
+     * @param maxQuality  The highest quality a lossy format is encoded at.
+     * @param formats     The formats to try; at least one.
+     */
+    public BudgetEncoder(int budgetBytes, int minQuality, int maxQuality, @NonNull List<Format> formats) {
+        if (minQuality > maxQuality || formats.isEmpty()) {
+            throw new IllegalArgumentException("Invalid encoder settings");
+        }
+        this.budgetBytes = budgetBytes;
+        this.minQuality = minQuality;
+        this.maxQuality = maxQuality;
+        this.formats = new ArrayList<>(formats);
+    }
+
+    /**
+     * Encodes an image within the budget.
+     *
+     * @param codec The codec encoding the image.
+     * @return The chosen encoding and its parameters.
+     * @throws IOException If the image cannot be encoded in any of the formats.
+     */
+    @NonNull
+    public Result encode(@NonNull Codec codec) throws IOException {
+        long start = System.nanoTime();
+        int[] attempts = {0};
+        Result best = null;
+        IOException failure = null;
+        for (Format format : formats) {
+            Result candidate;
+            try {
+                candidate = format.isLossless()
+                        ? result(format, 100, encode(codec, format, 100, attempts))
+                        : search(codec, format, attempts);
+            } catch (IOException e) {
+                // The format may be unsupported; the others can still be used
+                failure = e;
+                continue;
+            }
+            if (best == null || isBetter(candidate, best)) {
+                best = candidate;
+            }
+        }
+        if (best == null) {
+            throw failure != null ? failure : new IOException("No format could encode the image");
+        }
+        best.attempts = attempts[0];
+        best.encodeNanos = System.nanoTime() - start;
+        return best;
+    }
+
+    private Result search(Codec codec, Format format, int[] attempts) throws IOException {
+        // Most images fit at the highest quality, so try it first
+        byte[] data = encode(codec, format, maxQuality, attempts);
+        if (data.length <= budgetBytes || minQuality == maxQuality) {
+            return result(format, maxQuality, data);
+        }
+        byte[] fitting = encode(codec, format, minQuality, attempts);
+        if (fitting.length > budgetBytes) {
+            return result(format, minQuality, fitting);
+        }
+        int fittingQuality = minQuality;
+        int low = minQuality + 1;
+        int high = maxQuality - 1;
+        while (low <= high) {
+            int quality = (low + high) >>> 1;
+            data = encode(codec, format, quality, attempts);
+            if (data.length <= budgetBytes) {
+                fitting = data;
+                fittingQuality = quality;
+                low = quality + 1;
+            } else {
+                high = quality - 1;
+            }
+        }
+        return result(format, fittingQuality, fitting);
+    }
+
+    private static byte[] encode(Codec codec, Format format, int quality, int[] attempts) throws IOException {
+        attempts[0]++;
+        return codec.encode(format, quality);
+    }
+
+    private Result result(Format format, int quality, byte[] data) {
+        return new Result(data, format, quality, budgetBytes, data.length <= budgetBytes);
+    }
+
+    private static boolean isBetter(Result candidate, Result best) {
+        if (candidate.withinBudget != best.withinBudget) {
+            return candidate.withinBudget;
+        }
+        return candidate.data.length < best.data.length;
+    }
+
+    /**
+     * An encoded image with the parameters chosen for it.
+     */
+    public static final class Result {
+        private final byte[] data;
+        private final Format format;
+        private final int quality;
+        private final int budgetBytes;
+        private final boolean withinBudget;
+        private int attempts;
+        private long encodeNanos;
+
+        private Result(byte[] data, Format format, int quality, int budgetBytes, boolean withinBudget) {
+            this.data = data;
+            this.format = format;
+            this.quality = quality;
+            this.budgetBytes = budgetBytes;
+            this.withinBudget = withinBudget;
+        }
+
+        @NonNull
+        public byte[] getData() {
+            return data;
+        }
+
+        @NonNull
+        public Format getFormat() {
+            return format;
+        }
+
+        /**
+         * Gets the quality the image was encoded at.
+         *
+         * @return The quality from 0 to 100; 100 for lossless formats.
+         */
+        public int getQuality() {
+            return quality;
+        }
+
+        public int getSize() {
+            return data.length;
+        }
+
+        public int getBudgetBytes() {
+            return budgetBytes;
+        }
+
+        /**
+         * Checks whether the image fits the budget. If not, it was encoded at the quality floor.
+         *
+         * @return {@code true} if the image fits the budget; {@code false} otherwise.
+         */
+        public boolean isWithinBudget() {
+            return withinBudget;
+        }
+
+        /**
+         * Gets the number of encodes tried across all formats.
+         *
+         * @return The number of encodes.
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * Gets the time spent encoding across all formats.
+         *
+         * @return The time in nanoseconds.
+         */
+        public long getEncodeNanos() {
+            return encodeNanos;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return format + " q" + quality + ", " + data.length + "/" + budgetBytes + " bytes, "
+                    + attempts + " encodes in " + encodeNanos / 1_000_000 + " ms";
+        }
+    }
+}
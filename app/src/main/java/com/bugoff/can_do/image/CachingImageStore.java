@@ -0,0 +1,86 @@
+package com.bugoff.can_do.image;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+/**
+ * {@code CachingImageStore} keeps a local copy of every image read from or written to a remote
+ * {@link ImageStore}. Images are immutable, so a cached copy never needs to be revalidated, and
+ * images that have been seen once keep loading while offline.
+ */
+public class CachingImageStore implements ImageStore {
+    private static final String TAG = "CachingImageStore";
+
+    private final ImageStore local;
+    private final ImageStore remote;
+
+    /**
+     * Constructs a new {@code CachingImageStore}.
+     *
+     * @param local  The store holding the local copies.
+     * @param remote The store holding the images.
+     */
+    public CachingImageStore(@NonNull ImageStore local, @NonNull ImageStore remote) {
+        this.local = local;
+        this.remote = remote;
+    }
+
+    /**
+     * Stores an image locally and remotely. The task completes once the remote store has it.
+     */
+    @Override
+    public Task<String> put(@NonNull byte[] data) {
+        local.put(data).addOnFailureListener(e -> Log.w(TAG, "Could not cache image", e));
+        return remote.put(data);
+    }
+
+    /**
+     * Reads an image from the local copy, falling back to the remote store and caching the result.
+     */
+    @Override
+    public Task<byte[]> get(@NonNull String hash) {
+        return local.get(hash).continueWithTask(cached -> {
+            if (cached.isSuccessful() && cached.getResult() != null) {
+                return Tasks.forResult(cached.getResult());
+            }
+            return remote.get(hash).onSuccessTask(data -> {
+                if (data != null) {
+                    local.put(data).addOnFailureListener(e -> Log.w(TAG, "Could not cache image " + hash, e));
+                }
+                return Tasks.forResult(data);
+            });
+        });
+    }
+
+    /**
+     * Stores a variant locally and remotely. The task completes once the remote store has it.
+     */
+    @Override
+    public Task<Void> putVariant(@NonNull String hash, @NonNull ImageVariant variant, @NonNull byte[] data) {
+        local.putVariant(hash, variant, data).addOnFailureListener(e -> Log.w(TAG, "Could not cache variant", e));
+        return remote.putVariant(hash, variant, data);
+    }
+
+    /**
+     * Reads a variant from the local copy, falling back to the remote store and caching the result.
+     */
+    @Override
+    public Task<byte[]> getVariant(@NonNull String hash, @NonNull ImageVariant variant) {
+        return local.getVariant(hash, variant).continueWithTask(cached -> {
+            if (cached.isSuccessful() && cached.getResult() != null) {
+                return Tasks.forResult(cached.getResult());
+            }
+            return remote.getVariant(hash, variant).onSuccessTask(data -> {
+                if (data != null) {
+                    local.putVariant(hash, variant, data).addOnFailureListener(e ->
+                            Log.w(TAG, "Could not cache variant " + ImageStore.variantKey(hash, variant), e));
+                }
+                return Tasks.forResult(data);
+            });
+        });
+    }
+}
@@ -0,0 +1,141 @@
+package com.bugoff.can_do.image;
+
+import androidx.annotation.NonNull;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+
+/**
+ * {@code FirebaseImageStore} is an {@link ImageStore} backed by Firebase Storage. Each image is an
+ * object named {@code images/<hash>}, and each of its variants an object named
+ * {@code variants/<hash>_<variant>}.
+ */
+public class FirebaseImageStore implements ImageStore {
+    private static final String ROOT = "images";
+    private static final String VARIANTS_ROOT = "variants";
+    static final long MAX_IMAGE_BYTES = 5 * 1024 * 1024;
+
+    private final StorageReference images;
+    private final StorageReference variants;
+
+    /**
+     * Constructs a new {@code FirebaseImageStore}.
+     *
+     * @param storage The Firebase Storage instance.
+     */
+    public FirebaseImageStore(@NonNull FirebaseStorage storage) {
+        this.images = storage.getReference().child(ROOT);
+        this.variants = storage.getReference().child(VARIANTS_ROOT);
+    }
+
+    /**
+     * Constructs a {@code FirebaseImageStore} for the default Firebase Storage instance.
+     */
+    public FirebaseImageStore() {
+        this(FirebaseStorage.getInstance());
+    }
+
+    /**
+     * Uploads an image unless an object with the same hash already exists, in which case nothing
+     * is uploaded.
+     *
+     * @param data The encoded image.
+     * @return A {@link Task} with the hash identifying the image.
+     */
+    @Override
+    public Task<String> put(@NonNull byte[] data) {
+        String hash = ImageStore.hashOf(data);
+        return upload(images.child(hash), data).onSuccessTask(unused -> Tasks.forResult(hash));
+    }
+
+    @Override
+    public Task<byte[]> get(@NonNull String hash) {
+        if (!ImageStore.isHash(hash)) {
+            return Tasks.forResult(null);
+        }
+        return download(images.child(hash));
+    }
+
+    /**
+     * Uploads a variant unless it already exists, in which case nothing is uploaded.
+     *
+     * @param hash    The hash of the full image.
+     * @param variant The variant.
+     * @param data    The encoded variant.
+     * @return A {@link Task} completing once the variant is stored.
+     */
+    @Override
+    public Task<Void> putVariant(@NonNull String hash, @NonNull ImageVariant variant, @NonNull byte[] data) {
+        if (!ImageStore.isHash(hash)) {
+            return Tasks.forException(new IllegalArgumentException("Invalid image hash " + hash));
+        }
+        return upload(variants.child(ImageStore.variantKey(hash, variant)), data);
+    }
+
+    @Override
+    public Task<byte[]> getVariant(@NonNull String hash, @NonNull ImageVariant variant) {
+        if (!ImageStore.isHash(hash)) {
+            return Tasks.forResult(null);
+        }
+        return download(variants.child(ImageStore.variantKey(hash, variant)));
+    }
+
+    private static Task<Void> upload(StorageReference ref, byte[] data) {
+        return ref.getMetadata().continueWithTask(existing -> {
+            if (existing.isSuccessful()) {
+                return Tasks.forResult(null);
+            }
+            if (!isNotFound(existing.getException())) {
+                return Tasks.forException(existing.getException());
+            }
+            // Objects never change once written, so they can be cached for as long as possible
+            StorageMetadata metadata = new StorageMetadata.Builder()
+                    .setCacheControl("public, max-age=31536000, immutable")
+                    .setContentType(contentTypeOf(data))
+                    .build();
+            return ref.putBytes(data, metadata).continueWithTask(upload -> upload.isSuccessful()
+                    ? Tasks.forResult(null)
+                    : Tasks.forException(upload.getException()));
+        });
+    }
+
+    private static Task<byte[]> download(StorageReference ref) {
+        return ref.getBytes(MAX_IMAGE_BYTES).continueWithTask(download -> {
+            if (download.isSuccessful()) {
+                return Tasks.forResult(download.getResult());
+            }
+            return isNotFound(download.getException())
+                    ? Tasks.forResult(null)
+                    : Tasks.forException(download.getException());
+        });
+    }
+
+    /**
+     * Recognizes the format of an encoded image from its header.
+     *
+     * @param data The encoded image.
+     * @return The MIME type of the image.
+     */
+    static String contentTypeOf(byte[] data) {
+        if (data.length >= 12 && data[0] == 'R' && data[1] == 'I' && data[2] == 'F' && data[3] == 'F'
+                && data[8] == 'W' && data[9] == 'E' && data[10] == 'B' && data[11] == 'P') {
+            return "image/webp";
+        }
+        if (data.length >= 3 && (data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8 && (data[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (data.length >= 4 && (data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            return "image/png";
+        }
+        return "application/octet-stream";
+    }
+
+    private static boolean isNotFound(Exception e) {
+        return e instanceof StorageException
+                && ((StorageException) e).getErrorCode() == StorageException.ERROR_OBJECT_NOT_FOUND;
+    }
+}
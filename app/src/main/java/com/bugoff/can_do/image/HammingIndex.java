@@ -0,0 +1,224 @@
+package com.bugoff.can_do.image;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@code HammingIndex} indexes 64-bit hashes by Hamming distance, so all values whose hash is within
+ * a distance of a query can be found without comparing against every hash.
+ *
+ * <p>It uses multi-index hashing: each hash is split into {@value #CHUNKS} chunks of
+ * {@value #CHUNK_BITS} bits, and each chunk is indexed in its own table. Two hashes within distance
+ * {@code d} differ in at most {@code d / 4} bits on at least one of their chunks, so a search only
+ * looks up the chunk values that close to the query's chunks and checks the hashes found there.
+ * When that would look up more buckets than there are hashes, e.g. for large distances, it scans
+ * all hashes instead. Not thread-safe.</p>
+ *
+ * @param <T> The type of the indexed values.
+ */
+public class HammingIndex<T> {
+    private static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = 64 / CHUNKS;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    // Entries are numbered in insertion order; a removed entry keeps its number with a null value
+    private long[] hashes = new long[16];
+    private Object[] values = new Object[16];
+    private int[] visited = new int[16];
+    private int entries = 0;
+    private int size = 0;
+    private int generation = 0;
+    // One table per chunk, with a bucket per chunk value, so a probe is an array access
+    private final Bucket[][] tables = new Bucket[CHUNKS][1 << CHUNK_BITS];
+
+    /**
+     * Adds a value under a hash.
+     *
+     * @param hash  The hash.
+     * @param value The value.
+     */
+    public void add(long hash, @NonNull T value) {
+        if (entries == hashes.length) {
+            int capacity = entries * 2;
+            hashes = Arrays.copyOf(hashes, capacity);
+            values = Arrays.copyOf(values, capacity);
+            visited = Arrays.copyOf(visited, capacity);
+        }
+        int entry = entries++;
+        hashes[entry] = hash;
+        values[entry] = value;
+        for (int chunk = 0; chunk < CHUNKS; chunk++) {
+            Bucket[] table = tables[chunk];
+            int chunkValue = chunkOf(hash, chunk);
+            if (table[chunkValue] == null) {
+                table[chunkValue] = new Bucket();
+            }
+            table[chunkValue].add(entry);
+        }
+        size++;
+    }
+
+    /**
+     * Removes a value added under a hash.
+     *
+     * @param hash  The hash the value was added under.
+     * @param value The value.
+     * @return {@code true} if the value was found; {@code false} otherwise.
+     */
+    public boolean remove(long hash, @NonNull T value) {
+        Bucket candidates = tables[0][chunkOf(hash, 0)];
+        if (candidates == null) {
+            return false;
+        }
+        for (int i = 0; i < candidates.size; i++) {
+            int entry = candidates.entries[i];
+            if (hashes[entry] == hash && value.equals(values[entry])) {
+                for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                    tables[chunk][chunkOf(hash, chunk)].remove(entry);
+                }
+                values[entry] = null;
+                size--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the values whose hash is within a distance of a hash.
+     *
+     * @param hash        The hash to search around.
+     * @param maxDistance The largest distance to include.
+     * @return The matches, nearest first.
+     */
+    @NonNull
+    public List<Match<T>> search(long hash, int maxDistance) {
+        List<Match<T>> matches = new ArrayList<>();
+        int chunkDistance = maxDistance / CHUNKS;
+        if ((long) CHUNKS * neighbourCount(chunkDistance) >= size) {
+            for (int entry = 0; entry < entries; entry++) {
+                check(entry, hash, maxDistance, matches);
+            }
+        } else {
+            generation++;
+            for (int chunk = 0; chunk < CHUNKS; chunk++) {
+                probe(tables[chunk], chunkOf(hash, chunk), 0, chunkDistance, hash, maxDistance, matches);
+            }
+        }
+        Collections.sort(matches, (a, b) -> Integer.compare(a.distance, b.distance));
+        return matches;
+    }
+
+    /**
+     * Gets the number of values in the index.
+     *
+     * @return The number of values.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Looks up every chunk value within {@code flips} more bit flips of {@code value}, flipping only
+     * bits from {@code fromBit} up so each value is looked up once.
+     */
+    private void probe(Bucket[] table, int value, int fromBit, int flips,
+                       long hash, int maxDistance, List<Match<T>> matches) {
+        Bucket bucket = table[value];
+        if (bucket != null) {
+            for (int i = 0; i < bucket.size; i++) {
+                int entry = bucket.entries[i];
+                if (visited[entry] != generation) {
+                    visited[entry] = generation;
+                    check(entry, hash, maxDistance, matches);
+                }
+            }
+        }
+        if (flips == 0) {
+            return;
+        }
+        for (int bit = fromBit; bit < CHUNK_BITS; bit++) {
+            probe(table, value ^ (1 << bit), bit + 1, flips - 1, hash, maxDistance, matches);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void check(int entry, long hash, int maxDistance, List<Match<T>> matches) {
+        if (values[entry] == null) {
+            return;
+        }
+        int distance = PerceptualHash.distance(hash, hashes[entry]);
+        if (distance <= maxDistance) {
+            matches.add(new Match<>((T) values[entry], distance));
+        }
+    }
+
+    private static int chunkOf(long hash, int chunk) {
+        return (int) (hash >>> (chunk * CHUNK_BITS)) & CHUNK_MASK;
+    }
+
+    /**
+     * Counts the chunk values within a distance of any one chunk value.
+     */
+    private static long neighbourCount(int distance) {
+        long count = 0;
+        long combinations = 1;
+        for (int k = 0; k <= Math.min(distance, CHUNK_BITS); k++) {
+            count += combinations;
+            combinations = combinations * (CHUNK_BITS - k) / (k + 1);
+        }
+        return count;
+    }
+
+    /**
+     * The entries whose hash has one value in one chunk.
+     */
+    private static final class Bucket {
+        int[] entries = new int[2];
+        int size = 0;
+
+        void add(int entry) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            entries[size++] = entry;
+        }
+
+        void remove(int entry) {
+            for (int i = 0; i < size; i++) {
+                if (entries[i] == entry) {
+                    entries[i] = entries[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * A value found by a search, with the distance of its hash from the query.
+     *
+     * @param <T> The type of the value.
+     */
+    public static final class Match<T> {
+        private final T value;
+        private final int distance;
+
+        Match(T value, int distance) {
+            this.value = value;
+            this.distance = distance;
+        }
+
+        @NonNull
+        public T getValue() {
+            return value;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.bugoff.can_do.image;
+
+import androidx.annotation.NonNull;
+
+import com.bugoff.can_do.database.GlobalRepository;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.Collections;
+
+/**
+ * {@code ImageFingerprints} keeps the {@link PerceptualHash} of every stored image in Firestore,
+ * one small document per image named after its content hash, so moderators can build a
+ * {@link SimilarImageIndex} without downloading any image.
+ *
+ * <p>In test mode (see {@link GlobalRepository#isInTestMode()}), nothing is recorded and the index
+ * is empty.</p>
+ */
+public class ImageFingerprints {
+    static final String PERCEPTUAL_HASH = "perceptualHash";
+
+    private ImageFingerprints() {
+    }
+
+    /**
+     * Records the perceptual hash of a stored image. Recording it again is harmless, as identical
+     * images have the same hash.
+     *
+     * @param imageHash      The content hash of the image.
+     * @param perceptualHash The perceptual hash of the image.
+     * @return A {@link Task} completing once the hash is recorded.
+     */
+    public static Task<Void> record(@NonNull String imageHash, long perceptualHash) {
+        CollectionReference fingerprints = GlobalRepository.getImageFingerprintsCollection();
+        if (fingerprints == null) {
+            return Tasks.forResult(null);
+        }
+        return fingerprints.document(imageHash).set(Collections.singletonMap(PERCEPTUAL_HASH, perceptualHash));
+    }
+
+    /**
+     * Builds an index of all recorded images. Reads one small document per image, so it should be
+     * done once and the index kept.
+     *
+     * @return A {@link Task} with the index.
+     */
+    public static Task<SimilarImageIndex> loadIndex() {
+        CollectionReference fingerprints = GlobalRepository.getImageFingerprintsCollection();
+        if (fingerprints == null) {
+            return Tasks.forResult(new SimilarImageIndex());
+        }
+        return fingerprints.get().onSuccessTask(snapshot -> {
+            SimilarImageIndex index = new SimilarImageIndex();
+            for (DocumentSnapshot document : snapshot.getDocuments()) {
+                Long perceptualHash = document.getLong(PERCEPTUAL_HASH);
+                if (perceptualHash != null && ImageStore.isHash(document.getId())) {
+                    index.add(document.getId(), perceptualHash);
+                }
+            }
+            return Tasks.forResult(index);
+        });
+    }
+}
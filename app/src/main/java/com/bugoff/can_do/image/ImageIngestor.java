@@ -0,0 +1,154 @@
+package com.bugoff.can_do.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bugoff.can_do.ImageUtils;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * {@code ImageIngestor} turns an image picked or taken by the user into a stored image: it decodes
+ * the image at a bounded size (see {@link ImageUtils#decodeForUpload(Context, Uri)}), encodes it
+ * within the upload byte budget (see {@link ImageUtils#encodeBitmap(Bitmap)}) and puts it into
+ * the {@link ImageStore}, together with each {@link ImageVariant} smaller than the image, so list
+ * screens never have to download the full image. The {@link PerceptualHash} of the image is
+ * recorded as well (see {@link ImageFingerprints}), so moderators can find re-uploads of it.
+ *
+ * <p>Decoding and compressing run on a background thread, one image at a time, so the main thread
+ * never blocks on a large photo and two uploads never hold decoded photos at once. Progress is
+ * reported on the main thread.</p>
+ */
+public class ImageIngestor {
+    private static final String TAG = "ImageIngestor";
+    static final int PROGRESS_DECODED = 40;
+    static final int PROGRESS_COMPRESSED = 70;
+    static final int PROGRESS_STORED = 100;
+
+    private static final Executor executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Receives the progress of an ingestion.
+     */
+    public interface ProgressListener {
+        /**
+         * Called on the main thread as the image is decoded, compressed and stored.
+         *
+         * @param percent The progress, from 0 to 100.
+         */
+        void onProgress(int percent);
+    }
+
+    private ImageIngestor() {
+    }
+
+    /**
+     * Ingests an image from a content URI, e.g. one picked from the gallery.
+     *
+     * @param context  Any context; only its application context is kept.
+     * @param imageUri The URI of the image.
+     * @param listener Receives progress, or {@code null}.
+     * @return A {@link Task} with the hash of the stored image.
+     */
+    public static Task<String> ingest(@NonNull Context context, @NonNull Uri imageUri,
+                                      @Nullable ProgressListener listener) {
+        Context appContext = context.getApplicationContext();
+        return ingest(appContext, () -> ImageUtils.decodeForUpload(appContext, imageUri), listener);
+    }
+
+    /**
+     * Ingests an image that is already decoded, e.g. a photo returned by the camera.
+     *
+     * @param context  Any context; only its application context is kept.
+     * @param bitmap   The image.
+     * @param listener Receives progress, or {@code null}.
+     * @return A {@link Task} with the hash of the stored image.
+     */
+    public static Task<String> ingest(@NonNull Context context, @NonNull Bitmap bitmap,
+                                      @Nullable ProgressListener listener) {
+        return ingest(context.getApplicationContext(), () -> bitmap, listener);
+    }
+
+    private static Task<String> ingest(Context context, Callable<Bitmap> decoder, @Nullable ProgressListener listener) {
+        report(listener, 0);
+        return Tasks.call(executor, () -> {
+            Bitmap bitmap = decoder.call();
+            if (bitmap == null) {
+                throw new IOException("Could not decode image");
+            }
+            report(listener, PROGRESS_DECODED);
+            BudgetEncoder.Result encoded = ImageUtils.encodeBitmap(bitmap);
+            Log.d(TAG, "Encoded image: " + encoded);
+            EncodedImage image = new EncodedImage(encoded.getData(), ImageUtils.perceptualHash(bitmap));
+            for (ImageVariant variant : ImageVariant.values()) {
+                BudgetEncoder.Result encodedVariant = ImageUtils.encodeVariant(bitmap, variant);
+                if (encodedVariant != null) {
+                    Log.d(TAG, "Encoded " + variant.getKey() + " variant: " + encodedVariant);
+                    image.variants.put(variant, encodedVariant.getData());
+                }
+            }
+            report(listener, PROGRESS_COMPRESSED);
+            return image;
+        }).onSuccessTask(image -> store(ImageRepository.getStore(context), image))
+                .addOnSuccessListener(hash -> report(listener, PROGRESS_STORED));
+    }
+
+    private static Task<String> store(ImageStore store, EncodedImage image) {
+        Task<String> put = store.put(image.data);
+        // The fingerprint only serves moderation, so failing to record it is not an error either
+        put.addOnSuccessListener(hash -> ImageFingerprints.record(hash, image.perceptualHash)
+                .addOnFailureListener(e -> Log.w(TAG, "Could not record fingerprint of " + hash, e)));
+        // Readers fall back to the full image, so a variant that fails to upload is not an error
+        List<Task<Void>> variantPuts = new ArrayList<>();
+        for (Map.Entry<ImageVariant, byte[]> variant : image.variants.entrySet()) {
+            variantPuts.add(store.putVariant(image.hash, variant.getKey(), variant.getValue())
+                    .addOnFailureListener(e -> Log.w(TAG, "Could not store " + variant.getKey().getKey()
+                            + " variant of " + image.hash, e)));
+        }
+        return Tasks.whenAllComplete(variantPuts).continueWithTask(unused -> put);
+    }
+
+    /**
+     * An encoded image with its variants and perceptual hash, ready to be stored.
+     */
+    private static final class EncodedImage {
+        final byte[] data;
+        final String hash;
+        final long perceptualHash;
+        final Map<ImageVariant, byte[]> variants = new EnumMap<>(ImageVariant.class);
+
+        EncodedImage(byte[] data, long perceptualHash) {
+            this.data = data;
+            this.hash = ImageStore.hashOf(data);
+            this.perceptualHash = perceptualHash;
+        }
+    }
+
+    private static void report(@Nullable ProgressListener listener, int percent) {
+        if (listener == null) {
+            return;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            listener.onProgress(percent);
+        } else {
+            mainHandler.post(() -> listener.onProgress(percent));
+        }
+    }
+}
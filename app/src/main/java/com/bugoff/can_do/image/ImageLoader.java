@@ -0,0 +1,303 @@
+package com.bugoff.can_do.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bugoff.can_do.ImageUtils;
+import com.google.android.gms.tasks.Tasks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Map;
+import java.util.Objects;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@code ImageLoader} loads the image of an entity into a view: from the {@link ImageStore} when
+ * the entity references it by hash, or from the legacy base64 string stored inline in documents
+ * written before images moved out of them.
+ *
+ * <p>Images referenced by hash are downloaded as the smallest {@link ImageVariant} covering the
+ * view, if one was stored, so list screens move a fraction of the bytes of the full image.
+ * Images are decoded off the main thread, subsampled while decoding and then scaled down to the
+ * size of the view, rounded up to a multiple of {@value #SIZE_STEP} pixels so views of similar
+ * size share cached copies. Small JPEGs are decoded as RGB_565, and decodes write into pooled
+ * bitmaps where possible. Decoded bitmaps are kept in a memory cache bounded by their byte count,
+ * so rebinding a list item shows its image immediately, and scaled-down images are kept in a
+ * {@link ThumbnailDiskCache}, so they are not decoded from the full image again after the app
+ * restarts. Loading into a view cancels the view's previous
+ * request; adapters should also call {@link #cancel(ImageView)} when a view holder is recycled.</p>
+ */
+public class ImageLoader {
+    private static final String TAG = "ImageLoader";
+    private static final String THUMBNAIL_DIRECTORY = "thumbnails";
+    private static final long DISK_CACHE_BYTES = 32L * 1024 * 1024;
+    private static final int MIN_TARGET_SIZE = 64;
+    private static final int MAX_TARGET_SIZE = 2048;
+    private static final int SIZE_STEP = 64;
+    // JPEGs shown this small are decoded as RGB_565; they have no alpha, so nothing is lost but color depth.
+    // Images in formats that may carry alpha (WebP, PNG) are always decoded as ARGB_8888
+    private static final int LOW_COLOR_MAX_SIZE = 256;
+    private static final int THUMBNAIL_QUALITY = 85;
+
+    private static final ExecutorService decodeExecutor = Executors.newFixedThreadPool(2);
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final LruCache<CacheKey, Bitmap> memoryCache = new LruCache<CacheKey, Bitmap>(memoryCacheBytes()) {
+        @Override
+        protected int sizeOf(CacheKey key, Bitmap bitmap) {
+            return bitmap.getAllocationByteCount();
+        }
+    };
+    // Intermediate bitmaps of decodes that were scaled down, reused by later decodes
+    private static final BitmapPool bitmapPool = new BitmapPool(memoryCacheBytes() / 4);
+    // Pending request of each view; only accessed on the main thread
+    private static final Map<ImageView, Request> requests = new WeakHashMap<>();
+    private static ThumbnailDiskCache diskCache;
+
+    private ImageLoader() {
+    }
+
+    /**
+     * Loads an image into a view. Must be called on the main thread. If the view is rebound to
+     * another image or cancelled before loading finishes (e.g. a recycled list item), the request
+     * is dropped.
+     *
+     * @param view         The view to show the image in; it is made visible once the image is set.
+     * @param imageHash    The hash of the image in the store, or {@code null}.
+     * @param legacyBase64 The legacy inline image, used if there is no hash, or {@code null}.
+     * @param onMissing    Run instead if there is no image or it cannot be loaded, or {@code null}.
+     */
+    public static void into(@NonNull ImageView view, @Nullable String imageHash, @Nullable String legacyBase64,
+                            @Nullable Runnable onMissing) {
+        into(view, imageHash, legacyBase64, onMissing, MAX_TARGET_SIZE);
+    }
+
+    /**
+     * Loads an image into a grid tile, like {@link #into(ImageView, String, String, Runnable)}, but
+     * at no more than the size of the {@link ImageVariant#TILE} variant, which the view scales up.
+     * Tiles of a two-column grid are about 540 pixels wide on a phone, which would otherwise need
+     * the {@link ImageVariant#MEDIUM} variant of five times the bytes.
+     *
+     * @param view         The view to show the image in; it is made visible once the image is set.
+     * @param imageHash    The hash of the image in the store, or {@code null}.
+     * @param legacyBase64 The legacy inline image, used if there is no hash, or {@code null}.
+     * @param onMissing    Run instead if there is no image or it cannot be loaded, or {@code null}.
+     */
+    public static void intoTile(@NonNull ImageView view, @Nullable String imageHash, @Nullable String legacyBase64,
+                                @Nullable Runnable onMissing) {
+        into(view, imageHash, legacyBase64, onMissing, ImageVariant.TILE.getMaxDimension());
+    }
+
+    private static void into(ImageView view, String imageHash, String legacyBase64, Runnable onMissing, int maxSize) {
+        cancel(view);
+        String source = imageHash != null ? imageHash
+                : legacyBase64 != null && !legacyBase64.isEmpty() ? legacyBase64 : null;
+        if (source == null) {
+            if (onMissing != null) {
+                onMissing.run();
+            }
+            return;
+        }
+        CacheKey key = new CacheKey(source, Math.min(maxSize, targetSize(view)));
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            show(view, cached);
+            return;
+        }
+        Request request = new Request(view, key, imageHash, onMissing);
+        requests.put(view, request);
+        decodeExecutor.execute(request);
+    }
+
+    /**
+     * Cancels the pending request of a view, if any. Must be called on the main thread.
+     *
+     * @param view The view.
+     */
+    public static void cancel(@NonNull ImageView view) {
+        Request request = requests.remove(view);
+        if (request != null) {
+            request.cancelled = true;
+        }
+    }
+
+    private static void show(ImageView view, Bitmap bitmap) {
+        view.setImageBitmap(bitmap);
+        view.setVisibility(View.VISIBLE);
+    }
+
+    private static int memoryCacheBytes() {
+        // An eighth of the heap, as recommended for bitmap caches
+        return (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    private static int targetSize(ImageView view) {
+        int size = Math.max(view.getWidth(), view.getHeight());
+        if (size <= 0) {
+            ViewGroup.LayoutParams params = view.getLayoutParams();
+            if (params != null) {
+                size = Math.max(params.width, params.height);
+            }
+        }
+        if (size <= 0) {
+            DisplayMetrics metrics = view.getResources().getDisplayMetrics();
+            size = Math.max(metrics.widthPixels, metrics.heightPixels);
+        }
+        size = Math.max(MIN_TARGET_SIZE, Math.min(MAX_TARGET_SIZE, size));
+        return (size + SIZE_STEP - 1) / SIZE_STEP * SIZE_STEP;
+    }
+
+    private static synchronized ThumbnailDiskCache getDiskCache(Context context) {
+        if (diskCache == null) {
+            diskCache = new ThumbnailDiskCache(new File(context.getCacheDir(), THUMBNAIL_DIRECTORY), DISK_CACHE_BYTES);
+        }
+        return diskCache;
+    }
+
+    /**
+     * Decodes an image at the size of a request, using the thumbnail cache when possible.
+     * Runs on the decode executor.
+     */
+    @Nullable
+    private static Bitmap decode(Context context, CacheKey key, @Nullable String imageHash) throws Exception {
+        boolean lowColor = key.size <= LOW_COLOR_MAX_SIZE;
+        if (imageHash == null) {
+            Bitmap legacy = ImageUtils.decodeSampledBase64Image(key.source, key.size, key.size, lowColor, bitmapPool);
+            return legacy != null ? scaleToFit(legacy, key.size) : null;
+        }
+        ThumbnailDiskCache thumbnails = getDiskCache(context);
+        String thumbnailKey = imageHash + "_" + key.size;
+        Bitmap thumbnail = ImageUtils.decodeSampledImage(thumbnails.read(thumbnailKey), key.size, key.size,
+                lowColor, bitmapPool);
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        ImageStore store = ImageRepository.getStore(context);
+        // Prefer the smallest variant large enough; images uploaded before variants have none
+        ImageVariant variant = ImageVariant.smallestFitting(key.size);
+        byte[] data = variant != null ? Tasks.await(store.getVariant(imageHash, variant)) : null;
+        if (data == null) {
+            data = Tasks.await(store.get(imageHash));
+        }
+        Bitmap sampled = ImageUtils.decodeSampledImage(data, key.size, key.size, lowColor, bitmapPool);
+        if (sampled == null) {
+            return null;
+        }
+        Bitmap scaled = scaleToFit(sampled, key.size);
+        if (scaled != sampled) {
+            // Images that fit already are read from the image store's own cache
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            // JPEG would drop the transparency of images with alpha
+            scaled.compress(scaled.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG,
+                    THUMBNAIL_QUALITY, out);
+            thumbnails.write(thumbnailKey, out.toByteArray());
+        }
+        return scaled;
+    }
+
+    private static Bitmap scaleToFit(Bitmap bitmap, int size) {
+        int longest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longest <= size) {
+            return bitmap;
+        }
+        float scale = (float) size / longest;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        if (scaled != bitmap) {
+            bitmapPool.put(bitmap);
+        }
+        return scaled;
+    }
+
+    /**
+     * Identifies a decoded bitmap: an image hash, or a legacy base64 string, at a target size.
+     */
+    private static final class CacheKey {
+        final String source;
+        final int size;
+
+        CacheKey(String source, int size) {
+            this.source = source;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof CacheKey)) return false;
+            CacheKey other = (CacheKey) o;
+            return size == other.size && source.equals(other.source);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(source, size);
+        }
+    }
+
+    /**
+     * A pending load of an image into a view.
+     */
+    private static final class Request implements Runnable {
+        private final ImageView view;
+        private final Context context;
+        private final CacheKey key;
+        private final String imageHash;
+        private final Runnable onMissing;
+        volatile boolean cancelled = false;
+
+        Request(ImageView view, CacheKey key, @Nullable String imageHash, @Nullable Runnable onMissing) {
+            this.view = view;
+            this.context = view.getContext().getApplicationContext();
+            this.key = key;
+            this.imageHash = imageHash;
+            this.onMissing = onMissing;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            Bitmap bitmap = memoryCache.get(key);
+            if (bitmap == null) {
+                try {
+                    bitmap = decode(context, key, imageHash);
+                } catch (Exception e) {
+                    Log.w(TAG, "Could not load image " + (imageHash != null ? imageHash : "(inline)"), e);
+                }
+                if (bitmap != null) {
+                    memoryCache.put(key, bitmap);
+                }
+            }
+            Bitmap result = bitmap;
+            mainHandler.post(() -> deliver(result));
+        }
+
+        private void deliver(@Nullable Bitmap bitmap) {
+            if (cancelled || requests.get(view) != this) {
+                return;
+            }
+            requests.remove(view);
+            if (bitmap != null) {
+                show(view, bitmap);
+            } else if (onMissing != null) {
+                onMissing.run();
+            }
+        }
+    }
+}
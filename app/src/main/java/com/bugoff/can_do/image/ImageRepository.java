@@ -0,0 +1,49 @@
+package com.bugoff.can_do.image;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bugoff.can_do.database.GlobalRepository;
+
+import java.io.File;
+
+/**
+ * {@code ImageRepository} provides the {@link ImageStore} used by the app.
+ *
+ * <p>In production, images are stored in Firebase Storage with a local cache in the app's cache
+ * directory. In test mode (see {@link GlobalRepository#isInTestMode()}), only the local store is
+ * used, so tests never touch Firebase.</p>
+ */
+public class ImageRepository {
+    private static final String CACHE_DIRECTORY = "images";
+    private static ImageStore store;
+
+    private ImageRepository() {
+    }
+
+    /**
+     * Gets the shared image store, creating it on first use.
+     *
+     * @param context Any context; only its application context is kept.
+     * @return The image store.
+     */
+    @NonNull
+    public static synchronized ImageStore getStore(@NonNull Context context) {
+        if (store == null) {
+            File directory = new File(context.getApplicationContext().getCacheDir(), CACHE_DIRECTORY);
+            LocalImageStore local = new LocalImageStore(directory);
+            store = GlobalRepository.isInTestMode() ? local : new CachingImageStore(local, new FirebaseImageStore());
+        }
+        return store;
+    }
+
+    /**
+     * Replaces the shared image store, e.g. with a {@link LocalImageStore} in tests.
+     *
+     * @param imageStore The store to use, or {@code null} to create the default one on next use.
+     */
+    public static synchronized void setStore(ImageStore imageStore) {
+        store = imageStore;
+    }
+}
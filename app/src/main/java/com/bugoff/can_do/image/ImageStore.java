@@ -0,0 +1,109 @@
+package com.bugoff.can_do.image;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * {@code ImageStore} stores encoded images as blobs keyed by the SHA-256 hash of their content.
+ *
+ * <p>Entities only keep the hash of their image, so documents stay small no matter how large the
+ * image is. Because the key is derived from the content, storing the same image twice yields the
+ * same hash and one shared blob, and a blob never changes once stored, so it can be cached
+ * indefinitely.</p>
+ */
+public interface ImageStore {
+    /**
+     * Stores an encoded image, unless a blob with the same content is already stored.
+     *
+     * @param data The encoded image, e.g. JPEG bytes.
+     * @return A {@link Task} with the hash identifying the image.
+     */
+    Task<String> put(@NonNull byte[] data);
+
+    /**
+     * Reads an encoded image.
+     *
+     * @param hash The hash returned by {@link #put(byte[])}.
+     * @return A {@link Task} with the encoded image, or {@code null} if no such image is stored.
+     */
+    Task<byte[]> get(@NonNull String hash);
+
+    /**
+     * Stores a scaled-down variant of an image, unless that variant is already stored. A variant
+     * is derived from the image, so it is keyed by the image's hash rather than its own.
+     *
+     * @param hash    The hash of the full image.
+     * @param variant The variant.
+     * @param data    The encoded variant.
+     * @return A {@link Task} completing once the variant is stored.
+     */
+    Task<Void> putVariant(@NonNull String hash, @NonNull ImageVariant variant, @NonNull byte[] data);
+
+    /**
+     * Reads a scaled-down variant of an image.
+     *
+     * @param hash    The hash of the full image.
+     * @param variant The variant.
+     * @return A {@link Task} with the encoded variant, or {@code null} if the variant is not stored.
+     */
+    Task<byte[]> getVariant(@NonNull String hash, @NonNull ImageVariant variant);
+
+    /**
+     * Computes the key of an encoded image.
+     *
+     * @param data The encoded image.
+     * @return The lowercase hexadecimal SHA-256 hash of {@code data}.
+     */
+    @NonNull
+    static String hashOf(@NonNull byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Computes the name a variant is stored under.
+     *
+     * @param hash    The hash of the full image.
+     * @param variant The variant.
+     * @return The name, e.g. {@code <hash>_small}.
+     */
+    @NonNull
+    static String variantKey(@NonNull String hash, @NonNull ImageVariant variant) {
+        return hash + "_" + variant.getKey();
+    }
+
+    /**
+     * Checks whether a string is a well-formed image hash, so it can safely be used as a file or
+     * object name.
+     *
+     * @param hash The string to check.
+     * @return {@code true} if {@code hash} is 64 lowercase hexadecimal characters; {@code false} otherwise.
+     */
+    static boolean isHash(@Nullable String hash) {
+        if (hash == null || hash.length() != 64) {
+            return false;
+        }
+        for (int i = 0; i < hash.length(); i++) {
+            char c = hash.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,75 @@
+package com.bugoff.can_do.image;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * {@code ImageVariant} is a scaled-down copy of a stored image, generated when the image is
+ * uploaded so list screens can download a few kilobytes instead of the full image.
+ *
+ * <p>A variant is keyed by the hash of the full image it was made from (see
+ * {@link ImageStore#putVariant(String, ImageVariant, byte[])}). Images no larger than a variant
+ * have no such variant; neither do images uploaded before variants existed, so readers fall back
+ * to the full image when a variant is missing.</p>
+ */
+public enum ImageVariant {
+    // Sizes are multiples of the size step of ImageLoader: a 48dp avatar at up to 4x density, a gallery
+    // tile (see ImageLoader#intoTile) and a full-width image in a list
+    SMALL(192, 12 * 1024),
+    TILE(320, 8 * 1024),
+    MEDIUM(640, 40 * 1024);
+
+    private final int maxDimension;
+    private final int budgetBytes;
+
+    ImageVariant(int maxDimension, int budgetBytes) {
+        this.maxDimension = maxDimension;
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Gets the size of the longest side of the variant.
+     *
+     * @return The size in pixels.
+     */
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    /**
+     * Gets the size the encoded variant should not exceed.
+     *
+     * @return The size in bytes.
+     */
+    public int getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    /**
+     * Gets the name of the variant as used in file and object names.
+     *
+     * @return The lowercase name, e.g. {@code small}.
+     */
+    @NonNull
+    public String getKey() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Finds the smallest variant that can be displayed at a size without upscaling.
+     *
+     * @param size The size of the longest side the image is displayed at, in pixels.
+     * @return The variant, or {@code null} if only the full image is large enough.
+     */
+    @Nullable
+    public static ImageVariant smallestFitting(int size) {
+        for (ImageVariant variant : values()) {
+            if (variant.maxDimension >= size) {
+                return variant;
+            }
+        }
+        return null;
+    }
+}
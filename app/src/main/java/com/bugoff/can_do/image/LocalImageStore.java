@@ -0,0 +1,168 @@
+package com.bugoff.can_do.image;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * {@code LocalImageStore} is an {@link ImageStore} that keeps each image as a file named after its
+ * hash in a local directory, next to its variants named {@code <hash>_<variant>}. It is used on its own in tests and as the offline cache in front of
+ * {@link FirebaseImageStore}.
+ *
+ * <p>The {@code Task} methods run on a background executor; {@link #write(byte[])} and
+ * {@link #read(String)} do the same work synchronously.</p>
+ */
+public class LocalImageStore implements ImageStore {
+    private final File directory;
+    private final Executor executor;
+
+    /**
+     * Constructs a new {@code LocalImageStore}.
+     *
+     * @param directory The directory holding the images; it is created if needed.
+     * @param executor  The executor that runs file access for the {@code Task} methods.
+     */
+    public LocalImageStore(@NonNull File directory, @NonNull Executor executor) {
+        this.directory = directory;
+        this.executor = executor;
+    }
+
+    /**
+     * Constructs a {@code LocalImageStore} that accesses files on its own background thread.
+     *
+     * @param directory The directory holding the images; it is created if needed.
+     */
+    public LocalImageStore(@NonNull File directory) {
+        this(directory, Executors.newSingleThreadExecutor());
+    }
+
+    @Override
+    public Task<String> put(@NonNull byte[] data) {
+        return Tasks.call(executor, () -> write(data));
+    }
+
+    @Override
+    public Task<byte[]> get(@NonNull String hash) {
+        return Tasks.call(executor, () -> read(hash));
+    }
+
+    @Override
+    public Task<Void> putVariant(@NonNull String hash, @NonNull ImageVariant variant, @NonNull byte[] data) {
+        return Tasks.call(executor, () -> {
+            writeVariant(hash, variant, data);
+            return null;
+        });
+    }
+
+    @Override
+    public Task<byte[]> getVariant(@NonNull String hash, @NonNull ImageVariant variant) {
+        return Tasks.call(executor, () -> readVariant(hash, variant));
+    }
+
+    /**
+     * Stores an encoded image synchronously, unless it is already stored.
+     *
+     * @param data The encoded image.
+     * @return The hash identifying the image.
+     * @throws IOException If the image could not be written.
+     */
+    @NonNull
+    public String write(@NonNull byte[] data) throws IOException {
+        String hash = ImageStore.hashOf(data);
+        writeFile(hash, data);
+        return hash;
+    }
+
+    /**
+     * Stores a variant of an image synchronously, unless it is already stored.
+     *
+     * @param hash    The hash of the full image.
+     * @param variant The variant.
+     * @param data    The encoded variant.
+     * @throws IOException If the hash is malformed or the variant could not be written.
+     */
+    public void writeVariant(@NonNull String hash, @NonNull ImageVariant variant, @NonNull byte[] data)
+            throws IOException {
+        if (!ImageStore.isHash(hash)) {
+            throw new IOException("Invalid image hash " + hash);
+        }
+        writeFile(ImageStore.variantKey(hash, variant), data);
+    }
+
+    /**
+     * Reads an encoded image synchronously.
+     *
+     * @param hash The hash of the image.
+     * @return The encoded image, or {@code null} if it is not stored.
+     * @throws IOException If the image exists but could not be read.
+     */
+    @Nullable
+    public byte[] read(@NonNull String hash) throws IOException {
+        File file = fileFor(hash);
+        return file != null && file.isFile() ? Files.readAllBytes(file.toPath()) : null;
+    }
+
+    /**
+     * Reads a variant of an image synchronously.
+     *
+     * @param hash    The hash of the full image.
+     * @param variant The variant.
+     * @return The encoded variant, or {@code null} if it is not stored.
+     * @throws IOException If the variant exists but could not be read.
+     */
+    @Nullable
+    public byte[] readVariant(@NonNull String hash, @NonNull ImageVariant variant) throws IOException {
+        if (!ImageStore.isHash(hash)) {
+            return null;
+        }
+        File file = new File(directory, ImageStore.variantKey(hash, variant));
+        return file.isFile() ? Files.readAllBytes(file.toPath()) : null;
+    }
+
+    /**
+     * Checks whether an image is stored.
+     *
+     * @param hash The hash of the image.
+     * @return {@code true} if the image is stored; {@code false} otherwise.
+     */
+    public boolean contains(@NonNull String hash) {
+        File file = fileFor(hash);
+        return file != null && file.isFile();
+    }
+
+    private void writeFile(String name, byte[] data) throws IOException {
+        File file = new File(directory, name);
+        if (file.exists()) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        // Write to a temporary file first, so a reader never sees a partially written image
+        File temp = File.createTempFile(name, ".tmp", directory);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file) && !file.exists()) {
+            temp.delete();
+            throw new IOException("Cannot store image " + name);
+        }
+        temp.delete();
+    }
+
+    @Nullable
+    private File fileFor(String hash) {
+        // Only well-formed hashes map to files, so a malformed reference cannot escape the directory
+        return ImageStore.isHash(hash) ? new File(directory, hash) : null;
+    }
+}
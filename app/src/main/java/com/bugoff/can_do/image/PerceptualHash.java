@@ -0,0 +1,113 @@
+package com.bugoff.can_do.image;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * {@code PerceptualHash} computes a 64-bit perceptual hash (pHash) of an image: the image is reduced
+ * to 32x32 cells of average luminance, the cells are transformed with a discrete cosine transform,
+ * and each bit tells whether one of the 8x8 lowest frequencies is above their median.
+ *
+ * <p>Unlike the content hash of {@link ImageStore}, the hash survives re-encoding, resizing and
+ * brightness changes, as those barely move the low frequencies, so re-uploads of the same picture
+ * end up a few bits apart; unrelated images differ in about half of their bits. The hash is
+ * computed from plain ARGB pixels, so it runs the same on a device and in a JVM test.</p>
+ */
+public final class PerceptualHash {
+    private static final int SAMPLES = 32;
+    private static final int FREQUENCIES = 8;
+    // COSINES[u][x] is the DCT-II basis function of frequency u at sample x
+    private static final double[][] COSINES = new double[FREQUENCIES][SAMPLES];
+
+    static {
+        for (int u = 0; u < FREQUENCIES; u++) {
+            for (int x = 0; x < SAMPLES; x++) {
+                COSINES[u][x] = Math.cos((2 * x + 1) * u * Math.PI / (2 * SAMPLES));
+            }
+        }
+    }
+
+    private PerceptualHash() {
+    }
+
+    /**
+     * Computes the hash of an image.
+     *
+     * @param argb   The pixels of the image, row by row, as packed ARGB.
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return The hash.
+     */
+    public static long compute(@NonNull int[] argb, int width, int height) {
+        if (width <= 0 || height <= 0 || argb.length < width * height) {
+            throw new IllegalArgumentException("Invalid image size " + width + "x" + height);
+        }
+        double[][] cells = new double[SAMPLES][SAMPLES];
+        for (int row = 0; row < SAMPLES; row++) {
+            int top = row * height / SAMPLES;
+            int bottom = Math.max(top + 1, (row + 1) * height / SAMPLES);
+            for (int column = 0; column < SAMPLES; column++) {
+                int left = column * width / SAMPLES;
+                int right = Math.max(left + 1, (column + 1) * width / SAMPLES);
+                long sum = 0;
+                for (int y = top; y < bottom; y++) {
+                    for (int x = left; x < right; x++) {
+                        sum += luminance(argb[y * width + x]);
+                    }
+                }
+                cells[row][column] = (double) sum / ((bottom - top) * (right - left));
+            }
+        }
+
+        // The transform is separable: rows first, then columns, keeping only the low frequencies
+        double[][] rows = new double[SAMPLES][FREQUENCIES];
+        for (int y = 0; y < SAMPLES; y++) {
+            for (int u = 0; u < FREQUENCIES; u++) {
+                double sum = 0;
+                for (int x = 0; x < SAMPLES; x++) {
+                    sum += cells[y][x] * COSINES[u][x];
+                }
+                rows[y][u] = sum;
+            }
+        }
+        double[] coefficients = new double[FREQUENCIES * FREQUENCIES];
+        for (int v = 0; v < FREQUENCIES; v++) {
+            for (int u = 0; u < FREQUENCIES; u++) {
+                double sum = 0;
+                for (int y = 0; y < SAMPLES; y++) {
+                    sum += rows[y][u] * COSINES[v][y];
+                }
+                coefficients[v * FREQUENCIES + u] = sum;
+            }
+        }
+
+        // The first coefficient is the average brightness, which would dominate the median
+        double[] sorted = Arrays.copyOfRange(coefficients, 1, coefficients.length);
+        Arrays.sort(sorted);
+        double median = sorted[sorted.length / 2];
+        long hash = 0;
+        for (double coefficient : coefficients) {
+            hash = (hash << 1) | (coefficient > median ? 1 : 0);
+        }
+        return hash;
+    }
+
+    /**
+     * Counts the bits in which two hashes differ.
+     *
+     * @param a The first hash.
+     * @param b The second hash.
+     * @return The Hamming distance, from 0 for identical hashes to 64.
+     */
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private static int luminance(int argb) {
+        int r = (argb >> 16) & 0xFF;
+        int g = (argb >> 8) & 0xFF;
+        int b = argb & 0xFF;
+        return (r * 299 + g * 587 + b * 114) / 1000;
+    }
+}
@@ -0,0 +1,170 @@
+package com.bugoff.can_do.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * {@code QrCodeRenderer} shows QR codes in views without encoding them on the main thread.
+ *
+ * <p>A QR code depends only on its payload and size, so rendered codes are cached by both: in
+ * memory, and as PNGs in a {@link ThumbnailDiskCache}, so reopening a screen or restarting the app
+ * does not encode the same code again. Codes that are not cached are encoded on a background
+ * thread, one at a time, writing each row of pixels from one reused buffer. Codes are black and
+ * white, so they are kept as RGB_565 at half the memory of ARGB_8888.</p>
+ */
+public class QrCodeRenderer {
+    private static final String TAG = "QrCodeRenderer";
+    private static final String DISK_CACHE_DIRECTORY = "qr_codes";
+    private static final long DISK_CACHE_BYTES = 1024 * 1024;
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private static final Executor executor = Executors.newSingleThreadExecutor();
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final LruCache<String, Bitmap> memoryCache = new LruCache<String, Bitmap>(MEMORY_CACHE_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap bitmap) {
+            return bitmap.getAllocationByteCount();
+        }
+    };
+    // Payload requested last by each view; only accessed on the main thread
+    private static final Map<ImageView, String> requests = new WeakHashMap<>();
+    private static ThumbnailDiskCache diskCache;
+    // One row of pixels, reused by every encode; only accessed on the executor
+    private static int[] row = new int[0];
+
+    private QrCodeRenderer() {
+    }
+
+    /**
+     * Shows a QR code in a view. Must be called on the main thread. If the view is given another
+     * payload before the code is ready, the code is dropped.
+     *
+     * @param view    The view to show the code in.
+     * @param payload The text encoded in the code.
+     * @param size    The width and height of the code in pixels.
+     */
+    public static void into(@NonNull ImageView view, @NonNull String payload, int size) {
+        String key = keyOf(payload, size);
+        requests.put(view, key);
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+        view.setImageDrawable(null);
+        Context context = view.getContext().getApplicationContext();
+        executor.execute(() -> {
+            Bitmap bitmap = render(context, key, payload, size);
+            mainHandler.post(() -> {
+                if (bitmap != null && key.equals(requests.get(view))) {
+                    view.setImageBitmap(bitmap);
+                }
+            });
+        });
+    }
+
+    /**
+     * Cancels the pending request of a view, if any, e.g. when its code is deleted. Must be called
+     * on the main thread.
+     *
+     * @param view The view.
+     */
+    public static void cancel(@NonNull ImageView view) {
+        requests.remove(view);
+    }
+
+    /**
+     * Gets a QR code from the caches, or encodes and caches it. Runs on the executor.
+     */
+    @Nullable
+    private static Bitmap render(Context context, String key, String payload, int size) {
+        Bitmap bitmap = memoryCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+        ThumbnailDiskCache disk = getDiskCache(context);
+        try {
+            byte[] data = disk.read(key);
+            if (data != null) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inPreferredConfig = Bitmap.Config.RGB_565;
+                bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read cached QR code", e);
+        }
+        if (bitmap == null) {
+            try {
+                bitmap = encode(payload, size);
+            } catch (WriterException | IllegalArgumentException e) {
+                // QRCodeWriter rejects an empty payload with an IllegalArgumentException
+                Log.e(TAG, "Could not encode QR code", e);
+                return null;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            try {
+                disk.write(key, out.toByteArray());
+            } catch (IOException e) {
+                Log.w(TAG, "Could not cache QR code", e);
+            }
+        }
+        memoryCache.put(key, bitmap);
+        return bitmap;
+    }
+
+    private static Bitmap encode(String payload, int size) throws WriterException {
+        BitMatrix matrix = new QRCodeWriter().encode(payload, BarcodeFormat.QR_CODE, size, size);
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        if (row.length < width) {
+            row = new int[width];
+        }
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.RGB_565);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                row[x] = matrix.get(x, y) ? Color.BLACK : Color.WHITE;
+            }
+            bitmap.setPixels(row, 0, width, 0, y, width, 1);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Derives a cache key from a payload, which may contain any characters, and a size.
+     */
+    private static String keyOf(String payload, int size) {
+        return ImageStore.hashOf(payload.getBytes(StandardCharsets.UTF_8)) + "_" + size;
+    }
+
+    private static synchronized ThumbnailDiskCache getDiskCache(Context context) {
+        if (diskCache == null) {
+            diskCache = new ThumbnailDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIRECTORY), DISK_CACHE_BYTES);
+        }
+        return diskCache;
+    }
+}
@@ -0,0 +1,104 @@
+package com.bugoff.can_do.image;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code SimilarImageIndex} finds stored images that look alike, by the Hamming distance of their
+ * {@link PerceptualHash}es, so a moderator can find every re-upload of an image.
+ *
+ * <p>Images are identified by their content hash (see {@link ImageStore}). Identical uploads share
+ * one content hash and thus one entry; re-encoded, resized or slightly edited copies have their own
+ * content hash but a nearby perceptual hash. Lookups go through a {@link HammingIndex}, so they
+ * only compare against a fraction of the indexed images.</p>
+ */
+public class SimilarImageIndex {
+    /**
+     * The distance up to which images are considered the same picture. Re-encoded and resized
+     * copies are typically within a few bits; unrelated images are around 32 bits apart.
+     */
+    public static final int DEFAULT_MAX_DISTANCE = 10;
+
+    private final HammingIndex<String> tree = new HammingIndex<>();
+    private final Map<String, Long> perceptualHashes = new HashMap<>();
+
+    /**
+     * Adds an image to the index, replacing its previous perceptual hash, if any.
+     *
+     * @param imageHash      The content hash of the image.
+     * @param perceptualHash The perceptual hash of the image.
+     */
+    public synchronized void add(@NonNull String imageHash, long perceptualHash) {
+        Long previous = perceptualHashes.put(imageHash, perceptualHash);
+        if (previous != null) {
+            tree.remove(previous, imageHash);
+        }
+        tree.add(perceptualHash, imageHash);
+    }
+
+    /**
+     * Removes an image from the index.
+     *
+     * @param imageHash The content hash of the image.
+     */
+    public synchronized void remove(@NonNull String imageHash) {
+        Long previous = perceptualHashes.remove(imageHash);
+        if (previous != null) {
+            tree.remove(previous, imageHash);
+        }
+    }
+
+    /**
+     * Gets the perceptual hash of an indexed image.
+     *
+     * @param imageHash The content hash of the image.
+     * @return The perceptual hash, or {@code null} if the image is not indexed.
+     */
+    @Nullable
+    public synchronized Long getPerceptualHash(@NonNull String imageHash) {
+        return perceptualHashes.get(imageHash);
+    }
+
+    /**
+     * Finds the images similar to an indexed image, including the image itself.
+     *
+     * @param imageHash   The content hash of the image.
+     * @param maxDistance The largest Hamming distance to include.
+     * @return The content hashes of the similar images, nearest first; empty if the image is not indexed.
+     */
+    @NonNull
+    public synchronized List<String> findSimilar(@NonNull String imageHash, int maxDistance) {
+        Long perceptualHash = perceptualHashes.get(imageHash);
+        return perceptualHash != null ? findSimilar(perceptualHash, maxDistance) : new ArrayList<>();
+    }
+
+    /**
+     * Finds the images whose perceptual hash is near a given one.
+     *
+     * @param perceptualHash The perceptual hash to search around.
+     * @param maxDistance    The largest Hamming distance to include.
+     * @return The content hashes of the similar images, nearest first.
+     */
+    @NonNull
+    public synchronized List<String> findSimilar(long perceptualHash, int maxDistance) {
+        List<String> similar = new ArrayList<>();
+        for (HammingIndex.Match<String> match : tree.search(perceptualHash, maxDistance)) {
+            similar.add(match.getValue());
+        }
+        return similar;
+    }
+
+    /**
+     * Gets the number of indexed images.
+     *
+     * @return The number of images.
+     */
+    public synchronized int size() {
+        return perceptualHashes.size();
+    }
+}
@@ -0,0 +1,145 @@
+package com.bugoff.can_do.image;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * {@code ThumbnailDiskCache} keeps encoded thumbnails, i.e. images already scaled down to the size
+ * they are displayed at, in a directory bounded in total size. When the bound is exceeded, the
+ * least recently used thumbnails are deleted.
+ *
+ * <p>Unlike {@link LocalImageStore}, which keeps every original image, this cache may drop entries
+ * at any time; a missing thumbnail is simply recreated from the original.</p>
+ */
+public class ThumbnailDiskCache {
+    private static final Pattern KEY = Pattern.compile("[0-9a-z_]{1,100}");
+
+    private final File directory;
+    private final long maxBytes;
+    // File sizes by key, least recently used first; loaded from the directory on first use
+    private Map<String, Long> entries;
+    private long size = 0;
+
+    /**
+     * Constructs a new {@code ThumbnailDiskCache}.
+     *
+     * @param directory The directory holding the thumbnails; it is created if needed.
+     * @param maxBytes  The maximum total size of the thumbnails.
+     */
+    public ThumbnailDiskCache(@NonNull File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Reads a thumbnail and marks it as recently used.
+     *
+     * @param key The key of the thumbnail; only lowercase letters, digits and underscores.
+     * @return The encoded thumbnail, or {@code null} if it is not cached.
+     * @throws IOException If the thumbnail exists but could not be read.
+     */
+    @Nullable
+    public synchronized byte[] read(@NonNull String key) throws IOException {
+        if (!KEY.matcher(key).matches() || !load().containsKey(key)) {
+            return null;
+        }
+        File file = new File(directory, key);
+        if (!file.isFile()) {
+            remove(key);
+            return null;
+        }
+        entries.get(key); // Moves the entry to the most recently used end
+        file.setLastModified(System.currentTimeMillis());
+        return Files.readAllBytes(file.toPath());
+    }
+
+    /**
+     * Writes a thumbnail, replacing any thumbnail with the same key, and deletes the least recently
+     * used thumbnails if the cache grows beyond its bound.
+     *
+     * @param key  The key of the thumbnail; only lowercase letters, digits and underscores.
+     * @param data The encoded thumbnail.
+     * @throws IOException If the thumbnail could not be written.
+     */
+    public synchronized void write(@NonNull String key, @NonNull byte[] data) throws IOException {
+        if (!KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid thumbnail key: " + key);
+        }
+        load();
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        File temp = File.createTempFile(key, ".tmp", directory);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+        }
+        File file = new File(directory, key);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot store thumbnail " + key);
+        }
+        remove(key);
+        entries.put(key, (long) data.length);
+        size += data.length;
+        trim();
+    }
+
+    /**
+     * Gets the total size of the cached thumbnails.
+     *
+     * @return The size in bytes.
+     */
+    public synchronized long size() {
+        load();
+        return size;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (size > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(directory, eldest.getKey()).delete();
+            size -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private void remove(String key) {
+        Long previous = entries.remove(key);
+        if (previous != null) {
+            size -= previous;
+        }
+    }
+
+    private Map<String, Long> load() {
+        if (entries != null) {
+            return entries;
+        }
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            // Files left over from a previous run keep their order of last use
+            Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+            for (File file : files) {
+                if (KEY.matcher(file.getName()).matches()) {
+                    entries.put(file.getName(), file.length());
+                    size += file.length();
+                } else {
+                    file.delete(); // Temporary file of an interrupted write
+                }
+            }
+        }
+        return entries;
+    }
+}
@@ -109,7 +109,7 @@ public class SendNotificationFragment extends Fragment {
                                 uniqueId,
                                 "Event Update",
                                 message,
-                                event.getFacility().getId(),
+                                event.getFacilityId(),
                                 new ArrayList<>(waitingListEntrants), // Create new list to avoid modifications
                                 eventId
                         );
@@ -153,7 +153,7 @@ public class SendNotificationFragment extends Fragment {
                                 uniqueId,
                                 "Event Update",
                                 message,
-                                event.getFacility().getId(),
+                                event.getFacilityId(),
                                 new ArrayList<>(selectedEntrants),
                                 eventId
                         );
@@ -195,7 +195,7 @@ public class SendNotificationFragment extends Fragment {
                                 uniqueId,
                                 "Event Update",
                                 message,
-                                event.getFacility().getId(),
+                                event.getFacilityId(),
                                 new ArrayList<>(cancelledEntrants),
                                 eventId
                         );
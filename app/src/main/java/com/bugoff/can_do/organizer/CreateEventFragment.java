@@ -24,11 +24,13 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 
-import com.bugoff.can_do.ImageUtils;
 import com.bugoff.can_do.R;
+import com.bugoff.can_do.checkin.TicketKeys;
 import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.database.WriteBehindBuffer;
 import com.bugoff.can_do.event.Event;
 import com.bugoff.can_do.facility.Facility;
+import com.bugoff.can_do.image.ImageIngestor;
 import com.bugoff.can_do.user.User;
 
 import org.jetbrains.annotations.Contract;
@@ -122,7 +124,8 @@ public class CreateEventFragment extends Fragment {
         backButton.setOnClickListener(v -> requireActivity().getSupportFragmentManager().popBackStack());
     }
 
-    private String imageBase64 = null; // temp storage
+    private String imageHash = null; // hash of the stored image, set once it is uploaded
+    private boolean imageUploading = false;
 
     /**
      * Sets up the image picker to allow users to upload an image for the event.
@@ -135,11 +138,7 @@ public class CreateEventFragment extends Fragment {
                         Intent data = result.getData();
                         if (data != null && data.getData() != null) {
                             Uri selectedImageUri = data.getData();
-                            String base64Image = ImageUtils.compressAndEncodeImage(requireContext(), selectedImageUri);
-                            if (base64Image != null) {
-                                imageBase64 = base64Image;
-                                Toast.makeText(getContext(), "Image selected", Toast.LENGTH_SHORT).show();
-                            }
+                            uploadImage(selectedImageUri);
                         }
                     }
                 }
@@ -148,6 +147,33 @@ public class CreateEventFragment extends Fragment {
         buttonUploadImage.setOnClickListener(v -> openImagePicker());
     }
 
+    /**
+     * Decodes, compresses and stores the selected image in the background, showing the progress
+     * on the upload button.
+     *
+     * @param imageUri URI of the selected image.
+     */
+    private void uploadImage(Uri imageUri) {
+        CharSequence label = buttonUploadImage.getText();
+        imageUploading = true;
+        buttonUploadImage.setEnabled(false);
+        ImageIngestor.ingest(requireContext(), imageUri,
+                        percent -> buttonUploadImage.setText(getString(R.string.uploading_image, percent)))
+                .addOnCompleteListener(task -> {
+                    imageUploading = false;
+                    buttonUploadImage.setEnabled(true);
+                    buttonUploadImage.setText(label);
+                })
+                .addOnSuccessListener(hash -> {
+                    imageHash = hash;
+                    Toast.makeText(getContext(), "Image selected", Toast.LENGTH_SHORT).show();
+                })
+                .addOnFailureListener(e -> {
+                    Log.e("CreateEventFragment", "Error storing image", e);
+                    Toast.makeText(getContext(), "Failed to upload image", Toast.LENGTH_SHORT).show();
+                });
+    }
+
 //    /**
 //     * Uploads the selected image to Firebase storage and saves the event with the image URL.
 //     *
@@ -340,6 +366,10 @@ public class CreateEventFragment extends Fragment {
      * Creates a new event using input details and saves it to Firebase.
      */
     private void createEvent() {
+        if (imageUploading) {
+            Toast.makeText(getContext(), "Please wait for the image to finish uploading", Toast.LENGTH_SHORT).show();
+            return;
+        }
         String eventName = editTextEventName.getText().toString().trim();
         String eventDescription = editTextEventDescription.getText().toString().trim();
         String numParticipantsStr = editTextNumParticipants.getText().toString().trim();
@@ -406,13 +436,17 @@ public class CreateEventFragment extends Fragment {
         newEvent.setMaxNumberOfParticipants(maxNumParticipants);
         newEvent.setGeolocationRequired(isGeolocationRequired);
         newEvent.setQrCodeHash("cando-" + newEvent.getId());
-        if (imageBase64 != null) {
-            newEvent.setBase64Image(imageBase64);
+        if (imageHash != null) {
+            newEvent.setImageHash(imageHash);
         }
 
         // Save the Event to Firestore using GlobalRepository
         GlobalRepository.addEvent(newEvent).addOnCompleteListener(task -> {
             if (task.isSuccessful()) {
+                // Persist the facility's updated event list before leaving the screen
+                WriteBehindBuffer.getInstance().flush();
+                // The key signing the event's check-in tickets; kept only on this device
+                TicketKeys.create(requireContext(), newEvent.getId());
                 Toast.makeText(getContext(), "Event created successfully!", Toast.LENGTH_SHORT).show();
                 navigateToOrganizerMain(); // TODO: maybe navigate to inside the event instead
             } else {
@@ -2,6 +2,7 @@ package com.bugoff.can_do.organizer;
 
 import android.app.Activity;
 import android.app.AlertDialog;
+import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.net.Uri;
@@ -26,26 +27,34 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentManager;
 import androidx.fragment.app.FragmentTransaction;
 
-import com.bugoff.can_do.ImageUtils;
 import com.bugoff.can_do.R;
 import com.bugoff.can_do.admin.AdminActivity;
+import com.bugoff.can_do.checkin.EntrantTickets;
+import com.bugoff.can_do.checkin.TicketKeys;
 import com.bugoff.can_do.database.GlobalRepository;
 import com.bugoff.can_do.database.NoOpDatabaseBehavior;
+import com.bugoff.can_do.database.VersionStamp;
 import com.bugoff.can_do.event.Event;
 import com.bugoff.can_do.event.EventCancelledFragment;
 import com.bugoff.can_do.event.EventEnrolledFragment;
 import com.bugoff.can_do.event.EventSelectedFragment;
 import com.bugoff.can_do.event.EventWaitlistFragment;
 import com.bugoff.can_do.facility.Facility;
+import com.bugoff.can_do.image.ImageIngestor;
+import com.bugoff.can_do.image.ImageLoader;
+import com.bugoff.can_do.image.QrCodeRenderer;
 import com.bugoff.can_do.notification.SendNotificationFragment;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.zxing.BarcodeFormat;
-import com.google.zxing.WriterException;
-import com.journeyapps.barcodescanner.BarcodeEncoder;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 /**
  * Fragment for displaying and managing event details for organizers.
@@ -70,6 +79,7 @@ public class EventDetailsFragmentOrganizer extends Fragment {
     private ActivityResultLauncher<Intent> galleryLauncher;
     private ActivityResultLauncher<Intent> cameraLauncher;
     private static final String ARG_EVENT_ID = "selected_event_id";
+    private static final int QR_CODE_SIZE = 400;
     private androidx.appcompat.widget.SwitchCompat geolocationToggle;
     private NoOpDatabaseBehavior testBehavior;
 
@@ -108,6 +118,34 @@ public class EventDetailsFragmentOrganizer extends Fragment {
         setupImageLaunchers();
     }
 
+    /**
+     * Issues tickets to newly enrolled entrants whenever the organizer views the event.
+     */
+    @Override
+    public void onResume() {
+        super.onResume();
+        if (!GlobalRepository.isInTestMode() && eventId != null) {
+            issueTickets();
+        }
+    }
+
+    /**
+     * Issues check-in tickets to entrants enrolled since the organizer last opened the event.
+     * Only the organizer's device holds the key that signs them.
+     */
+    private void issueTickets() {
+        Context context = requireContext().getApplicationContext();
+        GlobalRepository.getEvent(eventId)
+                .onSuccessTask(event -> event != null && TicketKeys.canCheckIn(GlobalRepository.getLoggedInUser(), event)
+                        ? EntrantTickets.issueMissing(context, event) : Tasks.forResult(0))
+                .addOnSuccessListener(issued -> {
+                    if (issued > 0) {
+                        Log.d(TAG, "Issued " + issued + " ticket(s) for event " + eventId);
+                    }
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to issue tickets for event " + eventId, e));
+    }
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
@@ -209,6 +247,10 @@ public class EventDetailsFragmentOrganizer extends Fragment {
             showFragment(fragment, "Send Notification clicked");
         });
 
+        if (!isFromAdmin) {
+            qrCodeImageView.setOnLongClickListener(v -> showTicketKey());
+        }
+
         deleteQrCodeButton.setOnClickListener(v -> confirmAndDeleteQrHash());
         deleteFacilityButton.setOnClickListener(v -> confirmAndDeleteFacilityEvents());
     }
@@ -273,6 +315,13 @@ public class EventDetailsFragmentOrganizer extends Fragment {
         eventNameTextView.setText(eventName != null ? eventName : "N/A");
         eventDescriptionTextView.setText(eventDescription != null ? eventDescription : "No Description");
         eventLocationTextView.setText("Address: " + (eventLocation != null ? eventLocation : "N/A"));
+        if (facility == null) {
+            // The facility is loaded on demand, usually from the repository cache
+            event.getFacilityRef().get().addOnSuccessListener(loaded -> {
+                eventLocation = loaded.getAddress();
+                eventLocationTextView.setText("Address: " + (eventLocation != null ? eventLocation : "N/A"));
+            });
+        }
 
         Date eventDate = event.getEventStartDate();
         if (eventDate != null) {
@@ -283,21 +332,12 @@ public class EventDetailsFragmentOrganizer extends Fragment {
             eventDateTextView.setText("Date: N/A");
         }
 
-        String base64Image = event.getBase64Image();
-        if (base64Image != null) {
-            Bitmap bitmap = ImageUtils.decodeBase64Image(base64Image);
-            if (bitmap != null) {
-                eventImageView.setImageBitmap(bitmap);
-            } else {
-                eventImageView.setVisibility(View.GONE);
-            }
-        } else {
-            eventImageView.setVisibility(View.GONE);
-        }
+        ImageLoader.into(eventImageView, event.getImageHash(), event.getBase64Image(),
+                () -> eventImageView.setVisibility(View.GONE));
 
         String qrCodeText = event.getQrCodeHash();
         if (qrCodeText != null) {
-            generateQRCode(qrCodeText);
+            QrCodeRenderer.into(qrCodeImageView, qrCodeText, QR_CODE_SIZE);
         }
 
         Boolean geolocationRequired = event.getGeolocationRequired();
@@ -357,52 +397,44 @@ public class EventDetailsFragmentOrganizer extends Fragment {
      * Handles the selected image from the gallery.
      */
     private void handleSelectedImage(Uri imageUri) {
-        String base64Image = ImageUtils.compressAndEncodeImage(requireContext(), imageUri);
-        if (base64Image != null) {
-            updateEventImage(base64Image);
-        } else {
-            Toast.makeText(getContext(), "Failed to process image", Toast.LENGTH_SHORT).show();
-        }
+        if (eventId == null) return;
+        updateEventImage(ImageIngestor.ingest(requireContext(), imageUri, null));
     }
     /**
      * Handles the captured photo from the camera.
      */
     private void handleCapturedPhoto(Bitmap photo) {
-        String base64Image = ImageUtils.compressAndEncodeBitmap(photo);
-        if (base64Image != null) {
-            updateEventImage(base64Image);
-        } else {
-            Toast.makeText(getContext(), "Failed to process image", Toast.LENGTH_SHORT).show();
-        }
+        if (eventId == null) return;
+        updateEventImage(ImageIngestor.ingest(requireContext(), photo, null));
     }
     /**
-     * Updates the event image in Firestore.
+     * Waits for the new event image to be stored, then references it by hash from the event
+     * document, removing any legacy inline image.
+     *
+     * @param upload The ingestion of the image, resulting in its hash.
      */
-    private void updateEventImage(String base64Image) {
-        if (eventId == null) return;
-
+    private void updateEventImage(Task<String> upload) {
         View progressBar = requireView().findViewById(R.id.progress_bar);
         progressBar.setVisibility(View.VISIBLE);
 
-        db.collection("events").document(eventId)
-                .update("base64Image", base64Image)
-                .addOnSuccessListener(aVoid -> {
+        upload.onSuccessTask(hash -> db.collection("events").document(eventId)
+                        .update(imageUpdate(hash))
+                        .onSuccessTask(aVoid -> Tasks.forResult(hash)))
+                .addOnSuccessListener(hash -> {
                     progressBar.setVisibility(View.GONE);
-                    // Update the ImageView
-                    Bitmap bitmap = ImageUtils.decodeBase64Image(base64Image);
-                    if (bitmap != null) {
-                        eventImageView.setImageBitmap(bitmap);
-                        eventImageView.setVisibility(View.VISIBLE);
-                    }
+                    // Update the ImageView; the image was cached locally when it was stored
+                    ImageLoader.into(eventImageView, hash, null, null);
                     Toast.makeText(getContext(), "Image updated successfully", Toast.LENGTH_SHORT).show();
                 })
                 .addOnFailureListener(e -> {
                     progressBar.setVisibility(View.GONE);
+                    Log.e(TAG, "Failed to update event image", e);
                     Toast.makeText(getContext(), "Failed to update image", Toast.LENGTH_SHORT).show();
                 });
     }
     /**
-     * Removes the event image from Firestore.
+     * Removes the event image reference from Firestore. The blob itself is kept, since other
+     * events or users may share it.
      */
     private void removeEventImage() {
         if (eventId == null) return;
@@ -411,9 +443,10 @@ public class EventDetailsFragmentOrganizer extends Fragment {
         progressBar.setVisibility(View.VISIBLE);
 
         db.collection("events").document(eventId)
-                .update("base64Image", null)
+                .update(imageUpdate(null))
                 .addOnSuccessListener(aVoid -> {
                     progressBar.setVisibility(View.GONE);
+                    ImageLoader.cancel(eventImageView);
                     eventImageView.setImageDrawable(null);
                     eventImageView.setVisibility(View.GONE);
                     Toast.makeText(getContext(), "Image removed successfully", Toast.LENGTH_SHORT).show();
@@ -423,6 +456,20 @@ public class EventDetailsFragmentOrganizer extends Fragment {
                     Toast.makeText(getContext(), "Failed to remove image", Toast.LENGTH_SHORT).show();
                 });
     }
+    /**
+     * Builds the update that points the event at a new image, or at none, and drops any legacy
+     * inline image. The field versions are bumped, so saves based on the old image see the change.
+     *
+     * @param hash The hash of the new image, or {@code null} to remove it.
+     * @return The update for the event document.
+     */
+    private static Map<String, Object> imageUpdate(@Nullable String hash) {
+        Map<String, Object> update = new HashMap<>();
+        update.put("imageHash", hash);
+        update.put("base64Image", FieldValue.delete());
+        VersionStamp.bump(update, "imageHash", "base64Image");
+        return update;
+    }
     /**
      * Handles errors by showing a toast message and hiding the loading spinner.
      */
@@ -460,6 +507,7 @@ public class EventDetailsFragmentOrganizer extends Fragment {
             testBehavior.saveEvent(event);
             Toast.makeText(requireContext(), "QR code deleted successfully", Toast.LENGTH_SHORT).show();
             if (qrCodeImageView != null) {
+                QrCodeRenderer.cancel(qrCodeImageView);
                 qrCodeImageView.setImageDrawable(null);
             }
             return;
@@ -472,6 +520,7 @@ public class EventDetailsFragmentOrganizer extends Fragment {
                     event.setRemote();
                     Toast.makeText(requireContext(), "QR code deleted successfully", Toast.LENGTH_SHORT).show();
                     if (qrCodeImageView != null) {
+                        QrCodeRenderer.cancel(qrCodeImageView);
                         qrCodeImageView.setImageDrawable(null);
                     }
                 })
@@ -502,7 +551,7 @@ public class EventDetailsFragmentOrganizer extends Fragment {
             // Handle test mode
             Event event = testBehavior.getEvent(eventId).getResult();
             Facility facility = event.getFacility();
-            facility.getEvents().clear();
+            facility.setEvents(new ArrayList<>());
             testBehavior.addFacility(facility);
             requireActivity().onBackPressed();
             return;
@@ -510,11 +559,10 @@ public class EventDetailsFragmentOrganizer extends Fragment {
 
         // For production mode, use GlobalRepository methods
         GlobalRepository.getEvent(eventId)
-                .addOnSuccessListener(event -> {
-                    Facility facility = event.getFacility();
+                .onSuccessTask(event -> event.getFacilityRef().get())
+                .addOnSuccessListener(facility -> {
                     // Clear facility events
-                    facility.getEvents().clear();
-                    facility.setRemote();
+                    facility.setEvents(new ArrayList<>());
                     Toast.makeText(requireContext(),
                             "Facility and all associated events deleted successfully",
                             Toast.LENGTH_SHORT).show();
@@ -536,6 +584,30 @@ public class EventDetailsFragmentOrganizer extends Fragment {
         intent.putExtra("EVENT_ID", eventId);
         startActivity(intent);
     }
+    /**
+     * Shows the key signing the event's check-in tickets as a QR code, so another device, e.g. a
+     * door staff phone, can scan it to check entrants in. Keys are never stored in Firestore, so
+     * this is the only way to hand one out.
+     *
+     * @return {@code true}, as the long click is consumed.
+     */
+    private boolean showTicketKey() {
+        String shared = eventId != null ? TicketKeys.share(requireContext(), eventId) : null;
+        if (shared == null) {
+            Toast.makeText(requireContext(), "This device does not hold the event's check-in key", Toast.LENGTH_SHORT).show();
+            return true;
+        }
+        ImageView keyImageView = new ImageView(requireContext());
+        QrCodeRenderer.into(keyImageView, shared, QR_CODE_SIZE);
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Check-in Key")
+                .setMessage("Anyone who scans this code can check entrants in. Only show it to your door staff.")
+                .setView(keyImageView)
+                .setPositiveButton("Done", null)
+                .setOnDismissListener(dialog -> QrCodeRenderer.cancel(keyImageView))
+                .show();
+        return true;
+    }
     /**
      * Shares the event details via a share intent.
      */
@@ -549,19 +621,6 @@ public class EventDetailsFragmentOrganizer extends Fragment {
         shareIntent.putExtra(Intent.EXTRA_TEXT, shareContent);
         startActivity(Intent.createChooser(shareIntent, "Share Event via"));
     }
-    /**
-     * Generates a QR code for the given text and sets it to the ImageView.
-     */
-    private void generateQRCode(String text) {
-        BarcodeEncoder barcodeEncoder
-                = new BarcodeEncoder();
-        try {
-            Bitmap bitmap = barcodeEncoder.encodeBitmap(text, BarcodeFormat.QR_CODE, 400, 400);
-            qrCodeImageView.setImageBitmap(bitmap); // Sets the Bitmap to ImageView
-        } catch (WriterException e) {
-            Log.e("TAG", e.toString());
-        }
-    }
     /**
      * Shows a fragment with the given fragment class and logs the message.
      */
@@ -12,6 +12,7 @@ import androidx.lifecycle.ViewModelProvider;
 
 import com.bugoff.can_do.R;
 import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.database.WriteBehindBuffer;
 import com.bugoff.can_do.facility.FacilityViewModel;
 import com.bugoff.can_do.facility.FacilityViewModelFactory;
 import com.google.android.material.textfield.TextInputEditText;
@@ -95,6 +96,8 @@ public class FacilityEdit extends AppCompatActivity {
 
         facilityViewModel.setName(name);
         facilityViewModel.setAddress(address);
+        // Persist the buffered changes before leaving the screen
+        WriteBehindBuffer.getInstance().flush();
 
         Toast.makeText(FacilityEdit.this, "Facility saved successfully", Toast.LENGTH_SHORT).show();
 
@@ -1,6 +1,8 @@
 package com.bugoff.can_do.organizer;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.VisibleForTesting;
@@ -8,16 +10,29 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
 
 import com.bugoff.can_do.R;
+import com.bugoff.can_do.database.FirestoreHelper;
 import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.database.JoinIntakeQueue;
+import com.bugoff.can_do.database.JoinRequestCompactor;
 import com.bugoff.can_do.event.EventsFragment;
+import com.bugoff.can_do.facility.Facility;
+import com.bugoff.can_do.user.User;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
+
+import java.util.HashMap;
+import java.util.Map;
 /**
  * Main activity for the organizer user type.
  * This activity displays the main screen for organizers, which includes a list of events and the user's profile.
+ * While it is open, it also merges the join requests queued for the organizer's events into their
+ * waiting lists, so the organizer's device is the only one writing them.
  */
 public class OrganizerMain extends AppCompatActivity {
     private static final String TAG = "OrganizerMain";
+    // How often each event's join queue is checked while it is empty
+    private static final long JOIN_DRAIN_INTERVAL_MS = 5000;
     private GlobalRepository repository;
+    private final Map<String, JoinRequestCompactor> joinCompactors = new HashMap<>();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -34,6 +49,38 @@ public class OrganizerMain extends AppCompatActivity {
 
         setupBottomNavigation();
     }
+    /**
+     * Starts merging the join requests of the organizer's events.
+     */
+    @Override
+    protected void onResume() {
+        super.onResume();
+        User user = GlobalRepository.getLoggedInUser();
+        Facility facility = user != null ? user.getFacility() : null;
+        if (GlobalRepository.isInTestMode() || facility == null) {
+            return;
+        }
+        Handler handler = new Handler(Looper.getMainLooper());
+        for (String eventId : facility.getEventIds()) {
+            JoinRequestCompactor compactor = joinCompactors.get(eventId);
+            if (compactor == null) {
+                compactor = new JoinRequestCompactor(FirestoreHelper.getInstance().getDb(),
+                        JoinIntakeQueue.getInstance(), handler, JOIN_DRAIN_INTERVAL_MS);
+                joinCompactors.put(eventId, compactor);
+            }
+            compactor.start(eventId);
+        }
+    }
+    /**
+     * Stops merging join requests while the organizer is away.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        for (JoinRequestCompactor compactor : joinCompactors.values()) {
+            compactor.stop();
+        }
+    }
     /**
      * Sets up the bottom navigation bar for switching between events and profile screens.
      */
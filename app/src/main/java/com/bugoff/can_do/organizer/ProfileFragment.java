@@ -15,6 +15,7 @@ import android.view.ViewGroup;
 import android.widget.EditText;
 import android.widget.ImageView;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
@@ -23,13 +24,16 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 
-import com.bugoff.can_do.ImageUtils;
 import com.bugoff.can_do.MainActivity;
 import com.bugoff.can_do.R;
+import com.bugoff.can_do.image.AvatarRenderer;
+import com.bugoff.can_do.image.ImageIngestor;
+import com.bugoff.can_do.image.ImageLoader;
 import com.bugoff.can_do.notification.NotificationSettingsActivity;
 import com.bugoff.can_do.user.User;
 import com.bugoff.can_do.user.UserViewModel;
 import com.bugoff.can_do.user.UserViewModelFactory;
+import com.google.android.gms.tasks.Task;
 /**
  * Fragment for displaying and managing the user's profile in the organizer mode.
  *
@@ -193,10 +197,7 @@ public class ProfileFragment extends Fragment {
      */
     private void handleGalleryImage(Uri imageUri) {
         if (imageUri != null) {
-            String base64Image = ImageUtils.compressAndEncodeImage(requireContext(), imageUri);
-            if (base64Image != null) {
-                updateUserProfileImage(base64Image);
-            }
+            updateUserProfileImage(ImageIngestor.ingest(requireContext(), imageUri, null));
         }
     }
     /**
@@ -205,25 +206,28 @@ public class ProfileFragment extends Fragment {
      * @param photo The captured image as a Bitmap.
      */
     private void handleCameraImage(Bitmap photo) {
-        String base64Image = ImageUtils.compressAndEncodeBitmap(photo);
-        if (base64Image != null) {
-            updateUserProfileImage(base64Image);
-        }
+        updateUserProfileImage(ImageIngestor.ingest(requireContext(), photo, null));
     }
     /**
-     * Updates the user's profile picture with a given base64-encoded image.
+     * Makes an image the user's profile picture once it has been stored.
      *
-     * @param base64Image The base64-encoded image string.
+     * @param upload The ingestion of the image, resulting in its hash.
      */
-    private void updateUserProfileImage(String base64Image) {
-        User currentUser = getViewModel().getUser();
-        if (currentUser != null) {
-            currentUser.setBase64Image(base64Image);
-            Bitmap bitmap = ImageUtils.decodeBase64Image(base64Image);
-            if (bitmap != null) {
-                avatarImageView.setImageBitmap(bitmap);
-            }
-        }
+    private void updateUserProfileImage(Task<String> upload) {
+        upload.addOnSuccessListener(hash -> {
+                    User currentUser = getViewModel().getUser();
+                    if (currentUser != null) {
+                        currentUser.setImageHash(hash);
+                    }
+                    if (isAdded()) {
+                        ImageLoader.into(avatarImageView, hash, null, null);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    if (isAdded()) {
+                        Toast.makeText(getContext(), "Failed to update profile picture", Toast.LENGTH_SHORT).show();
+                    }
+                });
     }
     /**
      * Displays a dialog to select the image source for the profile picture.
@@ -250,26 +254,23 @@ public class ProfileFragment extends Fragment {
     private void removeProfileImage() {
         User currentUser = getViewModel().getUser();
         if (currentUser != null) {
-            currentUser.setBase64Image(null);
+            currentUser.setImageHash(null);
             String firstLetter = getFirstLetterOfName();
             loadUserProfileImage(firstLetter);
         }
     }
     /**
-     * Loads the user's profile picture from the base64-encoded image or generates a default avatar.
+     * Loads the user's profile picture from the image store, showing a default avatar until it
+     * is loaded or if the user has none.
      *
      * @param firstLetter The first letter of the user's name.
      */
     private void loadUserProfileImage(String firstLetter) {
+        avatarImageView.setImageBitmap(AvatarRenderer.render(firstLetter));
         User currentUser = getViewModel().getUser();
-        if (currentUser != null && currentUser.getBase64Image() != null) {
-            Bitmap bitmap = ImageUtils.decodeBase64Image(currentUser.getBase64Image());
-            if (bitmap != null) {
-                avatarImageView.setImageBitmap(bitmap);
-                return;
-            }
+        if (currentUser != null) {
+            ImageLoader.into(avatarImageView, currentUser.getImageHash(), currentUser.getBase64Image(), null);
         }
-        avatarImageView.setImageBitmap(ImageUtils.generateDefaultAvatar(firstLetter));
     }
     /**
      * Updates the name fields (first and last name) in the UI.
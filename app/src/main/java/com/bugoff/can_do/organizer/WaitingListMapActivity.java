@@ -7,14 +7,16 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 import com.bugoff.can_do.R;
+import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.user.User;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.MapView;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.model.LatLng;
 import com.google.android.gms.maps.model.MarkerOptions;
-import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.util.List;
+import java.util.Map;
 /**
  * Activity for displaying a map of users in the waiting list for an event.
  * This activity fetches the list of users in the waiting list from Firestore and displays their locations on a map.
@@ -23,7 +25,6 @@ public class WaitingListMapActivity extends AppCompatActivity implements OnMapRe
     private MapView mapView;
     private GoogleMap googleMap;
     private String eventId;
-    private FirebaseFirestore db;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -34,8 +35,6 @@ public class WaitingListMapActivity extends AppCompatActivity implements OnMapRe
         mapView = findViewById(R.id.mapView);
         mapView.onCreate(savedInstanceState);
         mapView.getMapAsync(this);
-
-        db = FirebaseFirestore.getInstance();
     }
     /**
      * Called when the map is ready to be used.
@@ -49,53 +48,45 @@ public class WaitingListMapActivity extends AppCompatActivity implements OnMapRe
      * Fetches the list of users in the waiting list for the event and plots their locations on the map.
      */
     private void fetchWaitingListAndPlotMarkers() {
-        db.collection("events").document(eventId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        // Fetch the waitingListEntrants array
-                        List<String> waitingListEntrants = (List<String>) documentSnapshot.get("waitingListEntrants");
-                        if (waitingListEntrants != null && !waitingListEntrants.isEmpty()) {
-                            for (String userId : waitingListEntrants) {
-                                Log.d("WaitingListMap", "Fetched userId: " + userId);
-
-                                // Fetch user data based on userId
-                                db.collection("users").document(userId)
-                                        .get()
-                                        .addOnSuccessListener(userSnapshot -> {
-                                            if (userSnapshot.exists()) {
-                                                String name = userSnapshot.getString("name");
-                                                Double latitude = userSnapshot.getDouble("latitude");
-                                                Double longitude = userSnapshot.getDouble("longitude");
-
-                                                Log.d("WaitingListMap", "User data: name=" + name + ", Latitude=" + latitude + ", Longitude=" + longitude);
-
-                                                // Add marker if latitude and longitude are available
-                                                if (latitude != null && longitude != null) {
-                                                    LatLng userLocation = new LatLng(latitude, longitude);
-                                                    googleMap.addMarker(new MarkerOptions()
-                                                            .position(userLocation)
-                                                            .title(name));
-                                                } else {
-                                                    Log.e("WaitingListMap", "Missing latitude or longitude for user: " + name);
-                                                }
-                                            } else {
-                                                Log.e("WaitingListMap", "User document does not exist for userId: " + userId);
-                                            }
-                                        })
-                                        .addOnFailureListener(e -> Log.e("WaitingListMap", "Failed to fetch user document", e));
-                            }
-                        } else {
-                            Log.d("WaitingListMap", "No users in the waiting list.");
-                        }
+        // Read through the event so the waiting list is found in either entrant storage model
+        GlobalRepository.getEvent(eventId)
+                .addOnSuccessListener(event -> {
+                    List<String> waitingListEntrants = event.getWaitingListEntrants();
+                    if (!waitingListEntrants.isEmpty()) {
+                        // Fetch all users on the waiting list with batched reads
+                        GlobalRepository.getUsers(waitingListEntrants)
+                                .addOnSuccessListener(this::plotUserMarkers)
+                                .addOnFailureListener(e -> Log.e("WaitingListMap", "Failed to fetch user documents", e));
                     } else {
-                        Log.e("WaitingListMap", "Event document does not exist for eventId: " + eventId);
+                        Log.d("WaitingListMap", "No users in the waiting list.");
                     }
                 })
-                .addOnFailureListener(e -> Log.e("WaitingListMap", "Failed to fetch event document", e));
+                .addOnFailureListener(e -> Log.e("WaitingListMap", "Failed to fetch event " + eventId, e));
+    }
+    /**
+     * Adds a marker for each user that has a known location.
+     *
+     * @param users The users on the waiting list, keyed by user ID.
+     */
+    private void plotUserMarkers(Map<String, User> users) {
+        for (User user : users.values()) {
+            String name = user.getName();
+            Double latitude = user.getLatitude();
+            Double longitude = user.getLongitude();
+
+            Log.d("WaitingListMap", "User data: name=" + name + ", Latitude=" + latitude + ", Longitude=" + longitude);
+
+            // Add marker if latitude and longitude are available
+            if (latitude != null && longitude != null) {
+                LatLng userLocation = new LatLng(latitude, longitude);
+                googleMap.addMarker(new MarkerOptions()
+                        .position(userLocation)
+                        .title(name));
+            } else {
+                Log.e("WaitingListMap", "Missing latitude or longitude for user: " + name);
+            }
+        }
     }
-
-
 
     @Override
     protected void onResume() {
@@ -1,6 +1,5 @@
 package com.bugoff.can_do.user;
 
-import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -16,16 +15,16 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 
-import com.bugoff.can_do.ImageUtils;
 import com.bugoff.can_do.R;
 import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.database.WriteCounter;
 import com.bugoff.can_do.event.EventViewModel;
 import com.bugoff.can_do.event.EventViewModelFactory;
+import com.bugoff.can_do.image.ImageLoader;
+import com.google.android.gms.tasks.Tasks;
 
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.List;
 import java.util.Locale;
 /**
  * Fragment for accepting or declining an event invitation.
@@ -104,10 +103,11 @@ public class AcceptDeclineFragment extends Fragment {
                         eventNameTextView.setText(eventName != null ? eventName : "N/A");
                         eventDescriptionTextView.setText(eventDescription != null ? eventDescription : "No Description");
 
-                        if (event.getFacility() != null) {
-                            eventLocation = event.getFacility().getAddress();
+                        // The facility is loaded on demand, usually from the repository cache
+                        event.getFacilityRef().get().addOnSuccessListener(facility -> {
+                            eventLocation = facility.getAddress();
                             eventLocationTextView.setText("Address: " + (eventLocation != null ? eventLocation : "N/A"));
-                        }
+                        });
 
                         if (eventDate != null) {
                             SimpleDateFormat dateFormat = new SimpleDateFormat("MMMM dd, yyyy", Locale.getDefault());
@@ -117,17 +117,8 @@ public class AcceptDeclineFragment extends Fragment {
                             eventDateTextView.setText("Date: N/A");
                         }
 
-                        String base64Image = event.getBase64Image();
-                        if (base64Image != null) {
-                            Bitmap bitmap = ImageUtils.decodeBase64Image(base64Image);
-                            if (bitmap != null) {
-                                eventImageView.setImageBitmap(bitmap);
-                            } else {
-                                eventImageView.setVisibility(View.GONE);
-                            }
-                        } else {
-                            eventImageView.setVisibility(View.GONE);
-                        }
+                        ImageLoader.into(eventImageView, event.getImageHash(), event.getBase64Image(),
+                                () -> eventImageView.setVisibility(View.GONE));
                     } else {
                         Toast.makeText(requireContext(), "Event not found", Toast.LENGTH_SHORT).show();
                     }
@@ -137,67 +128,52 @@ public class AcceptDeclineFragment extends Fragment {
                 });
     }
     /**
-     * Accepts an invitation to an event.
+     * Accepts an invitation to an event by moving the user from the selected to the enrolled entrants.
      *
      * @param eventId ID of the event to accept
      */
     private void acceptInvitation(String eventId) {
-        String userId = GlobalRepository.getLoggedInUser().getId();
-
-        GlobalRepository.getEvent(eventId)
-                .addOnSuccessListener(event -> {
-                    if (event != null) {
-                        List<String> selectedEntrants = event.getSelectedEntrants();
-
-                        if (selectedEntrants.contains(userId)) {
-                            // Remove from selected list
-                            event.removeSelectedEntrant(userId);
-                            // Add to enrolled list
-                            event.enrollEntrant(userId);
-                            // Update the event
-                            event.setRemote();
-
-                            Toast.makeText(requireContext(), "You have accepted the invitation.", Toast.LENGTH_SHORT).show();
-                        }
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Toast.makeText(requireContext(), "Error accepting invitation: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                });
+        respondToInvitation(eventId, "enrolledEntrants", "You have accepted the invitation.", "Error accepting invitation: ");
     }
     /**
-     * Rejects an invitation to an event.
+     * Rejects an invitation to an event by moving the user from the selected to the cancelled entrants.
      *
      * @param eventId ID of the event to reject
      */
     private void rejectInvitation(String eventId) {
+        respondToInvitation(eventId, "cancelledEntrants", "You have rejected the invitation.", "Error rejecting invitation: ");
+    }
+    /**
+     * Moves the logged-in user out of the selected entrants of an event, if they were selected.
+     *
+     * <p>The event is read again rather than taken from the cache, so the selection is not checked
+     * against a stale copy, e.g. after the organizer redrew. The move itself is a single atomic
+     * write that leaves the rest of the event untouched.</p>
+     *
+     * @param eventId        ID of the event
+     * @param to             The entrant list the user moves to
+     * @param successMessage The message shown once the move has been written
+     * @param errorPrefix    The prefix of the message shown if the move fails
+     */
+    private void respondToInvitation(String eventId, String to, String successMessage, String errorPrefix) {
+        WriteCounter.getInstance().beginAction("respondToInvitation");
         String userId = GlobalRepository.getLoggedInUser().getId();
 
-        GlobalRepository.getEvent(eventId)
-                .addOnSuccessListener(event -> {
-                    if (event != null) {
-                        List<String> selectedEntrants = event.getSelectedEntrants();
-
-                        if (selectedEntrants.contains(userId)) {
-                            // Remove from selected list and add to cancelled list
-                            event.removeSelectedEntrant(userId);
-
-                            // Create new list for cancelled entrants
-                            List<String> updatedCancelledEntrants = new ArrayList<>(event.getCancelledEntrants());
-                            updatedCancelledEntrants.add(userId);
-
-                            // Set the updated list of cancelled entrants
-                            event.setCancelledEntrants(updatedCancelledEntrants);
-
-                            // Update the event
-                            event.setRemote();
-
-                            Toast.makeText(requireContext(), "You have rejected the invitation.", Toast.LENGTH_SHORT).show();
-                        }
+        GlobalRepository.getEventFresh(eventId)
+                .onSuccessTask(event -> {
+                    if (event == null || !event.getSelectedEntrants().contains(userId)) {
+                        return Tasks.forResult(false);
+                    }
+                    return GlobalRepository.moveEntrant(eventId, userId, "selectedEntrants", to)
+                            .onSuccessTask(aVoid -> Tasks.forResult(true));
+                })
+                .addOnSuccessListener(moved -> {
+                    if (moved) {
+                        Toast.makeText(requireContext(), successMessage, Toast.LENGTH_SHORT).show();
                     }
                 })
                 .addOnFailureListener(e -> {
-                    Toast.makeText(requireContext(), "Error rejecting invitation: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                    Toast.makeText(requireContext(), errorPrefix + e.getMessage(), Toast.LENGTH_SHORT).show();
                 });
     }
 }
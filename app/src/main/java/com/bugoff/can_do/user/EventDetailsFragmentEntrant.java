@@ -1,7 +1,6 @@
 package com.bugoff.can_do.user;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
@@ -19,11 +18,19 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 
-import com.bugoff.can_do.ImageUtils;
 import com.bugoff.can_do.R;
+import com.bugoff.can_do.checkin.EntrantTickets;
 import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.database.JoinIntakeQueue;
+import com.bugoff.can_do.database.JoinResult;
+import com.bugoff.can_do.database.WriteCounter;
 import com.bugoff.can_do.event.EventViewModel;
 import com.bugoff.can_do.event.EventViewModelFactory;
+import com.bugoff.can_do.image.ImageLoader;
+import com.bugoff.can_do.image.QrCodeRenderer;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.ListenerRegistration;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -44,11 +51,16 @@ public class EventDetailsFragmentEntrant extends Fragment {
     private TextView eventDescriptionTextView;
     private TextView eventLocationTextView;
     private ImageView eventImageView;
+    private ImageView ticketImageView;
+    private TextView ticketLabelTextView;
     private String eventLocation;
     private String eventDescription;
     private String eventName;
     private String eventId;
+    private ListenerRegistration joinRequestListener;
+    private boolean joinSubmitted = false;
     private static final String ARG_EVENT_ID = "selected_event_id";
+    private static final int TICKET_QR_SIZE = 400;
     /**
      * Creates a new instance of {@code EventDetailsFragmentEntrant} with the specified event ID.
      *
@@ -84,6 +96,8 @@ public class EventDetailsFragmentEntrant extends Fragment {
         eventDescriptionTextView = view.findViewById(R.id.class_description);
         eventLocationTextView = view.findViewById(R.id.class_location);
         eventImageView = view.findViewById(R.id.event_image);
+        ticketImageView = view.findViewById(R.id.ticket_qr_code);
+        ticketLabelTextView = view.findViewById(R.id.ticket_label);
 
         ImageButton backArrowButton = view.findViewById(R.id.back_arrow);
         ImageButton mapIconButton = view.findViewById(R.id.map_icon);
@@ -101,6 +115,12 @@ public class EventDetailsFragmentEntrant extends Fragment {
 
         if (eventId != null) {
             fetchEventDetails(eventId);
+            // Picks up the result of a join request sent before the screen was last closed
+            User currentUser = GlobalRepository.getLoggedInUser();
+            if (currentUser != null && !GlobalRepository.isInTestMode()) {
+                followJoinRequest(currentUser);
+                showTicket(currentUser);
+            }
         } else {
             Toast.makeText(requireContext(), "No Event ID provided", Toast.LENGTH_SHORT).show();
         }
@@ -109,6 +129,33 @@ public class EventDetailsFragmentEntrant extends Fragment {
 
         return view;
     }
+    /**
+     * Called when the view is destroyed. Stops following the user's join request.
+     */
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        stopFollowingJoinRequest();
+        QrCodeRenderer.cancel(ticketImageView);
+    }
+    /**
+     * Shows the user's check-in ticket for the event as a QR code, if the organizer has issued
+     * one, i.e. the user is enrolled and the organizer has opened the event since.
+     *
+     * @param currentUser The current user.
+     */
+    private void showTicket(User currentUser) {
+        EntrantTickets.get(eventId, currentUser.getId())
+                .addOnSuccessListener(ticket -> {
+                    if (ticket == null || !isAdded()) {
+                        return;
+                    }
+                    ticketLabelTextView.setVisibility(View.VISIBLE);
+                    ticketImageView.setVisibility(View.VISIBLE);
+                    QrCodeRenderer.into(ticketImageView, ticket, TICKET_QR_SIZE);
+                })
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to load ticket for event " + eventId, e));
+    }
     /**
      * Fetches event details from the repository and updates the UI.
      *
@@ -121,11 +168,15 @@ public class EventDetailsFragmentEntrant extends Fragment {
                     if (event != null) {
                         eventName = event.getName();
                         eventDescription = event.getDescription();
-                        eventLocation = event.getFacility().getAddress();
 
                         eventNameTextView.setText(eventName != null ? eventName : "N/A");
                         eventDescriptionTextView.setText(eventDescription != null ? eventDescription : "No Description");
-                        eventLocationTextView.setText("Address: " + (eventLocation != null ? eventLocation : "N/A"));
+                        eventLocationTextView.setText("Address: N/A");
+                        // The facility is loaded on demand, usually from the repository cache
+                        event.getFacilityRef().get().addOnSuccessListener(facility -> {
+                            eventLocation = facility.getAddress();
+                            eventLocationTextView.setText("Address: " + (eventLocation != null ? eventLocation : "N/A"));
+                        });
 
                         Date eventDate = event.getEventStartDate();
                         if (eventDate != null) {
@@ -136,17 +187,8 @@ public class EventDetailsFragmentEntrant extends Fragment {
                             eventDateTextView.setText("Date: N/A");
                         }
 
-                        String base64Image = event.getBase64Image();
-                        if (base64Image != null) {
-                            Bitmap bitmap = ImageUtils.decodeBase64Image(base64Image);
-                            if (bitmap != null) {
-                                eventImageView.setImageBitmap(bitmap);
-                            } else {
-                                eventImageView.setVisibility(View.GONE);
-                            }
-                        } else {
-                            eventImageView.setVisibility(View.GONE);
-                        }
+                        ImageLoader.into(eventImageView, event.getImageHash(), event.getBase64Image(),
+                                () -> eventImageView.setVisibility(View.GONE));
                     } else {
                         Toast.makeText(requireContext(), "Event not found", Toast.LENGTH_SHORT).show();
                     }
@@ -218,12 +260,12 @@ public class EventDetailsFragmentEntrant extends Fragment {
                                 new androidx.appcompat.app.AlertDialog.Builder(requireContext())
                                         .setTitle("Geolocation Required")
                                         .setMessage("This event requires geolocation tracking. Do you want to proceed?")
-                                        .setPositiveButton("Yes", (dialog, which) -> proceedWithJoining(viewModel, currentUser))
+                                        .setPositiveButton("Yes", (dialog, which) -> proceedWithJoining(currentUser, true))
                                         .setNegativeButton("No", null)
                                         .show();
                             } else {
                                 // Proceed directly if geolocation is not required
-                                proceedWithJoining(viewModel, currentUser);
+                                proceedWithJoining(currentUser, false);
                             }
                         }
                     } else {
@@ -237,39 +279,125 @@ public class EventDetailsFragmentEntrant extends Fragment {
     /**
      * Proceeds with adding the current user to the waiting list.
      *
-     * @param viewModel   The {@link EventViewModel} instance managing the event data.
-     * @param currentUser The current user joining the waiting list.
+     * <p>Outside of test mode the join is submitted to the {@link JoinIntakeQueue} rather than
+     * written to the event, so joins stay cheap when many users register at once. The organizer's
+     * device merges the request into the waiting list (see
+     * {@link com.bugoff.can_do.database.JoinRequestCompactor}), which also enforces the event's
+     * capacity, and the user only counts as joined once the request was accepted (see
+     * {@link #followJoinRequest}). In test mode the user joins directly with
+     * {@link GlobalRepository#joinWaitlist}.</p>
+     *
+     * @param currentUser  The current user joining the waiting list.
+     * @param withLocation Whether the user's location is recorded with the join.
      */
-    private void proceedWithJoining(EventViewModel viewModel, User currentUser) {
-        viewModel.addWaitingListEntrant(currentUser.getId());
-        currentUser.addEventJoined(eventId);
-
+    private void proceedWithJoining(User currentUser, boolean withLocation) {
+        WriteCounter.getInstance().beginAction("joinWaitingList");
         if (GlobalRepository.isInTestMode()) {
-            Toast.makeText(requireContext(), "Successfully joined the waiting list.", Toast.LENGTH_SHORT).show();
+            GlobalRepository.joinWaitlist(eventId, currentUser.getId())
+                    .addOnSuccessListener(result -> {
+                        if (result == JoinResult.FULL) {
+                            Toast.makeText(requireContext(), "The waiting list is full. You cannot join this event.", Toast.LENGTH_SHORT).show();
+                            return;
+                        }
+                        currentUser.addEventJoined(eventId);
+                        Toast.makeText(requireContext(), "Successfully joined the waiting list.", Toast.LENGTH_SHORT).show();
+                    });
             return;
         }
 
-        GlobalRepository.addUser(currentUser)
+        joinSubmitted = true;
+        followJoinRequest(currentUser);
+        JoinIntakeQueue.getInstance().submit(eventId, currentUser.getId(),
+                        withLocation ? currentUser.getLatitude() : null,
+                        withLocation ? currentUser.getLongitude() : null)
                 .addOnSuccessListener(aVoid -> {
-                    Toast.makeText(requireContext(), "Successfully joined the waiting list.", Toast.LENGTH_SHORT).show();
+                    if (isAdded()) {
+                        Toast.makeText(requireContext(), "Join request sent.", Toast.LENGTH_SHORT).show();
+                    }
                 })
                 .addOnFailureListener(e -> {
-                    Toast.makeText(requireContext(), "Error joining waiting list", Toast.LENGTH_SHORT).show();
+                    joinSubmitted = false;
+                    if (isAdded()) {
+                        Toast.makeText(requireContext(), "Error joining waiting list", Toast.LENGTH_SHORT).show();
+                    }
                 });
     }
+    /**
+     * Follows the current user's join request for the event until it has been processed.
+     *
+     * <p>An accepted request (or one for a user already on the waiting list) adds the event to the
+     * user's joined events; a request rejected because the list is full does not. Once handled, the
+     * request is deleted. The user's device never merges requests itself, so a flash crowd of joins
+     * does not contend on the event document.</p>
+     *
+     * @param currentUser The current user.
+     */
+    private void followJoinRequest(User currentUser) {
+        if (joinRequestListener != null) {
+            return;
+        }
+        JoinIntakeQueue queue = JoinIntakeQueue.getInstance();
+        joinRequestListener = queue.listen(eventId, currentUser.getId(), result -> {
+            if (result == null) {
+                // Still pending
+                return;
+            }
+            stopFollowingJoinRequest();
+            boolean full = JoinIntakeQueue.RESULT_FULL.equals(result);
+            if (!full) {
+                currentUser.addEventJoined(eventId);
+            }
+            if (joinSubmitted && isAdded()) {
+                Toast.makeText(requireContext(), full
+                        ? "The waiting list is full. You cannot join this event."
+                        : "Successfully joined the waiting list.", Toast.LENGTH_SHORT).show();
+            }
+            joinSubmitted = false;
+            queue.discard(eventId, currentUser.getId());
+        });
+    }
+    /**
+     * Stops following the current user's join request, if it is followed.
+     */
+    private void stopFollowingJoinRequest() {
+        if (joinRequestListener != null) {
+            joinRequestListener.remove();
+            joinRequestListener = null;
+        }
+    }
     /**
      * Removes the current user from the waiting list for the event.
      *
+     * <p>A join request that has not been merged yet is deleted first, so it cannot add the user
+     * back later.</p>
+     *
      * @param viewModel The {@link EventViewModel} instance managing the event data.
      */
     public void leaveWaitingList(EventViewModel viewModel) {
+        WriteCounter.getInstance().beginAction("leaveWaitingList");
         User currentUser = GlobalRepository.getLoggedInUser();
         if (currentUser == null) {
             throw new IllegalStateException("User not logged in");
         }
 
-        viewModel.removeWaitingListEntrant(currentUser.getId());
-        currentUser.removeEventJoined(eventId);
-        Toast.makeText(requireContext(), "Successfully left the waiting list.", Toast.LENGTH_SHORT).show();
+        Task<Void> cancelRequest;
+        if (GlobalRepository.isInTestMode()) {
+            cancelRequest = Tasks.forResult(null);
+        } else {
+            stopFollowingJoinRequest();
+            joinSubmitted = false;
+            cancelRequest = JoinIntakeQueue.getInstance().discard(eventId, currentUser.getId());
+        }
+
+        // Removed with an atomic transform, so joins written by others at the same time are kept
+        cancelRequest
+                .onSuccessTask(aVoid -> GlobalRepository.moveEntrant(eventId, currentUser.getId(), "waitingListEntrants", null))
+                .addOnSuccessListener(aVoid -> {
+                    currentUser.removeEventJoined(eventId);
+                    Toast.makeText(requireContext(), "Successfully left the waiting list.", Toast.LENGTH_SHORT).show();
+                })
+                .addOnFailureListener(e -> {
+                    Toast.makeText(requireContext(), "Error leaving waiting list", Toast.LENGTH_SHORT).show();
+                });
     }
 }
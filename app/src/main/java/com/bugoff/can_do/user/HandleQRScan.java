@@ -10,8 +10,12 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.FragmentTransaction;
 
 import com.bugoff.can_do.R;
+import com.bugoff.can_do.checkin.CheckInLedger;
+import com.bugoff.can_do.checkin.CheckInTicket;
+import com.bugoff.can_do.checkin.TicketKeys;
 import com.bugoff.can_do.database.GlobalRepository;
 
+import java.io.IOException;
 
 /**
  * Handles the processing of QR codes scanned by the user.
@@ -20,19 +24,93 @@ public class HandleQRScan {
 
     private static final String TAG = "HandleQRScan";
 
+    private static Toast checkInToast;
+
     /**
-     * Processes the scanned QR code and navigates to the event details activity if the QR code is valid.
+     * Processes the scanned QR code. A {@link CheckInTicket} naming an entrant checks the entrant in,
+     * without using the network, if this device holds the event's key; an organizer is told to get
+     * the key from the device that created the event. A key shared by that device (see
+     * {@link TicketKeys#share}) is kept, so this device can check entrants in from then on. For
+     * anybody else a ticket, like any other valid QR code, navigates to the event details.
      *
      * @param qrCode  The scanned QR code.
      * @param context The context from which the QR code was scanned.
+     * @return {@code true} if the scanner should go on scanning; {@code false} if it leaves the screen.
      */
-    public static void processQRCode(String qrCode, Context context) {
-        if (qrCode.startsWith("cando-")) {
+    public static boolean processQRCode(String qrCode, Context context) {
+        CheckInTicket ticket = CheckInTicket.decode(qrCode);
+        String acceptedEventId;
+        if (ticket != null && ticket.getEntrantId() != null && TicketKeys.get(context, ticket.getEventId()) != null) {
+            checkIn(ticket, context);
+            return true;
+        } else if (ticket != null && ticket.getEntrantId() != null && isOrganizer(context)) {
+            showCheckInResult(context, "Scan this event's key from the device that created it first");
+            return true;
+        } else if (ticket != null) {
+            fetchEvent(ticket.getEventId(), context);
+            return false;
+        } else if ((acceptedEventId = TicketKeys.accept(context, qrCode)) != null) {
+            Log.d(TAG, "Accepted ticket key of event " + acceptedEventId);
+            showCheckInResult(context, "This device can now check in entrants");
+            return true;
+        } else if (qrCode.startsWith("cando-")) {
             String eventId = qrCode.substring(6);  // Extract the ID part
             fetchEvent(eventId, context);
+            return false;
         } else {
             Log.e(TAG, "Invalid QR Code format");
+            return true;
+        }
+    }
+
+    /**
+     * Checks whether the logged-in user organizes any event, i.e. owns a facility.
+     */
+    private static boolean isOrganizer(Context context) {
+        User user = GlobalRepository.getLoggedInUser();
+        return user != null && user.getFacility() != null;
+    }
+
+    /**
+     * Verifies a ticket with the event's key kept on this device and records the check-in.
+     *
+     * @param ticket  The scanned ticket, naming an entrant.
+     * @param context The context from which the ticket was scanned.
+     */
+    private static void checkIn(CheckInTicket ticket, Context context) {
+        byte[] key = TicketKeys.get(context, ticket.getEventId());
+        if (!ticket.verify(key)) {
+            showCheckInResult(context, "Invalid ticket");
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (ticket.isExpired(now)) {
+            showCheckInResult(context, "Ticket expired");
+            return;
+        }
+        try {
+            boolean recorded = CheckInLedger.getInstance(context).record(ticket.getEventId(), ticket.getEntrantId(), now);
+            showCheckInResult(context, recorded ? "Checked in" : "Already checked in");
+        } catch (IOException e) {
+            Log.e(TAG, "Could not record check-in", e);
+            showCheckInResult(context, "Could not record check-in");
+        } catch (IllegalArgumentException e) {
+            // IDs the ledger can't hold; tickets with them are no longer issued
+            Log.e(TAG, "Invalid IDs in ticket", e);
+            showCheckInResult(context, "Invalid ticket");
+        }
+    }
+
+    /**
+     * Shows the result of a check-in, replacing the previous one, so results of quick successive
+     * scans do not queue up.
+     */
+    private static void showCheckInResult(Context context, String message) {
+        if (checkInToast != null) {
+            checkInToast.cancel();
         }
+        checkInToast = Toast.makeText(context, message, Toast.LENGTH_SHORT);
+        checkInToast.show();
     }
 
     /**
@@ -3,6 +3,7 @@ package com.bugoff.can_do.user;
 import android.Manifest;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -29,7 +30,10 @@ import java.util.List;
 public class QrCodeScannerFragment extends Fragment {
     private static final String TAG = "QrCodeScannerFragment";
     private static final int CAMERA_PERMISSION_REQUEST_CODE = 100;
+    private static final long REPEAT_SCAN_MS = 3000;
     private DecoratedBarcodeView barcodeView;
+    private String lastScan;
+    private long lastScanAt;
 
     @Nullable
     @Override
@@ -67,11 +71,21 @@ public class QrCodeScannerFragment extends Fragment {
     private final BarcodeCallback callback = new BarcodeCallback() {
         @Override
         public void barcodeResult(BarcodeResult result) {
-            if (result.getText() != null) {
-                Log.d(TAG, "Scanned: " + result.getText());
+            String text = result.getText();
+            if (text == null) {
+                return;
+            }
+            // A code stays in view for many frames after it is scanned; handle it once
+            long now = SystemClock.elapsedRealtime();
+            if (text.equals(lastScan) && now - lastScanAt < REPEAT_SCAN_MS) {
+                return;
+            }
+            lastScan = text;
+            lastScanAt = now;
+            Log.d(TAG, "Scanned: " + text);
+            // Check-ins keep the scanner running, so door staff can scan the next ticket right away
+            if (!HandleQRScan.processQRCode(text, getActivity())) {
                 barcodeView.pause();
-                HandleQRScan.processQRCode(result.getText(), getActivity());
-
             }
         }
 
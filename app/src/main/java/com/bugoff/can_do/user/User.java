@@ -5,22 +5,29 @@ import android.util.Log;
 import androidx.annotation.NonNull;
 
 import com.bugoff.can_do.database.DatabaseEntity;
+import com.bugoff.can_do.database.FieldChangeTracker;
+import com.bugoff.can_do.database.FirestoreHelper;
 import com.bugoff.can_do.database.GlobalRepository;
+import com.bugoff.can_do.database.SnapshotListenerRegistry;
+import com.bugoff.can_do.database.VersionStamp;
+import com.bugoff.can_do.database.WriteBehindBuffer;
 import com.bugoff.can_do.facility.Facility;
 import com.bugoff.can_do.notification.Notification;
+import com.google.android.gms.tasks.Task;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.ListenerRegistration;
-import com.google.firebase.firestore.SetOptions;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Represents a user in the application. A user can be an organizer, admin, or a regular user.
@@ -47,10 +54,15 @@ public class User implements DatabaseEntity {
     private boolean shouldUpdateRemote = true;
     private Double latitude;
     private Double longitude;
-    private String base64Image;
+    private String base64Image; // Legacy inline image, only read from older documents
+    private String imageHash; // Hash of the image in the ImageStore
     private FirebaseFirestore db;
     private ListenerRegistration listener;
     private Runnable onUpdateListener;
+    /** The fields changed since the last write. */
+    private final FieldChangeTracker changes = new FieldChangeTracker();
+    /** The version of the stored document this state is based on. */
+    private final VersionStamp versionStamp = new VersionStamp();
 
     public User(String androidId) {
         this.id = androidId;
@@ -98,6 +110,8 @@ public class User implements DatabaseEntity {
 
         this.notificationList = new ArrayList<>();
         this.base64Image = doc.getString("base64Image");
+        this.imageHash = doc.getString("imageHash");
+        versionStamp.apply(doc, Collections.emptySet());
         shouldUpdateRemote = true;
     }
 
@@ -134,10 +148,25 @@ public class User implements DatabaseEntity {
         map.put("eventsEnrolled", eventsEnrolled != null ? new ArrayList<>(eventsEnrolled) : new ArrayList<>());
         map.put("latitude", latitude);
         map.put("longitude", longitude);
-        map.put("base64Image", base64Image);
+        map.put("imageHash", imageHash);
         return map;
     }
 
+    @Override
+    public Map<String, Object> takeChanges() {
+        return changes.takeUpdate(toMap());
+    }
+
+    @Override
+    public void restoreChanges(@NonNull Map<String, Object> changes) {
+        this.changes.restore(changes.keySet());
+    }
+
+    @Override
+    public VersionStamp getVersionStamp() {
+        return versionStamp;
+    }
+
     // Getters and Setters
 
     public List<Notification> getNotificationList() {
@@ -165,7 +194,11 @@ public class User implements DatabaseEntity {
     }
 
     public void setLatitude(Double latitude) {
+        if (Objects.equals(this.latitude, latitude)) {
+            return;
+        }
         this.latitude = latitude;
+        changes.markChanged("latitude");
         setRemote();
     }
 
@@ -174,11 +207,19 @@ public class User implements DatabaseEntity {
     }
 
     public void setLongitude(Double longitude) {
+        if (Objects.equals(this.longitude, longitude)) {
+            return;
+        }
         this.longitude = longitude;
+        changes.markChanged("longitude");
         setRemote();
     }
     public void setName(String name) {
+        if (Objects.equals(this.name, name)) {
+            return;
+        }
         this.name = name;
+        changes.markChanged("name");
         setRemote();
     }
 
@@ -187,7 +228,11 @@ public class User implements DatabaseEntity {
     }
 
     public void setEmail(String email) {
+        if (Objects.equals(this.email, email)) {
+            return;
+        }
         this.email = email;
+        changes.markChanged("email");
         setRemote();
     }
 
@@ -196,7 +241,11 @@ public class User implements DatabaseEntity {
     }
 
     public void setPhoneNumber(String phoneNumber) {
+        if (Objects.equals(this.phoneNumber, phoneNumber)) {
+            return;
+        }
         this.phoneNumber = phoneNumber;
+        changes.markChanged("phoneNumber");
         setRemote();
     }
 
@@ -205,7 +254,11 @@ public class User implements DatabaseEntity {
     }
 
     public void setEventsJoined(List<String> eventsJoined) {
+        if (Objects.equals(this.eventsJoined, eventsJoined)) {
+            return;
+        }
         this.eventsJoined = eventsJoined != null ? new ArrayList<>(eventsJoined) : new ArrayList<>();
+        changes.markChanged("eventsJoined");
         setRemote();
     }
 
@@ -215,22 +268,53 @@ public class User implements DatabaseEntity {
         }
         if (!this.eventsJoined.contains(eventId)) {
             this.eventsJoined.add(eventId);
+            changes.markAdded("eventsJoined", eventId);
             setRemote();
         }
     }
 
     public void removeEventJoined(String eventId) {
         if (this.eventsJoined.remove(eventId)) {
+            changes.markRemoved("eventsJoined", eventId);
             setRemote();
         }
     }
 
+    /**
+     * Gets the image stored inline in documents written before images moved to the
+     * {@link com.bugoff.can_do.image.ImageStore}. It is read but never written again.
+     *
+     * @return The legacy base64 image, or {@code null} if there is none.
+     */
     public String getBase64Image() {
         return base64Image;
     }
 
-    public void setBase64Image(String base64Image) {
-        this.base64Image = base64Image;
+    /**
+     * Gets the hash of the image in the {@link com.bugoff.can_do.image.ImageStore}.
+     *
+     * @return The image hash, or {@code null} if there is no stored image.
+     */
+    public String getImageHash() {
+        return imageHash;
+    }
+
+    /**
+     * Sets the image by its hash in the {@link com.bugoff.can_do.image.ImageStore}, replacing
+     * any legacy inline image, which is removed from the document.
+     *
+     * @param imageHash The image hash, or {@code null} to remove the image.
+     */
+    public void setImageHash(String imageHash) {
+        if (Objects.equals(this.imageHash, imageHash) && base64Image == null) {
+            return;
+        }
+        this.imageHash = imageHash;
+        changes.markChanged("imageHash");
+        if (base64Image != null) {
+            base64Image = null;
+            changes.markChanged("base64Image"); // No longer part of toMap(), so it is deleted
+        }
         setRemote();
     }
 
@@ -240,19 +324,25 @@ public class User implements DatabaseEntity {
     }
 
     public void setEventsEnrolled(List<String> eventsEnrolled) {
+        if (Objects.equals(this.eventsEnrolled, eventsEnrolled)) {
+            return;
+        }
         this.eventsEnrolled = eventsEnrolled != null ? new ArrayList<>(eventsEnrolled) : new ArrayList<>();
+        changes.markChanged("eventsEnrolled");
         setRemote();
     }
 
     public void addEventEnrolled(String eventId) {
         if (!this.eventsEnrolled.contains(eventId)) {
             this.eventsEnrolled.add(eventId);
+            changes.markAdded("eventsEnrolled", eventId);
             setRemote();
         }
     }
 
     public void removeEventEnrolled(String eventId) {
         if (this.eventsEnrolled.remove(eventId)) {
+            changes.markRemoved("eventsEnrolled", eventId);
             setRemote();
         }
     }
@@ -262,7 +352,11 @@ public class User implements DatabaseEntity {
     }
 
     public void setIsAdmin(Boolean isAdmin) {
+        if (Objects.equals(this.isAdmin, isAdmin)) {
+            return;
+        }
         this.isAdmin = isAdmin;
+        changes.markChanged("isAdmin");
         setRemote();
     }
 
@@ -271,7 +365,14 @@ public class User implements DatabaseEntity {
     }
 
     public void setFacility(Facility facility) {
+        String oldId = this.facility != null ? this.facility.getId() : null;
+        String newId = facility != null ? facility.getId() : null;
         this.facility = facility;
+        // new Facility(this) calls back into here while the user is still being deserialized
+        if (Objects.equals(oldId, newId) || !shouldUpdateRemote) {
+            return;
+        }
+        changes.markChanged("facilityId");
         setRemote();
     }
 
@@ -288,23 +389,27 @@ public class User implements DatabaseEntity {
             return;
         }
 
+        // Coalesce with any other changes made within the flush window
+        WriteBehindBuffer.getInstance().markDirty("users/" + id, this::writeRemote);
+    }
+
+    private Task<Void> writeRemote() {
         CollectionReference usersCollection = GlobalRepository.getUsersCollection();
         if (usersCollection == null) {
             Log.e("User", "Cannot update remote: usersCollection is null");
-            return;
+            return null;
         }
 
         DocumentReference userRef = usersCollection.document(id);
         if (userRef == null) {
             Log.e("User", "Cannot update remote: userRef is null");
-            return;
+            return null;
         }
 
-        Map<String, Object> update = this.toMap();
         Log.d("User", "Setting remote - User ID: " + id);
         Log.d("User", "Setting remote - Events Joined (before update): " + eventsJoined);
 
-        userRef.set(update, SetOptions.merge())
+        return FirestoreHelper.saveChanges(userRef, this)
                 .addOnSuccessListener(aVoid -> {
                     Log.d("User", "User " + id + " successfully updated");
                     Log.d("User", "Events Joined (after update): " + eventsJoined);
@@ -329,42 +434,18 @@ public class User implements DatabaseEntity {
         }
 
         // Attach a listener to the User document
-        listener = userRef.addSnapshotListener((documentSnapshot, e) -> {
+        if (listener != null) {
+            listener.remove();
+        }
+        // Shared with every other subscriber of this document
+        listener = SnapshotListenerRegistry.getInstance().subscribe(userRef, (documentSnapshot, e) -> {
             if (e != null) {
                 Log.e("Firestore", "Error listening to user changes for user: " + id, e);
                 return;
             }
 
             if (documentSnapshot != null && documentSnapshot.exists()) {
-                AtomicBoolean isChanged = new AtomicBoolean(false);
-
-                // Update name
-                String updatedName = documentSnapshot.getString("name");
-                if (updatedName != null && !updatedName.equals(this.name)) {
-                    this.name = updatedName;
-                    isChanged.set(true);
-                }
-
-                // Update email
-                String updatedEmail = documentSnapshot.getString("email");
-                if (updatedEmail != null && !updatedEmail.equals(this.email)) {
-                    this.email = updatedEmail;
-                    isChanged.set(true);
-                }
-
-                // Update phoneNumber
-                String updatedPhoneNumber = documentSnapshot.getString("phoneNumber");
-                if (updatedPhoneNumber != null && !updatedPhoneNumber.equals(this.phoneNumber)) {
-                    this.phoneNumber = updatedPhoneNumber;
-                    isChanged.set(true);
-                }
-
-                // Update isAdmin
-                Boolean updatedIsAdmin = documentSnapshot.getBoolean("isAdmin");
-                if (updatedIsAdmin != null && !updatedIsAdmin.equals(this.isAdmin)) {
-                    this.isAdmin = updatedIsAdmin;
-                    isChanged.set(true);
-                }
+                boolean isChanged = !applySnapshot(documentSnapshot, Collections.emptySet()).isEmpty();
 
                 // Update facility
                 String updatedFacilityId = documentSnapshot.getString("facilityId");
@@ -372,43 +453,87 @@ public class User implements DatabaseEntity {
                     // Fetch the updated Facility object
                     GlobalRepository.getFacility(updatedFacilityId)
                             .addOnSuccessListener(facility -> {
+                                // The facility ID came from the snapshot, so it is assigned without a write
                                 this.facility = facility;
-                                facility.setOwner(this); // Ensure bidirectional reference
-                                isChanged.set(true);
+                                facility.setOwner(this); // Only resolves the reference unless the owner changed
                                 onUpdate(); // Notify listeners about the update
                             })
                             .addOnFailureListener(error -> {
                                 Log.e("Firestore", "Error fetching updated facility for user: " + id, error);
                             });
-                    // Early return since facility fetching is asynchronous
+                    // Listeners are notified once the facility has been fetched
                     return;
                 }
 
-                // Deserialize eventsJoined as List<String>
-                List<String> updatedEventsJoinedIds = (List<String>) documentSnapshot.get("eventsJoined");
-                if (updatedEventsJoinedIds != null) {
-                    if (!updatedEventsJoinedIds.equals(this.eventsJoined)) {
-                        this.eventsJoined = new ArrayList<>(updatedEventsJoinedIds);
-                        isChanged.set(true);
-                    }
-                }
-
-                // Deserialize eventsEnrolled as List<String>
-                List<String> updatedEventsEnrolledIds = (List<String>) documentSnapshot.get("eventsEnrolled");
-                if (updatedEventsEnrolledIds != null) {
-                    if (!updatedEventsEnrolledIds.equals(this.eventsEnrolled)) {
-                        this.eventsEnrolled = new ArrayList<>(updatedEventsEnrolledIds);
-                        isChanged.set(true);
-                    }
-                }
-
-                if (isChanged.get()) {
+                if (isChanged) {
                     onUpdate(); // Notify listeners about the update
                 }
             }
         });
     }
 
+    /**
+     * Applies a snapshot of this user's document in place. Fields with local changes that have not
+     * been written yet, and the fields in {@code keep}, keep their local values. The facility is
+     * not applied here, since it has to be fetched.
+     *
+     * @param doc  The snapshot of the user document.
+     * @param keep The fields whose local values should be kept.
+     * @return The names of the fields that changed.
+     */
+    @Override
+    public Set<String> applySnapshot(@NonNull DocumentSnapshot doc, @NonNull Set<String> keep) {
+        Set<String> changed = new LinkedHashSet<>();
+        if (versionStamp.isStale(doc)) {
+            return changed;
+        }
+        Set<String> local = changes.getPendingFields();
+        local.addAll(keep);
+        versionStamp.apply(doc, local);
+
+        name = applyValue(changed, local, "name", name, doc.getString("name"));
+        email = applyValue(changed, local, "email", email, doc.getString("email"));
+        phoneNumber = applyValue(changed, local, "phoneNumber", phoneNumber, doc.getString("phoneNumber"));
+        isAdmin = applyValue(changed, local, "isAdmin", isAdmin, doc.getBoolean("isAdmin"));
+        eventsJoined = applyValue(changed, local, "eventsJoined", eventsJoined, toStringList(doc.get("eventsJoined")));
+        eventsEnrolled = applyValue(changed, local, "eventsEnrolled", eventsEnrolled, toStringList(doc.get("eventsEnrolled")));
+        if (!local.contains("imageHash") && !Objects.equals(imageHash, doc.getString("imageHash"))) {
+            // A removed image is a missing value, which applyValue() ignores
+            imageHash = doc.getString("imageHash");
+            changed.add("imageHash");
+        }
+        if (!local.contains("base64Image") && !Objects.equals(base64Image, doc.getString("base64Image"))) {
+            base64Image = doc.getString("base64Image");
+            changed.add("base64Image");
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the remote value of a field, recording the field if it differs from the local value.
+     * Missing remote values are ignored.
+     */
+    private <T> T applyValue(Set<String> changed, Set<String> local, String field, T current, T remote) {
+        if (remote == null || remote.equals(current) || local.contains(field)) {
+            return current;
+        }
+        changed.add(field);
+        return remote;
+    }
+
+    private static List<String> toStringList(Object raw) {
+        if (!(raw instanceof List<?>)) {
+            return null;
+        }
+        List<String> list = new ArrayList<>();
+        for (Object item : (List<?>) raw) {
+            if (item instanceof String) {
+                list.add((String) item);
+            }
+        }
+        return list;
+    }
+
     @Override
     public void detachListener() {
         if (listener != null) {
@@ -1,6 +1,5 @@
 package com.bugoff.can_do.user;
 
-import android.graphics.Bitmap;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -11,8 +10,9 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
-import com.bugoff.can_do.ImageUtils;
 import com.bugoff.can_do.R;
+import com.bugoff.can_do.image.AvatarRenderer;
+import com.bugoff.can_do.image.ImageLoader;
 
 import java.util.List;
 /**
@@ -65,6 +65,12 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
         holder.bind(user, deleteClickListener, showDeleteButton);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull UserViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.cancel(holder.userAvatar);
+    }
+
     @Override
     public int getItemCount() {
         return users.size();
@@ -107,17 +113,8 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
             }
 
             // Load and set user avatar
-            String base64Image = user.getBase64Image();
-            if (base64Image != null && !base64Image.isEmpty()) {
-                Bitmap bitmap = ImageUtils.decodeBase64Image(base64Image);
-                if (bitmap != null) {
-                    userAvatar.setImageBitmap(bitmap);
-                } else {
-                    setDefaultAvatar(user);
-                }
-            } else {
-                setDefaultAvatar(user);
-            }
+            setDefaultAvatar(user);
+            ImageLoader.into(userAvatar, user.getImageHash(), user.getBase64Image(), null);
         }
 
         private void setDefaultAvatar(User user) {
@@ -126,8 +123,7 @@ public class UserAdapter extends RecyclerView.Adapter<UserAdapter.UserViewHolder
                     ? name.substring(0, 1).toUpperCase()
                     : "?";
 
-            Bitmap defaultAvatar = ImageUtils.generateDefaultAvatar(firstLetter);
-            userAvatar.setImageBitmap(defaultAvatar);
+            userAvatar.setImageBitmap(AvatarRenderer.render(firstLetter));
         }
     }
 }
@@ -70,27 +70,22 @@ public class UserViewModel extends ViewModel {
             return;
         }
 
-        List<Event> fetchedEvents = new ArrayList<>();
-        int total = eventIds.size();
-        final int[] counter = {0};
-
-        for (String eventId : eventIds) {
-            repository.getEvent(eventId)
-                    .addOnSuccessListener(event -> {
+        repository.getEvents(eventIds)
+                .addOnSuccessListener(events -> {
+                    // Preserve the order of the requested IDs
+                    List<Event> fetchedEvents = new ArrayList<>();
+                    for (String eventId : eventIds) {
+                        Event event = events.get(eventId);
                         if (event != null) {
                             fetchedEvents.add(event);
                         }
-                        if (++counter[0] == total) {
-                            targetLiveData.postValue(new ArrayList<>(fetchedEvents));
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e("UserViewModel", "Error fetching event with ID: " + eventId, e);
-                        if (++counter[0] == total) {
-                            targetLiveData.postValue(new ArrayList<>(fetchedEvents));
-                        }
-                    });
-        }
+                    }
+                    targetLiveData.postValue(fetchedEvents);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e("UserViewModel", "Error fetching events: " + eventIds, e);
+                    targetLiveData.postValue(new ArrayList<>());
+                });
     }
 
     // Getters for LiveData
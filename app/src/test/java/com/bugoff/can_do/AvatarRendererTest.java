@@ -0,0 +1,65 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+
+import android.graphics.Bitmap;
+
+import com.bugoff.can_do.image.AvatarRenderer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+
+class AvatarRendererTest {
+    @BeforeEach
+    void setUp() {
+        AvatarRenderer.clear();
+    }
+
+    @Test
+    void testRendersAtListRowSize() {
+        try (MockedStatic<Bitmap> mockedBitmap = mockStatic(Bitmap.class)) {
+            Bitmap bitmap = mock(Bitmap.class);
+            mockedBitmap.when(() -> Bitmap.createBitmap(96, 96, Bitmap.Config.ARGB_8888)).thenReturn(bitmap);
+
+            assertSame(bitmap, AvatarRenderer.render("A"));
+        }
+    }
+
+    @Test
+    void testMissingLetterSharesOneAvatar() {
+        try (MockedStatic<Bitmap> mockedBitmap = mockStatic(Bitmap.class)) {
+            mockedBitmap.when(() -> Bitmap.createBitmap(anyInt(), anyInt(), any(Bitmap.Config.class)))
+                    .thenAnswer(invocation -> mock(Bitmap.class));
+
+            assertSame(AvatarRenderer.render(null), AvatarRenderer.render(""));
+            assertNotSame(AvatarRenderer.render("A"), AvatarRenderer.render("A", 175));
+        }
+    }
+
+    @Test
+    void testBindingWaitlistAllocatesNoBitmapsAfterWarmUp() {
+        try (MockedStatic<Bitmap> mockedBitmap = mockStatic(Bitmap.class)) {
+            mockedBitmap.when(() -> Bitmap.createBitmap(anyInt(), anyInt(), any(Bitmap.Config.class)))
+                    .thenAnswer(invocation -> mock(Bitmap.class));
+
+            // A thousand users whose names start with every letter of the alphabet
+            for (int i = 0; i < 1000; i++) {
+                AvatarRenderer.render(String.valueOf((char) ('A' + i % 26)));
+            }
+            mockedBitmap.verify(() -> Bitmap.createBitmap(anyInt(), anyInt(), any(Bitmap.Config.class)), times(26));
+
+            // Rebinding the list, e.g. after scrolling back, renders nothing again
+            for (int i = 0; i < 1000; i++) {
+                AvatarRenderer.render(String.valueOf((char) ('A' + i % 26)));
+            }
+            mockedBitmap.verify(() -> Bitmap.createBitmap(anyInt(), anyInt(), any(Bitmap.Config.class)), times(26));
+        }
+    }
+}
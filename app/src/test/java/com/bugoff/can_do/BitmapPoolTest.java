@@ -0,0 +1,76 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.graphics.Bitmap;
+
+import com.bugoff.can_do.image.BitmapPool;
+
+import org.junit.jupiter.api.Test;
+
+class BitmapPoolTest {
+
+    private static Bitmap bitmap(int allocation, boolean mutable) {
+        Bitmap bitmap = mock(Bitmap.class);
+        when(bitmap.getAllocationByteCount()).thenReturn(allocation);
+        when(bitmap.isMutable()).thenReturn(mutable);
+        return bitmap;
+    }
+
+    @Test
+    void testGetReturnsSmallestBitmapLargeEnough() {
+        BitmapPool pool = new BitmapPool(1_000_000);
+        Bitmap small = bitmap(10_000, true);
+        Bitmap medium = bitmap(40_000, true);
+        Bitmap large = bitmap(80_000, true);
+        pool.put(large);
+        pool.put(small);
+        pool.put(medium);
+
+        // 100x100 ARGB_8888 needs 40000 bytes
+        assertSame(medium, pool.get(100, 100, Bitmap.Config.ARGB_8888));
+        assertSame(large, pool.get(100, 100, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(100, 100, Bitmap.Config.ARGB_8888));
+        assertEquals(10_000, pool.size());
+    }
+
+    @Test
+    void testGetSkipsBitmapsFarLargerThanNeeded() {
+        BitmapPool pool = new BitmapPool(10_000_000);
+        pool.put(bitmap(4_000_000, true));
+
+        assertNull(pool.get(10, 10, Bitmap.Config.RGB_565));
+    }
+
+    @Test
+    void testPutRecyclesOldestBeyondBound() {
+        BitmapPool pool = new BitmapPool(100_000);
+        Bitmap first = bitmap(60_000, true);
+        Bitmap second = bitmap(60_000, true);
+
+        pool.put(first);
+        pool.put(second);
+
+        verify(first).recycle();
+        verify(second, never()).recycle();
+        assertEquals(60_000, pool.size());
+    }
+
+    @Test
+    void testPutRecyclesImmutableBitmaps() {
+        BitmapPool pool = new BitmapPool(100_000);
+        Bitmap immutable = mock(Bitmap.class);
+        when(immutable.isMutable()).thenReturn(false);
+
+        pool.put(immutable);
+
+        verify(immutable).recycle();
+        assertEquals(0, pool.size());
+    }
+}
@@ -0,0 +1,205 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.bugoff.can_do.image.BudgetEncoder;
+import com.bugoff.can_do.image.BudgetEncoder.Format;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+class BudgetEncoderTest {
+    private static final int BUDGET = 100 * 1024;
+
+    /**
+     * A codec whose output size is a linear function of the quality, per format.
+     */
+    private static BudgetEncoder.Codec linearCodec(int jpegBytesPerQuality, int webpBytesPerQuality, int losslessBytes) {
+        return (format, quality) -> {
+            switch (format) {
+                case JPEG:
+                    return new byte[quality * jpegBytesPerQuality];
+                case WEBP_LOSSY:
+                    return new byte[quality * webpBytesPerQuality];
+                default:
+                    return new byte[losslessBytes];
+            }
+        };
+    }
+
+    @Test
+    void testPicksHighestQualityThatFitsAndSmallestFormat() throws IOException {
+        BudgetEncoder encoder = new BudgetEncoder(61_000, 50, 90, Arrays.asList(Format.values()));
+
+        BudgetEncoder.Result result = encoder.encode(linearCodec(1000, 800, 500_000));
+
+        // JPEG fits up to q61 (61000 bytes), WebP up to q76 (60800 bytes)
+        assertEquals(Format.WEBP_LOSSY, result.getFormat());
+        assertEquals(76, result.getQuality());
+        assertEquals(60_800, result.getSize());
+        assertTrue(result.isWithinBudget());
+    }
+
+    @Test
+    void testFlatImageEndsUpLossless() throws IOException {
+        BudgetEncoder encoder = new BudgetEncoder(BUDGET, 50, 90, Arrays.asList(Format.values()));
+
+        BudgetEncoder.Result result = encoder.encode(linearCodec(300, 200, 5_000));
+
+        assertEquals(Format.WEBP_LOSSLESS, result.getFormat());
+        assertEquals("image/webp", result.getFormat().getMimeType());
+    }
+
+    @Test
+    void testNeverGoesBelowQualityFloor() throws IOException {
+        BudgetEncoder encoder = new BudgetEncoder(10_000, 50, 90, Arrays.asList(Format.JPEG, Format.WEBP_LOSSY));
+
+        BudgetEncoder.Result result = encoder.encode(linearCodec(1000, 900, 0));
+
+        assertFalse(result.isWithinBudget());
+        assertEquals(50, result.getQuality());
+        assertEquals(Format.WEBP_LOSSY, result.getFormat());
+    }
+
+    @Test
+    void testBinarySearchBoundsEncodes() throws IOException {
+        BudgetEncoder encoder = new BudgetEncoder(61_000, 50, 90, Collections.singletonList(Format.JPEG));
+
+        BudgetEncoder.Result result = encoder.encode(linearCodec(1000, 0, 0));
+
+        // Ceiling, floor, then a binary search over the 39 qualities in between
+        assertTrue(result.getAttempts() <= 2 + 6, "Took " + result.getAttempts() + " encodes");
+    }
+
+    @Test
+    void testUnsupportedFormatIsSkipped() throws IOException {
+        BudgetEncoder encoder = new BudgetEncoder(BUDGET, 50, 90, Arrays.asList(Format.WEBP_LOSSY, Format.JPEG));
+        BudgetEncoder.Codec jpegOnly = (format, quality) -> {
+            if (format != Format.JPEG) {
+                throw new IOException("Unsupported");
+            }
+            return new byte[quality * 100];
+        };
+
+        assertEquals(Format.JPEG, encoder.encode(jpegOnly).getFormat());
+        assertThrows(IOException.class, () -> encoder.encode((format, quality) -> {
+            throw new IOException("Unsupported");
+        }));
+    }
+
+    /**
+     * Benchmarks the encoder over synthetic 800x600 images, the size uploads are scaled to. The JDK
+     * has no WebP encoder, so JPEG is encoded with ImageIO and PNG stands in for lossless WebP.
+     */
+    @Test
+    void testBenchmarkCorpus() throws IOException {
+        BudgetEncoder encoder = new BudgetEncoder(BUDGET, 50, 90, Arrays.asList(Format.JPEG, Format.WEBP_LOSSLESS));
+        Map<String, BufferedImage> corpus = new LinkedHashMap<>();
+        corpus.put("poster", poster());
+        corpus.put("gradient", gradient());
+        corpus.put("photo", photo(8));
+        corpus.put("grainy photo", photo(16));
+        corpus.put("noise", photo(40));
+
+        Map<String, BudgetEncoder.Result> results = new LinkedHashMap<>();
+        for (Map.Entry<String, BufferedImage> image : corpus.entrySet()) {
+            long start = System.nanoTime();
+            byte[] fixed = encodeWithImageIO(image.getValue(), Format.JPEG, 80);
+            long fixedMillis = (System.nanoTime() - start) / 1_000_000;
+            BudgetEncoder.Result result = encoder.encode((format, quality) -> encodeWithImageIO(image.getValue(), format, quality));
+            results.put(image.getKey(), result);
+            System.out.printf("%-12s fixed JPEG q80: %7d bytes in %4d ms | budget: %s%n",
+                    image.getKey(), fixed.length, fixedMillis, result);
+        }
+
+        for (BudgetEncoder.Result result : results.values()) {
+            assertTrue(result.getQuality() >= 50, result.toString());
+            // Only an image that cannot fit even at the quality floor may exceed the budget
+            assertTrue(result.isWithinBudget() || result.getQuality() == 50, result.toString());
+        }
+        // A flat image compresses best without loss; noisier ones need lower qualities to fit
+        assertEquals(Format.WEBP_LOSSLESS, results.get("poster").getFormat());
+        assertTrue(results.get("gradient").isWithinBudget());
+        assertTrue(results.get("photo").isWithinBudget());
+        assertTrue(results.get("grainy photo").getQuality() < results.get("photo").getQuality());
+    }
+
+    private static BufferedImage poster() {
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(30, 60, 120));
+        g.fillRect(0, 0, 800, 600);
+        g.setColor(new Color(240, 200, 40));
+        g.fillRect(80, 80, 640, 160);
+        g.setColor(Color.WHITE);
+        g.fillOval(300, 300, 200, 200);
+        g.dispose();
+        return image;
+    }
+
+    private static BufferedImage gradient() {
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < 600; y++) {
+            for (int x = 0; x < 800; x++) {
+                image.setRGB(x, y, new Color(x * 255 / 800, y * 255 / 600, 128).getRGB());
+            }
+        }
+        return image;
+    }
+
+    private static BufferedImage photo(int noise) {
+        Random random = new Random(noise);
+        BufferedImage image = gradient();
+        for (int y = 0; y < 600; y++) {
+            for (int x = 0; x < 800; x++) {
+                int rgb = image.getRGB(x, y);
+                int offset = (int) (random.nextGaussian() * noise);
+                image.setRGB(x, y, new Color(clamp(((rgb >> 16) & 0xFF) + offset),
+                        clamp(((rgb >> 8) & 0xFF) + offset), clamp((rgb & 0xFF) + offset)).getRGB());
+            }
+        }
+        return image;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static byte[] encodeWithImageIO(BufferedImage image, Format format, int quality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (format.isLossless()) {
+            ImageIO.write(image, "png", out);
+            return out.toByteArray();
+        }
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality / 100f);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
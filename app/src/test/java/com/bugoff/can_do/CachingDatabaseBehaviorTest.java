@@ -0,0 +1,104 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.bugoff.can_do.database.CachingDatabaseBehavior;
+import com.bugoff.can_do.database.DatabaseBehavior;
+import com.bugoff.can_do.event.Event;
+import com.bugoff.can_do.user.User;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+class CachingDatabaseBehaviorTest {
+    private static final long TTL_MS = 5 * 60 * 1000;
+
+    private long now = 0;
+    private DatabaseBehavior delegate;
+    private CachingDatabaseBehavior behavior;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(DatabaseBehavior.class);
+        behavior = new CachingDatabaseBehavior(delegate, () -> now);
+    }
+
+    private static User user(String id) {
+        User user = mock(User.class);
+        when(user.getId()).thenReturn(id);
+        return user;
+    }
+
+    @Test
+    void testConcurrentLookupsShareOneRead() {
+        TaskCompletionSource<User> read = new TaskCompletionSource<>();
+        when(delegate.getUser("u1")).thenReturn(read.getTask());
+
+        Task<User> first = behavior.getUser("u1");
+        Task<User> second = behavior.getUser("u1");
+        User loaded = user("u1");
+        read.setResult(loaded);
+
+        verify(delegate, times(1)).getUser("u1");
+        assertSame(loaded, first.getResult());
+        assertSame(loaded, second.getResult());
+        assertSame(loaded, behavior.getUser("u1").getResult());
+        verify(delegate, times(1)).getUser(anyString());
+    }
+
+    @Test
+    void testLookupAfterTtlReadsAgain() {
+        User loaded = user("u1");
+        when(delegate.getUser("u1")).thenReturn(Tasks.forResult(loaded));
+
+        behavior.getUser("u1");
+        now += TTL_MS + 1;
+        behavior.getUser("u1");
+
+        verify(delegate, times(2)).getUser("u1");
+    }
+
+    @Test
+    void testBatchLookupReadsOnlyMissingUsers() {
+        User cached = user("u1");
+        User missing = user("u2");
+        behavior.addUser(cached);
+        when(delegate.getUsers(List.of("u2"))).thenReturn(Tasks.forResult(Collections.singletonMap("u2", missing)));
+
+        Map<String, User> users = behavior.getUsers(Arrays.asList("u1", "u2")).getResult();
+
+        verify(delegate).getUsers(List.of("u2"));
+        assertSame(cached, users.get("u1"));
+        assertSame(missing, users.get("u2"));
+        assertSame(missing, behavior.getUser("u2").getResult());
+        assertEquals(2, users.size());
+    }
+
+    @Test
+    void testFreshEventReadBypassesAndReplacesCache() {
+        Event stale = mock(Event.class);
+        Event fresh = mock(Event.class);
+        when(stale.getId()).thenReturn("e1");
+        behavior.addEvent(stale);
+        when(delegate.getEvent("e1")).thenReturn(Tasks.forResult(fresh));
+
+        assertSame(stale, behavior.getEvent("e1").getResult());
+        assertSame(fresh, behavior.getEventFresh("e1").getResult());
+        assertSame(fresh, behavior.getEvent("e1").getResult());
+        verify(delegate, times(1)).getEvent("e1");
+    }
+}
@@ -0,0 +1,124 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import android.os.Handler;
+
+import com.bugoff.can_do.checkin.CheckInLedger;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+class CheckInLedgerTest {
+    @TempDir
+    File directory;
+
+    private final List<List<CheckInLedger.CheckIn>> uploads = new ArrayList<>();
+    private boolean offline = false;
+
+    private CheckInLedger newLedger() {
+        return new CheckInLedger(new File(directory, "check_ins.log"), this::upload, mock(Handler.class), 1000);
+    }
+
+    private Task<Void> upload(List<CheckInLedger.CheckIn> checkIns) {
+        if (offline) {
+            return Tasks.forException(new IOException("Offline"));
+        }
+        uploads.add(new ArrayList<>(checkIns));
+        return Tasks.forResult(null);
+    }
+
+    @Test
+    void testRecordsEachEntrantOnce() throws IOException {
+        CheckInLedger ledger = newLedger();
+
+        assertTrue(ledger.record("event1", "entrant1", 1000));
+        assertFalse(ledger.record("event1", "entrant1", 2000));
+        assertTrue(ledger.record("event2", "entrant1", 3000));
+
+        assertTrue(ledger.isCheckedIn("event1", "entrant1"));
+        assertFalse(ledger.isCheckedIn("event1", "entrant2"));
+        assertEquals(2, ledger.getPendingCount());
+    }
+
+    @Test
+    void testSyncUploadsPendingCheckInsInBatches() throws IOException {
+        CheckInLedger ledger = newLedger();
+        for (int i = 0; i < 1000; i++) {
+            ledger.record("event1", "entrant" + i, i);
+        }
+
+        // Each completed batch schedules the next one on the handler, so run them one at a time
+        while (ledger.getPendingCount() > 0) {
+            assertTrue(ledger.sync().isSuccessful());
+        }
+
+        assertEquals(3, uploads.size());
+        assertEquals(450, uploads.get(0).size());
+        assertEquals("entrant0", uploads.get(0).get(0).getEntrantId());
+        assertEquals(100, uploads.get(2).size());
+        assertEquals("entrant999", uploads.get(2).get(99).getEntrantId());
+        assertTrue(ledger.sync().isSuccessful());
+        assertEquals(3, uploads.size());
+    }
+
+    @Test
+    void testFailedUploadStaysPending() throws IOException {
+        CheckInLedger ledger = newLedger();
+        ledger.record("event1", "entrant1", 1000);
+        offline = true;
+
+        assertFalse(ledger.sync().isSuccessful());
+        assertEquals(1, ledger.getPendingCount());
+
+        offline = false;
+        assertTrue(ledger.sync().isSuccessful());
+        assertEquals(0, ledger.getPendingCount());
+        assertEquals(1, uploads.size());
+    }
+
+    @Test
+    void testCheckInsSurviveRestart() throws IOException {
+        CheckInLedger ledger = newLedger();
+        ledger.record("event1", "entrant1", 1000);
+        ledger.sync();
+        ledger.record("event1", "entrant2", 2000);
+
+        CheckInLedger restarted = newLedger();
+
+        assertTrue(restarted.isCheckedIn("event1", "entrant1"));
+        assertFalse(restarted.record("event1", "entrant2", 3000));
+        assertEquals(1, restarted.getPendingCount());
+        restarted.sync();
+        assertEquals("entrant2", uploads.get(1).get(0).getEntrantId());
+        assertEquals(2000, uploads.get(1).get(0).getCheckedInAt());
+    }
+
+    @Test
+    void testSkipsLineCutOffByCrash() throws IOException {
+        CheckInLedger ledger = newLedger();
+        ledger.record("event1", "entrant1", 1000);
+        try (FileOutputStream out = new FileOutputStream(new File(directory, "check_ins.log"), true)) {
+            out.write("C\tevent1\tentr".getBytes(StandardCharsets.UTF_8));
+        }
+
+        CheckInLedger restarted = newLedger();
+        assertTrue(restarted.record("event1", "entrant2", 2000));
+
+        CheckInLedger restartedAgain = newLedger();
+        assertEquals(2, restartedAgain.getPendingCount());
+        assertTrue(restartedAgain.isCheckedIn("event1", "entrant2"));
+    }
+}
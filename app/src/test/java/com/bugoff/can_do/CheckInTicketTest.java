@@ -0,0 +1,113 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.bugoff.can_do.checkin.CheckInTicket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+class CheckInTicketTest {
+    private static final byte[] KEY = "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OTHER_KEY = "fedcba9876543210fedcba9876543210".getBytes(StandardCharsets.UTF_8);
+    private static final long EXPIRES_AT = 1_900_000_000_000L;
+
+    @Test
+    void testRoundTrip() {
+        String text = CheckInTicket.issue(KEY, "event123", "entrant456", EXPIRES_AT + 999).encode();
+
+        CheckInTicket ticket = CheckInTicket.decode(text);
+
+        assertNotNull(ticket);
+        assertEquals("event123", ticket.getEventId());
+        assertEquals("entrant456", ticket.getEntrantId());
+        // Kept to the second
+        assertEquals(EXPIRES_AT, ticket.getExpiresAt());
+        assertTrue(ticket.verify(KEY));
+        assertEquals(text, ticket.encode());
+        // Small enough for a low-density QR code
+        assertTrue(text.length() < 100, text);
+    }
+
+    @Test
+    void testTicketWithoutEntrant() {
+        CheckInTicket ticket = CheckInTicket.decode(CheckInTicket.issue(KEY, "event123", null, EXPIRES_AT).encode());
+
+        assertNotNull(ticket);
+        assertNull(ticket.getEntrantId());
+        assertTrue(ticket.verify(KEY));
+    }
+
+    @Test
+    void testRejectsOtherKeyAndTampering() {
+        String text = CheckInTicket.issue(KEY, "event123", "entrant456", EXPIRES_AT).encode();
+        CheckInTicket ticket = CheckInTicket.decode(text);
+        assertNotNull(ticket);
+        assertFalse(ticket.verify(OTHER_KEY));
+
+        // Another entrant's payload with this ticket's signature
+        String other = CheckInTicket.issue(KEY, "event123", "entrant789", EXPIRES_AT).encode();
+        String forged = other.substring(0, other.lastIndexOf('.')) + text.substring(text.lastIndexOf('.'));
+        CheckInTicket forgedTicket = CheckInTicket.decode(forged);
+        assertNotNull(forgedTicket);
+        assertFalse(forgedTicket.verify(KEY));
+    }
+
+    @Test
+    void testMalformedTextIsNotATicket() {
+        assertNull(CheckInTicket.decode("cando-event123"));
+        assertNull(CheckInTicket.decode("cdt1."));
+        assertNull(CheckInTicket.decode("cdt1.not base64.AAAA"));
+        assertNull(CheckInTicket.decode("cdt1.ZXZlbnQ.AAAAAAAAAAAAAAAAAAAAAA"));
+        String text = CheckInTicket.issue(KEY, "event123", "entrant456", EXPIRES_AT).encode();
+        assertNull(CheckInTicket.decode(text.substring(0, text.length() - 2)));
+        assertThrows(IllegalArgumentException.class, () -> CheckInTicket.issue(KEY, "", null, EXPIRES_AT));
+        assertThrows(IllegalArgumentException.class, () -> CheckInTicket.issue(KEY, "event\n123", null, EXPIRES_AT));
+        // IDs are also written to the tab-separated check-in ledger
+        assertThrows(IllegalArgumentException.class, () -> CheckInTicket.issue(KEY, "event123", "entrant\t456", EXPIRES_AT));
+    }
+
+    @Test
+    void testExpiry() {
+        CheckInTicket ticket = CheckInTicket.issue(KEY, "event123", "entrant456", EXPIRES_AT);
+
+        assertFalse(ticket.isExpired(EXPIRES_AT - 1));
+        assertTrue(ticket.isExpired(EXPIRES_AT));
+    }
+
+    /**
+     * Decodes and verifies tickets as a door scanner would, to check that it keeps up with the
+     * camera without the network.
+     */
+    @Test
+    void testVerifyingIsFast() {
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            texts.add(CheckInTicket.issue(KEY, "event123", "entrant" + i, EXPIRES_AT).encode());
+        }
+        // Warm up
+        for (String text : texts) {
+            CheckInTicket.decode(text).verify(KEY);
+        }
+
+        long start = System.nanoTime();
+        for (int round = 0; round < 10; round++) {
+            for (String text : texts) {
+                CheckInTicket ticket = CheckInTicket.decode(text);
+                assertTrue(ticket != null && ticket.verify(KEY));
+            }
+        }
+        long nanosPerTicket = (System.nanoTime() - start) / (10L * texts.size());
+        System.out.printf("Decoded and verified a ticket in %.1f us%n", nanosPerTicket / 1000.0);
+
+        assertTrue(nanosPerTicket < 1_000_000, "Verifying should take well under a millisecond");
+    }
+}
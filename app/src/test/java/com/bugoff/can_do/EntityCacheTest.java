@@ -0,0 +1,131 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.bugoff.can_do.database.EntityCache;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+class EntityCacheTest {
+    private static final long TTL_MS = 1000;
+
+    private long now = 0;
+    private final List<String> loads = new ArrayList<>();
+    private final Map<String, TaskCompletionSource<String>> pending = new HashMap<>();
+
+    private EntityCache<String> newCache(int maxSize) {
+        return new EntityCache<>(maxSize, TTL_MS, () -> now);
+    }
+
+    private Task<String> loadNow(String id) {
+        loads.add(id);
+        return Tasks.forResult("loaded " + id);
+    }
+
+    private Task<String> loadLater(String id) {
+        loads.add(id);
+        TaskCompletionSource<String> source = new TaskCompletionSource<>();
+        pending.put(id, source);
+        return source.getTask();
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+        EntityCache<String> cache = newCache(2);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        // Using "a" makes "b" the least recently used
+        assertEquals("A", cache.getIfPresent("a"));
+
+        cache.put("c", "C");
+
+        assertEquals("A", cache.getIfPresent("a"));
+        assertNull(cache.getIfPresent("b"));
+        assertEquals("C", cache.getIfPresent("c"));
+    }
+
+    @Test
+    void testEntriesExpireAfterTtl() {
+        EntityCache<String> cache = newCache(10);
+        cache.put("a", "A");
+
+        now += TTL_MS;
+        assertEquals("A", cache.getIfPresent("a"));
+        now += 1;
+        assertNull(cache.getIfPresent("a"));
+
+        // An expired entry is loaded again
+        assertEquals("loaded a", cache.get("a", this::loadNow).getResult());
+        assertEquals(List.of("a"), loads);
+    }
+
+    @Test
+    void testCachedEntryIsNotLoaded() {
+        EntityCache<String> cache = newCache(10);
+
+        Task<String> first = cache.get("a", this::loadNow);
+        Task<String> second = cache.get("a", this::loadNow);
+
+        assertEquals("loaded a", first.getResult());
+        assertSame(first.getResult(), second.getResult());
+        assertEquals(List.of("a"), loads);
+    }
+
+    @Test
+    void testConcurrentLoadsShareOneRead() {
+        EntityCache<String> cache = newCache(10);
+
+        Task<String> first = cache.get("a", this::loadLater);
+        Task<String> second = cache.get("a", this::loadLater);
+        cache.get("b", this::loadLater);
+
+        assertSame(first, second);
+        assertEquals(List.of("a", "b"), loads);
+        assertFalse(first.isComplete());
+
+        pending.get("a").setResult("A");
+
+        assertEquals("A", first.getResult());
+        assertEquals("A", cache.getIfPresent("a"));
+        // Once loaded, the entry is served from the cache instead of the finished load
+        assertTrue(cache.get("a", this::loadLater).isSuccessful());
+        assertEquals(List.of("a", "b"), loads);
+    }
+
+    @Test
+    void testFailedLoadIsNotCached() {
+        EntityCache<String> cache = newCache(10);
+        Task<String> failed = cache.get("a", this::loadLater);
+
+        pending.get("a").setException(new IllegalStateException("Offline"));
+
+        assertFalse(failed.isSuccessful());
+        assertNull(cache.getIfPresent("a"));
+        cache.get("a", this::loadLater);
+        assertEquals(List.of("a", "a"), loads);
+    }
+
+    @Test
+    void testInstanceStoredWhileLoadingWins() {
+        EntityCache<String> cache = newCache(10);
+        Task<String> load = cache.get("a", this::loadLater);
+
+        cache.put("a", "saved");
+        pending.get("a").setResult("stale");
+
+        assertEquals("saved", load.getResult());
+        assertEquals("saved", cache.getIfPresent("a"));
+    }
+}
@@ -0,0 +1,55 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.bugoff.can_do.database.EntrantChange;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+class EntrantChangeTest {
+
+    @Test
+    void testJoinAndLeaveOfSameListCancel() {
+        EntrantChange change = new EntrantChange().join("waitingListEntrants").leave("waitingListEntrants");
+
+        assertTrue(change.getJoined().isEmpty());
+        assertTrue(change.getLeft().isEmpty());
+        assertTrue(change.isEmpty());
+    }
+
+    @Test
+    void testMoveKeepsBothLists() {
+        EntrantChange change = new EntrantChange().leave("waitingListEntrants").join("selectedEntrants");
+
+        assertEquals(Collections.singleton("waitingListEntrants"), change.getLeft());
+        assertEquals(Collections.singleton("selectedEntrants"), change.getJoined());
+        assertTrue(change.affectsCounters());
+    }
+
+    @Test
+    void testLocationAloneDoesNotAffectCounters() {
+        EntrantChange change = new EntrantChange().setLocation(53.5, -113.5);
+
+        assertFalse(change.affectsCounters());
+        assertFalse(change.isEmpty());
+    }
+
+    @Test
+    void testEarlierChangeIsAppliedBeneathLaterOne() {
+        EntrantChange earlier = new EntrantChange().join("selectedEntrants").setStatus("SELECTED").setLocation(1.0, 2.0);
+        EntrantChange later = new EntrantChange().leave("selectedEntrants").join("enrolledEntrants").setStatus("ENROLLED");
+
+        later.addEarlier(earlier);
+
+        // Joining and then leaving the selected entrants is no change at all
+        assertTrue(later.getLeft().isEmpty());
+        assertEquals(Collections.singleton("enrolledEntrants"), later.getJoined());
+        assertEquals("ENROLLED", later.getStatus());
+        assertTrue(later.isLocationSet());
+        assertEquals(2.0, later.getLongitude());
+    }
+}
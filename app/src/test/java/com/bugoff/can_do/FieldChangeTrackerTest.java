@@ -0,0 +1,120 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.bugoff.can_do.database.FieldChangeTracker;
+import com.google.firebase.firestore.FieldValue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+class FieldChangeTrackerTest {
+    private FieldChangeTracker tracker;
+    private Map<String, Object> fullMap;
+
+    @BeforeEach
+    void setUp() {
+        tracker = new FieldChangeTracker();
+
+        Map<String, Object> statuses = new HashMap<>();
+        statuses.put("user-1", "SELECTED");
+
+        fullMap = new HashMap<>();
+        fullMap.put("name", "New Name");
+        fullMap.put("description", "Unchanged");
+        fullMap.put("base64Image", "a very long image string");
+        fullMap.put("waitingListEntrants", Arrays.asList("user-1", "user-2"));
+        fullMap.put("entrantStatuses", statuses);
+    }
+
+    @Test
+    void testOnlyChangedFieldsAreIncluded() {
+        tracker.markChanged("name");
+
+        Map<String, Object> update = tracker.takeUpdate(fullMap);
+
+        assertEquals(1, update.size());
+        assertEquals("New Name", update.get("name"));
+        assertFalse(update.containsKey("base64Image"));
+    }
+
+    @Test
+    void testTakeUpdateClearsChanges() {
+        tracker.markChanged("name");
+        tracker.takeUpdate(fullMap);
+
+        assertTrue(tracker.isEmpty());
+        assertTrue(tracker.takeUpdate(fullMap).isEmpty());
+    }
+
+    @Test
+    void testArrayMembershipUsesTransforms() {
+        tracker.markAdded("waitingListEntrants", "user-2");
+
+        Map<String, Object> update = tracker.takeUpdate(fullMap);
+
+        assertTrue(update.get("waitingListEntrants") instanceof FieldValue);
+    }
+
+    @Test
+    void testMixedAddAndRemoveFallsBackToWholeField() {
+        tracker.markAdded("waitingListEntrants", "user-2");
+        tracker.markRemoved("waitingListEntrants", "user-3");
+
+        Map<String, Object> update = tracker.takeUpdate(fullMap);
+
+        assertEquals(fullMap.get("waitingListEntrants"), update.get("waitingListEntrants"));
+    }
+
+    @Test
+    void testMapEntriesUseDottedPaths() {
+        tracker.markEntryChanged("entrantStatuses", "user-1");
+        tracker.markEntryChanged("entrantStatuses", "user-9");
+
+        Map<String, Object> update = tracker.takeUpdate(fullMap);
+
+        assertEquals("SELECTED", update.get("entrantStatuses.user-1"));
+        assertTrue(update.get("entrantStatuses.user-9") instanceof FieldValue);
+        assertFalse(update.containsKey("entrantStatuses"));
+    }
+
+    @Test
+    void testFieldMissingFromEntityIsDeleted() {
+        tracker.markChanged("selectedEntrants");
+
+        Map<String, Object> update = tracker.takeUpdate(fullMap);
+
+        assertTrue(update.get("selectedEntrants") instanceof FieldValue);
+    }
+
+    @Test
+    void testWholeFieldChangeSupersedesEntryChanges() {
+        tracker.markEntryChanged("entrantStatuses", "user-1");
+        tracker.markChanged("entrantStatuses");
+
+        Map<String, Object> update = tracker.takeUpdate(fullMap);
+
+        assertEquals(1, update.size());
+        assertEquals(fullMap.get("entrantStatuses"), update.get("entrantStatuses"));
+    }
+
+    @Test
+    void testRestoredChangesAreWrittenAgain() {
+        tracker.markAdded("waitingListEntrants", "user-2");
+        tracker.markEntryChanged("entrantStatuses", "user-1");
+        Map<String, Object> failed = tracker.takeUpdate(fullMap);
+
+        tracker.restore(failed.keySet());
+        Map<String, Object> update = tracker.takeUpdate(fullMap);
+
+        assertEquals(fullMap.get("waitingListEntrants"), update.get("waitingListEntrants"));
+        assertEquals("SELECTED", update.get("entrantStatuses.user-1"));
+        assertFalse(update.containsKey("entrantStatuses"));
+    }
+}
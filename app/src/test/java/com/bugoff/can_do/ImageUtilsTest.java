@@ -1,20 +1,42 @@
 package com.bugoff.can_do;
 
 import static com.bugoff.can_do.ImageUtils.calculateScaleForDimensions;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.util.Base64;
 
+import com.bugoff.can_do.image.Base64DecodingInputStream;
+import com.bugoff.can_do.image.BitmapPool;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 @ExtendWith(MockitoExtension.class)
 class ImageUtilsTest {
     @Mock
@@ -45,53 +67,188 @@ class ImageUtilsTest {
     }
 
     @Test
-    void testGenerateDefaultAvatar() {
-        // First, mock the static Bitmap.createBitmap method
-        try (MockedStatic<Bitmap> mockedBitmap = mockStatic(Bitmap.class)) {
-            // Set up the static mock to return our mockBitmap
-            mockedBitmap.when(() ->
-                    Bitmap.createBitmap(96, 96, Bitmap.Config.ARGB_8888)
-            ).thenReturn(mockBitmap);
-
-            Bitmap result = ImageUtils.generateDefaultAvatar("A");
-
-            // Verify result
-            assertNotNull(result);
-            assertEquals(mockBitmap, result);
-
-            // verify correct parameters
-            mockedBitmap.verify(() ->
-                    Bitmap.createBitmap(96, 96, Bitmap.Config.ARGB_8888)
-            );
+    void testDecodeImageReadsBinaryInPlace() {
+        byte[] image = new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, 0x00};
+        try (MockedStatic<BitmapFactory> mockedFactory = mockStatic(BitmapFactory.class)) {
+            mockedFactory.when(() -> BitmapFactory.decodeByteArray(image, 0, image.length)).thenReturn(mockBitmap);
+
+            assertEquals(mockBitmap, ImageUtils.decodeImage(image));
+            // The stored bytes are handed to the decoder as is, without a copy
+            mockedFactory.verify(() -> BitmapFactory.decodeByteArray(same(image), eq(0), eq(image.length)));
+        }
+        assertNull(ImageUtils.decodeImage((byte[]) null));
+        assertNull(ImageUtils.decodeImage(new byte[0]));
+    }
+
+    @Test
+    void testDecodeBase64ImageStreamsLegacyData() {
+        byte[] image = new byte[10_000];
+        new Random(42).nextBytes(image);
+        // android.util.Base64.DEFAULT breaks lines every 76 characters
+        String legacy = java.util.Base64.getMimeEncoder(76, new byte[]{'\n'}).encodeToString(image);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        try (MockedStatic<BitmapFactory> mockedFactory = mockStatic(BitmapFactory.class)) {
+            mockedFactory.when(() -> BitmapFactory.decodeStream(any(InputStream.class), isNull(), any()))
+                    .thenAnswer(invocation -> {
+                        InputStream in = invocation.getArgument(0);
+                        byte[] buffer = new byte[4096];
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            received.write(buffer, 0, read);
+                        }
+                        return mockBitmap;
+                    });
+
+            assertEquals(mockBitmap, ImageUtils.decodeBase64Image(legacy));
+        }
+        assertArrayEquals(image, received.toByteArray());
+    }
+
+    @Test
+    void testBase64StreamMatchesReferenceDecoder() throws IOException {
+        Random random = new Random(7);
+        for (int length = 0; length < 64; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String padded = java.util.Base64.getEncoder().encodeToString(data);
+            String unpadded = java.util.Base64.getEncoder().withoutPadding().encodeToString(data);
+
+            assertArrayEquals(data, readAll(new Base64DecodingInputStream(padded)));
+            assertArrayEquals(data, readAll(new Base64DecodingInputStream(unpadded)));
+        }
+        assertThrows(IOException.class, () -> readAll(new Base64DecodingInputStream("ab*d")));
+        assertThrows(IOException.class, () -> readAll(new Base64DecodingInputStream("abcde")));
+    }
+
+    @Test
+    void testBase64StreamPeakAllocationIsBounded() throws IOException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        assumeTrue(allocations.isThreadAllocatedMemorySupported() && allocations.isThreadAllocatedMemoryEnabled());
+
+        byte[] image = new byte[1024 * 1024];
+        new Random(1).nextBytes(image);
+        String legacy = java.util.Base64.getMimeEncoder(76, new byte[]{'\n'}).encodeToString(image);
+        byte[] buffer = new byte[16 * 1024];
+        long threadId = Thread.currentThread().getId();
+
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        InputStream in = new Base64DecodingInputStream(legacy);
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            total += read;
         }
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(image.length, total);
+        // Decoding a 1 MB image through a reused buffer allocates next to nothing, while the old
+        // path allocated the whole decoded image on top of the string
+        assertTrue(allocated < 64 * 1024, "Allocated " + allocated + " bytes");
     }
 
     @Test
-    void testGenerateDefaultAvatarWithNullLetter() {
-        try (MockedStatic<Bitmap> mockedBitmap = mockStatic(Bitmap.class)) {
-            mockedBitmap.when(() ->
-                    Bitmap.createBitmap(96, 96, Bitmap.Config.ARGB_8888)
-            ).thenReturn(mockBitmap);
+    void testCalculateInSampleSize() {
+        // Never below the requested size in either dimension
+        assertEquals(1, ImageUtils.calculateInSampleSize(800, 800, 800, 800));
+        assertEquals(1, ImageUtils.calculateInSampleSize(100, 100, 144, 144));
+        assertEquals(4, ImageUtils.calculateInSampleSize(800, 800, 144, 144));
+        assertEquals(2, ImageUtils.calculateInSampleSize(800, 400, 144, 144));
+        assertEquals(16, ImageUtils.calculateInSampleSize(4000, 3000, 144, 144));
+        assertEquals(1, ImageUtils.calculateInSampleSize(4000, 3000, 0, 0));
+    }
 
-            Bitmap result = ImageUtils.generateDefaultAvatar(null);
+    @Test
+    void testAvatarDecodeFitsInTensOfKilobytes() {
+        // A stored 800x800 image shown as a 48dp avatar at xxhdpi (144px)
+        int sampleSize = ImageUtils.calculateInSampleSize(800, 800, 144, 144);
+        long sampledBytes = (long) (800 / sampleSize) * (800 / sampleSize) * BitmapPool.bytesPerPixel(Bitmap.Config.RGB_565);
+        long fullBytes = 800L * 800 * BitmapPool.bytesPerPixel(Bitmap.Config.ARGB_8888);
+
+        assertEquals(2_560_000, fullBytes);
+        assertTrue(sampledBytes < 100_000, "Sampled decode takes " + sampledBytes + " bytes");
+    }
+
+    @Test
+    void testDecodeSampledImageReadsBoundsThenSubsamplesIntoPooledBitmap() {
+        byte[] image = new byte[]{1, 2, 3};
+        Bitmap pooled = org.mockito.Mockito.mock(Bitmap.class);
+        when(pooled.isMutable()).thenReturn(true);
+        when(pooled.getAllocationByteCount()).thenReturn(100_000);
+        BitmapPool pool = new BitmapPool(1_000_000);
+        pool.put(pooled);
+        List<BitmapFactory.Options> decodes = new ArrayList<>();
+        try (MockedStatic<BitmapFactory> mockedFactory = mockStatic(BitmapFactory.class)) {
+            mockedFactory.when(() -> BitmapFactory.decodeByteArray(same(image), eq(0), eq(image.length), any(BitmapFactory.Options.class)))
+                    .thenAnswer(invocation -> {
+                        BitmapFactory.Options options = invocation.getArgument(3);
+                        if (options.inJustDecodeBounds) {
+                            options.outWidth = 4000;
+                            options.outHeight = 3000;
+                            options.outMimeType = "image/jpeg";
+                            return null;
+                        }
+                        decodes.add(options);
+                        return mockBitmap;
+                    });
 
-            assertNotNull(result);
-            assertEquals(mockBitmap, result);
+            assertEquals(mockBitmap, ImageUtils.decodeSampledImage(image, 144, 144, true, pool));
         }
+        assertEquals(1, decodes.size());
+        BitmapFactory.Options options = decodes.get(0);
+        assertEquals(16, options.inSampleSize);
+        assertEquals(Bitmap.Config.RGB_565, options.inPreferredConfig);
+        // 250x188 RGB_565 needs 94000 bytes, so the pooled bitmap is reused
+        assertSame(pooled, options.inBitmap);
+        assertEquals(0, pool.size());
     }
 
     @Test
-    void testGenerateDefaultAvatarWithEmptyLetter() {
-        try (MockedStatic<Bitmap> mockedBitmap = mockStatic(Bitmap.class)) {
-            mockedBitmap.when(() ->
-                    Bitmap.createBitmap(96, 96, Bitmap.Config.ARGB_8888)
-            ).thenReturn(mockBitmap);
+    void testDecodeSampledImageKeepsAlphaOfWebP() {
+        byte[] image = new byte[]{1, 2, 3};
+        List<BitmapFactory.Options> decodes = new ArrayList<>();
+        try (MockedStatic<BitmapFactory> mockedFactory = mockStatic(BitmapFactory.class)) {
+            mockedFactory.when(() -> BitmapFactory.decodeByteArray(same(image), eq(0), eq(image.length), any(BitmapFactory.Options.class)))
+                    .thenAnswer(invocation -> {
+                        BitmapFactory.Options options = invocation.getArgument(3);
+                        if (options.inJustDecodeBounds) {
+                            options.outWidth = 800;
+                            options.outHeight = 800;
+                            options.outMimeType = "image/webp";
+                            return null;
+                        }
+                        decodes.add(options);
+                        return mockBitmap;
+                    });
 
-            Bitmap result = ImageUtils.generateDefaultAvatar("");
+            assertEquals(mockBitmap, ImageUtils.decodeSampledImage(image, 144, 144, true, null));
+        }
+        assertEquals(1, decodes.size());
+        assertEquals(Bitmap.Config.ARGB_8888, decodes.get(0).inPreferredConfig);
+    }
+
+    @Test
+    void testFitWithinScalesDownLargeImages() {
+        // A 12 MP camera photo
+        assertArrayEquals(new int[]{800, 600}, ImageUtils.fitWithin(4000, 3000));
+        assertArrayEquals(new int[]{450, 800}, ImageUtils.fitWithin(2250, 4000));
+    }
+
+    @Test
+    void testFitWithinNeverUpscales() {
+        assertArrayEquals(new int[]{160, 120}, ImageUtils.fitWithin(160, 120));
+        assertArrayEquals(new int[]{800, 800}, ImageUtils.fitWithin(800, 800));
+        assertArrayEquals(new int[]{1, 800}, ImageUtils.fitWithin(10, 10_000));
+    }
 
-            assertNotNull(result);
-            assertEquals(mockBitmap, result);
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
         }
+        return out.toByteArray();
     }
 
     @Test
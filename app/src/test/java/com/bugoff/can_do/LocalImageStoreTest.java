@@ -0,0 +1,85 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.bugoff.can_do.image.ImageStore;
+import com.bugoff.can_do.image.ImageVariant;
+import com.bugoff.can_do.image.LocalImageStore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+class LocalImageStoreTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void testWriteAndReadRoundTrip() throws IOException {
+        LocalImageStore store = new LocalImageStore(new File(directory, "images"));
+        byte[] image = "not really a jpeg".getBytes(StandardCharsets.UTF_8);
+
+        String hash = store.write(image);
+
+        assertTrue(ImageStore.isHash(hash));
+        assertTrue(store.contains(hash));
+        assertArrayEquals(image, store.read(hash));
+    }
+
+    @Test
+    void testIdenticalImagesShareOneFile() throws IOException {
+        LocalImageStore store = new LocalImageStore(directory);
+        byte[] image = new byte[]{1, 2, 3, 4};
+
+        String first = store.write(image);
+        String second = store.write(image.clone());
+        String other = store.write(new byte[]{4, 3, 2, 1});
+
+        assertEquals(first, second);
+        assertNotEquals(first, other);
+        assertEquals(2, directory.listFiles().length);
+    }
+
+    @Test
+    void testMissingOrMalformedHashReadsNull() throws IOException {
+        LocalImageStore store = new LocalImageStore(directory);
+
+        assertNull(store.read(ImageStore.hashOf(new byte[]{9})));
+        assertNull(store.read("../outside"));
+        assertFalse(store.contains("not-a-hash"));
+    }
+
+    @Test
+    void testVariantsAreKeyedByTheFullImage() throws IOException {
+        LocalImageStore store = new LocalImageStore(directory);
+        String hash = store.write(new byte[]{1, 2, 3, 4});
+        byte[] small = new byte[]{1};
+
+        store.writeVariant(hash, ImageVariant.SMALL, small);
+
+        assertArrayEquals(small, store.readVariant(hash, ImageVariant.SMALL));
+        assertNull(store.readVariant(hash, ImageVariant.MEDIUM));
+        assertNull(store.readVariant("../outside", ImageVariant.SMALL));
+        assertThrows(IOException.class, () -> store.writeVariant("../outside", ImageVariant.SMALL, small));
+        // A variant is not an image of its own
+        assertFalse(store.contains(ImageStore.hashOf(small)));
+    }
+
+    @Test
+    void testSmallestFittingVariant() {
+        assertEquals(ImageVariant.SMALL, ImageVariant.smallestFitting(64));
+        assertEquals(ImageVariant.SMALL, ImageVariant.smallestFitting(ImageVariant.SMALL.getMaxDimension()));
+        assertEquals(ImageVariant.TILE, ImageVariant.smallestFitting(ImageVariant.SMALL.getMaxDimension() + 1));
+        assertEquals(ImageVariant.MEDIUM, ImageVariant.smallestFitting(ImageVariant.TILE.getMaxDimension() + 1));
+        assertNull(ImageVariant.smallestFitting(ImageVariant.MEDIUM.getMaxDimension() + 1));
+    }
+}
@@ -2,7 +2,19 @@ package com.bugoff.can_do;
 
 import static org.junit.Assert.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.bugoff.can_do.database.JoinResult;
+import com.bugoff.can_do.database.NoOpDatabaseBehavior;
+import com.bugoff.can_do.event.Event;
 import com.bugoff.can_do.testclasses.TestEvent;
 import com.bugoff.can_do.testclasses.TestFacility;
 import com.bugoff.can_do.testclasses.TestNoOpDatabaseBehavior;
@@ -12,6 +24,12 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
 class NoOpDatabaseBehaviorTest {
     private TestNoOpDatabaseBehavior behavior;
     private TestUser testUser;
@@ -216,4 +234,110 @@ class NoOpDatabaseBehaviorTest {
         assertThrows(Exception.class, () -> behavior.getFacility(testFacility.getId()));
         assertThrows(Exception.class, () -> behavior.getEvent(testEvent.getId()));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testJoinWaitlistRespectsCapacityAndDuplicates() throws Exception {
+        testEvent.setMaxNumberOfParticipants(2);
+        behavior.addEvent(testEvent);
+
+        assertEquals(JoinResult.JOINED, behavior.joinWaitlist(testEvent.getId(), "user-1"));
+        assertEquals(JoinResult.ALREADY_JOINED, behavior.joinWaitlist(testEvent.getId(), "user-1"));
+        assertEquals(JoinResult.JOINED, behavior.joinWaitlist(testEvent.getId(), "user-2"));
+        assertEquals(JoinResult.FULL, behavior.joinWaitlist(testEvent.getId(), "user-3"));
+
+        assertEquals(Arrays.asList("user-1", "user-2"), testEvent.getEntrantList("waitingListEntrants"));
+        assertThrows(Exception.class, () -> behavior.joinWaitlist("non-existent-id", "user-1"));
+    }
+
+    @Test
+    void testMoveEntrantsKeepsOtherEntrants() throws Exception {
+        behavior.addEvent(testEvent);
+        behavior.joinWaitlist(testEvent.getId(), "user-1");
+        behavior.joinWaitlist(testEvent.getId(), "user-2");
+        behavior.joinWaitlist(testEvent.getId(), "user-3");
+
+        behavior.moveEntrants(testEvent.getId(), Arrays.asList("user-1", "user-3"), "waitingListEntrants", "selectedEntrants");
+        // Moving again is idempotent
+        behavior.moveEntrants(testEvent.getId(), Collections.singletonList("user-1"), "waitingListEntrants", "selectedEntrants");
+
+        assertEquals(Collections.singletonList("user-2"), testEvent.getEntrantList("waitingListEntrants"));
+        assertEquals(Arrays.asList("user-1", "user-3"), testEvent.getEntrantList("selectedEntrants"));
+
+        behavior.moveEntrants(testEvent.getId(), Collections.singletonList("user-1"), "selectedEntrants", "enrolledEntrants");
+        behavior.moveEntrants(testEvent.getId(), Collections.singletonList("user-2"), "waitingListEntrants", null);
+
+        assertEquals(Collections.singletonList("user-3"), testEvent.getEntrantList("selectedEntrants"));
+        assertEquals(Collections.singletonList("user-1"), testEvent.getEntrantList("enrolledEntrants"));
+        Assertions.assertTrue(testEvent.getEntrantList("waitingListEntrants").isEmpty());
+    }
+
+    @Test
+    void testMoveEntrantsRejectsInvalidMove() throws Exception {
+        behavior.addEvent(testEvent);
+
+        assertThrows(IllegalArgumentException.class, () -> behavior.moveEntrants(testEvent.getId(),
+                Collections.singletonList("user-1"), "selectedEntrants", "selectedEntrants"));
+        assertThrows(IllegalArgumentException.class, () -> behavior.moveEntrants(testEvent.getId(),
+                Collections.singletonList("user-1"), null, null));
+    }
+
+    /**
+     * Creates an event mock whose entrant moves change {@code waitingList} like the real event.
+     */
+    private static Event eventWithWaitingList(String id, List<String> waitingList, Integer max) {
+        Event event = mock(Event.class);
+        when(event.getId()).thenReturn(id);
+        when(event.getWaitingListEntrants()).thenReturn(waitingList);
+        when(event.getMaxNumberOfParticipants()).thenReturn(max);
+        when(event.applyMove(anyString(), any(), any())).thenAnswer(invocation -> {
+            String userId = invocation.getArgument(0);
+            if ("waitingListEntrants".equals(invocation.getArgument(1)) && waitingList.remove(userId)) {
+                return Collections.singleton("waitingListEntrants");
+            }
+            if ("waitingListEntrants".equals(invocation.getArgument(2)) && !waitingList.contains(userId)) {
+                waitingList.add(userId);
+                return Collections.singleton("waitingListEntrants");
+            }
+            return Collections.emptySet();
+        });
+        return event;
+    }
+
+    @Test
+    void testNoOpJoinWaitlistRespectsCapacityAndDuplicates() {
+        NoOpDatabaseBehavior noOp = new NoOpDatabaseBehavior();
+        List<String> waitingList = new ArrayList<>();
+        Event event = eventWithWaitingList("event-1", waitingList, 2);
+        noOp.saveEvent(event);
+
+        assertEquals(JoinResult.JOINED, noOp.joinWaitlist("event-1", "user-1").getResult());
+        assertEquals(JoinResult.ALREADY_JOINED, noOp.joinWaitlist("event-1", "user-1").getResult());
+        assertEquals(JoinResult.JOINED, noOp.joinWaitlist("event-1", "user-2").getResult());
+        assertEquals(JoinResult.FULL, noOp.joinWaitlist("event-1", "user-3").getResult());
+
+        assertEquals(Arrays.asList("user-1", "user-2"), waitingList);
+        verify(event, times(2)).onUpdate(Collections.singleton("waitingListEntrants"));
+        assertFalse(noOp.joinWaitlist("missing-event", "user-1").isSuccessful());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testNoOpMoveEntrantsNotifiesOnlyOnChange() {
+        NoOpDatabaseBehavior noOp = new NoOpDatabaseBehavior();
+        List<String> waitingList = new ArrayList<>(Arrays.asList("user-1", "user-2"));
+        Event event = eventWithWaitingList("event-1", waitingList, null);
+        noOp.saveEvent(event);
+
+        assertTrue(noOp.moveEntrants("event-1", Arrays.asList("user-1", "user-3"), "waitingListEntrants", null)
+                .isSuccessful());
+        assertEquals(Collections.singletonList("user-2"), waitingList);
+        verify(event, times(1)).onUpdate(Collections.singleton("waitingListEntrants"));
+
+        // Moving users who are not in the list changes nothing, so no update is sent
+        noOp.moveEntrants("event-1", Collections.singletonList("user-3"), "waitingListEntrants", null);
+        verify(event, times(1)).onUpdate(any(Set.class));
+        assertFalse(noOp.moveEntrants("missing-event", Collections.singletonList("user-1"),
+                "waitingListEntrants", null).isSuccessful());
+        verify(event, never()).onUpdate();
+    }
+}
@@ -0,0 +1,220 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.bugoff.can_do.image.HammingIndex;
+import com.bugoff.can_do.image.PerceptualHash;
+import com.bugoff.can_do.image.SimilarImageIndex;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+class SimilarImageIndexTest {
+    private static final int CORPUS_SIZE = 3000;
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    @Test
+    void testIdenticalPixelsHashIdentically() {
+        BufferedImage image = syntheticImage(new Random(1));
+
+        assertEquals(0, PerceptualHash.distance(hash(image), hash(image)));
+    }
+
+    @Test
+    void testTinyImagesCanBeHashed() {
+        // Smaller than the 32x32 grid the hash samples
+        PerceptualHash.compute(new int[]{0xFF000000, 0xFFFFFFFF, 0xFF808080}, 3, 1);
+    }
+
+    @Test
+    void testHammingIndexMatchesBruteForce() {
+        Random random = new Random(7);
+        HammingIndex<Integer> index = new HammingIndex<>();
+        long[] hashes = new long[CORPUS_SIZE];
+        for (int i = 0; i < hashes.length; i++) {
+            // Flip a few bits of a handful of roots, so there are clusters to find
+            hashes[i] = (i % 50) * 0x9E3779B97F4A7C15L ^ (1L << random.nextInt(64)) ^ (1L << random.nextInt(64));
+            index.add(hashes[i], i);
+        }
+
+        for (int query = 0; query < 200; query++) {
+            long hash = hashes[random.nextInt(hashes.length)] ^ (1L << random.nextInt(64));
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < hashes.length; i++) {
+                if (PerceptualHash.distance(hash, hashes[i]) <= 6) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> found = new ArrayList<>();
+            int previousDistance = 0;
+            for (HammingIndex.Match<Integer> match : index.search(hash, 6)) {
+                assertTrue(match.getDistance() >= previousDistance, "Matches are nearest first");
+                previousDistance = match.getDistance();
+                found.add(match.getValue());
+            }
+            found.sort(null);
+            assertEquals(expected, found);
+        }
+        assertEquals(CORPUS_SIZE, index.size());
+        assertTrue(index.remove(hashes[0], 0));
+        assertFalse(index.remove(hashes[0], 0));
+        assertEquals(CORPUS_SIZE - 1, index.size());
+    }
+
+    /**
+     * Indexes a few thousand synthetic images, then looks up re-encoded, resized and brightened
+     * copies of some of them, as a moderator would when an image is uploaded again.
+     */
+    @Test
+    void testFindsReuploadsAmongThousandsOfImages() throws IOException {
+        Random random = new Random(42);
+        SimilarImageIndex index = new SimilarImageIndex();
+        List<BufferedImage> originals = new ArrayList<>();
+        for (int i = 0; i < CORPUS_SIZE; i++) {
+            BufferedImage image = syntheticImage(random);
+            if (i < 100) {
+                originals.add(image);
+            }
+            index.add(key(i), hash(image));
+        }
+        assertEquals(CORPUS_SIZE, index.size());
+
+        int maxCopyDistance = 0;
+        int falseMatches = 0;
+        long searchNanos = 0;
+        int searches = 0;
+        for (int i = 0; i < originals.size(); i++) {
+            BufferedImage original = originals.get(i);
+            List<BufferedImage> copies = new ArrayList<>();
+            copies.add(reencode(original, 0.5f));
+            copies.add(resize(original, WIDTH / 2, HEIGHT / 2));
+            copies.add(brighten(resize(reencode(original, 0.7f), WIDTH * 3 / 4, HEIGHT * 3 / 4), 20));
+            for (BufferedImage copy : copies) {
+                long copyHash = hash(copy);
+                maxCopyDistance = Math.max(maxCopyDistance, PerceptualHash.distance(copyHash, hash(original)));
+                long start = System.nanoTime();
+                List<String> similar = index.findSimilar(copyHash, SimilarImageIndex.DEFAULT_MAX_DISTANCE);
+                searchNanos += System.nanoTime() - start;
+                searches++;
+                assertTrue(similar.contains(key(i)), "Copy of image " + i + " not found");
+                falseMatches += similar.size() - 1;
+            }
+        }
+        System.out.printf("Copies within %d bits; %d false matches in %d searches; %.1f us per search%n",
+                maxCopyDistance, falseMatches, searches, searchNanos / 1000.0 / searches);
+
+        assertTrue(maxCopyDistance <= SimilarImageIndex.DEFAULT_MAX_DISTANCE);
+        // Unrelated images are about half of the bits apart, so they rarely come up
+        assertTrue(falseMatches < searches, falseMatches + " false matches");
+        assertTrue(searchNanos / searches < 1_000_000, "Searches should take well under a millisecond");
+    }
+
+    @Test
+    void testReplacingAndRemovingImages() {
+        SimilarImageIndex index = new SimilarImageIndex();
+        index.add(key(1), 0L);
+        index.add(key(2), 0b111L);
+        index.add(key(1), -1L);
+
+        assertEquals(List.of(key(2)), index.findSimilar(0L, 3));
+        assertEquals(List.of(key(1)), index.findSimilar(key(1), 0));
+        assertEquals(2, index.size());
+
+        index.remove(key(2));
+
+        assertTrue(index.findSimilar(0L, 3).isEmpty());
+        assertTrue(index.findSimilar(key(2), 64).isEmpty());
+        assertEquals(1, index.size());
+    }
+
+    private static String key(int i) {
+        return String.format("%064x", i);
+    }
+
+    private static long hash(BufferedImage image) {
+        int[] pixels = image.getRGB(0, 0, image.getWidth(), image.getHeight(), null, 0, image.getWidth());
+        return PerceptualHash.compute(pixels, image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Draws a gradient background with a few random shapes, like a poster or a simple photo.
+     */
+    private static BufferedImage syntheticImage(Random random) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new java.awt.GradientPaint(random.nextInt(WIDTH), random.nextInt(HEIGHT), randomColor(random),
+                random.nextInt(WIDTH), random.nextInt(HEIGHT), randomColor(random)));
+        g.fillRect(0, 0, WIDTH, HEIGHT);
+        for (int i = 0; i < 6; i++) {
+            g.setColor(randomColor(random));
+            int w = 10 + random.nextInt(WIDTH / 2);
+            int h = 10 + random.nextInt(HEIGHT / 2);
+            if (random.nextBoolean()) {
+                g.fillOval(random.nextInt(WIDTH) - w / 2, random.nextInt(HEIGHT) - h / 2, w, h);
+            } else {
+                g.fillRect(random.nextInt(WIDTH) - w / 2, random.nextInt(HEIGHT) - h / 2, w, h);
+            }
+        }
+        g.dispose();
+        return image;
+    }
+
+    private static Color randomColor(Random random) {
+        return new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+    }
+
+    private static BufferedImage reencode(BufferedImage image, float quality) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (MemoryCacheImageOutputStream stream = new MemoryCacheImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static BufferedImage resize(BufferedImage image, int width, int height) {
+        BufferedImage resized = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = resized.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return resized;
+    }
+
+    private static BufferedImage brighten(BufferedImage image, int amount) {
+        BufferedImage brightened = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int rgb = image.getRGB(x, y);
+                brightened.setRGB(x, y, new Color(Math.min(255, ((rgb >> 16) & 0xFF) + amount),
+                        Math.min(255, ((rgb >> 8) & 0xFF) + amount), Math.min(255, (rgb & 0xFF) + amount)).getRGB());
+            }
+        }
+        return brightened;
+    }
+}
@@ -0,0 +1,198 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import android.os.Handler;
+
+import com.bugoff.can_do.database.SnapshotListenerRegistry;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.EventListener;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.SnapshotMetadata;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.Map;
+
+class SnapshotListenerRegistryTest {
+    private static final long GRACE_PERIOD_MS = 5000;
+
+    private Handler handler;
+    private DocumentReference ref;
+    private ListenerRegistration registration;
+    private SnapshotListenerRegistry registry;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        handler = mock(Handler.class);
+        ref = mock(DocumentReference.class);
+        registration = mock(ListenerRegistration.class);
+        when(ref.getPath()).thenReturn("events/1");
+        when(ref.addSnapshotListener(eq(MetadataChanges.INCLUDE), any(EventListener.class))).thenReturn(registration);
+        registry = new SnapshotListenerRegistry(handler, GRACE_PERIOD_MS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EventListener<DocumentSnapshot> subscriber() {
+        return mock(EventListener.class);
+    }
+
+    /**
+     * Gets the listener the registry attached to the document the {@code times}-th time.
+     */
+    @SuppressWarnings("unchecked")
+    private EventListener<DocumentSnapshot> firestoreListener(int times) {
+        ArgumentCaptor<EventListener<DocumentSnapshot>> listener = ArgumentCaptor.forClass(EventListener.class);
+        verify(ref, times(times)).addSnapshotListener(eq(MetadataChanges.INCLUDE), listener.capture());
+        return listener.getValue();
+    }
+
+    private static DocumentSnapshot snapshot(Map<String, Object> data, boolean pendingWrites) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        SnapshotMetadata metadata = mock(SnapshotMetadata.class);
+        when(metadata.hasPendingWrites()).thenReturn(pendingWrites);
+        when(snapshot.getMetadata()).thenReturn(metadata);
+        when(snapshot.exists()).thenReturn(true);
+        when(snapshot.getData()).thenReturn(data);
+        return snapshot;
+    }
+
+    @Test
+    void testSubscribersShareOneListener() {
+        EventListener<DocumentSnapshot> first = subscriber();
+        EventListener<DocumentSnapshot> second = subscriber();
+        registry.subscribe(ref, first);
+        registry.subscribe(ref, second);
+
+        DocumentSnapshot snapshot = snapshot(Collections.singletonMap("name", "Gala"), false);
+        firestoreListener(1).onEvent(snapshot, null);
+
+        assertEquals(1, registry.getListenerCount());
+        verify(first).onEvent(snapshot, null);
+        verify(second).onEvent(snapshot, null);
+    }
+
+    @Test
+    void testListenerIsRemovedAfterGracePeriod() {
+        ListenerRegistration first = registry.subscribe(ref, subscriber());
+        ListenerRegistration second = registry.subscribe(ref, subscriber());
+
+        first.remove();
+        verify(handler, never()).postDelayed(any(Runnable.class), anyLong());
+
+        second.remove();
+        ArgumentCaptor<Runnable> removal = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(removal.capture(), eq(GRACE_PERIOD_MS));
+        verify(registration, never()).remove();
+        assertEquals(1, registry.getListenerCount());
+
+        removal.getValue().run();
+        verify(registration).remove();
+        assertEquals(0, registry.getListenerCount());
+    }
+
+    @Test
+    void testResubscribingWithinGracePeriodKeepsListener() {
+        registry.subscribe(ref, subscriber()).remove();
+        ArgumentCaptor<Runnable> removal = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).postDelayed(removal.capture(), eq(GRACE_PERIOD_MS));
+
+        registry.subscribe(ref, subscriber());
+
+        verify(handler).removeCallbacks(removal.getValue());
+        // Even if the removal had already been dequeued, it leaves a listener in use alone
+        removal.getValue().run();
+        verify(registration, never()).remove();
+        verify(ref, times(1)).addSnapshotListener(eq(MetadataChanges.INCLUDE), any());
+        assertEquals(1, registry.getListenerCount());
+    }
+
+    @Test
+    void testLateSubscriberReceivesCachedSnapshot() {
+        registry.subscribe(ref, subscriber());
+        DocumentSnapshot snapshot = snapshot(Collections.singletonMap("name", "Gala"), false);
+        firestoreListener(1).onEvent(snapshot, null);
+
+        EventListener<DocumentSnapshot> late = subscriber();
+        registry.subscribe(ref, late);
+
+        // Delivered through the handler, not from within subscribe
+        verifyNoInteractions(late);
+        ArgumentCaptor<Runnable> delivery = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).post(delivery.capture());
+        delivery.getValue().run();
+        verify(late).onEvent(snapshot, null);
+    }
+
+    @Test
+    void testCachedSnapshotIsNotDeliveredAfterUnsubscribing() {
+        registry.subscribe(ref, subscriber());
+        firestoreListener(1).onEvent(snapshot(Collections.singletonMap("name", "Gala"), false), null);
+        EventListener<DocumentSnapshot> late = subscriber();
+
+        registry.subscribe(ref, late).remove();
+        ArgumentCaptor<Runnable> delivery = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler).post(delivery.capture());
+        delivery.getValue().run();
+
+        verifyNoInteractions(late);
+    }
+
+    @Test
+    void testErrorDropsListener() {
+        EventListener<DocumentSnapshot> first = subscriber();
+        registry.subscribe(ref, first);
+        FirebaseFirestoreException error = mock(FirebaseFirestoreException.class);
+
+        firestoreListener(1).onEvent(null, error);
+
+        verify(first).onEvent(null, error);
+        assertEquals(0, registry.getListenerCount());
+        // Firestore stopped the failed listener, so the next subscriber starts a new one
+        registry.subscribe(ref, subscriber());
+        firestoreListener(2);
+        assertEquals(1, registry.getListenerCount());
+    }
+
+    @Test
+    void testEchoesAreNotDelivered() {
+        EventListener<DocumentSnapshot> subscriber = subscriber();
+        registry.subscribe(ref, subscriber);
+        EventListener<DocumentSnapshot> listener = firestoreListener(1);
+        Map<String, Object> original = Collections.singletonMap("name", "Gala");
+        Map<String, Object> renamed = Collections.singletonMap("name", "Ball");
+
+        // The first snapshot is delivered even with pending writes, e.g. while offline
+        DocumentSnapshot first = snapshot(original, true);
+        listener.onEvent(first, null);
+        // Our own write before and after the server acknowledged it
+        DocumentSnapshot pending = snapshot(renamed, true);
+        listener.onEvent(pending, null);
+        DocumentSnapshot acknowledged = snapshot(renamed, false);
+        listener.onEvent(acknowledged, null);
+        // Only the metadata changed
+        DocumentSnapshot metadataOnly = snapshot(renamed, false);
+        listener.onEvent(metadataOnly, null);
+
+        verify(subscriber).onEvent(first, null);
+        verify(subscriber, never()).onEvent(pending, null);
+        verify(subscriber).onEvent(acknowledged, null);
+        verify(subscriber, never()).onEvent(metadataOnly, null);
+    }
+}
@@ -0,0 +1,74 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.bugoff.can_do.image.ThumbnailDiskCache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+class ThumbnailDiskCacheTest {
+    @TempDir
+    File directory;
+
+    @Test
+    void testWriteAndRead() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(directory, 1000);
+
+        cache.write("abc_256", new byte[]{1, 2, 3});
+
+        assertArrayEquals(new byte[]{1, 2, 3}, cache.read("abc_256"));
+        assertNull(cache.read("abc_512"));
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsedBeyondBound() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(directory, 1000);
+        cache.write("a_64", new byte[400]);
+        cache.write("b_64", new byte[400]);
+        cache.read("a_64"); // b is now the least recently used
+
+        cache.write("c_64", new byte[400]);
+
+        assertNotNull(cache.read("a_64"));
+        assertNull(cache.read("b_64"));
+        assertNotNull(cache.read("c_64"));
+        assertEquals(800, cache.size());
+        assertEquals(2, directory.listFiles().length);
+    }
+
+    @Test
+    void testReplacingAThumbnailKeepsSizeAccurate() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(directory, 1000);
+        cache.write("a_64", new byte[400]);
+        cache.write("a_64", new byte[100]);
+
+        assertEquals(100, cache.size());
+    }
+
+    @Test
+    void testReloadsEntriesFromDirectory() throws IOException {
+        new ThumbnailDiskCache(directory, 1000).write("a_64", new byte[]{7});
+
+        ThumbnailDiskCache reopened = new ThumbnailDiskCache(directory, 1000);
+
+        assertArrayEquals(new byte[]{7}, reopened.read("a_64"));
+        assertEquals(1, reopened.size());
+    }
+
+    @Test
+    void testRejectsKeysOutsideTheDirectory() throws IOException {
+        ThumbnailDiskCache cache = new ThumbnailDiskCache(directory, 1000);
+
+        assertThrows(IllegalArgumentException.class, () -> cache.write("../escape", new byte[1]));
+        assertNull(cache.read("../escape"));
+    }
+}
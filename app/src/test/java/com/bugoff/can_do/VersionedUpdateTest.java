@@ -0,0 +1,106 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.bugoff.can_do.database.VersionedUpdate;
+import com.google.firebase.firestore.FieldValue;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+class VersionedUpdateTest {
+
+    private static Map<String, Long> versions(Object... fieldsAndVersions) {
+        Map<String, Long> map = new HashMap<>();
+        for (int i = 0; i < fieldsAndVersions.length; i += 2) {
+            map.put((String) fieldsAndVersions[i], ((Number) fieldsAndVersions[i + 1]).longValue());
+        }
+        return map;
+    }
+
+    @Test
+    void testUnchangedRemoteWritesAllFieldsAndBumpsVersions() {
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("name", "New Name");
+
+        VersionedUpdate update = VersionedUpdate.resolve(changes, versions("name", 2), 5, versions("name", 2));
+
+        assertTrue(update.getConflicts().isEmpty());
+        assertEquals("New Name", update.getWrites().get("name"));
+        assertEquals(3L, update.getWrites().get("fieldVersions.name"));
+        assertEquals(6L, update.getWrites().get("version"));
+        assertEquals(6, update.getVersion());
+        assertEquals(versions("name", 3), update.getWrittenFieldVersions());
+    }
+
+    @Test
+    void testConcurrentChangeToSameFieldKeepsRemoteValue() {
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("name", "Mine");
+        changes.put("description", "Also mine");
+
+        // Someone else wrote the name since this entity read it
+        VersionedUpdate update = VersionedUpdate.resolve(changes,
+                versions("name", 1, "description", 1), 7, versions("name", 2, "description", 1));
+
+        assertEquals(Collections.singleton("name"), update.getConflicts());
+        assertFalse(update.getWrites().containsKey("name"));
+        assertFalse(update.getWrites().containsKey("fieldVersions.name"));
+        assertEquals("Also mine", update.getWrites().get("description"));
+        assertEquals(2L, update.getWrites().get("fieldVersions.description"));
+        assertEquals(8L, update.getWrites().get("version"));
+    }
+
+    @Test
+    void testArrayTransformsAndMapEntriesNeverConflict() {
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("waitingListEntrants", FieldValue.arrayUnion("user-3"));
+        changes.put("entrantStatuses.user-3", "SELECTED");
+
+        VersionedUpdate update = VersionedUpdate.resolve(changes,
+                versions(), 4, versions("waitingListEntrants", 9, "entrantStatuses", 3));
+
+        assertTrue(update.getConflicts().isEmpty());
+        assertEquals(10L, update.getWrites().get("fieldVersions.waitingListEntrants"));
+        assertEquals(4L, update.getWrites().get("fieldVersions.entrantStatuses"));
+        assertEquals("SELECTED", update.getWrites().get("entrantStatuses.user-3"));
+    }
+
+    @Test
+    void testFieldDeletionConflictsLikeAWrite() {
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("base64Image", FieldValue.delete());
+
+        VersionedUpdate update = VersionedUpdate.resolve(changes, versions(), 2, versions("base64Image", 1));
+
+        assertEquals(Collections.singleton("base64Image"), update.getConflicts());
+    }
+
+    @Test
+    void testEverythingConflictingWritesNothing() {
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("name", "Mine");
+
+        VersionedUpdate update = VersionedUpdate.resolve(changes, versions("name", 1), 3, versions("name", 2));
+
+        assertTrue(update.getWrites().isEmpty());
+        assertEquals(3, update.getVersion());
+    }
+
+    @Test
+    void testLegacyDocumentWithoutVersionsAcceptsWrites() {
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("name", "Mine");
+
+        VersionedUpdate update = VersionedUpdate.resolve(changes, versions(), 0, versions());
+
+        assertTrue(update.getConflicts().isEmpty());
+        assertEquals(1L, update.getWrites().get("version"));
+        assertEquals(1L, update.getWrites().get("fieldVersions.name"));
+    }
+}
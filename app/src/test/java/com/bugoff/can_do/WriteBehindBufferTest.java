@@ -0,0 +1,117 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import android.os.Handler;
+
+import com.bugoff.can_do.database.WriteBehindBuffer;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class WriteBehindBufferTest {
+    private static final long FLUSH_WINDOW_MS = 300;
+
+    private Handler handler;
+    private WriteBehindBuffer buffer;
+    private final List<String> written = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        handler = mock(Handler.class);
+        buffer = new WriteBehindBuffer(handler, FLUSH_WINDOW_MS);
+    }
+
+    private WriteBehindBuffer.PendingWrite write(String label) {
+        return () -> {
+            written.add(label);
+            return Tasks.forResult(null);
+        };
+    }
+
+    @Test
+    void testWritesToSameDocumentCoalesce() {
+        buffer.markDirty("events/1", write("first"));
+        buffer.markDirty("events/1", write("second"));
+        buffer.markDirty("users/1", write("user"));
+
+        assertTrue(buffer.flush().isSuccessful());
+
+        // Only the latest write of each document, in the order the documents were first dirtied
+        assertEquals(List.of("second", "user"), written);
+        assertFalse(buffer.isDirty("events/1"));
+    }
+
+    @Test
+    void testFlushIsScheduledOncePerWindow() {
+        buffer.markDirty("events/1", write("first"));
+        buffer.markDirty("events/2", write("second"));
+
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(handler, times(1)).postDelayed(flush.capture(), eq(FLUSH_WINDOW_MS));
+
+        flush.getValue().run();
+        assertEquals(List.of("first", "second"), written);
+
+        // A write after the flush opens a new window
+        buffer.markDirty("events/1", write("third"));
+        verify(handler, times(2)).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    void testDiscardDropsPendingWrite() {
+        buffer.markDirty("events/1", write("event"));
+        assertTrue(buffer.isDirty("events/1"));
+
+        buffer.discard("events/1");
+
+        assertFalse(buffer.isDirty("events/1"));
+        buffer.flush();
+        assertTrue(written.isEmpty());
+    }
+
+    @Test
+    void testFlushCompletesOnlyOnceWritesComplete() {
+        TaskCompletionSource<Void> first = new TaskCompletionSource<>();
+        TaskCompletionSource<Void> second = new TaskCompletionSource<>();
+        buffer.markDirty("events/1", first::getTask);
+        buffer.markDirty("events/2", second::getTask);
+
+        Task<Void> flushed = buffer.flush();
+
+        // The writes were started right away and the buffer is empty again
+        assertFalse(buffer.isDirty("events/1"));
+        verify(handler).removeCallbacks(any(Runnable.class));
+        assertFalse(flushed.isComplete());
+        first.setResult(null);
+        assertFalse(flushed.isComplete());
+        second.setResult(null);
+        assertTrue(flushed.isSuccessful());
+    }
+
+    @Test
+    void testFailingWriteDoesNotStopOthers() {
+        buffer.markDirty("events/1", () -> {
+            throw new IllegalStateException("Broken");
+        });
+        buffer.markDirty("events/2", write("second"));
+
+        assertTrue(buffer.flush().isSuccessful());
+        assertEquals(List.of("second"), written);
+    }
+}
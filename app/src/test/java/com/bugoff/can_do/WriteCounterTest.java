@@ -0,0 +1,52 @@
+package com.bugoff.can_do;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.bugoff.can_do.database.WriteCounter;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WriteCounterTest {
+    private WriteCounter counter;
+
+    @BeforeEach
+    void setUp() {
+        counter = WriteCounter.getInstance();
+        counter.reset();
+    }
+
+    @Test
+    void testCountsWritesPerCollection() {
+        counter.record("events", 1);
+        counter.record("events", 2);
+        counter.record("users", 1);
+
+        assertEquals(4, counter.getTotal());
+        assertEquals(3L, counter.getCounts().get("events"));
+        assertEquals(1L, counter.getCounts().get("users"));
+    }
+
+    @Test
+    void testIgnoresEmptyWrites() {
+        counter.record("events", 0);
+
+        assertEquals(0, counter.getTotal());
+        assertTrue(counter.getCounts().isEmpty());
+    }
+
+    @Test
+    void testActionWritesStartFromBeginAction() {
+        counter.record("users", 5);
+        counter.beginAction("joinWaitingList");
+        counter.record("joinRequests", 1);
+        counter.record("users", 1);
+
+        assertEquals(2, counter.getActionWrites());
+
+        counter.beginAction("leaveWaitingList");
+        assertEquals(0, counter.getActionWrites());
+        assertEquals(7, counter.getTotal());
+    }
+}
@@ -1,6 +1,8 @@
 package com.bugoff.can_do.testclasses;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class TestEvent {
@@ -8,6 +10,8 @@ public class TestEvent {
     private String name;
     private String description;
     private TestFacility facility;
+    private Integer maxNumberOfParticipants;
+    private final Map<String, List<String>> entrantLists = new HashMap<>();
 
     public TestEvent(String id, TestFacility facility) {
         this.id = id;
@@ -20,6 +24,18 @@ public class TestEvent {
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
     public TestFacility getFacility() { return facility; }
+    public Integer getMaxNumberOfParticipants() { return maxNumberOfParticipants; }
+    public void setMaxNumberOfParticipants(Integer maxNumberOfParticipants) { this.maxNumberOfParticipants = maxNumberOfParticipants; }
+
+    // Entrant lists keyed by their Firestore field name, e.g. "waitingListEntrants"
+    public List<String> getEntrantList(String field) {
+        List<String> list = entrantLists.get(field);
+        if (list == null) {
+            list = new ArrayList<>();
+            entrantLists.put(field, list);
+        }
+        return list;
+    }
 
     public Map<String, Object> toMap() {
         Map<String, Object> map = new HashMap<>();
@@ -1,6 +1,10 @@
 package com.bugoff.can_do.testclasses;
 
+import com.bugoff.can_do.database.JoinResult;
+
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 
@@ -50,6 +54,37 @@ public class TestNoOpDatabaseBehavior {
         events.put(event.getId(), event);
     }
 
+    // Mirrors NoOpDatabaseBehavior.joinWaitlist
+    public JoinResult joinWaitlist(String eventId, String userId) throws Exception {
+        TestEvent event = getEvent(eventId);
+        List<String> waitingList = event.getEntrantList("waitingListEntrants");
+        if (waitingList.contains(userId)) {
+            return JoinResult.ALREADY_JOINED;
+        }
+        Integer max = event.getMaxNumberOfParticipants();
+        if (max != null && waitingList.size() >= max) {
+            return JoinResult.FULL;
+        }
+        waitingList.add(userId);
+        return JoinResult.JOINED;
+    }
+
+    // Mirrors NoOpDatabaseBehavior.moveEntrants
+    public void moveEntrants(String eventId, Collection<String> userIds, String from, String to) throws Exception {
+        if (from == null ? to == null : from.equals(to)) {
+            throw new IllegalArgumentException("An entrant must move between two different lists");
+        }
+        TestEvent event = getEvent(eventId);
+        for (String userId : userIds) {
+            if (from != null) {
+                event.getEntrantList(from).remove(userId);
+            }
+            if (to != null && !event.getEntrantList(to).contains(userId)) {
+                event.getEntrantList(to).add(userId);
+            }
+        }
+    }
+
     public void clearAll() {
         users.clear();
         facilities.clear();